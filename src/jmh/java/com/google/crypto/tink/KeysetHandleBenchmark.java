@@ -0,0 +1,132 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink;
+
+import com.google.crypto.tink.aead.AeadConfig;
+import com.google.crypto.tink.internal.InternalConfiguration;
+import com.google.crypto.tink.internal.RegistryConfiguration;
+import com.google.crypto.tink.mac.MacConfig;
+import com.google.crypto.tink.proto.KeyData;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks creating a primitive from a keyset with many keys, as with long-lived keysets which
+ * keep old keys to decrypt old data.
+ *
+ * <p>{@code creation} selects how the primitives of the keys are created:
+ *
+ * <ul>
+ *   <li>{@code BOTH}: the legacy and the full primitive of every key, as done before wrappers
+ *       declared which of the two they use.
+ *   <li>{@code USED}: only the primitive the wrapper uses ({@link KeysetHandle#getPrimitive}).
+ *   <li>{@code LAZY}: only the primary's, the others on first use ({@link
+ *       KeysetHandle#getPrimitiveLazily}).
+ * </ul>
+ *
+ * <p>The heap cost is reported by the GC profiler as {@code gc.alloc.rate.norm}, in bytes per
+ * created primitive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeysetHandleBenchmark {
+  @Param({"AES128_GCM", "HMAC_SHA256_128BITTAG"})
+  public String parametersName;
+
+  @Param({"500"})
+  public int keys;
+
+  @Param({"BOTH", "USED", "LAZY"})
+  public String creation;
+
+  private KeysetHandle handle;
+  private Class<?> primitiveClass;
+
+  /** Forwards to the {@link RegistryConfiguration}, but always creates both primitives. */
+  private static final class BothPrimitivesConfiguration extends InternalConfiguration {
+    @Override
+    public <P> P getLegacyPrimitive(KeyData keyData, Class<P> primitiveClass)
+        throws GeneralSecurityException {
+      return RegistryConfiguration.get().getLegacyPrimitive(keyData, primitiveClass);
+    }
+
+    @Override
+    public <P> P getPrimitive(Key key, Class<P> primitiveClass) throws GeneralSecurityException {
+      return RegistryConfiguration.get().getPrimitive(key, primitiveClass);
+    }
+
+    @Override
+    public <B, P> P wrap(PrimitiveSet<B> primitiveSet, Class<P> clazz)
+        throws GeneralSecurityException {
+      return RegistryConfiguration.get().wrap(primitiveSet, clazz);
+    }
+
+    @Override
+    public Class<?> getInputPrimitiveClass(Class<?> wrapperClassObject) {
+      return RegistryConfiguration.get().getInputPrimitiveClass(wrapperClassObject);
+    }
+  }
+
+  private static final BothPrimitivesConfiguration BOTH_PRIMITIVES =
+      new BothPrimitivesConfiguration();
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    AeadConfig.register();
+    MacConfig.register();
+    KeysetHandle.Builder builder = KeysetHandle.newBuilder();
+    for (int i = 0; i < keys; i++) {
+      KeysetHandle.Builder.Entry entry =
+          KeysetHandle.generateEntryFromParametersName(parametersName).withRandomId();
+      if (i == keys - 1) {
+        entry.makePrimary();
+      }
+      builder.addEntry(entry);
+    }
+    handle = builder.build();
+    primitiveClass = parametersName.startsWith("HMAC") ? Mac.class : Aead.class;
+  }
+
+  @Benchmark
+  public Object getPrimitive() throws GeneralSecurityException {
+    switch (creation) {
+      case "BOTH":
+        return handle.getPrimitive(BOTH_PRIMITIVES, primitiveClass);
+      case "USED":
+        return handle.getPrimitive(primitiveClass);
+      case "LAZY":
+        return handle.getPrimitiveLazily(primitiveClass);
+      default:
+        throw new IllegalArgumentException("unknown creation " + creation);
+    }
+  }
+}
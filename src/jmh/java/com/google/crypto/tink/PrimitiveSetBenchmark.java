@@ -0,0 +1,105 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink;
+
+import com.google.crypto.tink.aead.AeadConfig;
+import com.google.crypto.tink.proto.KeyStatusType;
+import com.google.crypto.tink.proto.Keyset;
+import com.google.crypto.tink.proto.OutputPrefixType;
+import com.google.crypto.tink.subtle.Random;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks how {@code AeadWrapper} finds the keys for a ciphertext by its output prefix.
+ *
+ * <p>The keyset has {@code keys} AES128_GCM keys with output prefix TINK, and the ciphertext is
+ * encrypted with one of them. {@code lookup} only finds the entries for the ciphertext, {@code
+ * decrypt} also decrypts it. With {@code set = MAP}, the PrimitiveSet is created with the
+ * deprecated mutable API, which looks up entries in a hash map keyed by a copy of the prefix. With
+ * {@code set = INDEX}, it is created by the {@link PrimitiveSet.Builder}, which uses a long-keyed
+ * index that does not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrimitiveSetBenchmark {
+  @Param({"1", "10", "1000"})
+  public int keys;
+
+  @Param({"MAP", "INDEX"})
+  public String set;
+
+  private PrimitiveSet<Aead> primitiveSet;
+  private Aead aead;
+  private byte[] associatedData;
+  private byte[] ciphertext;
+
+  @Setup
+  @SuppressWarnings("deprecation") // The MAP variant uses the deprecated mutable PrimitiveSet.
+  public void setUp() throws GeneralSecurityException {
+    AeadConfig.register();
+    PrimitiveSet<Aead> mutableSet = PrimitiveSet.newPrimitiveSet(Aead.class);
+    PrimitiveSet.Builder<Aead> builder = PrimitiveSet.newBuilder(Aead.class);
+    for (int i = 0; i < keys; i++) {
+      Keyset.Key key =
+          Keyset.Key.newBuilder()
+              .setKeyData(Registry.newKeyData(KeyTemplates.get("AES128_GCM")))
+              .setKeyId(Random.randInt())
+              .setStatus(KeyStatusType.ENABLED)
+              .setOutputPrefixType(OutputPrefixType.TINK)
+              .build();
+      Aead primitive = Registry.getPrimitive(key.getKeyData(), Aead.class);
+      if (i == 0) {
+        mutableSet.setPrimary(mutableSet.addPrimitive(primitive, key));
+        builder.addPrimaryPrimitive(primitive, key);
+      } else {
+        mutableSet.addPrimitive(primitive, key);
+        builder.addPrimitive(primitive, key);
+      }
+    }
+    primitiveSet = set.equals("MAP") ? mutableSet : builder.build();
+    aead = Registry.wrap(primitiveSet, Aead.class);
+    associatedData = Random.randBytes(16);
+    ciphertext = aead.encrypt(Random.randBytes(64), associatedData);
+  }
+
+  @Benchmark
+  public List<PrimitiveSet.Entry<Aead>> lookup() {
+    return primitiveSet.getPrimitiveForPrefixOf(ciphertext);
+  }
+
+  @Benchmark
+  public byte[] decrypt() throws GeneralSecurityException {
+    return aead.decrypt(ciphertext, associatedData);
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.InsecureSecretKeyAccess;
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.TinkProtoKeysetFormat;
+import com.google.crypto.tink.proto.KeyData;
+import com.google.crypto.tink.proto.KeyStatusType;
+import com.google.crypto.tink.proto.Keyset;
+import com.google.crypto.tink.proto.OutputPrefixType;
+import com.google.crypto.tink.subtle.Random;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks encryption and decryption of every {@link Aead} implementation.
+ *
+ * <p>Each key type is measured both as the bare primitive ({@code outputPrefix = PRIMITIVE}) and
+ * through the {@code AeadWrapper} with a single-key keyset using the TINK, RAW or LEGACY output
+ * prefix. {@link Mode#SampleTime} reports latency percentiles; allocation rates are reported by
+ * the GC profiler, which the Bazel target enables by default.
+ *
+ * <p>AES-GCM-SIV requires a provider that implements "AES/GCM-SIV/NoPadding" (e.g. Conscrypt).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AeadBenchmark {
+  private static final int KEY_ID = 0x12345678;
+
+  @Param({
+    "AES128_GCM",
+    "AES256_GCM",
+    "AES128_EAX",
+    "AES128_CTR_HMAC_SHA256",
+    "CHACHA20_POLY1305",
+    "XCHACHA20_POLY1305",
+    "AES128_GCM_SIV"
+  })
+  public String keyTemplate;
+
+  @Param({"PRIMITIVE", "TINK", "RAW", "LEGACY"})
+  public String outputPrefix;
+
+  @Param({"16", "1024", "65536", "1048576", "16777216"})
+  public int size;
+
+  private Aead aead;
+  private byte[] plaintext;
+  private byte[] associatedData;
+  private byte[] ciphertext;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    AeadConfig.register();
+    KeyData keyData = Registry.newKeyData(KeyTemplates.get(keyTemplate));
+    aead = createAead(keyData, outputPrefix);
+    plaintext = Random.randBytes(size);
+    associatedData = Random.randBytes(16);
+    ciphertext = aead.encrypt(plaintext, associatedData);
+  }
+
+  private static Aead createAead(KeyData keyData, String outputPrefix)
+      throws GeneralSecurityException {
+    if (outputPrefix.equals("PRIMITIVE")) {
+      return Registry.getPrimitive(keyData, Aead.class);
+    }
+    Keyset keyset =
+        Keyset.newBuilder()
+            .addKey(
+                Keyset.Key.newBuilder()
+                    .setKeyData(keyData)
+                    .setKeyId(KEY_ID)
+                    .setStatus(KeyStatusType.ENABLED)
+                    .setOutputPrefixType(OutputPrefixType.valueOf(outputPrefix)))
+            .setPrimaryKeyId(KEY_ID)
+            .build();
+    return TinkProtoKeysetFormat.parseKeyset(keyset.toByteArray(), InsecureSecretKeyAccess.get())
+        .getPrimitive(Aead.class);
+  }
+
+  @Benchmark
+  public byte[] encrypt() throws GeneralSecurityException {
+    return aead.encrypt(plaintext, associatedData);
+  }
+
+  @Benchmark
+  public byte[] decrypt() throws GeneralSecurityException {
+    return aead.decrypt(ciphertext, associatedData);
+  }
+}
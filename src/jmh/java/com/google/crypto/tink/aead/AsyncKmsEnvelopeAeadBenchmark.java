@@ -0,0 +1,126 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.AsyncAead;
+import com.google.crypto.tink.subtle.Random;
+import com.google.crypto.tink.testing.FakeKmsClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link KmsEnvelopeAead} on a thread pool with {@link AsyncKmsEnvelopeAead}, against a
+ * {@link FakeKmsClient} with a simulated latency.
+ *
+ * <p>Each benchmark invocation encrypts {@code messages} messages. {@code blocking} runs them on
+ * {@code threads} threads, each of which waits for one KMS call at a time. {@code async} submits
+ * all of them at once, and the KMS is called once per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class AsyncKmsEnvelopeAeadBenchmark {
+  @Param({"10"})
+  public int latencyMillis;
+
+  @Param({"1000"})
+  public int messages;
+
+  @Param({"16"})
+  public int threads;
+
+  @Param({"100"})
+  public int maxBatchSize;
+
+  private ExecutorService executor;
+  private Aead blockingAead;
+  private AsyncKmsEnvelopeAead asyncAead;
+  private byte[] plaintext;
+  private byte[] associatedData;
+
+  @Setup
+  public void setUp() throws Exception {
+    AeadConfig.register();
+    executor = Executors.newFixedThreadPool(threads);
+    String keyUri = FakeKmsClient.createFakeKeyUri();
+    FakeKmsClient client = new FakeKmsClient().withLatency(Duration.ofMillis(latencyMillis));
+    blockingAead =
+        KmsEnvelopeAead.create(PredefinedAeadParameters.AES128_GCM, client.getAead(keyUri));
+    AsyncAead remote = client.getAsyncAead(keyUri, executor);
+    asyncAead =
+        AsyncKmsEnvelopeAead.builder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(remote)
+            .setMaxBatchSize(maxBatchSize)
+            .build();
+    plaintext = Random.randBytes(1024);
+    associatedData = Random.randBytes(16);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public List<byte[]> blocking() throws Exception {
+    List<Future<byte[]>> futures = new ArrayList<>(messages);
+    for (int i = 0; i < messages; i++) {
+      futures.add(executor.submit(() -> blockingAead.encrypt(plaintext, associatedData)));
+    }
+    List<byte[]> ciphertexts = new ArrayList<>(messages);
+    for (Future<byte[]> future : futures) {
+      ciphertexts.add(future.get());
+    }
+    return ciphertexts;
+  }
+
+  @Benchmark
+  public List<byte[]> async() throws Exception {
+    List<CompletableFuture<byte[]>> futures = new ArrayList<>(messages);
+    for (int i = 0; i < messages; i++) {
+      futures.add(asyncAead.encrypt(plaintext, associatedData));
+    }
+    List<byte[]> ciphertexts = new ArrayList<>(messages);
+    for (CompletableFuture<byte[]> future : futures) {
+      ciphertexts.add(future.get());
+    }
+    return ciphertexts;
+  }
+}
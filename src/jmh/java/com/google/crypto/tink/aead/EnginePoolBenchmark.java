@@ -0,0 +1,116 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.internal.EnginePool;
+import com.google.crypto.tink.subtle.Random;
+import java.lang.reflect.Method;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link EnginePool} strategies when every operation runs on its own short-lived
+ * thread.
+ *
+ * <p>Each benchmark invocation starts {@code tasks} threads, each of which encrypts and decrypts
+ * one message. With {@code THREAD_LOCAL}, every thread creates its own {@code Cipher}, {@code Mac}
+ * and {@code SecureRandom}; with {@code SHARED}, they are taken from a bounded pool.
+ *
+ * <p>{@code threads = VIRTUAL} requires JDK 21 or newer. The strategy is set before any primitive
+ * is created, which works because JMH runs every parameter combination in a new JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnginePoolBenchmark {
+  @Param({"THREAD_LOCAL", "SHARED"})
+  public String strategy;
+
+  @Param({"PLATFORM", "VIRTUAL"})
+  public String threads;
+
+  @Param({"AES128_GCM", "AES128_EAX", "AES128_CTR_HMAC_SHA256"})
+  public String keyTemplate;
+
+  @Param({"1000"})
+  public int tasks;
+
+  private Aead aead;
+  private byte[] plaintext;
+  private byte[] associatedData;
+  private Method startVirtualThread;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException, NoSuchMethodException {
+    EnginePool.setDefaultStrategy(EnginePool.Strategy.valueOf(strategy));
+    AeadConfig.register();
+    aead = KeysetHandle.generateNew(KeyTemplates.get(keyTemplate)).getPrimitive(Aead.class);
+    plaintext = Random.randBytes(1024);
+    associatedData = Random.randBytes(16);
+    if (threads.equals("VIRTUAL")) {
+      // Thread.startVirtualThread is only available in JDK 21 or newer.
+      startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+    }
+  }
+
+  private void startThread(Runnable task) throws ReflectiveOperationException {
+    if (startVirtualThread == null) {
+      new Thread(task).start();
+    } else {
+      startVirtualThread.invoke(null, task);
+    }
+  }
+
+  @Benchmark
+  public int encryptDecryptOnNewThreads()
+      throws ExecutionException, InterruptedException, ReflectiveOperationException {
+    List<FutureTask<byte[]>> results = new ArrayList<>(tasks);
+    for (int i = 0; i < tasks; i++) {
+      FutureTask<byte[]> result =
+          new FutureTask<>(
+              () -> aead.decrypt(aead.encrypt(plaintext, associatedData), associatedData));
+      startThread(result);
+      results.add(result);
+    }
+    int total = 0;
+    for (FutureTask<byte[]> result : results) {
+      total += result.get().length;
+    }
+    return total;
+  }
+}
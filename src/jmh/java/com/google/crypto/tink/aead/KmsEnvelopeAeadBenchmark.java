@@ -0,0 +1,121 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.TinkProtoParametersFormat;
+import com.google.crypto.tink.proto.KeyTemplate;
+import com.google.crypto.tink.subtle.Random;
+import com.google.protobuf.ExtensionRegistryLite;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares how {@link KmsEnvelopeAead} creates the primitives of its DEKs.
+ *
+ * <p>With {@code dekFactory = REGISTRY}, the instance is created with the deprecated constructor,
+ * which creates and parses every DEK with the {@code Registry}. With {@code DIRECT}, it is created
+ * with {@link KmsEnvelopeAead#create}, which creates the primitives directly. The remote AEAD is a
+ * local AES-GCM key, so that the measurements are not dominated by a KMS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KmsEnvelopeAeadBenchmark {
+  @Param({"REGISTRY", "DIRECT"})
+  public String dekFactory;
+
+  @Param({"AES128_GCM", "AES256_GCM", "AES128_CTR_HMAC_SHA256", "CHACHA20_POLY1305"})
+  public String dekParameters;
+
+  @Param({"1024"})
+  public int plaintextSize;
+
+  private Aead envelope;
+  private byte[] plaintext;
+  private byte[] associatedData;
+  private byte[] ciphertext;
+
+  private static AeadParameters getParameters(String name) {
+    switch (name) {
+      case "AES128_GCM":
+        return PredefinedAeadParameters.AES128_GCM;
+      case "AES256_GCM":
+        return PredefinedAeadParameters.AES256_GCM;
+      case "AES128_CTR_HMAC_SHA256":
+        return PredefinedAeadParameters.AES128_CTR_HMAC_SHA256;
+      case "CHACHA20_POLY1305":
+        return PredefinedAeadParameters.CHACHA20_POLY1305;
+      default:
+        throw new IllegalArgumentException("Unknown parameters " + name);
+    }
+  }
+
+  @Setup
+  @SuppressWarnings("deprecation") // The REGISTRY case measures the deprecated constructor.
+  public void setUp() throws Exception {
+    AeadConfig.register();
+    Aead remote =
+        KeysetHandle.generateNew(KeyTemplates.get("AES128_GCM")).getPrimitive(Aead.class);
+    AeadParameters parameters = getParameters(dekParameters);
+    if (dekFactory.equals("REGISTRY")) {
+      KeyTemplate template =
+          KeyTemplate.parseFrom(
+              TinkProtoParametersFormat.serialize(parameters),
+              ExtensionRegistryLite.getEmptyRegistry());
+      envelope = new KmsEnvelopeAead(template, remote);
+    } else {
+      envelope = KmsEnvelopeAead.create(parameters, remote);
+    }
+    plaintext = Random.randBytes(plaintextSize);
+    associatedData = Random.randBytes(16);
+    ciphertext = envelope.encrypt(plaintext, associatedData);
+  }
+
+  @Benchmark
+  public byte[] encrypt() throws Exception {
+    return envelope.encrypt(plaintext, associatedData);
+  }
+
+  @Benchmark
+  public byte[] decrypt() throws Exception {
+    return envelope.decrypt(ciphertext, associatedData);
+  }
+
+  /** Encrypts from several threads, which contend on the lock of {@code Registry.newKeyData}. */
+  @Benchmark
+  @Threads(8)
+  public byte[] encryptConcurrently() throws Exception {
+    return envelope.encrypt(plaintext, associatedData);
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.subtle.Random;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a thread which serves many tenants, each with its own key, and so alternates between
+ * {@code keys} different {@link Aead} primitives on every operation.
+ *
+ * <p>With {@code keys = 1} this measures the same as {@link AeadBenchmark}. The difference to
+ * {@code keys = 100} is the cost of switching keys, most of which is the key expansion in {@code
+ * Cipher.init}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiTenantAeadBenchmark {
+  @Param({"AES128_GCM", "AES256_GCM", "AES128_EAX"})
+  public String keyTemplate;
+
+  @Param({"1", "100"})
+  public int keys;
+
+  @Param({"64", "1024"})
+  public int size;
+
+  private Aead[] aeads;
+  private byte[][] ciphertexts;
+  private byte[] plaintext;
+  private byte[] associatedData;
+  private int next;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    AeadConfig.register();
+    plaintext = Random.randBytes(size);
+    associatedData = Random.randBytes(16);
+    aeads = new Aead[keys];
+    ciphertexts = new byte[keys][];
+    for (int i = 0; i < keys; i++) {
+      aeads[i] = KeysetHandle.generateNew(KeyTemplates.get(keyTemplate)).getPrimitive(Aead.class);
+      ciphertexts[i] = aeads[i].encrypt(plaintext, associatedData);
+    }
+  }
+
+  private int nextTenant() {
+    int tenant = next;
+    next = tenant + 1 == keys ? 0 : tenant + 1;
+    return tenant;
+  }
+
+  @Benchmark
+  public byte[] encrypt() throws GeneralSecurityException {
+    return aeads[nextTenant()].encrypt(plaintext, associatedData);
+  }
+
+  @Benchmark
+  public byte[] decrypt() throws GeneralSecurityException {
+    int tenant = nextTenant();
+    return aeads[tenant].decrypt(ciphertexts[tenant], associatedData);
+  }
+}
@@ -0,0 +1,107 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.InsecureSecretKeyAccess;
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.TinkProtoKeysetFormat;
+import com.google.crypto.tink.proto.KeyStatusType;
+import com.google.crypto.tink.proto.Keyset;
+import com.google.crypto.tink.proto.OutputPrefixType;
+import com.google.crypto.tink.subtle.Random;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks decryption traffic in which most attempts to decrypt with a key fail.
+ *
+ * <p>The keyset consists of {@code rawKeys} keys with output prefix RAW, as after several key
+ * rotations of a RAW keyset. {@code decryptWithLastKey} decrypts a ciphertext of the last key, so
+ * the {@code AeadWrapper} first fails with all other keys. {@code decryptGarbage} decrypts random
+ * bytes, as seen under attack traffic, which fails with every key and then throws.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrialDecryptionBenchmark {
+  @Param({"AES128_GCM", "AES128_CTR_HMAC_SHA256", "CHACHA20_POLY1305"})
+  public String keyTemplate;
+
+  @Param({"1", "10", "30"})
+  public int rawKeys;
+
+  @Param({"64"})
+  public int size;
+
+  private Aead aead;
+  private byte[] associatedData;
+  private byte[] ciphertext;
+  private byte[] garbage;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    AeadConfig.register();
+    Keyset.Builder keyset = Keyset.newBuilder();
+    for (int i = 1; i <= rawKeys; i++) {
+      keyset.addKey(
+          Keyset.Key.newBuilder()
+              .setKeyData(Registry.newKeyData(KeyTemplates.get(keyTemplate)))
+              .setKeyId(i)
+              .setStatus(KeyStatusType.ENABLED)
+              .setOutputPrefixType(OutputPrefixType.RAW));
+    }
+    // The primary is the last key the wrapper tries.
+    keyset.setPrimaryKeyId(rawKeys);
+    aead =
+        TinkProtoKeysetFormat.parseKeyset(
+                keyset.build().toByteArray(), InsecureSecretKeyAccess.get())
+            .getPrimitive(Aead.class);
+    associatedData = Random.randBytes(16);
+    ciphertext = aead.encrypt(Random.randBytes(size), associatedData);
+    garbage = Random.randBytes(ciphertext.length);
+  }
+
+  @Benchmark
+  public byte[] decryptWithLastKey() throws GeneralSecurityException {
+    return aead.decrypt(ciphertext, associatedData);
+  }
+
+  @Benchmark
+  public byte[] decryptGarbage() {
+    try {
+      return aead.decrypt(garbage, associatedData);
+    } catch (GeneralSecurityException e) {
+      return null;
+    }
+  }
+}
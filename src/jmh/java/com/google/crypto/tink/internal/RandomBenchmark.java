@@ -0,0 +1,76 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.internal;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many nonces per second {@link Random} generates.
+ *
+ * <p>{@code unbufferedSecureRandom} calls a per-thread {@link SecureRandom} for each nonce, which
+ * is what {@link Random} did before it buffered small requests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RandomBenchmark {
+  @Param({"12", "24"})
+  public int nonceSize;
+
+  private byte[] output;
+  private SecureRandom secureRandom;
+
+  @Setup
+  public void setUp() {
+    output = new byte[nonceSize + 16];
+    secureRandom = new SecureRandom();
+    secureRandom.nextLong();
+  }
+
+  @Benchmark
+  public byte[] unbufferedSecureRandom() {
+    byte[] nonce = new byte[nonceSize];
+    secureRandom.nextBytes(nonce);
+    return nonce;
+  }
+
+  @Benchmark
+  public byte[] randBytes() {
+    return Random.randBytes(nonceSize);
+  }
+
+  @Benchmark
+  public byte[] randBytesIntoArray() {
+    Random.randBytes(output, 0, nonceSize);
+    return output;
+  }
+}
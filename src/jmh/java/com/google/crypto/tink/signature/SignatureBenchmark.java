@@ -0,0 +1,81 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.signature;
+
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.PublicKeySign;
+import com.google.crypto.tink.PublicKeyVerify;
+import com.google.crypto.tink.subtle.Random;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks signing and verification with the JCE-based {@link PublicKeySign} primitives. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark {
+  @Param({
+    "ECDSA_P256",
+    "ECDSA_P384",
+    "RSA_SSA_PKCS1_3072_SHA256_F4",
+    "RSA_SSA_PSS_3072_SHA256_SHA256_32_F4"
+  })
+  public String keyTemplate;
+
+  @Param({"64", "4096"})
+  public int size;
+
+  private PublicKeySign signer;
+  private PublicKeyVerify verifier;
+  private byte[] data;
+  private byte[] signature;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    SignatureConfig.register();
+    KeysetHandle handle = KeysetHandle.generateNew(KeyTemplates.get(keyTemplate));
+    signer = handle.getPrimitive(PublicKeySign.class);
+    verifier = handle.getPublicKeysetHandle().getPrimitive(PublicKeyVerify.class);
+    data = Random.randBytes(size);
+    signature = signer.sign(data);
+  }
+
+  @Benchmark
+  public byte[] sign() throws GeneralSecurityException {
+    return signer.sign(data);
+  }
+
+  @Benchmark
+  public void verify() throws GeneralSecurityException {
+    verifier.verify(signature, data);
+  }
+}
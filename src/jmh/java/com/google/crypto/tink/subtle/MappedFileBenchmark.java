@@ -0,0 +1,138 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares encrypting and decrypting a 64 MB file with {@link
+ * NonceBasedStreamingAead#encryptFile} and {@link NonceBasedStreamingAead#decryptFile}, and by
+ * copying between file channels through the encrypting and decrypting channels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappedFileBenchmark {
+  private final byte[] associatedData = new byte[0];
+  private AesGcmHkdfStreaming streamingAead;
+  private File plaintextFile;
+  private File ciphertextFile;
+  private File outputFile;
+  private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+  @Setup
+  public void setUp() throws Exception {
+    streamingAead = new AesGcmHkdfStreaming(Random.randBytes(16), "HmacSha256", 16, 1 << 20, 0);
+    plaintextFile = File.createTempFile("MappedFileBenchmark", ".txt");
+    ciphertextFile = File.createTempFile("MappedFileBenchmark", ".enc");
+    outputFile = File.createTempFile("MappedFileBenchmark", ".out");
+    byte[] chunk = Random.randBytes(1 << 20);
+    for (int i = 0; i < 64; i++) {
+      Files.write(plaintextFile.toPath(), chunk, StandardOpenOption.APPEND);
+    }
+    try (FileChannel plaintext = FileChannel.open(plaintextFile.toPath());
+        FileChannel ciphertext =
+            FileChannel.open(
+                ciphertextFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      streamingAead.encryptFile(plaintext, ciphertext, associatedData);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    plaintextFile.delete();
+    ciphertextFile.delete();
+    outputFile.delete();
+  }
+
+  private FileChannel openOutput() throws Exception {
+    return FileChannel.open(
+        outputFile.toPath(),
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private long copy(ReadableByteChannel source, WritableByteChannel destination) throws Exception {
+    long copied = 0;
+    buffer.clear();
+    while (source.read(buffer) != -1) {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        copied += destination.write(buffer);
+      }
+      buffer.clear();
+    }
+    return copied;
+  }
+
+  @Benchmark
+  public long encryptFile() throws Exception {
+    try (FileChannel source = FileChannel.open(plaintextFile.toPath());
+        FileChannel destination = openOutput()) {
+      return streamingAead.encryptFile(source, destination, associatedData);
+    }
+  }
+
+  @Benchmark
+  public long encryptingChannel() throws Exception {
+    try (FileChannel source = FileChannel.open(plaintextFile.toPath());
+        WritableByteChannel destination =
+            streamingAead.newEncryptingChannel(openOutput(), associatedData)) {
+      return copy(source, destination);
+    }
+  }
+
+  @Benchmark
+  public long decryptFile() throws Exception {
+    try (FileChannel source = FileChannel.open(ciphertextFile.toPath());
+        FileChannel destination = openOutput()) {
+      return streamingAead.decryptFile(source, destination, associatedData);
+    }
+  }
+
+  @Benchmark
+  public long decryptingChannel() throws Exception {
+    try (ReadableByteChannel source =
+            streamingAead.newDecryptingChannel(
+                FileChannel.open(ciphertextFile.toPath()), associatedData);
+        FileChannel destination = openOutput()) {
+      return copy(source, destination);
+    }
+  }
+}
@@ -0,0 +1,163 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares encrypting and decrypting a large plaintext with the sequential channels of {@link
+ * NonceBasedStreamingAead} and with the parallel ones.
+ *
+ * <p>The output is discarded, so that only encryption and decryption are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelStreamingAeadBenchmark {
+  @Param({"AES128_GCM_HKDF_1MB", "AES128_CTR_HMAC_SHA256_1MB"})
+  public String parameters;
+
+  @Param({"64"})
+  public int plaintextSizeInMegabytes;
+
+  @Param({"16"})
+  public int maxSegmentsInFlight;
+
+  private NonceBasedStreamingAead streamingAead;
+  private ExecutorService executor;
+  private byte[] plaintext;
+  private byte[] ciphertext;
+  private ByteBuffer decrypted;
+  private final byte[] associatedData = new byte[0];
+
+  /** Discards everything written to it. */
+  private static final class DiscardingChannel implements WritableByteChannel {
+    @Override
+    public int write(ByteBuffer src) {
+      int written = src.remaining();
+      src.position(src.limit());
+      return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    byte[] ikm = Random.randBytes(16);
+    int segmentSize = 1 << 20;
+    switch (parameters) {
+      case "AES128_GCM_HKDF_1MB":
+        streamingAead = new AesGcmHkdfStreaming(ikm, "HmacSha256", 16, segmentSize, 0);
+        break;
+      case "AES128_CTR_HMAC_SHA256_1MB":
+        streamingAead =
+            new AesCtrHmacStreaming(ikm, "HmacSha256", 16, "HmacSha256", 32, segmentSize, 0);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown parameters " + parameters);
+    }
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    plaintext = Random.randBytes(plaintextSizeInMegabytes << 20);
+    ByteArrayOutputStream ciphertextStream = new ByteArrayOutputStream();
+    try (WritableByteChannel channel =
+        streamingAead.newEncryptingChannel(Channels.newChannel(ciphertextStream), associatedData)) {
+      channel.write(ByteBuffer.wrap(plaintext));
+    }
+    ciphertext = ciphertextStream.toByteArray();
+    decrypted = ByteBuffer.allocate(1 << 16);
+  }
+
+  private void readFully(ReadableByteChannel channel) throws Exception {
+    decrypted.clear();
+    while (channel.read(decrypted) != -1) {
+      decrypted.clear();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public void sequentialEncrypt() throws Exception {
+    try (WritableByteChannel channel =
+        streamingAead.newEncryptingChannel(new DiscardingChannel(), associatedData)) {
+      channel.write(ByteBuffer.wrap(plaintext));
+    }
+  }
+
+  @Benchmark
+  public void parallelEncrypt() throws Exception {
+    try (WritableByteChannel channel =
+        streamingAead.newParallelEncryptingChannel(
+            new DiscardingChannel(), associatedData, executor, maxSegmentsInFlight)) {
+      channel.write(ByteBuffer.wrap(plaintext));
+    }
+  }
+
+  @Benchmark
+  public void sequentialDecrypt() throws Exception {
+    try (ReadableByteChannel channel =
+        streamingAead.newDecryptingChannel(
+            Channels.newChannel(new ByteArrayInputStream(ciphertext)), associatedData)) {
+      readFully(channel);
+    }
+  }
+
+  @Benchmark
+  public void parallelDecrypt() throws Exception {
+    try (ReadableByteChannel channel =
+        streamingAead.newParallelDecryptingChannel(
+            Channels.newChannel(new ByteArrayInputStream(ciphertext)),
+            associatedData,
+            executor,
+            maxSegmentsInFlight)) {
+      readFully(channel);
+    }
+  }
+}
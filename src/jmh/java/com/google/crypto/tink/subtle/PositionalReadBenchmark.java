@@ -0,0 +1,145 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares random reads of an encrypted file from several threads with {@link
+ * StreamingAeadSeekableDecryptingChannel#read(ByteBuffer, long)}, which is synchronized, and with
+ * {@link StreamingAeadPositionalDecryptingChannel}.
+ *
+ * <p>The {@code footer} benchmarks read small pieces of the last megabyte of the file, as readers
+ * of columnar files do, with and without a {@link DecryptedSegmentCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class PositionalReadBenchmark {
+  @Param({"65536"})
+  public int readSize;
+
+  private final byte[] associatedData = new byte[0];
+  private File file;
+  private long plaintextSize;
+  private FileChannel seekableCiphertext;
+  private FileChannel positionalCiphertext;
+  private StreamingAeadSeekableDecryptingChannel seekableChannel;
+  private StreamingAeadPositionalDecryptingChannel positionalChannel;
+  private StreamingAeadPositionalDecryptingChannel cachedPositionalChannel;
+
+  /** The buffer into which a thread reads. */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    ByteBuffer buffer;
+    ByteBuffer footerBuffer;
+
+    @Setup
+    public void setUp(PositionalReadBenchmark benchmark) {
+      buffer = ByteBuffer.allocate(benchmark.readSize);
+      footerBuffer = ByteBuffer.allocate(128);
+    }
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    AesGcmHkdfStreaming streamingAead =
+        new AesGcmHkdfStreaming(Random.randBytes(16), "HmacSha256", 16, 1 << 16, 0);
+    file = File.createTempFile("PositionalReadBenchmark", ".enc");
+    byte[] chunk = Random.randBytes(1 << 20);
+    try (OutputStream ciphertext =
+        streamingAead.newEncryptingStream(new FileOutputStream(file), associatedData)) {
+      for (int i = 0; i < 64; i++) {
+        ciphertext.write(chunk);
+      }
+    }
+    plaintextSize = 64L << 20;
+    seekableCiphertext = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    seekableChannel =
+        (StreamingAeadSeekableDecryptingChannel)
+            streamingAead.newSeekableDecryptingChannel(seekableCiphertext, associatedData);
+    positionalCiphertext = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    positionalChannel =
+        streamingAead.newPositionalDecryptingChannel(positionalCiphertext, associatedData);
+    cachedPositionalChannel =
+        streamingAead.newPositionalDecryptingChannel(
+            positionalCiphertext, associatedData, DecryptedSegmentCache.create(2 << 20));
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    seekableCiphertext.close();
+    positionalCiphertext.close();
+    file.delete();
+  }
+
+  private long randomPosition() {
+    return ThreadLocalRandom.current().nextLong(plaintextSize - readSize);
+  }
+
+  private long randomFooterPosition() {
+    return plaintextSize - 1 - ThreadLocalRandom.current().nextLong(1 << 20);
+  }
+
+  @Benchmark
+  public int seekableChannel(ThreadState state) throws Exception {
+    state.buffer.clear();
+    return seekableChannel.read(state.buffer, randomPosition());
+  }
+
+  @Benchmark
+  public int positionalChannel(ThreadState state) throws Exception {
+    state.buffer.clear();
+    return positionalChannel.read(state.buffer, randomPosition());
+  }
+
+  @Benchmark
+  public int positionalChannelFooter(ThreadState state) throws Exception {
+    state.footerBuffer.clear();
+    return positionalChannel.read(state.footerBuffer, randomFooterPosition());
+  }
+
+  @Benchmark
+  public int cachedPositionalChannelFooter(ThreadState state) throws Exception {
+    state.footerBuffer.clear();
+    return cachedPositionalChannel.read(state.footerBuffer, randomFooterPosition());
+  }
+}
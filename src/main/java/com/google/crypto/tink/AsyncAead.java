@@ -0,0 +1,116 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous variant of {@link Aead}, for primitives such as KMS keys whose operations need a
+ * remote call.
+ *
+ * <p>The returned futures complete exceptionally with a {@link GeneralSecurityException} if the
+ * operation fails.
+ *
+ * <p>Implementations of a KMS with a batch API should override {@link #encryptBatch} and {@link
+ * #decryptBatch}, which by default start one operation per element.
+ */
+public interface AsyncAead {
+  /** Asynchronously encrypts {@code plaintext}, as {@link Aead#encrypt} does. */
+  CompletableFuture<byte[]> encrypt(byte[] plaintext, byte[] associatedData);
+
+  /** Asynchronously decrypts {@code ciphertext}, as {@link Aead#decrypt} does. */
+  CompletableFuture<byte[]> decrypt(byte[] ciphertext, byte[] associatedData);
+
+  /**
+   * Encrypts all {@code plaintexts} with the same {@code associatedData}. The returned list has the
+   * ciphertexts in the same order.
+   */
+  default CompletableFuture<List<byte[]>> encryptBatch(
+      List<byte[]> plaintexts, byte[] associatedData) {
+    CompletableFuture<List<byte[]>> results =
+        CompletableFuture.completedFuture(new ArrayList<>(plaintexts.size()));
+    for (byte[] plaintext : plaintexts) {
+      results =
+          results.thenCombine(
+              encrypt(plaintext, associatedData),
+              (list, result) -> {
+                list.add(result);
+                return list;
+              });
+    }
+    return results;
+  }
+
+  /**
+   * Decrypts all {@code ciphertexts} with the same {@code associatedData}. The returned list has
+   * the plaintexts in the same order. It fails if any of the ciphertexts cannot be decrypted.
+   */
+  default CompletableFuture<List<byte[]>> decryptBatch(
+      List<byte[]> ciphertexts, byte[] associatedData) {
+    CompletableFuture<List<byte[]>> results =
+        CompletableFuture.completedFuture(new ArrayList<>(ciphertexts.size()));
+    for (byte[] ciphertext : ciphertexts) {
+      results =
+          results.thenCombine(
+              decrypt(ciphertext, associatedData),
+              (list, result) -> {
+                list.add(result);
+                return list;
+              });
+    }
+    return results;
+  }
+
+  /**
+   * Returns an {@code AsyncAead} which runs the operations of the blocking {@code aead} on {@code
+   * executor}.
+   */
+  static AsyncAead fromAead(Aead aead, Executor executor) {
+    return new AsyncAead() {
+      @Override
+      public CompletableFuture<byte[]> encrypt(byte[] plaintext, byte[] associatedData) {
+        return CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return aead.encrypt(plaintext, associatedData);
+              } catch (GeneralSecurityException e) {
+                throw new CompletionException(e);
+              }
+            },
+            executor);
+      }
+
+      @Override
+      public CompletableFuture<byte[]> decrypt(byte[] ciphertext, byte[] associatedData) {
+        return CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return aead.decrypt(ciphertext, associatedData);
+              } catch (GeneralSecurityException e) {
+                throw new CompletionException(e);
+              }
+            },
+            executor);
+      }
+    };
+  }
+}
@@ -1083,22 +1083,42 @@ public final class KeysetHandle {
 
   /** Allows us to have a name {@code B} for the base primitive. */
   private <B, P> P getPrimitiveWithKnownInputPrimitive(
-      InternalConfiguration config, Class<P> classObject, Class<B> inputPrimitiveClassObject)
+      InternalConfiguration config,
+      Class<P> classObject,
+      Class<B> inputPrimitiveClassObject,
+      boolean lazy)
       throws GeneralSecurityException {
     Util.validateKeyset(keyset);
+    // Most wrappers only use one of the two primitives, so we skip creating the other one.
+    boolean usesFullPrimitives = config.usesFullPrimitives(classObject);
+    boolean usesLegacyPrimitives = config.usesLegacyPrimitives(classObject);
     PrimitiveSet.Builder<B> builder = PrimitiveSet.newBuilder(inputPrimitiveClassObject);
     builder.setAnnotations(annotations);
     for (int i = 0; i < size(); ++i) {
       Keyset.Key protoKey = keyset.getKey(i);
       if (protoKey.getStatus().equals(KeyStatusType.ENABLED)) {
-        @Nullable
-        B primitive = getLegacyPrimitiveOrNull(config, protoKey, inputPrimitiveClassObject);
+        if (lazy && protoKey.getKeyId() != keyset.getPrimaryKeyId()) {
+          builder.addLazyFullPrimitiveAndOptionalPrimitive(
+              new LazyPrimitiveFactory<>(
+                  config, protoKey, entries.get(i), inputPrimitiveClassObject),
+              protoKey);
+          continue;
+        }
+        @Nullable B primitive = null;
+        if (usesLegacyPrimitives) {
+          primitive = getLegacyPrimitiveOrNull(config, protoKey, inputPrimitiveClassObject);
+        }
         @Nullable B fullPrimitive = null;
         // Entries.get(i) may be null (if the status is invalid in the proto, or parsing failed).
-        if (entries.get(i) != null) {
+        // If the primitive the wrapper uses is missing, we also create the other one, so that only
+        // keys without any primitive are rejected.
+        if (entries.get(i) != null && (usesFullPrimitives || primitive == null)) {
           fullPrimitive =
               getFullPrimitiveOrNull(config, entries.get(i).getKey(), inputPrimitiveClassObject);
         }
+        if (fullPrimitive == null && primitive == null && !usesLegacyPrimitives) {
+          primitive = getLegacyPrimitiveOrNull(config, protoKey, inputPrimitiveClassObject);
+        }
         if (fullPrimitive == null && primitive == null) {
           throw new GeneralSecurityException(
               "Unable to get primitive "
@@ -1122,6 +1142,11 @@ public final class KeysetHandle {
    */
   public <P> P getPrimitive(Configuration configuration, Class<P> targetClassObject)
       throws GeneralSecurityException {
+    return getPrimitive(configuration, targetClassObject, /* lazy= */ false);
+  }
+
+  private <P> P getPrimitive(Configuration configuration, Class<P> targetClassObject, boolean lazy)
+      throws GeneralSecurityException {
     if (!(configuration instanceof InternalConfiguration)) {
       throw new GeneralSecurityException(
           "Currently only subclasses of InternalConfiguration are accepted");
@@ -1132,7 +1157,7 @@ public final class KeysetHandle {
       throw new GeneralSecurityException("No wrapper found for " + targetClassObject.getName());
     }
     return getPrimitiveWithKnownInputPrimitive(
-        internalConfig, targetClassObject, inputPrimitiveClassObject);
+        internalConfig, targetClassObject, inputPrimitiveClassObject, lazy);
   }
 
   /**
@@ -1143,6 +1168,97 @@ public final class KeysetHandle {
     return getPrimitive(RegistryConfiguration.get(), targetClassObject);
   }
 
+  /**
+   * Like {@link #getPrimitive(Configuration, Class)}, but only creates the primitive of the primary
+   * key right away. The primitives of the other keys are created the first time they are needed,
+   * for example when decrypting a ciphertext with their output prefix.
+   *
+   * <p>This makes creating the primitive cheaper for keysets with many old keys, most of which are
+   * never used. Since keys are only checked when they are needed, an error in a non-primary key is
+   * not reported by this method. Instead, a key whose primitive cannot be created is skipped, as if
+   * it failed to decrypt or verify: ciphertexts, MACs and signatures of this key are rejected with
+   * a {@link GeneralSecurityException}, and the other keys are tried as usual. Primitives whose
+   * wrapper uses all keys right away, such as {@code StreamingAead}, {@code ChunkedMac} and {@code
+   * PrfSet}, still report the error from this method.
+   */
+  @Alpha
+  public <P> P getPrimitiveLazily(Configuration configuration, Class<P> targetClassObject)
+      throws GeneralSecurityException {
+    return getPrimitive(configuration, targetClassObject, /* lazy= */ true);
+  }
+
+  /**
+   * Like {@link #getPrimitiveLazily(Configuration, Class)}, using the global registry to create
+   * resources creating the primitive.
+   */
+  @Alpha
+  public <P> P getPrimitiveLazily(Class<P> targetClassObject) throws GeneralSecurityException {
+    return getPrimitiveLazily(RegistryConfiguration.get(), targetClassObject);
+  }
+
+  /** Creates the primitives of a non-primary key for {@link #getPrimitiveLazily}. */
+  private static final class LazyPrimitiveFactory<B> implements PrimitiveSet.PrimitiveFactory<B> {
+    private final InternalConfiguration config;
+    private final Keyset.Key protoKey;
+    // May be null (if the status is invalid in the proto, or parsing failed).
+    @Nullable private final KeysetHandle.Entry entry;
+    private final Class<B> inputPrimitiveClassObject;
+
+    LazyPrimitiveFactory(
+        InternalConfiguration config,
+        Keyset.Key protoKey,
+        @Nullable KeysetHandle.Entry entry,
+        Class<B> inputPrimitiveClassObject) {
+      this.config = config;
+      this.protoKey = protoKey;
+      this.entry = entry;
+      this.inputPrimitiveClassObject = inputPrimitiveClassObject;
+    }
+
+    // As in getPrimitive, a key must have at least one of the two primitives. The other one is
+    // only created to check this if the requested one is missing.
+    @Override
+    @Nullable
+    public B createFullPrimitive() throws GeneralSecurityException {
+      @Nullable B fullPrimitive = createFullPrimitiveOrNull();
+      if (fullPrimitive == null && createPrimitiveOrNull() == null) {
+        throw noPrimitiveException();
+      }
+      return fullPrimitive;
+    }
+
+    @Override
+    @Nullable
+    public B createPrimitive() throws GeneralSecurityException {
+      @Nullable B primitive = createPrimitiveOrNull();
+      if (primitive == null && createFullPrimitiveOrNull() == null) {
+        throw noPrimitiveException();
+      }
+      return primitive;
+    }
+
+    @Nullable
+    private B createFullPrimitiveOrNull() throws GeneralSecurityException {
+      if (entry == null) {
+        return null;
+      }
+      return getFullPrimitiveOrNull(config, entry.getKey(), inputPrimitiveClassObject);
+    }
+
+    @Nullable
+    private B createPrimitiveOrNull() throws GeneralSecurityException {
+      return getLegacyPrimitiveOrNull(config, protoKey, inputPrimitiveClassObject);
+    }
+
+    private GeneralSecurityException noPrimitiveException() {
+      return new GeneralSecurityException(
+          "Unable to get primitive "
+              + inputPrimitiveClassObject
+              + " for key of type "
+              + protoKey.getKeyData().getTypeUrl());
+    }
+  }
+
   /**
    * Searches the keyset to find the primary key of this {@code KeysetHandle}, and returns the key
    * wrapped in a {@code KeyHandle}.
@@ -1186,7 +1302,7 @@ public final class KeysetHandle {
   }
 
   @Nullable
-  private <B> B getFullPrimitiveOrNull(
+  private static <B> B getFullPrimitiveOrNull(
       InternalConfiguration config, Key key, Class<B> inputPrimitiveClassObject)
       throws GeneralSecurityException {
     try {
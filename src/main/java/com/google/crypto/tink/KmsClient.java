@@ -17,6 +17,7 @@
 package com.google.crypto.tink;
 
 import java.security.GeneralSecurityException;
+import java.util.concurrent.Executor;
 
 /**
  * A KmsClient knows how to produce primitives backed by keys stored in remote KMS services.
@@ -42,4 +43,18 @@ public interface KmsClient {
    * @throws GeneralSecurityException if the URI is not supported or invalid
    */
   public Aead getAead(String keyUri) throws GeneralSecurityException;
+
+  /**
+   * Gets an {@code AsyncAead} backed by {@code keyUri}.
+   *
+   * <p>The default implementation runs the operations of {@link #getAead} on {@code executor}, so
+   * each of them blocks a thread of {@code executor} during the call to the KMS. Clients of a KMS
+   * with an asynchronous or batch API should override this.
+   *
+   * @throws GeneralSecurityException if the URI is not supported or invalid
+   */
+  public default AsyncAead getAsyncAead(String keyUri, Executor executor)
+      throws GeneralSecurityException {
+    return AsyncAead.fromAead(getAead(keyUri), executor);
+  }
 }
@@ -0,0 +1,164 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink;
+
+import com.google.crypto.tink.annotations.Alpha;
+import com.google.crypto.tink.internal.RegistryConfiguration;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A bounded cache for the primitives returned by {@link KeysetHandle#getPrimitive}.
+ *
+ * <p>Creating a primitive parses every key of the keyset, expands the key material, and for some
+ * key types runs a self-test. Code which needs a primitive for the same {@link KeysetHandle} over
+ * and over again (for example once per request) can use a {@code PrimitiveCache} to do this work
+ * only once:
+ *
+ * <pre>{@code
+ * PrimitiveCache cache = PrimitiveCache.create(100);
+ * ...
+ * Aead aead = cache.getPrimitive(handle, Aead.class);
+ * }</pre>
+ *
+ * <p>Primitives are cached by the identity of the {@link KeysetHandle} and of the {@link
+ * Configuration}, and by the primitive class. Since a {@code KeysetHandle} is immutable, a cached
+ * primitive always corresponds to the keyset it was created from. When the cache is full, the
+ * least recently used primitive is evicted.
+ *
+ * <p>Primitives created with the global registry (i.e. by {@link #getPrimitive(KeysetHandle,
+ * Class)}) do not see later changes to the registry, such as newly registered wrappers or a new
+ * monitoring client. Call {@link #clear} after changing the registry.
+ *
+ * <p>This class is thread-safe.
+ */
+@Alpha
+public final class PrimitiveCache {
+  private static final class CacheKey {
+    private final KeysetHandle handle;
+    private final Configuration configuration;
+    private final Class<?> primitiveClass;
+
+    CacheKey(KeysetHandle handle, Configuration configuration, Class<?> primitiveClass) {
+      this.handle = handle;
+      this.configuration = configuration;
+      this.primitiveClass = primitiveClass;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey that = (CacheKey) o;
+      return handle == that.handle
+          && configuration == that.configuration
+          && primitiveClass == that.primitiveClass;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = System.identityHashCode(handle);
+      result = 31 * result + System.identityHashCode(configuration);
+      return 31 * result + primitiveClass.hashCode();
+    }
+  }
+
+  private final int maxSize;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<CacheKey, Object> primitives;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  private PrimitiveCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.primitives =
+        new LinkedHashMap<CacheKey, Object>(16, 0.75f, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<CacheKey, Object> eldest) {
+            return size() > PrimitiveCache.this.maxSize;
+          }
+        };
+  }
+
+  /** Creates a cache which holds at most {@code maxSize} primitives. */
+  public static PrimitiveCache create(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    return new PrimitiveCache(maxSize);
+  }
+
+  /**
+   * Returns the same as {@code handle.getPrimitive(configuration, primitiveClass)}, reusing a
+   * previously created primitive if possible.
+   */
+  public <P> P getPrimitive(
+      KeysetHandle handle, Configuration configuration, Class<P> primitiveClass)
+      throws GeneralSecurityException {
+    CacheKey key = new CacheKey(handle, configuration, primitiveClass);
+    synchronized (this) {
+      Object primitive = primitives.get(key);
+      if (primitive != null) {
+        hitCount.incrementAndGet();
+        return primitiveClass.cast(primitive);
+      }
+    }
+    missCount.incrementAndGet();
+    // Created outside of the lock, so that a slow key does not block other lookups. Concurrent
+    // misses for the same key may create the primitive more than once; the last one is kept.
+    P primitive = handle.getPrimitive(configuration, primitiveClass);
+    synchronized (this) {
+      primitives.put(key, primitive);
+    }
+    return primitive;
+  }
+
+  /**
+   * Returns the same as {@code handle.getPrimitive(primitiveClass)}, reusing a previously created
+   * primitive if possible.
+   */
+  public <P> P getPrimitive(KeysetHandle handle, Class<P> primitiveClass)
+      throws GeneralSecurityException {
+    return getPrimitive(handle, RegistryConfiguration.get(), primitiveClass);
+  }
+
+  /** Removes all primitives from the cache. Does not reset the hit and miss counts. */
+  public synchronized void clear() {
+    primitives.clear();
+  }
+
+  /** Returns the number of primitives currently in the cache. */
+  public synchronized int size() {
+    return primitives.size();
+  }
+
+  /** Returns how often {@link #getPrimitive} returned a cached primitive. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns how often {@link #getPrimitive} had to create a new primitive. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+}
@@ -24,12 +24,14 @@ import com.google.crypto.tink.proto.Keyset;
 import com.google.crypto.tink.proto.OutputPrefixType;
 import com.google.crypto.tink.subtle.Hex;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import javax.annotation.Nullable;
@@ -55,14 +57,38 @@ import javax.annotation.Nullable;
  */
 public final class PrimitiveSet<P> {
 
+  /**
+   * Creates the primitives of an entry lazily, see {@link
+   * Builder#addLazyFullPrimitiveAndOptionalPrimitive}.
+   *
+   * <p>Each method is called at most once per entry, unless it throws.
+   */
+  public interface PrimitiveFactory<P> {
+    /** Returns the full primitive of the entry, or null if there is none. */
+    @Nullable
+    P createFullPrimitive() throws GeneralSecurityException;
+
+    /** Returns the (legacy) primitive of the entry, or null if there is none. */
+    @Nullable
+    P createPrimitive() throws GeneralSecurityException;
+  }
+
+  // Marks a primitive of a lazy entry which has not been created yet. A created primitive may be
+  // null, so null cannot be used for this.
+  private static final Object NOT_CREATED = new Object();
+
   /**
    * A single entry in the set. In addition to the actual primitive it holds also some extra
    * information about the primitive.
    */
   public static final class Entry<P> {
     // If set, this is a primitive of a key.
-    @Nullable private final P fullPrimitive;
-    @Nullable private final P primitive;
+    // Both primitives are NOT_CREATED until the factory of a lazy entry has created them. Reading
+    // a created primitive only needs the volatile read.
+    @Nullable private volatile Object fullPrimitive;
+    @Nullable private volatile Object primitive;
+    // Set for lazy entries only.
+    @Nullable private final PrimitiveFactory<P> factory;
     // Identifies the primitive within the set.
     // It is the ciphertext prefix of the corresponding key.
     private final byte[] identifier;
@@ -76,8 +102,9 @@ public final class PrimitiveSet<P> {
     private final Key key;
 
     Entry(
-        @Nullable P fullPrimitive,
-        @Nullable P primitive,
+        @Nullable Object fullPrimitive,
+        @Nullable Object primitive,
+        @Nullable PrimitiveFactory<P> factory,
         final byte[] identifier,
         KeyStatusType status,
         OutputPrefixType outputPrefixType,
@@ -86,6 +113,7 @@ public final class PrimitiveSet<P> {
         Key key) {
       this.fullPrimitive = fullPrimitive;
       this.primitive = primitive;
+      this.factory = factory;
       this.identifier = Arrays.copyOf(identifier, identifier.length);
       this.status = status;
       this.outputPrefixType = outputPrefixType;
@@ -101,10 +129,33 @@ public final class PrimitiveSet<P> {
      * self-sufficient by itself, meaning that all the necessary information to process the
      * primitive is contained in the primitive (most likely through the new Key interface), as
      * opposed to the {@code primitive} field (see {@link #getPrimitive} for details).
+     *
+     * <p>For a lazy entry, the primitive is created by the first call.
+     *
+     * @throws IllegalStateException if this is a lazy entry and the primitive cannot be created.
+     *     Wrappers should use {@link #getFullPrimitiveOrThrow} instead.
      */
     @Nullable
     public P getFullPrimitive() {
-      return this.fullPrimitive;
+      try {
+        return getFullPrimitiveOrThrow();
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(e.getMessage(), e);
+      }
+    }
+
+    /**
+     * Same as {@link #getFullPrimitive}, but a lazy entry whose primitive cannot be created throws
+     * a {@link GeneralSecurityException}, so that wrappers can skip it like a key which fails to
+     * decrypt or verify.
+     */
+    @Nullable
+    public P getFullPrimitiveOrThrow() throws GeneralSecurityException {
+      Object result = fullPrimitive;
+      if (result == NOT_CREATED) {
+        result = createFullPrimitive();
+      }
+      return castPrimitive(result);
     }
 
     /**
@@ -113,10 +164,65 @@ public final class PrimitiveSet<P> {
      * <p>For primitives of type {@code Mac}, {@code Aead}, {@code PublicKeySign}, {@code
      * PublicKeyVerify}, {@code DeterministicAead}, {@code HybridEncrypt}, and {@code HybridDecrypt}
      * this is a primitive which <b>ignores</b> the output prefix and assumes "RAW".
+     *
+     * <p>For a lazy entry, the primitive is created by the first call.
+     *
+     * @throws IllegalStateException if this is a lazy entry and the primitive cannot be created.
+     *     Wrappers should use {@link #getPrimitiveOrThrow} instead.
      */
     @Nullable
     public P getPrimitive() {
-      return this.primitive;
+      try {
+        return getPrimitiveOrThrow();
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(e.getMessage(), e);
+      }
+    }
+
+    /**
+     * Same as {@link #getPrimitive}, but a lazy entry whose primitive cannot be created throws a
+     * {@link GeneralSecurityException}.
+     */
+    @Nullable
+    public P getPrimitiveOrThrow() throws GeneralSecurityException {
+      Object result = primitive;
+      if (result == NOT_CREATED) {
+        result = createPrimitive();
+      }
+      return castPrimitive(result);
+    }
+
+    @Nullable
+    private synchronized Object createFullPrimitive() throws GeneralSecurityException {
+      if (fullPrimitive == NOT_CREATED) {
+        try {
+          fullPrimitive = factory.createFullPrimitive();
+        } catch (GeneralSecurityException e) {
+          throw new GeneralSecurityException(
+              "Unable to create full primitive for key with id " + keyId, e);
+        }
+      }
+      return fullPrimitive;
+    }
+
+    @Nullable
+    private synchronized Object createPrimitive() throws GeneralSecurityException {
+      if (primitive == NOT_CREATED) {
+        try {
+          primitive = factory.createPrimitive();
+        } catch (GeneralSecurityException e) {
+          throw new GeneralSecurityException(
+              "Unable to create primitive for key with id " + keyId, e);
+        }
+      }
+      return primitive;
+    }
+
+    // Only values of type P or null are stored in the primitive fields once they are created.
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private P castPrimitive(@Nullable Object primitive) {
+      return (P) primitive;
     }
 
     public KeyStatusType getStatus() {
@@ -160,6 +266,15 @@ public final class PrimitiveSet<P> {
   private static <P> Entry<P> createEntry(
       @Nullable P fullPrimitive, @Nullable P primitive, Keyset.Key key)
       throws GeneralSecurityException {
+    return createEntry(fullPrimitive, primitive, null, key);
+  }
+
+  private static <P> Entry<P> createEntry(
+      @Nullable Object fullPrimitive,
+      @Nullable Object primitive,
+      @Nullable PrimitiveFactory<P> factory,
+      Keyset.Key key)
+      throws GeneralSecurityException {
     @Nullable Integer idRequirement = key.getKeyId();
     if (key.getOutputPrefixType() == OutputPrefixType.RAW) {
       idRequirement = null;
@@ -177,6 +292,7 @@ public final class PrimitiveSet<P> {
     return new Entry<P>(
         fullPrimitive,
         primitive,
+        factory,
         CryptoFormat.getOutputPrefix(key),
         key.getStatus(),
         key.getOutputPrefixType(),
@@ -219,15 +335,61 @@ public final class PrimitiveSet<P> {
 
   /** Returns all primitives using RAW prefix. */
   public List<Entry<P>> getRawPrimitives() {
+    if (prefixIndex != null) {
+      return prefixIndex.rawEntries;
+    }
     return getPrimitive(CryptoFormat.RAW_PREFIX);
   }
 
   /** Returns the entries with primitive identifed by {@code identifier}. */
   public List<Entry<P>> getPrimitive(final byte[] identifier) {
+    if (prefixIndex != null) {
+      if (identifier.length == CryptoFormat.RAW_PREFIX_SIZE) {
+        return prefixIndex.rawEntries;
+      }
+      if (identifier.length == CryptoFormat.NON_RAW_PREFIX_SIZE) {
+        return prefixIndex.get(PrefixIndex.key(identifier, 0));
+      }
+      return Collections.<Entry<P>>emptyList();
+    }
     List<Entry<P>> found = primitives.get(new Prefix(identifier));
     return found != null ? found : Collections.<Entry<P>>emptyList();
   }
 
+  /**
+   * Returns the entries whose identifier is the non-RAW output prefix at the start of {@code data},
+   * that is, its first {@link CryptoFormat#NON_RAW_PREFIX_SIZE} bytes. Returns an empty list if
+   * {@code data} is shorter.
+   *
+   * <p>Unlike {@link #getPrimitive(byte[])}, this needs no copy of the prefix, and it does not
+   * allocate on a PrimitiveSet created by the {@link Builder}.
+   */
+  public List<Entry<P>> getPrimitiveForPrefixOf(final byte[] data) {
+    if (data.length < CryptoFormat.NON_RAW_PREFIX_SIZE) {
+      return Collections.<Entry<P>>emptyList();
+    }
+    if (prefixIndex != null) {
+      return prefixIndex.get(PrefixIndex.key(data, 0));
+    }
+    return getPrimitive(Arrays.copyOf(data, CryptoFormat.NON_RAW_PREFIX_SIZE));
+  }
+
+  /**
+   * Like {@link #getPrimitiveForPrefixOf(byte[])}, for the remaining bytes of {@code data}. The
+   * position of {@code data} is not changed.
+   */
+  public List<Entry<P>> getPrimitiveForPrefixOf(final ByteBuffer data) {
+    if (data.remaining() < CryptoFormat.NON_RAW_PREFIX_SIZE) {
+      return Collections.<Entry<P>>emptyList();
+    }
+    if (prefixIndex != null) {
+      return prefixIndex.get(PrefixIndex.key(data, data.position()));
+    }
+    byte[] prefix = new byte[CryptoFormat.NON_RAW_PREFIX_SIZE];
+    data.duplicate().get(prefix);
+    return getPrimitive(prefix);
+  }
+
   /** Returns all primitives. */
   public Collection<List<Entry<P>>> getAll() {
     return primitives.values();
@@ -245,6 +407,12 @@ public final class PrimitiveSet<P> {
    */
   private final ConcurrentMap<Prefix, List<Entry<P>>> primitives;
 
+  /**
+   * Allocation-free index over the same entries as {@code primitives}. Only set if the set is
+   * immutable, and all identifiers are RAW or non-RAW output prefixes.
+   */
+  @Nullable private final PrefixIndex<P> prefixIndex;
+
   /** Stores entries in the original keyset key order. */
   private final List<Entry<P>> primitivesInKeysetOrder;
 
@@ -255,6 +423,7 @@ public final class PrimitiveSet<P> {
 
   private PrimitiveSet(Class<P> primitiveClass) {
     this.primitives = new ConcurrentHashMap<>();
+    this.prefixIndex = null;
     this.primitivesInKeysetOrder = new ArrayList<>();
     this.primitiveClass = primitiveClass;
     this.annotations = MonitoringAnnotations.EMPTY;
@@ -269,6 +438,7 @@ public final class PrimitiveSet<P> {
       MonitoringAnnotations annotations,
       Class<P> primitiveClass) {
     this.primitives = primitives;
+    this.prefixIndex = PrefixIndex.createOrNull(primitives);
     this.primitivesInKeysetOrder = primitivesInKeysetOrder;
     this.primary = primary;
     this.primitiveClass = primitiveClass;
@@ -378,6 +548,99 @@ public final class PrimitiveSet<P> {
     }
   }
 
+  /**
+   * Immutable open-addressing hash table from non-RAW output prefixes to the entries with that
+   * identifier, plus a separate slot for the RAW entries.
+   *
+   * <p>Non-RAW output prefixes are 5 bytes long, so they are used as keys in a {@code long}, and
+   * lookups need no allocation.
+   */
+  private static final class PrefixIndex<P> {
+    // Keys use the low 40 bits only, so this is never a key.
+    private static final long EMPTY = -1;
+
+    private final long[] keys;
+    private final List<List<Entry<P>>> values;
+    private final int mask;
+    private final List<Entry<P>> rawEntries;
+
+    private PrefixIndex(long[] keys, List<List<Entry<P>>> values, List<Entry<P>> rawEntries) {
+      this.keys = keys;
+      this.values = values;
+      this.mask = keys.length - 1;
+      this.rawEntries = rawEntries;
+    }
+
+    /**
+     * Returns null if an identifier in {@code primitives} is neither a RAW nor a non-RAW output
+     * prefix.
+     */
+    @Nullable
+    static <P> PrefixIndex<P> createOrNull(Map<Prefix, List<Entry<P>>> primitives) {
+      int capacity = 2;
+      while (capacity < 2 * primitives.size()) {
+        capacity *= 2;
+      }
+      long[] keys = new long[capacity];
+      Arrays.fill(keys, EMPTY);
+      List<List<Entry<P>>> values = new ArrayList<>(Collections.nCopies(capacity, null));
+      List<Entry<P>> rawEntries = Collections.<Entry<P>>emptyList();
+      for (Map.Entry<Prefix, List<Entry<P>>> entry : primitives.entrySet()) {
+        byte[] prefix = entry.getKey().prefix;
+        if (prefix.length == CryptoFormat.RAW_PREFIX_SIZE) {
+          rawEntries = entry.getValue();
+        } else if (prefix.length == CryptoFormat.NON_RAW_PREFIX_SIZE) {
+          long key = key(prefix, 0);
+          int slot = hash(key) & (capacity - 1);
+          while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & (capacity - 1);
+          }
+          keys[slot] = key;
+          values.set(slot, entry.getValue());
+        } else {
+          return null;
+        }
+      }
+      return new PrefixIndex<P>(keys, values, rawEntries);
+    }
+
+    List<Entry<P>> get(long key) {
+      int slot = hash(key) & mask;
+      while (true) {
+        long slotKey = keys[slot];
+        if (slotKey == key) {
+          return values.get(slot);
+        }
+        if (slotKey == EMPTY) {
+          return Collections.<Entry<P>>emptyList();
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    static long key(byte[] data, int offset) {
+      return ((data[offset] & 0xffL) << 32)
+          | ((data[offset + 1] & 0xffL) << 24)
+          | ((data[offset + 2] & 0xffL) << 16)
+          | ((data[offset + 3] & 0xffL) << 8)
+          | (data[offset + 4] & 0xffL);
+    }
+
+    static long key(ByteBuffer data, int offset) {
+      return ((data.get(offset) & 0xffL) << 32)
+          | ((data.get(offset + 1) & 0xffL) << 24)
+          | ((data.get(offset + 2) & 0xffL) << 16)
+          | ((data.get(offset + 3) & 0xffL) << 8)
+          | (data.get(offset + 4) & 0xffL);
+    }
+
+    private static int hash(long key) {
+      // Key IDs are often small or sequential, so spread them with a multiplicative hash.
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+
   /** Builds an immutable PrimitiveSet. This is the prefered way to construct a PrimitiveSet. */
   public static class Builder<P> {
     private final Class<P> primitiveClass;
@@ -406,7 +669,11 @@ public final class PrimitiveSet<P> {
       if (key.getStatus() != KeyStatusType.ENABLED) {
         throw new GeneralSecurityException("only ENABLED key is allowed");
       }
-      Entry<P> entry = createEntry(fullPrimitive, primitive, key);
+      return addEntry(createEntry(fullPrimitive, primitive, key), asPrimary);
+    }
+
+    @CanIgnoreReturnValue
+    private Builder<P> addEntry(Entry<P> entry, boolean asPrimary) {
       storeEntryInPrimitiveSet(entry, primitives, primitivesInKeysetOrder);
       if (asPrimary) {
         if (this.primary != null) {
@@ -441,6 +708,29 @@ public final class PrimitiveSet<P> {
       return addPrimitive(fullPrimitive, primitive, key, false);
     }
 
+    /**
+     * Adds a non-primary entry whose primitives are created by {@code factory} when they are first
+     * requested from the entry.
+     *
+     * <p>Unlike {@link #addFullPrimitiveAndOptionalPrimitive}, this does not check that the key has
+     * at least one primitive. If creating a primitive fails, the getter of the entry throws an
+     * {@link IllegalStateException}.
+     */
+    @CanIgnoreReturnValue
+    public Builder<P> addLazyFullPrimitiveAndOptionalPrimitive(
+        PrimitiveFactory<P> factory, Keyset.Key key) throws GeneralSecurityException {
+      if (primitives == null) {
+        throw new IllegalStateException("addPrimitive cannot be called after build");
+      }
+      if (factory == null) {
+        throw new GeneralSecurityException("`factory` must be set");
+      }
+      if (key.getStatus() != KeyStatusType.ENABLED) {
+        throw new GeneralSecurityException("only ENABLED key is allowed");
+      }
+      return addEntry(createEntry(NOT_CREATED, NOT_CREATED, factory, key), false);
+    }
+
     /**
      * Adds the primary primitive and full primitive. This or addPrimaryPrimitive should be called
      * exactly once per PrimitiveSet.
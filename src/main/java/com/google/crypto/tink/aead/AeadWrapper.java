@@ -21,14 +21,20 @@ import com.google.crypto.tink.CryptoFormat;
 import com.google.crypto.tink.PrimitiveSet;
 import com.google.crypto.tink.PrimitiveWrapper;
 import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.aead.internal.AeadWithOffsets;
 import com.google.crypto.tink.internal.MonitoringUtil;
 import com.google.crypto.tink.internal.MutableMonitoringRegistry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
+import com.google.crypto.tink.internal.Util;
 import com.google.crypto.tink.monitoring.MonitoringClient;
 import com.google.crypto.tink.monitoring.MonitoringKeysetInfo;
 import com.google.crypto.tink.subtle.Bytes;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * AeadWrapper is the implementation of SetWrapper for the Aead primitive.
@@ -37,18 +43,30 @@ import java.util.List;
  * first try all primitives whose keyId starts with the prefix of the ciphertext. If none of these
  * succeed, we try the raw primitives. If any succeeds, we return the ciphertext, otherwise we
  * simply throw a GeneralSecurityException.
+ *
+ * <p>The wrapped primitive also implements {@link ByteBufferAead}. Keys whose primitive does not
+ * implement {@link ByteBufferAead} are handled by copying through {@code byte[]}.
  */
-public class AeadWrapper implements PrimitiveWrapper<Aead, Aead> {
+public class AeadWrapper implements PrimitiveWrapper<Aead, Aead>, SinglePrimitiveWrapper {
 
   private static final AeadWrapper WRAPPER = new AeadWrapper();
 
-  private static class WrappedAead implements Aead {
+  private static class WrappedAead implements Aead, ByteBufferAead {
     private final PrimitiveSet<Aead> pSet;
+    @Nullable private final PrimitiveSet.Entry<Aead> primary;
+    // The output prefix of the primary, cached to avoid a copy on every call.
+    @Nullable private final byte[] primaryIdentifier;
     private final MonitoringClient.Logger encLogger;
     private final MonitoringClient.Logger decLogger;
+    // Index into pSet.getRawPrimitives() of the entry which last decrypted a ciphertext. It is
+    // tried first, since after a key rotation most ciphertexts are usually still of an older key.
+    // Concurrent updates only change the order in which entries are tried.
+    private volatile int lastRawIndex = 0;
 
     private WrappedAead(PrimitiveSet<Aead> pSet) {
       this.pSet = pSet;
+      this.primary = pSet.getPrimary();
+      this.primaryIdentifier = primary == null ? null : primary.getIdentifier();
       if (pSet.hasAnnotations()) {
         MonitoringClient client = MutableMonitoringRegistry.globalInstance().getMonitoringClient();
         MonitoringKeysetInfo keysetInfo = MonitoringUtil.getMonitoringKeysetInfo(pSet);
@@ -64,11 +82,17 @@ public class AeadWrapper implements PrimitiveWrapper<Aead, Aead> {
     public byte[] encrypt(final byte[] plaintext, final byte[] associatedData)
         throws GeneralSecurityException {
       try {
-        byte[] output =
-            Bytes.concat(
-                pSet.getPrimary().getIdentifier(),
-                pSet.getPrimary().getPrimitive().encrypt(plaintext, associatedData));
-        encLogger.log(pSet.getPrimary().getKeyId(), plaintext.length);
+        Aead primitive = primary.getPrimitiveOrThrow();
+        byte[] output;
+        if (primitive instanceof AeadWithOffsets) {
+          output =
+              ((AeadWithOffsets) primitive)
+                  .encrypt(plaintext, associatedData, primaryIdentifier.length);
+          System.arraycopy(primaryIdentifier, 0, output, 0, primaryIdentifier.length);
+        } else {
+          output = Bytes.concat(primaryIdentifier, primitive.encrypt(plaintext, associatedData));
+        }
+        encLogger.log(primary.getKeyId(), plaintext.length);
         return output;
       } catch (GeneralSecurityException e) {
         encLogger.logFailure();
@@ -79,29 +103,171 @@ public class AeadWrapper implements PrimitiveWrapper<Aead, Aead> {
     @Override
     public byte[] decrypt(final byte[] ciphertext, final byte[] associatedData)
         throws GeneralSecurityException {
+      int attempts = 0;
       if (ciphertext.length > CryptoFormat.NON_RAW_PREFIX_SIZE) {
-        byte[] prefix = Arrays.copyOf(ciphertext, CryptoFormat.NON_RAW_PREFIX_SIZE);
-        byte[] ciphertextNoPrefix =
-            Arrays.copyOfRange(ciphertext, CryptoFormat.NON_RAW_PREFIX_SIZE, ciphertext.length);
-        List<PrimitiveSet.Entry<Aead>> entries = pSet.getPrimitive(prefix);
+        List<PrimitiveSet.Entry<Aead>> entries = pSet.getPrimitiveForPrefixOf(ciphertext);
         for (PrimitiveSet.Entry<Aead> entry : entries) {
-          try {
-            byte[] result = entry.getPrimitive().decrypt(ciphertextNoPrefix, associatedData);
-            decLogger.log(entry.getKeyId(), ciphertextNoPrefix.length);
+          attempts++;
+          byte[] result =
+              tryDecrypt(entry, ciphertext, CryptoFormat.NON_RAW_PREFIX_SIZE, associatedData);
+          if (result != null) {
+            decLogger.logAttempts(attempts);
+            decLogger.log(entry.getKeyId(), ciphertext.length - CryptoFormat.NON_RAW_PREFIX_SIZE);
             return result;
+          }
+        }
+      }
+
+      // Let's try all RAW keys, starting with the one which succeeded last.
+      List<PrimitiveSet.Entry<Aead>> entries = pSet.getRawPrimitives();
+      int first = lastRawIndex;
+      for (int i = 0; i < entries.size(); i++) {
+        int index = rawEntryIndex(i, first);
+        PrimitiveSet.Entry<Aead> entry = entries.get(index);
+        byte[] result = tryDecrypt(entry, ciphertext, 0, associatedData);
+        if (result != null) {
+          if (index != first) {
+            lastRawIndex = index;
+          }
+          decLogger.logAttempts(attempts + i + 1);
+          decLogger.log(entry.getKeyId(), ciphertext.length);
+          return result;
+        }
+      }
+      decLogger.logFailure();
+      // nothing works.
+      throw new GeneralSecurityException("decryption failed");
+    }
+
+    /**
+     * Returns the index of the RAW entry to try in the {@code attempt}-th attempt: first the entry
+     * at {@code first}, then all others in keyset order.
+     */
+    private static int rawEntryIndex(int attempt, int first) {
+      if (attempt == 0) {
+        return first;
+      }
+      return attempt <= first ? attempt - 1 : attempt;
+    }
+
+    /**
+     * Decrypts {@code ciphertext} starting at {@code offset} with the primitive of {@code entry},
+     * or returns {@code null} if that fails, including if the primitive cannot be created.
+     *
+     * <p>If the primitive supports offsets, the ciphertext is not copied, and failures are reported
+     * without creating an exception.
+     */
+    @Nullable
+    private static byte[] tryDecrypt(
+        PrimitiveSet.Entry<Aead> entry, byte[] ciphertext, int offset, byte[] associatedData) {
+      try {
+        Aead primitive = entry.getPrimitiveOrThrow();
+        if (primitive instanceof AeadWithOffsets) {
+          return ((AeadWithOffsets) primitive)
+              .tryDecrypt(ciphertext, offset, ciphertext.length - offset, associatedData);
+        }
+        if (offset == 0) {
+          return primitive.decrypt(ciphertext, associatedData);
+        }
+        return primitive.decrypt(
+            Arrays.copyOfRange(ciphertext, offset, ciphertext.length), associatedData);
+      } catch (GeneralSecurityException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public int ciphertextSize(int plaintextSize) throws GeneralSecurityException {
+      if (!(primary.getPrimitiveOrThrow() instanceof ByteBufferAead)) {
+        throw new GeneralSecurityException(
+            "ciphertext size is not known in advance for key type " + primary.getKeyType());
+      }
+      long size =
+          (long) primaryIdentifier.length
+              + ((ByteBufferAead) primary.getPrimitiveOrThrow()).ciphertextSize(plaintextSize);
+      if (size > Integer.MAX_VALUE) {
+        throw new GeneralSecurityException("plaintext too long");
+      }
+      return (int) size;
+    }
+
+    @Override
+    public void encrypt(
+        ByteBuffer plaintext, @Nullable ByteBuffer associatedData, ByteBuffer ciphertext)
+        throws GeneralSecurityException {
+      byte[] prefix = primaryIdentifier;
+      int plaintextLength = plaintext.remaining();
+      try {
+        if (ciphertext.remaining() < prefix.length) {
+          throw new BufferOverflowException();
+        }
+        if (primary.getPrimitiveOrThrow() instanceof ByteBufferAead) {
+          ByteBuffer ciphertextNoPrefix = ciphertext.duplicate();
+          ciphertextNoPrefix.position(ciphertext.position() + prefix.length);
+          ((ByteBufferAead) primary.getPrimitiveOrThrow())
+              .encrypt(plaintext, associatedData, ciphertextNoPrefix);
+          // Written last, so that in-place encryption does not overwrite the plaintext.
+          ciphertext.duplicate().put(prefix);
+          ciphertext.position(ciphertextNoPrefix.position());
+        } else {
+          byte[] ciphertextNoPrefix =
+              primary
+                  .getPrimitiveOrThrow()
+                  .encrypt(Util.toByteArray(plaintext), Util.toByteArray(associatedData));
+          if (ciphertext.remaining() < prefix.length + ciphertextNoPrefix.length) {
+            throw new BufferOverflowException();
+          }
+          ciphertext.put(prefix).put(ciphertextNoPrefix);
+          plaintext.position(plaintext.limit());
+        }
+        encLogger.log(primary.getKeyId(), plaintextLength);
+      } catch (GeneralSecurityException e) {
+        encLogger.logFailure();
+        throw e;
+      }
+    }
+
+    @Override
+    public void decrypt(
+        ByteBuffer ciphertext, @Nullable ByteBuffer associatedData, ByteBuffer plaintext)
+        throws GeneralSecurityException {
+      int ciphertextLength = ciphertext.remaining();
+      int attempts = 0;
+      if (ciphertextLength > CryptoFormat.NON_RAW_PREFIX_SIZE) {
+        List<PrimitiveSet.Entry<Aead>> entries = pSet.getPrimitiveForPrefixOf(ciphertext);
+        for (PrimitiveSet.Entry<Aead> entry : entries) {
+          attempts++;
+          ByteBuffer ciphertextNoPrefix = ciphertext.duplicate();
+          ciphertextNoPrefix.position(ciphertext.position() + CryptoFormat.NON_RAW_PREFIX_SIZE);
+          try {
+            decryptNoPrefix(
+                entry.getPrimitiveOrThrow(), ciphertextNoPrefix, associatedData, plaintext);
+            decLogger.logAttempts(attempts);
+            decLogger.log(entry.getKeyId(), ciphertextLength - CryptoFormat.NON_RAW_PREFIX_SIZE);
+            ciphertext.position(ciphertext.limit());
+            return;
           } catch (GeneralSecurityException e) {
             continue;
           }
         }
       }
 
-      // Let's try all RAW keys.
+      // Let's try all RAW keys, starting with the one which succeeded last.
       List<PrimitiveSet.Entry<Aead>> entries = pSet.getRawPrimitives();
-      for (PrimitiveSet.Entry<Aead> entry : entries) {
+      int first = lastRawIndex;
+      for (int i = 0; i < entries.size(); i++) {
+        int index = rawEntryIndex(i, first);
+        PrimitiveSet.Entry<Aead> entry = entries.get(index);
         try {
-          byte[] result = entry.getPrimitive().decrypt(ciphertext, associatedData);
-          decLogger.log(entry.getKeyId(), ciphertext.length);
-          return result;
+          decryptNoPrefix(
+              entry.getPrimitiveOrThrow(), ciphertext.duplicate(), associatedData, plaintext);
+          if (index != first) {
+            lastRawIndex = index;
+          }
+          decLogger.logAttempts(attempts + i + 1);
+          decLogger.log(entry.getKeyId(), ciphertextLength);
+          ciphertext.position(ciphertext.limit());
+          return;
         } catch (GeneralSecurityException e) {
           continue;
         }
@@ -110,6 +276,24 @@ public class AeadWrapper implements PrimitiveWrapper<Aead, Aead> {
       // nothing works.
       throw new GeneralSecurityException("decryption failed");
     }
+
+    private static void decryptNoPrefix(
+        Aead primitive,
+        ByteBuffer ciphertext,
+        @Nullable ByteBuffer associatedData,
+        ByteBuffer plaintext)
+        throws GeneralSecurityException {
+      if (primitive instanceof ByteBufferAead) {
+        ((ByteBufferAead) primitive).decrypt(ciphertext, associatedData, plaintext);
+        return;
+      }
+      byte[] result =
+          primitive.decrypt(Util.toByteArray(ciphertext), Util.toByteArray(associatedData));
+      if (plaintext.remaining() < result.length) {
+        throw new BufferOverflowException();
+      }
+      plaintext.put(result);
+    }
   }
 
   AeadWrapper() {}
@@ -129,6 +313,11 @@ public class AeadWrapper implements PrimitiveWrapper<Aead, Aead> {
     return Aead.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return false;
+  }
+
   public static void register() throws GeneralSecurityException {
     Registry.registerPrimitiveWrapper(WRAPPER);
   }
@@ -0,0 +1,354 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead;
+
+import com.google.crypto.tink.AsyncAead;
+import com.google.crypto.tink.aead.internal.KmsEnvelopeDekFactory;
+import com.google.crypto.tink.proto.KeyTemplate;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import javax.annotation.Nullable;
+
+/**
+ * Asynchronous variant of {@link KmsEnvelopeAead}, which groups the calls to the KMS into batches.
+ *
+ * <p>Ciphertexts have the same format as those of {@link KmsEnvelopeAead}, and can be decrypted by
+ * either class.
+ *
+ * <p>Every message is encrypted with a new DEK right away. The DEKs which need to be encrypted by
+ * the KMS are then collected for at most the batch window, or until there are as many as the
+ * maximal batch size, and encrypted with one call to {@link AsyncAead#encryptBatch}. Encrypted DEKs
+ * of ciphertexts are likewise decrypted with {@link AsyncAead#decryptBatch}. If a batch fails, its
+ * DEKs are processed one by one, so that an invalid ciphertext does not fail the other messages of
+ * its batch.
+ *
+ * <p>Batching only saves KMS round trips if the remote AEAD implements a batch API. Otherwise, it
+ * still issues all calls of a batch at the same time.
+ */
+public final class AsyncKmsEnvelopeAead implements AsyncAead {
+  private static final byte[] EMPTY_AAD = new byte[0];
+  private static final int LENGTH_ENCRYPTED_DEK = 4;
+
+  private final KmsEnvelopeDekFactory dekFactory;
+  private final Batcher wrapper;
+  private final Batcher unwrapper;
+
+  private AsyncKmsEnvelopeAead(
+      KmsEnvelopeDekFactory dekFactory,
+      AsyncAead remote,
+      Duration batchWindow,
+      int maxBatchSize,
+      ScheduledExecutorService scheduler) {
+    this.dekFactory = dekFactory;
+    this.wrapper =
+        new Batcher(remote::encryptBatch, remote::encrypt, batchWindow, maxBatchSize, scheduler);
+    this.unwrapper =
+        new Batcher(remote::decryptBatch, remote::decrypt, batchWindow, maxBatchSize, scheduler);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder for AsyncKmsEnvelopeAead. */
+  public static final class Builder {
+    @Nullable private AeadParameters dekParameters = null;
+    @Nullable private AsyncAead remote = null;
+    private Duration batchWindow = Duration.ofMillis(5);
+    private int maxBatchSize = 100;
+    @Nullable private ScheduledExecutorService scheduler = null;
+
+    private Builder() {}
+
+    /**
+     * Sets the parameters of the DEKs. They must be one of those accepted by {@link
+     * KmsEnvelopeAead#create}.
+     */
+    @CanIgnoreReturnValue
+    public Builder setDekParameters(AeadParameters dekParameters) {
+      this.dekParameters = dekParameters;
+      return this;
+    }
+
+    /** Sets the AEAD of the KMS, which encrypts and decrypts DEKs. */
+    @CanIgnoreReturnValue
+    public Builder setRemote(AsyncAead remote) {
+      this.remote = remote;
+      return this;
+    }
+
+    /**
+     * Sets how long a DEK may wait for other DEKs to be sent to the KMS in the same batch. The
+     * default is 5 milliseconds.
+     */
+    @CanIgnoreReturnValue
+    public Builder setBatchWindow(Duration batchWindow) {
+      if (batchWindow.isNegative()) {
+        throw new IllegalArgumentException("batchWindow must not be negative");
+      }
+      this.batchWindow = batchWindow;
+      return this;
+    }
+
+    /** Sets the maximal number of DEKs sent to the KMS in one batch. The default is 100. */
+    @CanIgnoreReturnValue
+    public Builder setMaxBatchSize(int maxBatchSize) {
+      if (maxBatchSize < 1) {
+        throw new IllegalArgumentException("maxBatchSize must be positive");
+      }
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * Sets the executor which sends the batches to the KMS when their window has passed. By
+     * default, a daemon thread shared by all instances is used.
+     */
+    @CanIgnoreReturnValue
+    public Builder setScheduler(ScheduledExecutorService scheduler) {
+      this.scheduler = scheduler;
+      return this;
+    }
+
+    public AsyncKmsEnvelopeAead build() throws GeneralSecurityException {
+      if (dekParameters == null) {
+        throw new GeneralSecurityException("dekParameters must be set");
+      }
+      if (remote == null) {
+        throw new GeneralSecurityException("remote must be set");
+      }
+      KeyTemplate dekTemplate = KmsEnvelopeAead.toKeyTemplate(dekParameters);
+      if (!KmsEnvelopeAead.isSupportedDekKeyType(dekTemplate.getTypeUrl())) {
+        throw new GeneralSecurityException(
+            "Unsupported DEK key type: "
+                + dekTemplate.getTypeUrl()
+                + ". Only Tink AEAD key types are supported.");
+      }
+      return new AsyncKmsEnvelopeAead(
+          KmsEnvelopeDekFactory.create(dekTemplate, dekParameters),
+          remote,
+          batchWindow,
+          maxBatchSize,
+          scheduler == null ? DefaultScheduler.INSTANCE : scheduler);
+    }
+  }
+
+  @Override
+  public CompletableFuture<byte[]> encrypt(byte[] plaintext, byte[] associatedData) {
+    byte[] dek;
+    byte[] payload;
+    try {
+      dek = dekFactory.newDek();
+      payload = dekFactory.getAead(dek).encrypt(plaintext, associatedData);
+    } catch (GeneralSecurityException e) {
+      return failedFuture(e);
+    }
+    CompletableFuture<byte[]> encryptedDek = wrapper.submit(dek);
+    // The primitive keeps its own copy of the key.
+    encryptedDek.whenComplete((unused, error) -> Arrays.fill(dek, (byte) 0));
+    return encryptedDek.thenApply(
+        encrypted ->
+            ByteBuffer.allocate(LENGTH_ENCRYPTED_DEK + encrypted.length + payload.length)
+                .putInt(encrypted.length)
+                .put(encrypted)
+                .put(payload)
+                .array());
+  }
+
+  @Override
+  public CompletableFuture<byte[]> decrypt(byte[] ciphertext, byte[] associatedData) {
+    if (ciphertext.length < LENGTH_ENCRYPTED_DEK) {
+      return failedFuture(new GeneralSecurityException("invalid ciphertext"));
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(ciphertext);
+    int encryptedDekSize = buffer.getInt();
+    if (encryptedDekSize <= 0 || encryptedDekSize > (ciphertext.length - LENGTH_ENCRYPTED_DEK)) {
+      return failedFuture(new GeneralSecurityException("invalid ciphertext"));
+    }
+    byte[] encryptedDek = new byte[encryptedDekSize];
+    buffer.get(encryptedDek);
+    byte[] payload = new byte[buffer.remaining()];
+    buffer.get(payload);
+    return unwrapper
+        .submit(encryptedDek)
+        .thenApply(
+            dek -> {
+              try {
+                return dekFactory.getAead(dek).decrypt(payload, associatedData);
+              } catch (GeneralSecurityException e) {
+                throw new CompletionException(e);
+              } finally {
+                Arrays.fill(dek, (byte) 0);
+              }
+            });
+  }
+
+  private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(error);
+    return future;
+  }
+
+  /**
+   * Collects the inputs of one KMS operation, and processes them in batches.
+   *
+   * <p>The first input of a batch schedules the batch to be sent after the batch window. A batch
+   * which reaches the maximal size is sent right away by the thread which added the last input.
+   * Batches are only split off while holding the lock, and sent after releasing it.
+   */
+  private static final class Batcher {
+    private final BiFunction<List<byte[]>, byte[], CompletableFuture<List<byte[]>>> batchOperation;
+    private final BiFunction<byte[], byte[], CompletableFuture<byte[]>> singleOperation;
+    private final Duration batchWindow;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private List<byte[]> inputs = new ArrayList<>();
+    private List<CompletableFuture<byte[]>> outputs = new ArrayList<>();
+    // Incremented whenever a batch is sent, so that a scheduled send does not send a later batch.
+    private long batchNumber = 0;
+
+    Batcher(
+        BiFunction<List<byte[]>, byte[], CompletableFuture<List<byte[]>>> batchOperation,
+        BiFunction<byte[], byte[], CompletableFuture<byte[]>> singleOperation,
+        Duration batchWindow,
+        int maxBatchSize,
+        ScheduledExecutorService scheduler) {
+      this.batchOperation = batchOperation;
+      this.singleOperation = singleOperation;
+      this.batchWindow = batchWindow;
+      this.maxBatchSize = maxBatchSize;
+      this.scheduler = scheduler;
+    }
+
+    CompletableFuture<byte[]> submit(byte[] input) {
+      CompletableFuture<byte[]> output = new CompletableFuture<>();
+      List<byte[]> batchInputs = null;
+      List<CompletableFuture<byte[]>> batchOutputs = null;
+      long number;
+      int size;
+      synchronized (lock) {
+        inputs.add(input);
+        outputs.add(output);
+        number = batchNumber;
+        size = inputs.size();
+        if (size >= maxBatchSize) {
+          batchInputs = inputs;
+          batchOutputs = outputs;
+          startNextBatch();
+        }
+      }
+      if (batchInputs != null) {
+        send(batchInputs, batchOutputs);
+      } else if (size == 1) {
+        scheduler.schedule(
+            () -> sendScheduled(number), batchWindow.toNanos(), TimeUnit.NANOSECONDS);
+      }
+      return output;
+    }
+
+    // Must be called while holding the lock.
+    private void startNextBatch() {
+      inputs = new ArrayList<>();
+      outputs = new ArrayList<>();
+      batchNumber++;
+    }
+
+    private void sendScheduled(long number) {
+      List<byte[]> batchInputs;
+      List<CompletableFuture<byte[]>> batchOutputs;
+      synchronized (lock) {
+        if (number != batchNumber || inputs.isEmpty()) {
+          return;
+        }
+        batchInputs = inputs;
+        batchOutputs = outputs;
+        startNextBatch();
+      }
+      send(batchInputs, batchOutputs);
+    }
+
+    private void send(List<byte[]> batchInputs, List<CompletableFuture<byte[]>> batchOutputs) {
+      call(batchOperation, batchInputs)
+          .whenComplete(
+              (results, error) -> {
+                if (error == null && results.size() == batchInputs.size()) {
+                  for (int i = 0; i < results.size(); i++) {
+                    batchOutputs.get(i).complete(results.get(i));
+                  }
+                  return;
+                }
+                if (batchInputs.size() == 1) {
+                  batchOutputs
+                      .get(0)
+                      .completeExceptionally(
+                          error != null
+                              ? error
+                              : new GeneralSecurityException("KMS returned a wrong batch size"));
+                  return;
+                }
+                // Retry the inputs one by one, to find those which fail.
+                for (int i = 0; i < batchInputs.size(); i++) {
+                  CompletableFuture<byte[]> output = batchOutputs.get(i);
+                  call(singleOperation, batchInputs.get(i))
+                      .whenComplete(
+                          (result, singleError) -> {
+                            if (singleError == null) {
+                              output.complete(result);
+                            } else {
+                              output.completeExceptionally(singleError);
+                            }
+                          });
+                }
+              });
+    }
+
+    /** Calls {@code operation}, turning exceptions it throws into a failed future. */
+    private static <I, O> CompletableFuture<O> call(
+        BiFunction<I, byte[], CompletableFuture<O>> operation, I input) {
+      try {
+        return operation.apply(input, EMPTY_AAD);
+      } catch (RuntimeException e) {
+        return failedFuture(e);
+      }
+    }
+  }
+
+  private static final class DefaultScheduler {
+    static final ScheduledExecutorService INSTANCE =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "AsyncKmsEnvelopeAead");
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    private DefaultScheduler() {}
+  }
+}
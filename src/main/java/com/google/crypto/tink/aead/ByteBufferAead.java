@@ -0,0 +1,78 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead;
+
+import com.google.crypto.tink.annotations.Alpha;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import javax.annotation.Nullable;
+
+/**
+ * Optional interface for {@link com.google.crypto.tink.Aead} implementations which can read their
+ * input from and write their output to caller-provided {@link ByteBuffer}s.
+ *
+ * <p>Ciphertexts are identical to the ones produced and accepted by the corresponding {@code
+ * byte[]} methods of {@link com.google.crypto.tink.Aead}. Both heap and direct buffers are
+ * supported.
+ *
+ * <p>The {@code Aead} returned by {@code KeysetHandle.getPrimitive(Aead.class)} implements this
+ * interface. If a key in the keyset uses a primitive that does not implement {@code
+ * ByteBufferAead}, the corresponding operations fall back to copying through {@code byte[]}.
+ *
+ * <p>The input buffer is read from its position to its limit; on success its position is advanced
+ * to its limit. The output is written starting at the position of the output buffer, whose
+ * position is advanced by the number of bytes written. The position of {@code associatedData} is
+ * not modified. If an operation fails, no positions are modified, but the output buffer may
+ * contain partial output.
+ *
+ * <p>Unless an implementation documents otherwise, the input and output buffers must not overlap.
+ */
+@Alpha
+public interface ByteBufferAead {
+  /**
+   * Returns the size of the ciphertext produced by {@link #encrypt} for a plaintext of {@code
+   * plaintextSize} bytes.
+   *
+   * @throws GeneralSecurityException if the size cannot be determined in advance or exceeds
+   *     {@code Integer.MAX_VALUE}.
+   */
+  int ciphertextSize(int plaintextSize) throws GeneralSecurityException;
+
+  /**
+   * Encrypts the remaining bytes of {@code plaintext} and writes the ciphertext to {@code
+   * ciphertext}.
+   *
+   * @param associatedData may be null, which is equivalent to an empty buffer.
+   * @throws java.nio.BufferOverflowException if {@code ciphertext} has fewer than {@code
+   *     ciphertextSize(plaintext.remaining())} bytes remaining.
+   */
+  void encrypt(ByteBuffer plaintext, @Nullable ByteBuffer associatedData, ByteBuffer ciphertext)
+      throws GeneralSecurityException;
+
+  /**
+   * Decrypts the remaining bytes of {@code ciphertext} and writes the plaintext to {@code
+   * plaintext}.
+   *
+   * <p>A {@code plaintext} buffer with {@code ciphertext.remaining()} bytes remaining is always
+   * large enough.
+   *
+   * @param associatedData may be null, which is equivalent to an empty buffer.
+   * @throws java.nio.BufferOverflowException if {@code plaintext} is too small.
+   */
+  void decrypt(ByteBuffer ciphertext, @Nullable ByteBuffer associatedData, ByteBuffer plaintext)
+      throws GeneralSecurityException;
+}
@@ -17,17 +17,33 @@
 package com.google.crypto.tink.aead; // instead of subtle, because it depends on KeyTemplate.
 
 import com.google.crypto.tink.Aead;
-import com.google.crypto.tink.Registry;
 import com.google.crypto.tink.TinkProtoParametersFormat;
+import com.google.crypto.tink.aead.internal.KmsEnvelopeDekFactory;
 import com.google.crypto.tink.proto.KeyTemplate;
+import com.google.crypto.tink.util.Bytes;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.protobuf.ExtensionRegistryLite;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
 /**
  * This primitive implements <a href="https://cloud.google.com/kms/docs/data-encryption-keys">
@@ -46,13 +62,390 @@ import java.util.Set;
  *   <li>Encrypted DEK: variable length that is equal to the value specified in the last 4 bytes.
  *   <li>AEAD payload: variable length.
  * </ul>
+ *
+ * <p>By default, every call to {@link #encrypt} generates a new DEK and encrypts it with the KMS,
+ * and every call to {@link #decrypt} decrypts the DEK with the KMS. Instances created with {@link
+ * #newBuilder} may instead reuse a DEK for several messages, as limited by a {@link
+ * DekReusePolicy}, and keep decrypted DEKs in a cache, as configured by a {@link DekCachePolicy}.
+ * This saves a KMS call for most messages. The ciphertext format is the same in all cases.
+ *
+ * <p>When the key of the KMS is rotated, {@link #rewrapDek} re-encrypts the DEK of a ciphertext
+ * with the new key, without decrypting the payload.
  */
 public final class KmsEnvelopeAead implements Aead {
   private static final byte[] EMPTY_AAD = new byte[0];
-  private final KeyTemplate dekTemplate;
+  private final KmsEnvelopeDekFactory dekFactory;
   private final Aead remote;
   private static final int LENGTH_ENCRYPTED_DEK = 4;
 
+  @Nullable private final DekReusePolicy dekReusePolicy;
+  private final Object dekRotationLock = new Object();
+  // The DEK which is currently reused, or null if none has been created yet.
+  @Nullable private volatile ReusableDek currentDek = null;
+  @Nullable private final DekCache dekCache;
+
+  private final AtomicLong deksCreated = new AtomicLong();
+  private final AtomicLong messagesEncrypted = new AtomicLong();
+  private final AtomicLong bytesEncrypted = new AtomicLong();
+
+  /**
+   * Limits how long a {@link KmsEnvelopeAead} may use the same DEK.
+   *
+   * <p>A DEK is replaced by a new one as soon as it would exceed any of the limits. A message which
+   * alone is longer than the byte limit is encrypted with a DEK which is not reused.
+   */
+  public static final class DekReusePolicy {
+    /**
+     * The largest allowed message limit. DEKs which use random nonces, such as AES-GCM, must not
+     * encrypt more messages than this.
+     */
+    public static final long MAX_MESSAGES_PER_DEK = 1L << 32;
+
+    private final long maxMessages;
+    private final long maxBytes;
+    private final Duration maxAge;
+    private final Clock clock;
+
+    private DekReusePolicy(Builder builder) {
+      this.maxMessages = builder.maxMessages;
+      this.maxBytes = builder.maxBytes;
+      this.maxAge = builder.maxAge;
+      this.clock = builder.clock;
+    }
+
+    /**
+     * Returns a new builder.
+     *
+     * <p>By default, a DEK is used for at most 2^20 messages, 2^32 bytes of plaintext and 5
+     * minutes.
+     */
+    public static Builder newBuilder() {
+      return new Builder();
+    }
+
+    public long getMaxMessages() {
+      return maxMessages;
+    }
+
+    public long getMaxBytes() {
+      return maxBytes;
+    }
+
+    public Duration getMaxAge() {
+      return maxAge;
+    }
+
+    /** Builder for DekReusePolicy. */
+    public static final class Builder {
+      private long maxMessages = 1L << 20;
+      private long maxBytes = 1L << 32;
+      private Duration maxAge = Duration.ofMinutes(5);
+      private Clock clock = Clock.systemUTC();
+
+      private Builder() {}
+
+      /** Sets how many messages a DEK may encrypt, at most {@link #MAX_MESSAGES_PER_DEK}. */
+      @CanIgnoreReturnValue
+      public Builder setMaxMessages(long maxMessages) {
+        if (maxMessages <= 0 || maxMessages > MAX_MESSAGES_PER_DEK) {
+          throw new IllegalArgumentException(
+              "maxMessages must be in [1, " + MAX_MESSAGES_PER_DEK + "], got " + maxMessages);
+        }
+        this.maxMessages = maxMessages;
+        return this;
+      }
+
+      /** Sets how many bytes of plaintext a DEK may encrypt in total. */
+      @CanIgnoreReturnValue
+      public Builder setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+          throw new IllegalArgumentException("maxBytes must be positive, got " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        return this;
+      }
+
+      /** Sets for how long after its creation a DEK may be used. */
+      @CanIgnoreReturnValue
+      public Builder setMaxAge(Duration maxAge) {
+        if (maxAge.isNegative() || maxAge.isZero()) {
+          throw new IllegalArgumentException("maxAge must be positive, got " + maxAge);
+        }
+        this.maxAge = maxAge;
+        return this;
+      }
+
+      /** Sets the clock used to check the age of DEKs. This is mostly useful for testing. */
+      @CanIgnoreReturnValue
+      public Builder setClock(Clock clock) {
+        if (clock == null) {
+          throw new NullPointerException("clock cannot be null");
+        }
+        this.clock = clock;
+        return this;
+      }
+
+      public DekReusePolicy build() {
+        return new DekReusePolicy(this);
+      }
+    }
+  }
+
+  /**
+   * Configures the cache of decrypted DEKs of a {@link KmsEnvelopeAead}.
+   *
+   * <p>The cache maps encrypted DEKs to the AEAD primitives of the decrypted DEKs. It holds at most
+   * {@link #getMaxEntries} DEKs, evicting the least recently used one first, and drops DEKs {@link
+   * #getTimeToLive} after they were decrypted.
+   */
+  public static final class DekCachePolicy {
+    private final int maxEntries;
+    private final Duration timeToLive;
+    private final Clock clock;
+
+    private DekCachePolicy(Builder builder) {
+      this.maxEntries = builder.maxEntries;
+      this.timeToLive = builder.timeToLive;
+      this.clock = builder.clock;
+    }
+
+    /**
+     * Returns a new builder.
+     *
+     * <p>By default, the cache holds at most 1000 DEKs, for at most 5 minutes each.
+     */
+    public static Builder newBuilder() {
+      return new Builder();
+    }
+
+    public int getMaxEntries() {
+      return maxEntries;
+    }
+
+    public Duration getTimeToLive() {
+      return timeToLive;
+    }
+
+    /** Builder for DekCachePolicy. */
+    public static final class Builder {
+      private int maxEntries = 1000;
+      private Duration timeToLive = Duration.ofMinutes(5);
+      private Clock clock = Clock.systemUTC();
+
+      private Builder() {}
+
+      /** Sets how many decrypted DEKs the cache holds at most. */
+      @CanIgnoreReturnValue
+      public Builder setMaxEntries(int maxEntries) {
+        if (maxEntries <= 0) {
+          throw new IllegalArgumentException("maxEntries must be positive, got " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        return this;
+      }
+
+      /** Sets for how long after its decryption a DEK is kept in the cache. */
+      @CanIgnoreReturnValue
+      public Builder setTimeToLive(Duration timeToLive) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+          throw new IllegalArgumentException("timeToLive must be positive, got " + timeToLive);
+        }
+        this.timeToLive = timeToLive;
+        return this;
+      }
+
+      /** Sets the clock used to expire DEKs. This is mostly useful for testing. */
+      @CanIgnoreReturnValue
+      public Builder setClock(Clock clock) {
+        if (clock == null) {
+          throw new NullPointerException("clock cannot be null");
+        }
+        this.clock = clock;
+        return this;
+      }
+
+      public DekCachePolicy build() {
+        return new DekCachePolicy(this);
+      }
+    }
+  }
+
+  /** Counters which describe how a {@link KmsEnvelopeAead} has been used. */
+  public static final class Statistics {
+    private final long deksCreated;
+    private final long messagesEncrypted;
+    private final long bytesEncrypted;
+    private final long dekCacheHits;
+    private final long dekCacheMisses;
+    private final long dekCacheEvictions;
+
+    private Statistics(
+        long deksCreated,
+        long messagesEncrypted,
+        long bytesEncrypted,
+        long dekCacheHits,
+        long dekCacheMisses,
+        long dekCacheEvictions) {
+      this.deksCreated = deksCreated;
+      this.messagesEncrypted = messagesEncrypted;
+      this.bytesEncrypted = bytesEncrypted;
+      this.dekCacheHits = dekCacheHits;
+      this.dekCacheMisses = dekCacheMisses;
+      this.dekCacheEvictions = dekCacheEvictions;
+    }
+
+    /** Returns how many DEKs were created and encrypted with the KMS by {@link #encrypt}. */
+    public long getDeksCreated() {
+      return deksCreated;
+    }
+
+    /** Returns how many messages were encrypted. */
+    public long getMessagesEncrypted() {
+      return messagesEncrypted;
+    }
+
+    /** Returns how many bytes of plaintext were encrypted. */
+    public long getBytesEncrypted() {
+      return bytesEncrypted;
+    }
+
+    /** Returns how many decryptions found their DEK in the cache, or were waiting for it. */
+    public long getDekCacheHits() {
+      return dekCacheHits;
+    }
+
+    /**
+     * Returns how many decryptions did not find their DEK in the cache, and decrypted it with the
+     * KMS. Without a cache, this is always 0.
+     */
+    public long getDekCacheMisses() {
+      return dekCacheMisses;
+    }
+
+    /** Returns how many DEKs were removed from the cache because it was full or they expired. */
+    public long getDekCacheEvictions() {
+      return dekCacheEvictions;
+    }
+  }
+
+  /** Creates the AEAD primitive of a DEK. */
+  private interface DekDecrypter {
+    Aead decryptDek(byte[] encryptedDek) throws GeneralSecurityException;
+  }
+
+  /**
+   * A bounded LRU cache of decrypted DEKs with expiration.
+   *
+   * <p>Concurrent lookups of the same missing DEK decrypt it only once: the first one inserts a
+   * pending entry and decrypts the DEK, while the others wait for it. Failed decryptions are not
+   * cached.
+   */
+  private static final class DekCache {
+    private static final class Entry {
+      final FutureTask<Aead> dek;
+      final long expirationMillis;
+
+      Entry(FutureTask<Aead> dek, long expirationMillis) {
+        this.dek = dek;
+        this.expirationMillis = expirationMillis;
+      }
+    }
+
+    private final DekCachePolicy policy;
+    // Guarded by itself. Iterates from the least to the most recently used entry.
+    private final LinkedHashMap<Bytes, Entry> entries =
+        new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    DekCache(DekCachePolicy policy) {
+      this.policy = policy;
+    }
+
+    Aead get(byte[] encryptedDek, DekDecrypter decrypter) throws GeneralSecurityException {
+      Bytes key = Bytes.copyFrom(encryptedDek);
+      FutureTask<Aead> dek;
+      boolean mustDecrypt = false;
+      synchronized (entries) {
+        long now = policy.clock.millis();
+        Entry entry = entries.get(key);
+        if (entry != null && now < entry.expirationMillis) {
+          dek = entry.dek;
+        } else {
+          if (entry != null) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+          }
+          dek = new FutureTask<>(() -> decrypter.decryptDek(encryptedDek));
+          entries.put(key, new Entry(dek, now + policy.timeToLive.toMillis()));
+          mustDecrypt = true;
+          evictLeastRecentlyUsed();
+        }
+      }
+      if (mustDecrypt) {
+        misses.incrementAndGet();
+        dek.run();
+      } else {
+        hits.incrementAndGet();
+      }
+      try {
+        return dek.get();
+      } catch (ExecutionException e) {
+        synchronized (entries) {
+          Entry entry = entries.get(key);
+          if (entry != null && entry.dek == dek) {
+            entries.remove(key);
+          }
+        }
+        if (e.getCause() instanceof GeneralSecurityException) {
+          throw (GeneralSecurityException) e.getCause();
+        }
+        throw new GeneralSecurityException("decrypting the DEK failed", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new GeneralSecurityException("interrupted while decrypting the DEK", e);
+      }
+    }
+
+    private void evictLeastRecentlyUsed() {
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (entries.size() > policy.maxEntries) {
+        iterator.next();
+        iterator.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /** A DEK together with the number of messages and bytes it has encrypted. */
+  private static final class ReusableDek {
+    final byte[] encryptedDek;
+    final Aead aead;
+    final long expirationMillis;
+    final AtomicLong messages = new AtomicLong();
+    final AtomicLong bytes = new AtomicLong();
+
+    ReusableDek(byte[] encryptedDek, Aead aead, long expirationMillis) {
+      this.encryptedDek = encryptedDek;
+      this.aead = aead;
+      this.expirationMillis = expirationMillis;
+    }
+
+    /**
+     * Reserves this DEK for a message of {@code length} bytes, or returns false if that would
+     * exceed a limit of {@code policy}. After that, it never succeeds again.
+     */
+    boolean tryReserve(int length, DekReusePolicy policy) {
+      if (policy.clock.millis() >= expirationMillis) {
+        return false;
+      }
+      // Reservations which fail are still counted, so that the limits are never exceeded.
+      return messages.incrementAndGet() <= policy.maxMessages
+          && bytes.addAndGet(length) <= policy.maxBytes;
+    }
+  }
+
   private static Set<String> listSupportedDekKeyTypes() {
     HashSet<String> dekKeyTypeUrls = new HashSet<>();
     dekKeyTypeUrls.add("type.googleapis.com/google.crypto.tink.AesGcmKey");
@@ -87,14 +480,25 @@ public final class KmsEnvelopeAead implements Aead {
    */
   @Deprecated
   public KmsEnvelopeAead(KeyTemplate dekTemplate, Aead remote) {
+    this(dekTemplate, KmsEnvelopeDekFactory.fromRegistry(dekTemplate), remote, null, null);
+  }
+
+  private KmsEnvelopeAead(
+      KeyTemplate dekTemplate,
+      KmsEnvelopeDekFactory dekFactory,
+      Aead remote,
+      @Nullable DekReusePolicy dekReusePolicy,
+      @Nullable DekCachePolicy dekCachePolicy) {
     if (!isSupportedDekKeyType(dekTemplate.getTypeUrl())) {
       throw new IllegalArgumentException(
           "Unsupported DEK key type: "
               + dekTemplate.getTypeUrl()
               + ". Only Tink AEAD key types are supported.");
     }
-    this.dekTemplate = dekTemplate;
+    this.dekFactory = dekFactory;
     this.remote = remote;
+    this.dekReusePolicy = dekReusePolicy;
+    this.dekCache = dekCachePolicy == null ? null : new DekCache(dekCachePolicy);
   }
 
   /**
@@ -104,33 +508,180 @@ public final class KmsEnvelopeAead implements Aead {
    * rejected): {@link AesGcmParameters}, {@link ChaCha20Poly1305Parameters}, {@link
    * XChaCha20Poly1305Parameters}, {@link AesCtrHmacAeadParameters}, {@link AesGcmSivParameters}, or
    * {@link AesEaxParameters}.
+   *
+   * <p>The primitives of the DEKs are created directly from {@code dekParameters}, without a lookup
+   * in the {@link com.google.crypto.tink.Registry} for every message.
    */
   public static Aead create(AeadParameters dekParameters, Aead remote)
       throws GeneralSecurityException {
-    KeyTemplate dekTemplate;
+    KeyTemplate dekTemplate = toKeyTemplate(dekParameters);
+    return new KmsEnvelopeAead(
+        dekTemplate,
+        KmsEnvelopeDekFactory.create(dekTemplate, dekParameters),
+        remote,
+        /* dekReusePolicy= */ null,
+        /* dekCachePolicy= */ null);
+  }
+
+  /**
+   * Creates a new instance of Tink's KMS Envelope AEAD which reuses DEKs within the limits of
+   * {@code dekReusePolicy}.
+   *
+   * <p>Ciphertexts are compatible with those of {@link #create}. Ciphertexts which share a DEK also
+   * share the encrypted DEK, so an observer can tell which ciphertexts were encrypted with the same
+   * DEK.
+   *
+   * <p>{@code dekParameters} must be one of the parameters accepted by {@link #create}.
+   */
+  public static KmsEnvelopeAead createWithDekReuse(
+      AeadParameters dekParameters, Aead remote, DekReusePolicy dekReusePolicy)
+      throws GeneralSecurityException {
+    return newBuilder()
+        .setDekParameters(dekParameters)
+        .setRemote(remote)
+        .setDekReusePolicy(dekReusePolicy)
+        .build();
+  }
+
+  /** Returns a builder for a KmsEnvelopeAead with DEK reuse or a DEK cache. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Builder for KmsEnvelopeAead. */
+  public static final class Builder {
+    @Nullable private AeadParameters dekParameters = null;
+    @Nullable private Aead remote = null;
+    @Nullable private DekReusePolicy dekReusePolicy = null;
+    @Nullable private DekCachePolicy dekCachePolicy = null;
+
+    private Builder() {}
+
+    /** Sets the parameters of the DEKs. They must be one of those accepted by {@link #create}. */
+    @CanIgnoreReturnValue
+    public Builder setDekParameters(AeadParameters dekParameters) {
+      this.dekParameters = dekParameters;
+      return this;
+    }
+
+    /** Sets the AEAD of the KMS, which encrypts and decrypts DEKs. */
+    @CanIgnoreReturnValue
+    public Builder setRemote(Aead remote) {
+      this.remote = remote;
+      return this;
+    }
+
+    /** Lets the KmsEnvelopeAead reuse DEKs within the limits of {@code dekReusePolicy}. */
+    @CanIgnoreReturnValue
+    public Builder setDekReusePolicy(DekReusePolicy dekReusePolicy) {
+      if (dekReusePolicy == null) {
+        throw new NullPointerException("dekReusePolicy cannot be null");
+      }
+      this.dekReusePolicy = dekReusePolicy;
+      return this;
+    }
+
+    /** Lets the KmsEnvelopeAead cache decrypted DEKs as configured by {@code dekCachePolicy}. */
+    @CanIgnoreReturnValue
+    public Builder setDekCachePolicy(DekCachePolicy dekCachePolicy) {
+      if (dekCachePolicy == null) {
+        throw new NullPointerException("dekCachePolicy cannot be null");
+      }
+      this.dekCachePolicy = dekCachePolicy;
+      return this;
+    }
+
+    public KmsEnvelopeAead build() throws GeneralSecurityException {
+      if (dekParameters == null) {
+        throw new GeneralSecurityException("dekParameters must be set");
+      }
+      if (remote == null) {
+        throw new GeneralSecurityException("remote must be set");
+      }
+      KeyTemplate dekTemplate = toKeyTemplate(dekParameters);
+      return new KmsEnvelopeAead(
+          dekTemplate,
+          KmsEnvelopeDekFactory.create(dekTemplate, dekParameters),
+          remote,
+          dekReusePolicy,
+          dekCachePolicy);
+    }
+  }
+
+  static KeyTemplate toKeyTemplate(AeadParameters dekParameters)
+      throws GeneralSecurityException {
     try {
-      dekTemplate =
-          KeyTemplate.parseFrom(
-              TinkProtoParametersFormat.serialize(dekParameters),
-              ExtensionRegistryLite.getEmptyRegistry());
+      return KeyTemplate.parseFrom(
+          TinkProtoParametersFormat.serialize(dekParameters),
+          ExtensionRegistryLite.getEmptyRegistry());
     } catch (InvalidProtocolBufferException e) {
       throw new GeneralSecurityException(e);
     }
-    return new KmsEnvelopeAead(dekTemplate, remote);
+  }
+
+  /** Returns the current values of the usage counters of this instance. */
+  public Statistics getStatistics() {
+    if (dekCache == null) {
+      return new Statistics(
+          deksCreated.get(), messagesEncrypted.get(), bytesEncrypted.get(), 0, 0, 0);
+    }
+    return new Statistics(
+        deksCreated.get(),
+        messagesEncrypted.get(),
+        bytesEncrypted.get(),
+        dekCache.hits.get(),
+        dekCache.misses.get(),
+        dekCache.evictions.get());
   }
 
   @Override
   public byte[] encrypt(final byte[] plaintext, final byte[] associatedData)
       throws GeneralSecurityException {
-    // Generate a new DEK.
-    byte[] dek = Registry.newKeyData(dekTemplate).getValue().toByteArray();
-    // Wrap it with remote.
-    byte[] encryptedDek = remote.encrypt(dek, EMPTY_AAD);
-    // Use DEK to encrypt plaintext.
-    Aead aead = Registry.getPrimitive(dekTemplate.getTypeUrl(), dek, Aead.class);
-    byte[] payload = aead.encrypt(plaintext, associatedData);
-    // Build ciphertext protobuf and return result.
-    return buildCiphertext(encryptedDek, payload);
+    messagesEncrypted.incrementAndGet();
+    bytesEncrypted.addAndGet(plaintext.length);
+    if (dekReusePolicy == null || plaintext.length > dekReusePolicy.maxBytes) {
+      // Generate a new DEK.
+      byte[] dek = dekFactory.newDek();
+      // Wrap it with remote.
+      byte[] encryptedDek = remote.encrypt(dek, EMPTY_AAD);
+      deksCreated.incrementAndGet();
+      // Use DEK to encrypt plaintext.
+      Aead aead = dekFactory.getAead(dek);
+      byte[] payload = aead.encrypt(plaintext, associatedData);
+      // Build ciphertext protobuf and return result.
+      return buildCiphertext(encryptedDek, payload);
+    }
+    ReusableDek dek = reserveDek(plaintext.length, dekReusePolicy);
+    return buildCiphertext(dek.encryptedDek, dek.aead.encrypt(plaintext, associatedData));
+  }
+
+  /**
+   * Returns a DEK which may encrypt a message of {@code length} bytes, creating a new one if the
+   * current DEK has reached a limit.
+   */
+  private ReusableDek reserveDek(int length, DekReusePolicy policy)
+      throws GeneralSecurityException {
+    ReusableDek dek = currentDek;
+    if (dek != null && dek.tryReserve(length, policy)) {
+      return dek;
+    }
+    // Only one thread creates the next DEK; the others wait for it instead of calling the KMS too.
+    synchronized (dekRotationLock) {
+      dek = currentDek;
+      if (dek != null && dek.tryReserve(length, policy)) {
+        return dek;
+      }
+      byte[] rawDek = dekFactory.newDek();
+      byte[] encryptedDek = remote.encrypt(rawDek, EMPTY_AAD);
+      deksCreated.incrementAndGet();
+      Aead aead = dekFactory.getAead(rawDek);
+      dek = new ReusableDek(encryptedDek, aead, policy.clock.millis() + policy.maxAge.toMillis());
+      // A new DEK is always within its limits, since length is at most policy.maxBytes.
+      dek.messages.incrementAndGet();
+      dek.bytes.addAndGet(length);
+      currentDek = dek;
+      return dek;
+    }
   }
 
   @Override
@@ -146,10 +697,12 @@ public final class KmsEnvelopeAead implements Aead {
       buffer.get(encryptedDek, 0, encryptedDekSize);
       byte[] payload = new byte[buffer.remaining()];
       buffer.get(payload, 0, buffer.remaining());
-      // Use remote to decrypt encryptedDek.
-      byte[] dek = remote.decrypt(encryptedDek, EMPTY_AAD);
+      // Use remote to decrypt encryptedDek, unless the DEK is cached.
+      Aead aead =
+          dekCache == null
+              ? decryptDek(encryptedDek)
+              : dekCache.get(encryptedDek, this::decryptDek);
       // Use DEK to decrypt payload.
-      Aead aead = Registry.getPrimitive(dekTemplate.getTypeUrl(), dek, Aead.class);
       return aead.decrypt(payload, associatedData);
     } catch (IndexOutOfBoundsException
              | BufferUnderflowException
@@ -158,6 +711,97 @@ public final class KmsEnvelopeAead implements Aead {
     }
   }
 
+  /** Uses remote to decrypt {@code encryptedDek}, and returns the AEAD of the DEK. */
+  private Aead decryptDek(byte[] encryptedDek) throws GeneralSecurityException {
+    byte[] dek = remote.decrypt(encryptedDek, EMPTY_AAD);
+    try {
+      return dekFactory.getAead(dek);
+    } finally {
+      // The primitive keeps its own copy of the key.
+      Arrays.fill(dek, (byte) 0);
+    }
+  }
+
+  /**
+   * Returns {@code ciphertext} with its DEK encrypted by {@code newRemote} instead of {@code
+   * oldRemote}.
+   *
+   * <p>Only the encrypted DEK is decrypted with {@code oldRemote} and encrypted with {@code
+   * newRemote}; the payload is copied unchanged. The result can be decrypted by a KmsEnvelopeAead
+   * which uses {@code newRemote}, with the same associated data as {@code ciphertext}. This is
+   * much cheaper than decrypting and encrypting the whole message again, but it also means the
+   * DEK does not change.
+   *
+   * @throws GeneralSecurityException if {@code ciphertext} is invalid, or if {@code oldRemote}
+   *     cannot decrypt its DEK
+   */
+  public static byte[] rewrapDek(byte[] ciphertext, Aead oldRemote, Aead newRemote)
+      throws GeneralSecurityException {
+    if (ciphertext.length < LENGTH_ENCRYPTED_DEK) {
+      throw new GeneralSecurityException("invalid ciphertext");
+    }
+    int encryptedDekSize = ByteBuffer.wrap(ciphertext).getInt();
+    if (encryptedDekSize <= 0 || encryptedDekSize > (ciphertext.length - LENGTH_ENCRYPTED_DEK)) {
+      throw new GeneralSecurityException("invalid ciphertext");
+    }
+    int payloadOffset = LENGTH_ENCRYPTED_DEK + encryptedDekSize;
+    byte[] dek =
+        oldRemote.decrypt(
+            Arrays.copyOfRange(ciphertext, LENGTH_ENCRYPTED_DEK, payloadOffset), EMPTY_AAD);
+    byte[] newEncryptedDek;
+    try {
+      newEncryptedDek = newRemote.encrypt(dek, EMPTY_AAD);
+    } finally {
+      Arrays.fill(dek, (byte) 0);
+    }
+    int payloadSize = ciphertext.length - payloadOffset;
+    return ByteBuffer.allocate(LENGTH_ENCRYPTED_DEK + newEncryptedDek.length + payloadSize)
+        .putInt(newEncryptedDek.length)
+        .put(newEncryptedDek)
+        .put(ciphertext, payloadOffset, payloadSize)
+        .array();
+  }
+
+  /**
+   * Calls {@link #rewrapDek} for all {@code ciphertexts} in parallel on {@code executor}, and
+   * returns the results in the same order.
+   *
+   * <p>Every ciphertext is rewrapped independently, so a KMS which supports concurrent requests
+   * processes a large collection about as many times faster as {@code executor} has threads.
+   *
+   * @throws GeneralSecurityException if any of the ciphertexts cannot be rewrapped. The message
+   *     contains the index of the first such ciphertext.
+   */
+  public static List<byte[]> rewrapDeks(
+      List<byte[]> ciphertexts, Aead oldRemote, Aead newRemote, ExecutorService executor)
+      throws GeneralSecurityException {
+    List<Callable<byte[]>> tasks = new ArrayList<>(ciphertexts.size());
+    for (byte[] ciphertext : ciphertexts) {
+      tasks.add(() -> rewrapDek(ciphertext, oldRemote, newRemote));
+    }
+    List<Future<byte[]>> futures;
+    try {
+      futures = executor.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GeneralSecurityException("interrupted while rewrapping DEKs", e);
+    }
+    List<byte[]> results = new ArrayList<>(futures.size());
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        results.add(futures.get(i).get());
+      } catch (ExecutionException e) {
+        throw new GeneralSecurityException(
+            "cannot rewrap the DEK of ciphertext " + i, e.getCause());
+      } catch (InterruptedException e) {
+        // Not reachable, since invokeAll waits for all tasks.
+        Thread.currentThread().interrupt();
+        throw new GeneralSecurityException("interrupted while rewrapping DEKs", e);
+      }
+    }
+    return results;
+  }
+
   private byte[] buildCiphertext(final byte[] encryptedDek, final byte[] payload) {
     return ByteBuffer.allocate(LENGTH_ENCRYPTED_DEK + encryptedDek.length + payload.length)
         .putInt(encryptedDek.length)
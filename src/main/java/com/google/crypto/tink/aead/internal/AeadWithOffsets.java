@@ -0,0 +1,52 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead.internal;
+
+import com.google.crypto.tink.Aead;
+import java.security.GeneralSecurityException;
+import javax.annotation.Nullable;
+
+/**
+ * Internal interface for {@link Aead} primitives which can write their ciphertext at an offset of
+ * the output array and decrypt a ciphertext which is only part of an array.
+ *
+ * <p>This allows the {@code AeadWrapper} to add and strip output prefixes without copying the
+ * ciphertext, and to try keys without paying for an exception for every key which does not match.
+ */
+public interface AeadWithOffsets extends Aead {
+  /**
+   * Same as {@link Aead#encrypt}, but the returned array starts with {@code ciphertextOffset} bytes
+   * which are not part of the ciphertext and which are left for the caller to fill in.
+   */
+  byte[] encrypt(byte[] plaintext, byte[] associatedData, int ciphertextOffset)
+      throws GeneralSecurityException;
+
+  /**
+   * Same as {@link Aead#decrypt}, but decrypts the {@code length} bytes of {@code ciphertext}
+   * starting at {@code offset}.
+   */
+  byte[] decrypt(byte[] ciphertext, int offset, int length, byte[] associatedData)
+      throws GeneralSecurityException;
+
+  /**
+   * Same as {@link #decrypt(byte[], int, int, byte[])}, but returns {@code null} instead of
+   * throwing if the ciphertext is invalid.
+   */
+  @Nullable
+  byte[] tryDecrypt(byte[] ciphertext, int offset, int length, byte[] associatedData)
+      throws GeneralSecurityException;
+}
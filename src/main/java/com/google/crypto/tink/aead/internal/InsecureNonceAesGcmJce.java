@@ -17,9 +17,13 @@
 package com.google.crypto.tink.aead.internal;
 
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.EnginePool;
+import com.google.crypto.tink.internal.PerKeyEnginePool;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.internal.Util;
 import com.google.crypto.tink.subtle.EngineFactory;
 import com.google.crypto.tink.subtle.Validators;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.spec.AlgorithmParameterSpec;
@@ -42,19 +46,13 @@ public final class InsecureNonceAesGcmJce {
   public static final int IV_SIZE_IN_BYTES = 12;
   public static final int TAG_SIZE_IN_BYTES = 16;
 
-  private static final ThreadLocal<Cipher> localCipher =
-      new ThreadLocal<Cipher>() {
-        @Override
-        protected Cipher initialValue() {
-          try {
-            return EngineFactory.CIPHER.getInstance("AES/GCM/NoPadding");
-          } catch (GeneralSecurityException ex) {
-            throw new IllegalStateException(ex);
-          }
-        }
-      };
+  private static final EnginePool.EngineFactory<Cipher> cipherFactory =
+      () -> EngineFactory.CIPHER.getInstance("AES/GCM/NoPadding");
+  private static final EnginePool<Cipher> sharedCipherPool = EnginePool.create(cipherFactory);
 
   private final SecretKey keySpec;
+  private final PerKeyEnginePool<Cipher> cipherPools =
+      new PerKeyEnginePool<>(sharedCipherPool, cipherFactory);
   private final boolean prependIv;
 
   public InsecureNonceAesGcmJce(final byte[] key, boolean prependIv)
@@ -74,32 +72,53 @@ public final class InsecureNonceAesGcmJce {
    */
   public byte[] encrypt(final byte[] iv, final byte[] plaintext, final byte[] associatedData)
       throws GeneralSecurityException {
+    return encrypt(iv, plaintext, associatedData, 0);
+  }
+
+  /**
+   * Same as {@link #encrypt(byte[], byte[], byte[])}, but the returned array starts with {@code
+   * ciphertextOffset} unused bytes, followed by the ciphertext.
+   */
+  public byte[] encrypt(
+      final byte[] iv,
+      final byte[] plaintext,
+      final byte[] associatedData,
+      int ciphertextOffset)
+      throws GeneralSecurityException {
     if (iv.length != IV_SIZE_IN_BYTES) {
       throw new GeneralSecurityException("iv is wrong size");
     }
+    if (ciphertextOffset < 0) {
+      throw new GeneralSecurityException("invalid ciphertext offset");
+    }
     // Check that ciphertext is not longer than the max. size of a Java array.
-    if (plaintext.length > Integer.MAX_VALUE - IV_SIZE_IN_BYTES - TAG_SIZE_IN_BYTES) {
+    if (plaintext.length
+        > Integer.MAX_VALUE - IV_SIZE_IN_BYTES - TAG_SIZE_IN_BYTES - ciphertextOffset) {
       throw new GeneralSecurityException("plaintext too long");
     }
     int ciphertextLength =
         prependIv
             ? IV_SIZE_IN_BYTES + plaintext.length + TAG_SIZE_IN_BYTES
             : plaintext.length + TAG_SIZE_IN_BYTES;
-    byte[] ciphertext = new byte[ciphertextLength];
+    byte[] ciphertext = new byte[ciphertextOffset + ciphertextLength];
     if (prependIv) {
-      System.arraycopy(iv, 0, ciphertext, 0, IV_SIZE_IN_BYTES);
+      System.arraycopy(iv, 0, ciphertext, ciphertextOffset, IV_SIZE_IN_BYTES);
     }
 
     AlgorithmParameterSpec params = getParams(iv);
-    localCipher.get().init(Cipher.ENCRYPT_MODE, keySpec, params);
-    if (associatedData != null && associatedData.length != 0) {
-      localCipher.get().updateAAD(associatedData);
-    }
-    int ciphertextOutputOffset = prependIv ? IV_SIZE_IN_BYTES : 0;
-    int written =
-        localCipher
-            .get()
-            .doFinal(plaintext, 0, plaintext.length, ciphertext, ciphertextOutputOffset);
+    int ciphertextOutputOffset = ciphertextOffset + (prependIv ? IV_SIZE_IN_BYTES : 0);
+    int written;
+    EnginePool<Cipher> cipherPool = cipherPools.get();
+    Cipher cipher = cipherPool.acquire();
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, keySpec, params);
+      if (associatedData != null && associatedData.length != 0) {
+        cipher.updateAAD(associatedData);
+      }
+      written = cipher.doFinal(plaintext, 0, plaintext.length, ciphertext, ciphertextOutputOffset);
+    } finally {
+      cipherPool.release(cipher);
+    }
     // For security reasons, AES-GCM encryption must always use tag of TAG_SIZE_IN_BYTES bytes. If
     // so, written must be equal to plaintext.length + TAG_SIZE_IN_BYTES.
 
@@ -120,27 +139,158 @@ public final class InsecureNonceAesGcmJce {
    */
   public byte[] decrypt(final byte[] iv, final byte[] ciphertext, final byte[] associatedData)
       throws GeneralSecurityException {
+    return decrypt(iv, ciphertext, 0, ciphertext.length, associatedData);
+  }
+
+  /**
+   * Same as {@link #decrypt(byte[], byte[], byte[])}, but decrypts the {@code length} bytes of
+   * {@code ciphertext} starting at {@code offset}.
+   */
+  public byte[] decrypt(
+      final byte[] iv,
+      final byte[] ciphertext,
+      int offset,
+      int length,
+      final byte[] associatedData)
+      throws GeneralSecurityException {
     if (iv.length != IV_SIZE_IN_BYTES) {
       throw new GeneralSecurityException("iv is wrong size");
     }
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("invalid ciphertext offset or length");
+    }
     int minimumCiphertextLength =
         prependIv ? IV_SIZE_IN_BYTES + TAG_SIZE_IN_BYTES : TAG_SIZE_IN_BYTES;
-    if (ciphertext.length < minimumCiphertextLength) {
-      throw new GeneralSecurityException("ciphertext too short");
+    if (length < minimumCiphertextLength) {
+      throw new StacklessGeneralSecurityException("ciphertext too short");
     }
     if (prependIv
-        && !ByteBuffer.wrap(iv).equals(ByteBuffer.wrap(ciphertext, 0, IV_SIZE_IN_BYTES))) {
+        && !ByteBuffer.wrap(iv).equals(ByteBuffer.wrap(ciphertext, offset, IV_SIZE_IN_BYTES))) {
       throw new GeneralSecurityException("iv does not match prepended iv");
     }
 
     AlgorithmParameterSpec params = getParams(iv);
-    localCipher.get().init(Cipher.DECRYPT_MODE, keySpec, params);
-    if (associatedData != null && associatedData.length != 0) {
-      localCipher.get().updateAAD(associatedData);
+    int ciphertextInputOffset = prependIv ? offset + IV_SIZE_IN_BYTES : offset;
+    int ciphertextLength = prependIv ? length - IV_SIZE_IN_BYTES : length;
+    EnginePool<Cipher> cipherPool = cipherPools.get();
+    Cipher cipher = cipherPool.acquire();
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, keySpec, params);
+      if (associatedData != null && associatedData.length != 0) {
+        cipher.updateAAD(associatedData);
+      }
+      return cipher.doFinal(ciphertext, ciphertextInputOffset, ciphertextLength);
+    } finally {
+      cipherPool.release(cipher);
+    }
+  }
+
+  /**
+   * Encrypts the remaining bytes of {@code plaintext} and writes the ciphertext to {@code
+   * ciphertext}, prepending the IV if configured to do so.
+   *
+   * <p>{@code plaintext} may be a view of {@code ciphertext} starting at the same position, in
+   * which case the encryption is done in place; this relies on the copy-safety of {@link
+   * Cipher#doFinal(ByteBuffer, ByteBuffer)}.
+   *
+   * @throws BufferOverflowException if {@code ciphertext} is too small.
+   */
+  public void encrypt(
+      final byte[] iv,
+      ByteBuffer plaintext,
+      @Nullable ByteBuffer associatedData,
+      ByteBuffer ciphertext)
+      throws GeneralSecurityException {
+    if (iv.length != IV_SIZE_IN_BYTES) {
+      throw new GeneralSecurityException("iv is wrong size");
+    }
+    int plaintextLength = plaintext.remaining();
+    if (plaintextLength > Integer.MAX_VALUE - IV_SIZE_IN_BYTES - TAG_SIZE_IN_BYTES) {
+      throw new GeneralSecurityException("plaintext too long");
+    }
+    int ivLength = prependIv ? IV_SIZE_IN_BYTES : 0;
+    if (ciphertext.remaining() < ivLength + plaintextLength + TAG_SIZE_IN_BYTES) {
+      throw new BufferOverflowException();
+    }
+
+    ByteBuffer output = ciphertext.duplicate();
+    output.position(ciphertext.position() + ivLength);
+    int written;
+    EnginePool<Cipher> cipherPool = cipherPools.get();
+    Cipher cipher = cipherPool.acquire();
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, keySpec, getParams(iv));
+      if (associatedData != null && associatedData.hasRemaining()) {
+        cipher.updateAAD(associatedData.duplicate());
+      }
+      written = cipher.doFinal(plaintext.duplicate(), output);
+    } finally {
+      cipherPool.release(cipher);
+    }
+    if (written != plaintextLength + TAG_SIZE_IN_BYTES) {
+      int actualTagSize = written - plaintextLength;
+      throw new GeneralSecurityException(
+          String.format(
+              "encryption failed; GCM tag must be %s bytes, but got only %s bytes",
+              TAG_SIZE_IN_BYTES, actualTagSize));
+    }
+    // The IV is written last, so that in-place encryption does not overwrite the plaintext.
+    if (prependIv) {
+      ciphertext.duplicate().put(iv);
+    }
+    plaintext.position(plaintext.limit());
+    ciphertext.position(output.position());
+  }
+
+  /**
+   * Decrypts the remaining bytes of {@code ciphertext} and writes the plaintext to {@code
+   * plaintext}.
+   *
+   * <p>{@code plaintext} may be a view of {@code ciphertext} starting at the same position, in
+   * which case the decryption is done in place.
+   *
+   * @throws BufferOverflowException if {@code plaintext} is too small.
+   */
+  public void decrypt(
+      final byte[] iv,
+      ByteBuffer ciphertext,
+      @Nullable ByteBuffer associatedData,
+      ByteBuffer plaintext)
+      throws GeneralSecurityException {
+    if (iv.length != IV_SIZE_IN_BYTES) {
+      throw new GeneralSecurityException("iv is wrong size");
+    }
+    int ivLength = prependIv ? IV_SIZE_IN_BYTES : 0;
+    if (ciphertext.remaining() < ivLength + TAG_SIZE_IN_BYTES) {
+      throw new GeneralSecurityException("ciphertext too short");
+    }
+    ByteBuffer input = ciphertext.duplicate();
+    if (prependIv) {
+      ByteBuffer prependedIv = ciphertext.duplicate();
+      prependedIv.limit(ciphertext.position() + IV_SIZE_IN_BYTES);
+      if (!ByteBuffer.wrap(iv).equals(prependedIv)) {
+        throw new GeneralSecurityException("iv does not match prepended iv");
+      }
+      input.position(ciphertext.position() + IV_SIZE_IN_BYTES);
+    }
+    if (plaintext.remaining() < input.remaining() - TAG_SIZE_IN_BYTES) {
+      throw new BufferOverflowException();
+    }
+
+    ByteBuffer output = plaintext.duplicate();
+    EnginePool<Cipher> cipherPool = cipherPools.get();
+    Cipher cipher = cipherPool.acquire();
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, keySpec, getParams(iv));
+      if (associatedData != null && associatedData.hasRemaining()) {
+        cipher.updateAAD(associatedData.duplicate());
+      }
+      cipher.doFinal(input, output);
+    } finally {
+      cipherPool.release(cipher);
     }
-    int ciphertextInputOffset = prependIv ? IV_SIZE_IN_BYTES : 0;
-    int ciphertextLength = prependIv ? ciphertext.length - IV_SIZE_IN_BYTES : ciphertext.length;
-    return localCipher.get().doFinal(ciphertext, ciphertextInputOffset, ciphertextLength);
+    ciphertext.position(ciphertext.limit());
+    plaintext.position(output.position());
   }
 
   private static AlgorithmParameterSpec getParams(final byte[] iv) throws GeneralSecurityException {
@@ -68,10 +68,19 @@ abstract class InsecureNonceChaCha20Base {
   /** Encrypts {@code plaintext} using {@code nonce} and writes result to {@code output}. */
   public void encrypt(ByteBuffer output, final byte[] nonce, final byte[] plaintext)
       throws GeneralSecurityException {
-    if (output.remaining() < plaintext.length) {
+    encrypt(output, nonce, ByteBuffer.wrap(plaintext));
+  }
+
+  /**
+   * Encrypts the remaining bytes of {@code plaintext} using {@code nonce} and writes result to
+   * {@code output}.
+   */
+  public void encrypt(ByteBuffer output, final byte[] nonce, ByteBuffer plaintext)
+      throws GeneralSecurityException {
+    if (output.remaining() < plaintext.remaining()) {
       throw new IllegalArgumentException("Given ByteBuffer output is too small");
     }
-    process(nonce, output, ByteBuffer.wrap(plaintext));
+    process(nonce, output, plaintext);
   }
 
   /** Decrypts {@code ciphertext} using {@code nonce}. */
@@ -87,6 +96,18 @@ abstract class InsecureNonceChaCha20Base {
     return plaintext.array();
   }
 
+  /**
+   * Decrypts the remaining bytes of {@code ciphertext} using {@code nonce} and writes result to
+   * {@code output}.
+   */
+  public void decrypt(ByteBuffer output, final byte[] nonce, ByteBuffer ciphertext)
+      throws GeneralSecurityException {
+    if (output.remaining() < ciphertext.remaining()) {
+      throw new IllegalArgumentException("Given ByteBuffer output is too small");
+    }
+    process(nonce, output, ciphertext);
+  }
+
   private void process(final byte[] nonce, ByteBuffer output, ByteBuffer input)
       throws GeneralSecurityException {
     if (nonce.length != nonceSizeInBytes()) {
@@ -20,10 +20,13 @@ import static com.google.crypto.tink.aead.internal.Poly1305.MAC_KEY_SIZE_IN_BYTE
 import static com.google.crypto.tink.aead.internal.Poly1305.MAC_TAG_SIZE_IN_BYTES;
 
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.StacklessAeadBadTagException;
+import com.google.crypto.tink.subtle.Bytes;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
+import javax.annotation.Nullable;
 import javax.crypto.AEADBadTagException;
 
 /**
@@ -90,19 +93,45 @@ abstract class InsecureNonceChaCha20Poly1305Base {
   public void encrypt(
       ByteBuffer output, final byte[] nonce, final byte[] plaintext, final byte[] associatedData)
       throws GeneralSecurityException {
-    if (output.remaining() < plaintext.length + MAC_TAG_SIZE_IN_BYTES) {
+    encrypt(output, nonce, ByteBuffer.wrap(plaintext), associatedData);
+  }
+
+  /**
+   * Encrypts the remaining bytes of {@code plaintext} with Poly1305 authentication based on {@code
+   * associatedData}.
+   *
+   * <p>{@code plaintext} may be a view of {@code output} starting at the same position, in which
+   * case the encryption is done in place. The ciphertext and tag are written at the position of
+   * {@code output}, which is advanced past the tag; {@code output} may have more bytes remaining.
+   *
+   * @param output ciphertext buffer with the following format {@code actual_ciphertext || tag}
+   * @param nonce specified by caller
+   * @param plaintext data to encrypt
+   * @param associatedData associated authenticated data
+   */
+  public void encrypt(
+      ByteBuffer output, final byte[] nonce, ByteBuffer plaintext, final byte[] associatedData)
+      throws GeneralSecurityException {
+    if (plaintext.remaining() > Integer.MAX_VALUE - MAC_TAG_SIZE_IN_BYTES) {
+      throw new GeneralSecurityException("plaintext too long");
+    }
+    if (output.remaining() < plaintext.remaining() + MAC_TAG_SIZE_IN_BYTES) {
       throw new IllegalArgumentException("Given ByteBuffer output is too small");
     }
     int firstPosition = output.position();
+    int ciphertextEnd = firstPosition + plaintext.remaining();
     chacha20.encrypt(output, nonce, plaintext);
-    output.position(firstPosition);
-    output.limit(output.limit() - MAC_TAG_SIZE_IN_BYTES);
+    // output may be larger than needed, so the tag is computed over and written right after the
+    // bytes which were encrypted, and not relative to the limit of output.
+    ByteBuffer actualCiphertext = output.duplicate();
+    actualCiphertext.position(firstPosition);
+    actualCiphertext.limit(ciphertextEnd);
     byte[] aad = associatedData;
     if (aad == null) {
       aad = new byte[0];
     }
-    byte[] tag = Poly1305.computeMac(getMacKey(nonce), macDataRfc8439(aad, output));
-    output.limit(output.limit() + MAC_TAG_SIZE_IN_BYTES);
+    byte[] tag = Poly1305.computeMac(getMacKey(nonce), macDataRfc8439(aad, actualCiphertext));
+    output.position(ciphertextEnd);
     output.put(tag);
   }
 
@@ -137,6 +166,23 @@ abstract class InsecureNonceChaCha20Poly1305Base {
     if (ciphertext.remaining() < MAC_TAG_SIZE_IN_BYTES) {
       throw new GeneralSecurityException("ciphertext too short");
     }
+    byte[] plaintext = tryDecrypt(ciphertext, nonce, associatedData);
+    if (plaintext == null) {
+      throw new StacklessAeadBadTagException("invalid MAC");
+    }
+    return plaintext;
+  }
+
+  /**
+   * Same as {@link #decrypt(ByteBuffer, byte[], byte[])}, but returns {@code null} instead of
+   * throwing if {@code ciphertext} is too short or its tag is invalid.
+   */
+  @Nullable
+  public byte[] tryDecrypt(ByteBuffer ciphertext, final byte[] nonce, final byte[] associatedData)
+      throws GeneralSecurityException {
+    if (ciphertext.remaining() < MAC_TAG_SIZE_IN_BYTES) {
+      return null;
+    }
     int firstPosition = ciphertext.position();
     byte[] tag = new byte[MAC_TAG_SIZE_IN_BYTES];
     ciphertext.position(ciphertext.limit() - MAC_TAG_SIZE_IN_BYTES);
@@ -148,10 +194,8 @@ abstract class InsecureNonceChaCha20Poly1305Base {
     if (aad == null) {
       aad = new byte[0];
     }
-    try {
-      Poly1305.verifyMac(getMacKey(nonce), macDataRfc8439(aad, ciphertext), tag);
-    } catch (GeneralSecurityException ex) {
-      throw new AEADBadTagException(ex.toString());
+    if (!Bytes.equal(Poly1305.computeMac(getMacKey(nonce), macDataRfc8439(aad, ciphertext)), tag)) {
+      return null;
     }
 
     // rewind to decrypt the ciphertext.
@@ -159,6 +203,45 @@ abstract class InsecureNonceChaCha20Poly1305Base {
     return chacha20.decrypt(nonce, ciphertext);
   }
 
+  /**
+   * Decrypts the remaining bytes of {@code ciphertext}, which has the format {@code
+   * actual_ciphertext || tag}, and writes the plaintext to {@code output}.
+   *
+   * <p>The tag is verified before anything is written to {@code output}. {@code output} may be a
+   * view of {@code ciphertext} starting at the same position, in which case the decryption is done
+   * in place. On success, the position of {@code ciphertext} is advanced to its limit.
+   *
+   * @throws GeneralSecurityException when ciphertext is shorter than tag size
+   * @throws AEADBadTagException when the tag is invalid
+   */
+  public void decrypt(
+      ByteBuffer ciphertext, final byte[] nonce, final byte[] associatedData, ByteBuffer output)
+      throws GeneralSecurityException {
+    if (ciphertext.remaining() < MAC_TAG_SIZE_IN_BYTES) {
+      throw new GeneralSecurityException("ciphertext too short");
+    }
+    if (output.remaining() < ciphertext.remaining() - MAC_TAG_SIZE_IN_BYTES) {
+      throw new IllegalArgumentException("Given ByteBuffer output is too small");
+    }
+    ByteBuffer actualCiphertext = ciphertext.duplicate();
+    byte[] tag = new byte[MAC_TAG_SIZE_IN_BYTES];
+    actualCiphertext.position(ciphertext.limit() - MAC_TAG_SIZE_IN_BYTES);
+    actualCiphertext.get(tag);
+    actualCiphertext.position(ciphertext.position());
+    actualCiphertext.limit(ciphertext.limit() - MAC_TAG_SIZE_IN_BYTES);
+    byte[] aad = associatedData;
+    if (aad == null) {
+      aad = new byte[0];
+    }
+    try {
+      Poly1305.verifyMac(getMacKey(nonce), macDataRfc8439(aad, actualCiphertext.duplicate()), tag);
+    } catch (GeneralSecurityException ex) {
+      throw new StacklessAeadBadTagException(ex.toString());
+    }
+    chacha20.decrypt(output, nonce, actualCiphertext);
+    ciphertext.position(ciphertext.limit());
+  }
+
   /** The MAC key is the first 32 bytes of the first key stream block */
   private byte[] getMacKey(final byte[] nonce) throws GeneralSecurityException {
     ByteBuffer firstBlock = macKeyChaCha20.chacha20Block(nonce, 0 /* counter */);
@@ -0,0 +1,427 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead.internal;
+
+import com.google.crypto.tink.AccessesPartialKey;
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.InsecureSecretKeyAccess;
+import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.aead.AeadParameters;
+import com.google.crypto.tink.aead.AesCtrHmacAeadKey;
+import com.google.crypto.tink.aead.AesCtrHmacAeadParameters;
+import com.google.crypto.tink.aead.AesEaxKey;
+import com.google.crypto.tink.aead.AesEaxParameters;
+import com.google.crypto.tink.aead.AesGcmKey;
+import com.google.crypto.tink.aead.AesGcmParameters;
+import com.google.crypto.tink.aead.AesGcmSivKey;
+import com.google.crypto.tink.aead.AesGcmSivParameters;
+import com.google.crypto.tink.aead.ChaCha20Poly1305Key;
+import com.google.crypto.tink.aead.ChaCha20Poly1305Parameters;
+import com.google.crypto.tink.aead.XChaCha20Poly1305Key;
+import com.google.crypto.tink.aead.XChaCha20Poly1305Parameters;
+import com.google.crypto.tink.aead.subtle.AesGcmSiv;
+import com.google.crypto.tink.internal.Random;
+import com.google.crypto.tink.proto.AesCtrParams;
+import com.google.crypto.tink.proto.AesEaxParams;
+import com.google.crypto.tink.proto.HashType;
+import com.google.crypto.tink.proto.HmacParams;
+import com.google.crypto.tink.proto.KeyTemplate;
+import com.google.crypto.tink.subtle.AesEaxJce;
+import com.google.crypto.tink.subtle.AesGcmJce;
+import com.google.crypto.tink.subtle.ChaCha20Poly1305;
+import com.google.crypto.tink.subtle.EncryptThenAuthenticate;
+import com.google.crypto.tink.subtle.XChaCha20Poly1305;
+import com.google.crypto.tink.util.SecretBytes;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Creates the data encryption keys (DEKs) of {@code KmsEnvelopeAead}, and their primitives.
+ *
+ * <p>Envelope ciphertexts contain the DEK as a serialized proto key. The factories returned by
+ * {@link #create} serialize and parse these protos themselves and create the primitive directly,
+ * instead of going through the {@link Registry} for every DEK. DEKs which do not match the
+ * parameters of the factory, such as those created with a different key size, are still parsed
+ * with the {@link Registry}.
+ */
+public abstract class KmsEnvelopeDekFactory {
+  /** Returns a new random DEK, serialized as a proto key. */
+  public abstract byte[] newDek() throws GeneralSecurityException;
+
+  /** Returns the primitive of a DEK returned by {@link #newDek}. */
+  public abstract Aead getAead(byte[] dek) throws GeneralSecurityException;
+
+  /** Returns a factory which uses the {@link Registry} for every DEK. */
+  public static KmsEnvelopeDekFactory fromRegistry(KeyTemplate dekTemplate) {
+    return new RegistryDekFactory(dekTemplate);
+  }
+
+  /**
+   * Returns a factory for DEKs with {@code dekParameters}, which must be the parameters of {@code
+   * dekTemplate}. The output prefix of the parameters is ignored, as DEKs never use one.
+   */
+  public static KmsEnvelopeDekFactory create(KeyTemplate dekTemplate, AeadParameters dekParameters)
+      throws GeneralSecurityException {
+    RegistryDekFactory fallback = new RegistryDekFactory(dekTemplate);
+    if (dekParameters instanceof AesGcmParameters) {
+      return new AesGcmDekFactory((AesGcmParameters) dekParameters, fallback);
+    }
+    if (dekParameters instanceof ChaCha20Poly1305Parameters) {
+      return new ChaCha20Poly1305DekFactory(fallback);
+    }
+    if (dekParameters instanceof XChaCha20Poly1305Parameters) {
+      return new XChaCha20Poly1305DekFactory(fallback);
+    }
+    if (dekParameters instanceof AesGcmSivParameters) {
+      return new AesGcmSivDekFactory((AesGcmSivParameters) dekParameters, fallback);
+    }
+    if (dekParameters instanceof AesEaxParameters) {
+      return new AesEaxDekFactory((AesEaxParameters) dekParameters, fallback);
+    }
+    if (dekParameters instanceof AesCtrHmacAeadParameters) {
+      return new AesCtrHmacAeadDekFactory((AesCtrHmacAeadParameters) dekParameters, fallback);
+    }
+    return fallback;
+  }
+
+  private static SecretBytes toSecretBytes(ByteString keyValue) {
+    return SecretBytes.copyFrom(keyValue.toByteArray(), InsecureSecretKeyAccess.get());
+  }
+
+  private static ByteString randomKeyValue(int size) {
+    return ByteString.copyFrom(Random.randBytes(size));
+  }
+
+  private static final class RegistryDekFactory extends KmsEnvelopeDekFactory {
+    private final KeyTemplate dekTemplate;
+
+    RegistryDekFactory(KeyTemplate dekTemplate) {
+      this.dekTemplate = dekTemplate;
+    }
+
+    @Override
+    public byte[] newDek() throws GeneralSecurityException {
+      return Registry.newKeyData(dekTemplate).getValue().toByteArray();
+    }
+
+    @Override
+    public Aead getAead(byte[] dek) throws GeneralSecurityException {
+      return Registry.getPrimitive(dekTemplate.getTypeUrl(), dek, Aead.class);
+    }
+  }
+
+  @AccessesPartialKey
+  private static final class AesGcmDekFactory extends KmsEnvelopeDekFactory {
+    private final AesGcmParameters parameters;
+    private final RegistryDekFactory fallback;
+
+    AesGcmDekFactory(AesGcmParameters dekParameters, RegistryDekFactory fallback)
+        throws GeneralSecurityException {
+      this.parameters =
+          AesGcmParameters.builder()
+              .setKeySizeBytes(dekParameters.getKeySizeBytes())
+              .setIvSizeBytes(dekParameters.getIvSizeBytes())
+              .setTagSizeBytes(dekParameters.getTagSizeBytes())
+              .setVariant(AesGcmParameters.Variant.NO_PREFIX)
+              .build();
+      this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] newDek() {
+      return com.google.crypto.tink.proto.AesGcmKey.newBuilder()
+          .setKeyValue(randomKeyValue(parameters.getKeySizeBytes()))
+          .build()
+          .toByteArray();
+    }
+
+    @Override
+    public Aead getAead(byte[] dek) throws GeneralSecurityException {
+      com.google.crypto.tink.proto.AesGcmKey protoKey;
+      try {
+        protoKey =
+            com.google.crypto.tink.proto.AesGcmKey.parseFrom(
+                dek, ExtensionRegistryLite.getEmptyRegistry());
+      } catch (InvalidProtocolBufferException e) {
+        return fallback.getAead(dek);
+      }
+      if (protoKey.getVersion() != 0
+          || protoKey.getKeyValue().size() != parameters.getKeySizeBytes()) {
+        return fallback.getAead(dek);
+      }
+      return AesGcmJce.create(
+          AesGcmKey.builder()
+              .setParameters(parameters)
+              .setKeyBytes(toSecretBytes(protoKey.getKeyValue()))
+              .build());
+    }
+  }
+
+  private static final class ChaCha20Poly1305DekFactory extends KmsEnvelopeDekFactory {
+    private static final int KEY_SIZE_IN_BYTES = 32;
+    private final RegistryDekFactory fallback;
+
+    ChaCha20Poly1305DekFactory(RegistryDekFactory fallback) {
+      this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] newDek() {
+      return com.google.crypto.tink.proto.ChaCha20Poly1305Key.newBuilder()
+          .setKeyValue(randomKeyValue(KEY_SIZE_IN_BYTES))
+          .build()
+          .toByteArray();
+    }
+
+    @Override
+    public Aead getAead(byte[] dek) throws GeneralSecurityException {
+      com.google.crypto.tink.proto.ChaCha20Poly1305Key protoKey;
+      try {
+        protoKey =
+            com.google.crypto.tink.proto.ChaCha20Poly1305Key.parseFrom(
+                dek, ExtensionRegistryLite.getEmptyRegistry());
+      } catch (InvalidProtocolBufferException e) {
+        return fallback.getAead(dek);
+      }
+      if (protoKey.getVersion() != 0 || protoKey.getKeyValue().size() != KEY_SIZE_IN_BYTES) {
+        return fallback.getAead(dek);
+      }
+      return ChaCha20Poly1305.create(
+          ChaCha20Poly1305Key.create(toSecretBytes(protoKey.getKeyValue())));
+    }
+  }
+
+  private static final class XChaCha20Poly1305DekFactory extends KmsEnvelopeDekFactory {
+    private static final int KEY_SIZE_IN_BYTES = 32;
+    private final RegistryDekFactory fallback;
+
+    XChaCha20Poly1305DekFactory(RegistryDekFactory fallback) {
+      this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] newDek() {
+      return com.google.crypto.tink.proto.XChaCha20Poly1305Key.newBuilder()
+          .setKeyValue(randomKeyValue(KEY_SIZE_IN_BYTES))
+          .build()
+          .toByteArray();
+    }
+
+    @Override
+    public Aead getAead(byte[] dek) throws GeneralSecurityException {
+      com.google.crypto.tink.proto.XChaCha20Poly1305Key protoKey;
+      try {
+        protoKey =
+            com.google.crypto.tink.proto.XChaCha20Poly1305Key.parseFrom(
+                dek, ExtensionRegistryLite.getEmptyRegistry());
+      } catch (InvalidProtocolBufferException e) {
+        return fallback.getAead(dek);
+      }
+      if (protoKey.getVersion() != 0 || protoKey.getKeyValue().size() != KEY_SIZE_IN_BYTES) {
+        return fallback.getAead(dek);
+      }
+      return XChaCha20Poly1305.create(
+          XChaCha20Poly1305Key.create(toSecretBytes(protoKey.getKeyValue())));
+    }
+  }
+
+  @AccessesPartialKey
+  private static final class AesGcmSivDekFactory extends KmsEnvelopeDekFactory {
+    private final AesGcmSivParameters parameters;
+    private final RegistryDekFactory fallback;
+
+    AesGcmSivDekFactory(AesGcmSivParameters dekParameters, RegistryDekFactory fallback)
+        throws GeneralSecurityException {
+      this.parameters =
+          AesGcmSivParameters.builder()
+              .setKeySizeBytes(dekParameters.getKeySizeBytes())
+              .setVariant(AesGcmSivParameters.Variant.NO_PREFIX)
+              .build();
+      this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] newDek() {
+      return com.google.crypto.tink.proto.AesGcmSivKey.newBuilder()
+          .setKeyValue(randomKeyValue(parameters.getKeySizeBytes()))
+          .build()
+          .toByteArray();
+    }
+
+    @Override
+    public Aead getAead(byte[] dek) throws GeneralSecurityException {
+      com.google.crypto.tink.proto.AesGcmSivKey protoKey;
+      try {
+        protoKey =
+            com.google.crypto.tink.proto.AesGcmSivKey.parseFrom(
+                dek, ExtensionRegistryLite.getEmptyRegistry());
+      } catch (InvalidProtocolBufferException e) {
+        return fallback.getAead(dek);
+      }
+      if (protoKey.getVersion() != 0
+          || protoKey.getKeyValue().size() != parameters.getKeySizeBytes()) {
+        return fallback.getAead(dek);
+      }
+      return AesGcmSiv.create(
+          AesGcmSivKey.builder()
+              .setParameters(parameters)
+              .setKeyBytes(toSecretBytes(protoKey.getKeyValue()))
+              .build());
+    }
+  }
+
+  @AccessesPartialKey
+  private static final class AesEaxDekFactory extends KmsEnvelopeDekFactory {
+    private final AesEaxParameters parameters;
+    private final RegistryDekFactory fallback;
+
+    AesEaxDekFactory(AesEaxParameters dekParameters, RegistryDekFactory fallback)
+        throws GeneralSecurityException {
+      this.parameters =
+          AesEaxParameters.builder()
+              .setKeySizeBytes(dekParameters.getKeySizeBytes())
+              .setIvSizeBytes(dekParameters.getIvSizeBytes())
+              .setTagSizeBytes(dekParameters.getTagSizeBytes())
+              .setVariant(AesEaxParameters.Variant.NO_PREFIX)
+              .build();
+      this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] newDek() {
+      return com.google.crypto.tink.proto.AesEaxKey.newBuilder()
+          .setParams(AesEaxParams.newBuilder().setIvSize(parameters.getIvSizeBytes()))
+          .setKeyValue(randomKeyValue(parameters.getKeySizeBytes()))
+          .build()
+          .toByteArray();
+    }
+
+    @Override
+    public Aead getAead(byte[] dek) throws GeneralSecurityException {
+      com.google.crypto.tink.proto.AesEaxKey protoKey;
+      try {
+        protoKey =
+            com.google.crypto.tink.proto.AesEaxKey.parseFrom(
+                dek, ExtensionRegistryLite.getEmptyRegistry());
+      } catch (InvalidProtocolBufferException e) {
+        return fallback.getAead(dek);
+      }
+      if (protoKey.getVersion() != 0
+          || protoKey.getKeyValue().size() != parameters.getKeySizeBytes()
+          || protoKey.getParams().getIvSize() != parameters.getIvSizeBytes()) {
+        return fallback.getAead(dek);
+      }
+      return AesEaxJce.create(
+          AesEaxKey.builder()
+              .setParameters(parameters)
+              .setKeyBytes(toSecretBytes(protoKey.getKeyValue()))
+              .build());
+    }
+  }
+
+  @AccessesPartialKey
+  private static final class AesCtrHmacAeadDekFactory extends KmsEnvelopeDekFactory {
+    private final AesCtrHmacAeadParameters parameters;
+    private final AesCtrParams aesCtrParams;
+    private final HmacParams hmacParams;
+    private final RegistryDekFactory fallback;
+
+    AesCtrHmacAeadDekFactory(AesCtrHmacAeadParameters dekParameters, RegistryDekFactory fallback)
+        throws GeneralSecurityException {
+      this.parameters =
+          AesCtrHmacAeadParameters.builder()
+              .setAesKeySizeBytes(dekParameters.getAesKeySizeBytes())
+              .setHmacKeySizeBytes(dekParameters.getHmacKeySizeBytes())
+              .setIvSizeBytes(dekParameters.getIvSizeBytes())
+              .setTagSizeBytes(dekParameters.getTagSizeBytes())
+              .setHashType(dekParameters.getHashType())
+              .setVariant(AesCtrHmacAeadParameters.Variant.NO_PREFIX)
+              .build();
+      this.aesCtrParams = AesCtrParams.newBuilder().setIvSize(parameters.getIvSizeBytes()).build();
+      this.hmacParams =
+          HmacParams.newBuilder()
+              .setHash(toProtoHashType(parameters.getHashType()))
+              .setTagSize(parameters.getTagSizeBytes())
+              .build();
+      this.fallback = fallback;
+    }
+
+    private static HashType toProtoHashType(AesCtrHmacAeadParameters.HashType hashType)
+        throws GeneralSecurityException {
+      if (AesCtrHmacAeadParameters.HashType.SHA1.equals(hashType)) {
+        return HashType.SHA1;
+      }
+      if (AesCtrHmacAeadParameters.HashType.SHA224.equals(hashType)) {
+        return HashType.SHA224;
+      }
+      if (AesCtrHmacAeadParameters.HashType.SHA256.equals(hashType)) {
+        return HashType.SHA256;
+      }
+      if (AesCtrHmacAeadParameters.HashType.SHA384.equals(hashType)) {
+        return HashType.SHA384;
+      }
+      if (AesCtrHmacAeadParameters.HashType.SHA512.equals(hashType)) {
+        return HashType.SHA512;
+      }
+      throw new GeneralSecurityException("Unable to serialize HashType " + hashType);
+    }
+
+    @Override
+    public byte[] newDek() {
+      return com.google.crypto.tink.proto.AesCtrHmacAeadKey.newBuilder()
+          .setAesCtrKey(
+              com.google.crypto.tink.proto.AesCtrKey.newBuilder()
+                  .setParams(aesCtrParams)
+                  .setKeyValue(randomKeyValue(parameters.getAesKeySizeBytes())))
+          .setHmacKey(
+              com.google.crypto.tink.proto.HmacKey.newBuilder()
+                  .setParams(hmacParams)
+                  .setKeyValue(randomKeyValue(parameters.getHmacKeySizeBytes())))
+          .build()
+          .toByteArray();
+    }
+
+    @Override
+    public Aead getAead(byte[] dek) throws GeneralSecurityException {
+      com.google.crypto.tink.proto.AesCtrHmacAeadKey protoKey;
+      try {
+        protoKey =
+            com.google.crypto.tink.proto.AesCtrHmacAeadKey.parseFrom(
+                dek, ExtensionRegistryLite.getEmptyRegistry());
+      } catch (InvalidProtocolBufferException e) {
+        return fallback.getAead(dek);
+      }
+      if (protoKey.getVersion() != 0
+          || protoKey.getAesCtrKey().getVersion() != 0
+          || protoKey.getHmacKey().getVersion() != 0
+          || !protoKey.getAesCtrKey().getParams().equals(aesCtrParams)
+          || !protoKey.getHmacKey().getParams().equals(hmacParams)
+          || protoKey.getAesCtrKey().getKeyValue().size() != parameters.getAesKeySizeBytes()
+          || protoKey.getHmacKey().getKeyValue().size() != parameters.getHmacKeySizeBytes()) {
+        return fallback.getAead(dek);
+      }
+      return EncryptThenAuthenticate.create(
+          AesCtrHmacAeadKey.builder()
+              .setParameters(parameters)
+              .setAesKeyBytes(toSecretBytes(protoKey.getAesCtrKey().getKeyValue()))
+              .setHmacKeyBytes(toSecretBytes(protoKey.getHmacKey().getKeyValue()))
+              .build());
+    }
+  }
+}
@@ -93,6 +93,12 @@ public class LegacyFullAead implements Aead {
     if (outputPrefixType == OutputPrefixType.RAW) {
       return rawAead.encrypt(plaintext, associatedData);
     }
+    if (rawAead instanceof AeadWithOffsets) {
+      byte[] ciphertext =
+          ((AeadWithOffsets) rawAead).encrypt(plaintext, associatedData, identifier.length);
+      System.arraycopy(identifier, 0, ciphertext, 0, identifier.length);
+      return ciphertext;
+    }
     return Bytes.concat(identifier, rawAead.encrypt(plaintext, associatedData));
   }
 
@@ -106,6 +112,14 @@ public class LegacyFullAead implements Aead {
       throw new GeneralSecurityException("wrong prefix");
     }
 
+    if (rawAead instanceof AeadWithOffsets) {
+      return ((AeadWithOffsets) rawAead)
+          .decrypt(
+              ciphertext,
+              CryptoFormat.NON_RAW_PREFIX_SIZE,
+              ciphertext.length - CryptoFormat.NON_RAW_PREFIX_SIZE,
+              associatedData);
+    }
     return rawAead.decrypt(
         Arrays.copyOfRange(ciphertext, CryptoFormat.NON_RAW_PREFIX_SIZE, ciphertext.length),
         associatedData);
@@ -16,6 +16,7 @@
 
 package com.google.crypto.tink.aead.internal;
 
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.subtle.Bytes;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
@@ -203,7 +204,7 @@ public class Poly1305 {
   public static void verifyMac(final byte[] key, byte[] data, byte[] mac)
       throws GeneralSecurityException {
     if (!Bytes.equal(computeMac(key, data), mac)) {
-      throw new GeneralSecurityException("invalid MAC");
+      throw new StacklessGeneralSecurityException("invalid MAC");
     }
   }
 }
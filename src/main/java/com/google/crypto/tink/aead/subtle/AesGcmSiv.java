@@ -23,6 +23,7 @@ import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.aead.AesGcmSivKey;
 import com.google.crypto.tink.annotations.Alpha;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.subtle.Bytes;
 import com.google.crypto.tink.subtle.EngineFactory;
 import com.google.crypto.tink.subtle.Hex;
@@ -71,23 +72,16 @@ public final class AesGcmSiv implements Aead {
     }
   }
 
-  // localAesGcmSivCipher.get() may be null if the cipher returned by EngineFactory is not a valid
-  // AES GCM SIV cipher.
-  private static final ThreadLocal<Cipher> localAesGcmSivCipher =
-      new ThreadLocal<Cipher>() {
-        @Override
-        protected Cipher initialValue() {
-          try {
+  private static final EnginePool<Cipher> cipherPool =
+      EnginePool.create(
+          () -> {
             Cipher cipher = EngineFactory.CIPHER.getInstance("AES/GCM-SIV/NoPadding");
             if (!isAesGcmSivCipher(cipher)) {
-              return null;
+              throw new GeneralSecurityException(
+                  "AES GCM SIV cipher is not available or is invalid.");
             }
             return cipher;
-          } catch (GeneralSecurityException ex) {
-            throw new IllegalStateException(ex);
-          }
-        }
-      };
+          });
 
   // All instances of this class use a 12 byte IV and a 16 byte tag.
   private static final int IV_SIZE_IN_BYTES = 12;
@@ -113,17 +107,8 @@ public final class AesGcmSiv implements Aead {
     this(key, new byte[0]);
   }
 
-  private Cipher getAesGcmSivCipher() throws GeneralSecurityException {
-    Cipher cipher = localAesGcmSivCipher.get();
-    if (cipher == null) {
-      throw new GeneralSecurityException("AES GCM SIV cipher is not available or is invalid.");
-    }
-    return cipher;
-  }
-
   private byte[] rawEncrypt(final byte[] plaintext, final byte[] associatedData)
       throws GeneralSecurityException {
-    Cipher cipher = getAesGcmSivCipher();
     // Check that ciphertext is not longer than the max. size of a Java array.
     if (plaintext.length > Integer.MAX_VALUE - IV_SIZE_IN_BYTES - TAG_SIZE_IN_BYTES) {
       throw new GeneralSecurityException("plaintext too long");
@@ -133,11 +118,17 @@ public final class AesGcmSiv implements Aead {
     System.arraycopy(iv, 0, ciphertext, 0, IV_SIZE_IN_BYTES);
 
     AlgorithmParameterSpec params = getParams(iv);
-    cipher.init(Cipher.ENCRYPT_MODE, keySpec, params);
-    if (associatedData != null && associatedData.length != 0) {
-      cipher.updateAAD(associatedData);
+    int written;
+    Cipher cipher = cipherPool.acquire();
+    try {
+      cipher.init(Cipher.ENCRYPT_MODE, keySpec, params);
+      if (associatedData != null && associatedData.length != 0) {
+        cipher.updateAAD(associatedData);
+      }
+      written = cipher.doFinal(plaintext, 0, plaintext.length, ciphertext, IV_SIZE_IN_BYTES);
+    } finally {
+      cipherPool.release(cipher);
     }
-    int written = cipher.doFinal(plaintext, 0, plaintext.length, ciphertext, IV_SIZE_IN_BYTES);
     // For security reasons, AES-GCM encryption must always use tag of TAG_SIZE_IN_BYTES bytes. If
     // so, written must be equal to plaintext.length + TAG_SIZE_IN_BYTES.
 
@@ -169,17 +160,21 @@ public final class AesGcmSiv implements Aead {
 
   private byte[] rawDecrypt(final byte[] ciphertext, final byte[] associatedData)
       throws GeneralSecurityException {
-    Cipher cipher = getAesGcmSivCipher();
     if (ciphertext.length < IV_SIZE_IN_BYTES + TAG_SIZE_IN_BYTES) {
       throw new GeneralSecurityException("ciphertext too short");
     }
 
     AlgorithmParameterSpec params = getParams(ciphertext, 0, IV_SIZE_IN_BYTES);
-    cipher.init(Cipher.DECRYPT_MODE, keySpec, params);
-    if (associatedData != null && associatedData.length != 0) {
-      cipher.updateAAD(associatedData);
+    Cipher cipher = cipherPool.acquire();
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, keySpec, params);
+      if (associatedData != null && associatedData.length != 0) {
+        cipher.updateAAD(associatedData);
+      }
+      return cipher.doFinal(ciphertext, IV_SIZE_IN_BYTES, ciphertext.length - IV_SIZE_IN_BYTES);
+    } finally {
+      cipherPool.release(cipher);
     }
-    return cipher.doFinal(ciphertext, IV_SIZE_IN_BYTES, ciphertext.length - IV_SIZE_IN_BYTES);
   }
 
   /**
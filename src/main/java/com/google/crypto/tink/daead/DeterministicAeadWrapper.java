@@ -21,14 +21,17 @@ import com.google.crypto.tink.DeterministicAead;
 import com.google.crypto.tink.PrimitiveSet;
 import com.google.crypto.tink.PrimitiveWrapper;
 import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.daead.internal.DeterministicAeadWithOffsets;
 import com.google.crypto.tink.internal.MonitoringUtil;
 import com.google.crypto.tink.internal.MutableMonitoringRegistry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.monitoring.MonitoringClient;
 import com.google.crypto.tink.monitoring.MonitoringKeysetInfo;
 import com.google.crypto.tink.subtle.Bytes;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * The implementation of {@code PrimitiveWrapper<DeterministicAead>}.
@@ -40,18 +43,26 @@ import java.util.List;
  * primitive tries all keys with {@link com.google.crypto.tink.proto.OutputPrefixType#RAW}.
  */
 public class DeterministicAeadWrapper
-    implements PrimitiveWrapper<DeterministicAead, DeterministicAead> {
+    implements PrimitiveWrapper<DeterministicAead, DeterministicAead>, SinglePrimitiveWrapper {
 
   private static final DeterministicAeadWrapper WRAPPER = new DeterministicAeadWrapper();
 
   private static class WrappedDeterministicAead implements DeterministicAead {
     private final PrimitiveSet<DeterministicAead> primitives;
+    @Nullable private final PrimitiveSet.Entry<DeterministicAead> primary;
+    // The output prefix of the primary, cached to avoid a copy on every call.
+    @Nullable private final byte[] primaryIdentifier;
 
     private final MonitoringClient.Logger encLogger;
     private final MonitoringClient.Logger decLogger;
+    // Index into primitives.getRawPrimitives() of the entry which last decrypted a ciphertext.
+    // Concurrent updates only change the order in which entries are tried.
+    private volatile int lastRawIndex = 0;
 
     public WrappedDeterministicAead(PrimitiveSet<DeterministicAead> primitives) {
       this.primitives = primitives;
+      this.primary = primitives.getPrimary();
+      this.primaryIdentifier = primary == null ? null : primary.getIdentifier();
       if (primitives.hasAnnotations()) {
         MonitoringClient client = MutableMonitoringRegistry.globalInstance().getMonitoringClient();
         MonitoringKeysetInfo keysetInfo = MonitoringUtil.getMonitoringKeysetInfo(primitives);
@@ -67,14 +78,19 @@ public class DeterministicAeadWrapper
     public byte[] encryptDeterministically(final byte[] plaintext, final byte[] associatedData)
         throws GeneralSecurityException {
       try {
-        byte[] output =
-            Bytes.concat(
-                primitives.getPrimary().getIdentifier(),
-                primitives
-                    .getPrimary()
-                    .getPrimitive()
-                    .encryptDeterministically(plaintext, associatedData));
-        encLogger.log(primitives.getPrimary().getKeyId(), plaintext.length);
+        DeterministicAead primitive = primary.getPrimitiveOrThrow();
+        byte[] output;
+        if (primitive instanceof DeterministicAeadWithOffsets) {
+          output =
+              ((DeterministicAeadWithOffsets) primitive)
+                  .encryptDeterministically(plaintext, associatedData, primaryIdentifier.length);
+          System.arraycopy(primaryIdentifier, 0, output, 0, primaryIdentifier.length);
+        } else {
+          output =
+              Bytes.concat(
+                  primaryIdentifier, primitive.encryptDeterministically(plaintext, associatedData));
+        }
+        encLogger.log(primary.getKeyId(), plaintext.length);
         return output;
       } catch (GeneralSecurityException e) {
         encLogger.logFailure();
@@ -85,38 +101,83 @@ public class DeterministicAeadWrapper
     @Override
     public byte[] decryptDeterministically(final byte[] ciphertext, final byte[] associatedData)
         throws GeneralSecurityException {
+      int attempts = 0;
       if (ciphertext.length > CryptoFormat.NON_RAW_PREFIX_SIZE) {
-        byte[] prefix = Arrays.copyOf(ciphertext, CryptoFormat.NON_RAW_PREFIX_SIZE);
-        byte[] ciphertextNoPrefix =
-            Arrays.copyOfRange(ciphertext, CryptoFormat.NON_RAW_PREFIX_SIZE, ciphertext.length);
-        List<PrimitiveSet.Entry<DeterministicAead>> entries = primitives.getPrimitive(prefix);
+        List<PrimitiveSet.Entry<DeterministicAead>> entries =
+            primitives.getPrimitiveForPrefixOf(ciphertext);
         for (PrimitiveSet.Entry<DeterministicAead> entry : entries) {
-          try {
-            byte[] output =
-                entry.getPrimitive().decryptDeterministically(ciphertextNoPrefix, associatedData);
-            decLogger.log(entry.getKeyId(), ciphertextNoPrefix.length);
+          attempts++;
+          byte[] output =
+              tryDecrypt(entry, ciphertext, CryptoFormat.NON_RAW_PREFIX_SIZE, associatedData);
+          if (output != null) {
+            decLogger.logAttempts(attempts);
+            decLogger.log(entry.getKeyId(), ciphertext.length - CryptoFormat.NON_RAW_PREFIX_SIZE);
             return output;
-          } catch (GeneralSecurityException e) {
-            continue;
           }
         }
       }
 
-      // Let's try all RAW keys.
+      // Let's try all RAW keys, starting with the one which succeeded last.
       List<PrimitiveSet.Entry<DeterministicAead>> entries = primitives.getRawPrimitives();
-      for (PrimitiveSet.Entry<DeterministicAead> entry : entries) {
-        try {
-          byte[] output = entry.getPrimitive().decryptDeterministically(ciphertext, associatedData);
+      int first = lastRawIndex;
+      for (int i = 0; i < entries.size(); i++) {
+        int index = rawEntryIndex(i, first);
+        PrimitiveSet.Entry<DeterministicAead> entry = entries.get(index);
+        byte[] output = tryDecrypt(entry, ciphertext, 0, associatedData);
+        if (output != null) {
+          if (index != first) {
+            lastRawIndex = index;
+          }
+          decLogger.logAttempts(attempts + i + 1);
           decLogger.log(entry.getKeyId(), ciphertext.length);
           return output;
-        } catch (GeneralSecurityException e) {
-          continue;
         }
       }
       // nothing works.
       decLogger.logFailure();
       throw new GeneralSecurityException("decryption failed");
     }
+
+    /**
+     * Returns the index of the RAW entry to try in the {@code attempt}-th attempt: first the entry
+     * at {@code first}, then all others in keyset order.
+     */
+    private static int rawEntryIndex(int attempt, int first) {
+      if (attempt == 0) {
+        return first;
+      }
+      return attempt <= first ? attempt - 1 : attempt;
+    }
+
+    /**
+     * Decrypts {@code ciphertext} starting at {@code offset} with the primitive of {@code entry},
+     * or returns {@code null} if that fails, including if the primitive cannot be created.
+     *
+     * <p>If the primitive supports offsets, the ciphertext is not copied, and failures are reported
+     * without creating an exception.
+     */
+    @Nullable
+    private static byte[] tryDecrypt(
+        PrimitiveSet.Entry<DeterministicAead> entry,
+        byte[] ciphertext,
+        int offset,
+        byte[] associatedData) {
+      try {
+        DeterministicAead primitive = entry.getPrimitiveOrThrow();
+        if (primitive instanceof DeterministicAeadWithOffsets) {
+          return ((DeterministicAeadWithOffsets) primitive)
+              .tryDecryptDeterministically(
+                  ciphertext, offset, ciphertext.length - offset, associatedData);
+        }
+        if (offset == 0) {
+          return primitive.decryptDeterministically(ciphertext, associatedData);
+        }
+        return primitive.decryptDeterministically(
+            Arrays.copyOfRange(ciphertext, offset, ciphertext.length), associatedData);
+      } catch (GeneralSecurityException e) {
+        return null;
+      }
+    }
   }
 
   DeterministicAeadWrapper() {}
@@ -136,6 +197,11 @@ public class DeterministicAeadWrapper
     return DeterministicAead.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return false;
+  }
+
   public static void register() throws GeneralSecurityException {
     Registry.registerPrimitiveWrapper(WRAPPER);
   }
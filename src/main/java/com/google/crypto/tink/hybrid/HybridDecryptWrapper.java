@@ -20,8 +20,10 @@ import com.google.crypto.tink.HybridDecrypt;
 import com.google.crypto.tink.PrimitiveSet;
 import com.google.crypto.tink.PrimitiveWrapper;
 import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.hybrid.internal.HybridDecryptWithOffsets;
 import com.google.crypto.tink.internal.MonitoringUtil;
 import com.google.crypto.tink.internal.MutableMonitoringRegistry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.monitoring.MonitoringClient;
 import com.google.crypto.tink.monitoring.MonitoringKeysetInfo;
 import java.security.GeneralSecurityException;
@@ -36,7 +38,8 @@ import java.util.List;
  * the keys associated with the prefix do not work, the primitive tries all keys with {@link
  * com.google.crypto.tink.proto.OutputPrefixType#RAW}.
  */
-public class HybridDecryptWrapper implements PrimitiveWrapper<HybridDecrypt, HybridDecrypt> {
+public class HybridDecryptWrapper
+    implements PrimitiveWrapper<HybridDecrypt, HybridDecrypt>, SinglePrimitiveWrapper {
 
   private static final HybridDecryptWrapper WRAPPER = new HybridDecryptWrapper();
 
@@ -60,14 +63,17 @@ public class HybridDecryptWrapper implements PrimitiveWrapper<HybridDecrypt, Hyb
     public byte[] decrypt(final byte[] ciphertext, final byte[] contextInfo)
         throws GeneralSecurityException {
       if (ciphertext.length > CryptoFormat.NON_RAW_PREFIX_SIZE) {
-        byte[] prefix = Arrays.copyOfRange(ciphertext, 0, CryptoFormat.NON_RAW_PREFIX_SIZE);
-        byte[] ciphertextNoPrefix =
-            Arrays.copyOfRange(ciphertext, CryptoFormat.NON_RAW_PREFIX_SIZE, ciphertext.length);
-        List<PrimitiveSet.Entry<HybridDecrypt>> entries = primitives.getPrimitive(prefix);
+        List<PrimitiveSet.Entry<HybridDecrypt>> entries =
+            primitives.getPrimitiveForPrefixOf(ciphertext);
         for (PrimitiveSet.Entry<HybridDecrypt> entry : entries) {
           try {
-            byte[] output = entry.getPrimitive().decrypt(ciphertextNoPrefix, contextInfo);
-            decLogger.log(entry.getKeyId(), ciphertextNoPrefix.length);
+            byte[] output =
+                decryptNoPrefix(
+                    entry.getPrimitiveOrThrow(),
+                    ciphertext,
+                    CryptoFormat.NON_RAW_PREFIX_SIZE,
+                    contextInfo);
+            decLogger.log(entry.getKeyId(), ciphertext.length - CryptoFormat.NON_RAW_PREFIX_SIZE);
             return output;
           } catch (GeneralSecurityException e) {
             continue;
@@ -78,7 +84,7 @@ public class HybridDecryptWrapper implements PrimitiveWrapper<HybridDecrypt, Hyb
       List<PrimitiveSet.Entry<HybridDecrypt>> entries = primitives.getRawPrimitives();
       for (PrimitiveSet.Entry<HybridDecrypt> entry : entries) {
         try {
-          byte[] output = entry.getPrimitive().decrypt(ciphertext, contextInfo);
+          byte[] output = entry.getPrimitiveOrThrow().decrypt(ciphertext, contextInfo);
           decLogger.log(entry.getKeyId(), ciphertext.length);
           return output;
         } catch (GeneralSecurityException e) {
@@ -89,6 +95,17 @@ public class HybridDecryptWrapper implements PrimitiveWrapper<HybridDecrypt, Hyb
       decLogger.logFailure();
       throw new GeneralSecurityException("decryption failed");
     }
+
+    private static byte[] decryptNoPrefix(
+        HybridDecrypt primitive, byte[] ciphertext, int offset, byte[] contextInfo)
+        throws GeneralSecurityException {
+      if (primitive instanceof HybridDecryptWithOffsets) {
+        return ((HybridDecryptWithOffsets) primitive)
+            .decrypt(ciphertext, offset, ciphertext.length - offset, contextInfo);
+      }
+      return primitive.decrypt(
+          Arrays.copyOfRange(ciphertext, offset, ciphertext.length), contextInfo);
+    }
   }
 
   HybridDecryptWrapper() {}
@@ -108,6 +125,11 @@ public class HybridDecryptWrapper implements PrimitiveWrapper<HybridDecrypt, Hyb
     return HybridDecrypt.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return false;
+  }
+
   /**
    * Register the wrapper within the registry.
    *
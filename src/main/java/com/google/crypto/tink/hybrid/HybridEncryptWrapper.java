@@ -21,6 +21,7 @@ import com.google.crypto.tink.PrimitiveWrapper;
 import com.google.crypto.tink.Registry;
 import com.google.crypto.tink.internal.MonitoringUtil;
 import com.google.crypto.tink.internal.MutableMonitoringRegistry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.monitoring.MonitoringClient;
 import com.google.crypto.tink.monitoring.MonitoringKeysetInfo;
 import com.google.crypto.tink.subtle.Bytes;
@@ -33,7 +34,8 @@ import java.security.GeneralSecurityException;
  * it uses the primary key in the keyset, and prepends to the ciphertext a certain prefix associated
  * with the primary key.
  */
-public class HybridEncryptWrapper implements PrimitiveWrapper<HybridEncrypt, HybridEncrypt> {
+public class HybridEncryptWrapper
+    implements PrimitiveWrapper<HybridEncrypt, HybridEncrypt>, SinglePrimitiveWrapper {
 
   private static final HybridEncryptWrapper WRAPPER = new HybridEncryptWrapper();
 
@@ -64,7 +66,7 @@ public class HybridEncryptWrapper implements PrimitiveWrapper<HybridEncrypt, Hyb
         byte[] output =
             Bytes.concat(
                 primitives.getPrimary().getIdentifier(),
-                primitives.getPrimary().getPrimitive().encrypt(plaintext, contextInfo));
+                primitives.getPrimary().getPrimitiveOrThrow().encrypt(plaintext, contextInfo));
         encLogger.log(primitives.getPrimary().getKeyId(), plaintext.length);
         return output;
       } catch (GeneralSecurityException e) {
@@ -91,6 +93,11 @@ public class HybridEncryptWrapper implements PrimitiveWrapper<HybridEncrypt, Hyb
     return HybridEncrypt.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return false;
+  }
+
   /**
    * Register the wrapper within the registry.
    *
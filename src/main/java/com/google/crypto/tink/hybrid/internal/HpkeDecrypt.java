@@ -22,6 +22,7 @@ import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.HybridDecrypt;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.hybrid.HpkeParameters;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.proto.HpkeParams;
 import com.google.crypto.tink.proto.HpkePrivateKey;
 import com.google.crypto.tink.subtle.EllipticCurves;
@@ -36,7 +37,7 @@ import java.util.Arrays;
  * <p>HPKE RFC: https://www.rfc-editor.org/rfc/rfc9180.html
  */
 @Immutable
-final class HpkeDecrypt implements HybridDecrypt {
+final class HpkeDecrypt implements HybridDecryptWithOffsets {
   private static final byte[] EMPTY_ASSOCIATED_DATA = new byte[0];
 
   private final HpkeKemPrivateKey recipientPrivateKey;
@@ -179,18 +180,29 @@ final class HpkeDecrypt implements HybridDecrypt {
         /* outputPrefix= */ Bytes.copyFrom(new byte[0]));
   }
 
-  private byte[] decryptNoPrefix(final byte[] ciphertext, final byte[] contextInfo)
+  @Override
+  public byte[] decrypt(final byte[] ciphertext, int offset, int length, final byte[] contextInfo)
       throws GeneralSecurityException {
-    if (ciphertext.length < encapsulatedKeyLength) {
-      throw new GeneralSecurityException("Ciphertext is too short.");
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("Invalid offset or length.");
+    }
+    if (!isPrefix(outputPrefix, ciphertext, offset) || length < outputPrefix.length) {
+      throw new StacklessGeneralSecurityException("Invalid ciphertext (output prefix mismatch)");
+    }
+    int encapsulatedKeyOffset = offset + outputPrefix.length;
+    if (length - outputPrefix.length < encapsulatedKeyLength) {
+      throw new StacklessGeneralSecurityException("Ciphertext is too short.");
     }
     byte[] info = contextInfo;
     if (info == null) {
       info = new byte[0];
     }
-    byte[] encapsulatedKey = Arrays.copyOf(ciphertext, encapsulatedKeyLength);
+    byte[] encapsulatedKey =
+        Arrays.copyOfRange(
+            ciphertext, encapsulatedKeyOffset, encapsulatedKeyOffset + encapsulatedKeyLength);
     byte[] aeadCiphertext =
-        Arrays.copyOfRange(ciphertext, encapsulatedKeyLength, ciphertext.length);
+        Arrays.copyOfRange(
+            ciphertext, encapsulatedKeyOffset + encapsulatedKeyLength, offset + length);
     HpkeContext context =
         HpkeContext.createRecipientContext(
             encapsulatedKey, recipientPrivateKey, kem, kdf, aead, info);
@@ -200,14 +212,6 @@ final class HpkeDecrypt implements HybridDecrypt {
   @Override
   public byte[] decrypt(final byte[] ciphertext, final byte[] contextInfo)
       throws GeneralSecurityException {
-    if (outputPrefix.length == 0) {
-      return decryptNoPrefix(ciphertext, contextInfo);
-    }
-    if (!isPrefix(outputPrefix, ciphertext)) {
-      throw new GeneralSecurityException("Invalid ciphertext (output prefix mismatch)");
-    }
-    byte[] ciphertextNoPrefix =
-        Arrays.copyOfRange(ciphertext, outputPrefix.length, ciphertext.length);
-    return decryptNoPrefix(ciphertextNoPrefix, contextInfo);
+    return decrypt(ciphertext, 0, ciphertext.length, contextInfo);
   }
 }
@@ -0,0 +1,36 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.hybrid.internal;
+
+import com.google.crypto.tink.HybridDecrypt;
+import java.security.GeneralSecurityException;
+
+/**
+ * Internal interface for {@link HybridDecrypt} primitives which can decrypt a ciphertext which is
+ * only part of an array.
+ *
+ * <p>This allows the {@code HybridDecryptWrapper} to strip output prefixes without copying the
+ * ciphertext.
+ */
+public interface HybridDecryptWithOffsets extends HybridDecrypt {
+  /**
+   * Same as {@link HybridDecrypt#decrypt}, but decrypts the {@code length} bytes of {@code
+   * ciphertext} starting at {@code offset}.
+   */
+  byte[] decrypt(byte[] ciphertext, int offset, int length, byte[] contextInfo)
+      throws GeneralSecurityException;
+}
@@ -18,7 +18,10 @@ package com.google.crypto.tink.hybrid.subtle;
 
 import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.DeterministicAead;
+import com.google.crypto.tink.aead.internal.AeadWithOffsets;
+import com.google.crypto.tink.daead.internal.DeterministicAeadWithOffsets;
 import java.security.GeneralSecurityException;
+import java.util.Arrays;
 
 /**
  * A wrapper class that provides the functionality of an underlying Aead or Deterministic Aead
@@ -79,4 +82,25 @@ public class AeadOrDaead {
       return this.deterministicAead.decryptDeterministically(ciphertext, associatedData);
     }
   }
+
+  /**
+   * Same as {@link #decrypt(byte[], byte[])}, but decrypts the {@code length} bytes of {@code
+   * ciphertext} starting at {@code offset}. Avoids copying the ciphertext if the underlying
+   * primitive supports it.
+   */
+  public byte[] decrypt(
+      final byte[] ciphertext, int offset, int length, final byte[] associatedData)
+      throws GeneralSecurityException {
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("invalid offset or length");
+    }
+    if (aead instanceof AeadWithOffsets) {
+      return ((AeadWithOffsets) aead).decrypt(ciphertext, offset, length, associatedData);
+    }
+    if (deterministicAead instanceof DeterministicAeadWithOffsets) {
+      return ((DeterministicAeadWithOffsets) deterministicAead)
+          .decryptDeterministically(ciphertext, offset, length, associatedData);
+    }
+    return decrypt(Arrays.copyOfRange(ciphertext, offset, offset + length), associatedData);
+  }
 }
@@ -16,13 +16,16 @@
 
 package com.google.crypto.tink.hybrid.subtle;
 
+import com.google.crypto.tink.internal.EnginePool;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
+import java.security.Key;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Random;
+import javax.crypto.Cipher;
 
 class RsaKem {
   static final byte[] EMPTY_AAD = new byte[0];
@@ -39,6 +42,21 @@ class RsaKem {
     }
   }
 
+  /**
+   * Returns a pool of raw RSA ciphers which are initialized with {@code key} in {@code mode}.
+   * Ciphers are reset after each {@code doFinal}, so they are not initialized again. The pool keeps
+   * at most a few ciphers, which threads share.
+   */
+  static EnginePool<Cipher> newRsaCipherPool(int mode, Key key) {
+    return EnginePool.create(
+        EnginePool.Strategy.SHARED,
+        () -> {
+          Cipher cipher = Cipher.getInstance("RSA/ECB/NoPadding");
+          cipher.init(mode, key);
+          return cipher;
+        });
+  }
+
   static int bigIntSizeInBytes(BigInteger mod) {
     return (mod.bitLength() + 7) / 8;
   }
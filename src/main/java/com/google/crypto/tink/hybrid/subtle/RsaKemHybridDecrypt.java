@@ -19,6 +19,7 @@ package com.google.crypto.tink.hybrid.subtle;
 import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.HybridDecrypt;
 import com.google.crypto.tink.aead.subtle.AeadFactory;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.subtle.Hkdf;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
@@ -36,6 +37,7 @@ public final class RsaKemHybridDecrypt implements HybridDecrypt {
   private final String hkdfHmacAlgo;
   private final byte[] hkdfSalt;
   private final AeadFactory aeadFactory;
+  private final EnginePool<Cipher> rsaCipherPool;
 
   public RsaKemHybridDecrypt(
       final RSAPrivateKey recipientPrivateKey,
@@ -48,6 +50,7 @@ public final class RsaKemHybridDecrypt implements HybridDecrypt {
     this.hkdfSalt = hkdfSalt;
     this.hkdfHmacAlgo = hkdfHmacAlgo;
     this.aeadFactory = aeadFactory;
+    this.rsaCipherPool = RsaKem.newRsaCipherPool(Cipher.DECRYPT_MODE, recipientPrivateKey);
   }
 
   @Override
@@ -65,9 +68,7 @@ public final class RsaKemHybridDecrypt implements HybridDecrypt {
     ByteBuffer cipherBuffer = ByteBuffer.wrap(ciphertext);
     byte[] token = new byte[modSizeInBytes];
     cipherBuffer.get(token);
-    Cipher rsaCipher = Cipher.getInstance("RSA/ECB/NoPadding");
-    rsaCipher.init(Cipher.DECRYPT_MODE, recipientPrivateKey);
-    byte[] sharedSecret = rsaCipher.doFinal(token);
+    byte[] sharedSecret = rsaCipherPool.apply(cipher -> cipher.doFinal(token));
 
     // KDF: derive a DEM key from the shared secret, salt, and contextInfo.
     byte[] demKey =
@@ -19,6 +19,7 @@ package com.google.crypto.tink.hybrid.subtle;
 import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.HybridEncrypt;
 import com.google.crypto.tink.aead.subtle.AeadFactory;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.subtle.Hkdf;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
@@ -37,6 +38,7 @@ public final class RsaKemHybridEncrypt implements HybridEncrypt {
   private final String hkdfHmacAlgo;
   private final byte[] hkdfSalt;
   private final AeadFactory aeadFactory;
+  private final EnginePool<Cipher> rsaCipherPool;
 
   public RsaKemHybridEncrypt(
       final RSAPublicKey recipientPublicKey,
@@ -49,6 +51,7 @@ public final class RsaKemHybridEncrypt implements HybridEncrypt {
     this.hkdfHmacAlgo = hkdfHmacAlgo;
     this.hkdfSalt = hkdfSalt;
     this.aeadFactory = aeadFactory;
+    this.rsaCipherPool = RsaKem.newRsaCipherPool(Cipher.ENCRYPT_MODE, recipientPublicKey);
   }
 
   @Override
@@ -59,9 +62,7 @@ public final class RsaKemHybridEncrypt implements HybridEncrypt {
     byte[] sharedSecret = RsaKem.generateSecret(mod);
 
     // KEM: encrypt the shared secret using the public key.
-    Cipher rsaCipher = Cipher.getInstance("RSA/ECB/NoPadding");
-    rsaCipher.init(Cipher.ENCRYPT_MODE, recipientPublicKey);
-    byte[] token = rsaCipher.doFinal(sharedSecret);
+    byte[] token = rsaCipherPool.apply(cipher -> cipher.doFinal(sharedSecret));
 
     // KDF: derive a DEM key from the shared secret, salt, and contextInfo.
     byte[] demKey =
@@ -0,0 +1,243 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.internal;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out stateful engines such as {@link javax.crypto.Cipher}, {@link javax.crypto.Mac} or
+ * {@link java.security.SecureRandom} to the calling thread.
+ *
+ * <p>An engine returned by {@link #acquire} is used by the calling thread only, and must be given
+ * back with {@link #release} once the thread no longer uses it:
+ *
+ * <pre>{@code
+ * Cipher cipher = cipherPool.acquire();
+ * try {
+ *   cipher.init(...);
+ *   ...
+ * } finally {
+ *   cipherPool.release(cipher);
+ * }
+ * }</pre>
+ *
+ * <p>{@link #apply} does the same, and gives the engine back with {@link #discard} if the operation
+ * fails.
+ *
+ * <p>Engines are not reset when they are released, so users must fully initialize them after
+ * acquiring them, unless every engine of the pool is created already initialized, for example with
+ * the key of the primitive which owns the pool. An engine which may have been left in an undefined
+ * state, because an operation on it failed, must be given back with {@link #discard} instead.
+ *
+ * <p>How engines are kept is decided by the {@link Strategy} which is set when the pool is created.
+ * A pool which is owned by a primitive and whose engines are initialized with its key can use
+ * {@link Strategy#SHARED} to bound the number of engines which hold the key: such a pool keeps at
+ * most a few engines and is collected together with the primitive, whereas a {@link
+ * Strategy#THREAD_LOCAL} pool leaves an engine in every thread which used the primitive.
+ */
+public abstract class EnginePool<T> {
+  /** Creates a new engine. */
+  public interface EngineFactory<T> {
+    T create() throws GeneralSecurityException;
+  }
+
+  /** An operation on an engine. */
+  public interface EngineFunction<T, R> {
+    R apply(T engine) throws GeneralSecurityException;
+  }
+
+  /** The ways in which a pool can keep engines. */
+  public enum Strategy {
+    /**
+     * Every thread gets its own engine, which it keeps until it terminates. This is the default,
+     * and the fastest option for a limited number of long-lived threads.
+     */
+    THREAD_LOCAL,
+    /**
+     * All threads share a bounded set of engines. This is better suited for many short-lived
+     * threads, such as virtual threads, which would otherwise each create their own engines.
+     */
+    SHARED,
+  }
+
+  private static volatile Strategy defaultStrategy = Strategy.THREAD_LOCAL;
+
+  /**
+   * Sets the strategy used by pools created afterwards.
+   *
+   * <p>Most pools are created when the class using them is loaded, so this should be called before
+   * any primitive is created.
+   */
+  public static void setDefaultStrategy(Strategy strategy) {
+    if (strategy == null) {
+      throw new NullPointerException("strategy must not be null");
+    }
+    defaultStrategy = strategy;
+  }
+
+  public static Strategy getDefaultStrategy() {
+    return defaultStrategy;
+  }
+
+  /** Creates a pool which uses the default strategy. */
+  public static <T> EnginePool<T> create(EngineFactory<T> factory) {
+    return create(defaultStrategy, factory);
+  }
+
+  public static <T> EnginePool<T> create(Strategy strategy, EngineFactory<T> factory) {
+    switch (strategy) {
+      case THREAD_LOCAL:
+        return new ThreadLocalPool<>(factory);
+      case SHARED:
+        return new SharedPool<>(factory, 2 * Runtime.getRuntime().availableProcessors());
+    }
+    throw new IllegalArgumentException("Unknown strategy " + strategy);
+  }
+
+  /**
+   * Returns an engine which is not used by any other thread until it is released, creating a new
+   * one if needed.
+   */
+  public abstract T acquire() throws GeneralSecurityException;
+
+  /** Gives back an engine returned by {@link #acquire}. The engine must not be used afterwards. */
+  public abstract void release(T engine);
+
+  /**
+   * Gives back an engine returned by {@link #acquire} which must not be handed out again, for
+   * example because an operation on it failed. The engine must not be used afterwards.
+   */
+  public abstract void discard(T engine);
+
+  /**
+   * Runs {@code function} on an engine of this pool. The engine is released if {@code function}
+   * returns normally, and discarded if it throws.
+   */
+  public final <R> R apply(EngineFunction<T, R> function) throws GeneralSecurityException {
+    T engine = acquire();
+    boolean reusable = false;
+    try {
+      R result = function.apply(engine);
+      reusable = true;
+      return result;
+    } finally {
+      if (reusable) {
+        release(engine);
+      } else {
+        discard(engine);
+      }
+    }
+  }
+
+  private EnginePool() {}
+
+  private static final class ThreadLocalPool<T> extends EnginePool<T> {
+    private final EngineFactory<T> factory;
+    private final ThreadLocal<T> localEngine = new ThreadLocal<>();
+
+    ThreadLocalPool(EngineFactory<T> factory) {
+      this.factory = factory;
+    }
+
+    @Override
+    public T acquire() throws GeneralSecurityException {
+      T engine = localEngine.get();
+      if (engine == null) {
+        engine = factory.create();
+        localEngine.set(engine);
+      }
+      return engine;
+    }
+
+    @Override
+    public void release(T engine) {}
+
+    @Override
+    public void discard(T engine) {
+      if (localEngine.get() == engine) {
+        localEngine.remove();
+      }
+    }
+  }
+
+  /**
+   * A lock-free pool of at most a fixed number of engines.
+   *
+   * <p>Each thread starts looking for an engine in a slot derived from its id, so that threads
+   * running at the same time mostly use different slots. An engine which is released while all
+   * slots are taken is dropped.
+   */
+  static final class SharedPool<T> extends EnginePool<T> {
+    private final EngineFactory<T> factory;
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+
+    SharedPool(EngineFactory<T> factory, int minSize) {
+      this.factory = factory;
+      int size = 1;
+      while (size < minSize) {
+        size <<= 1;
+      }
+      this.slots = new AtomicReferenceArray<>(size);
+      this.mask = size - 1;
+    }
+
+    private int firstSlot() {
+      long id = Thread.currentThread().getId();
+      return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    @Override
+    public T acquire() throws GeneralSecurityException {
+      int first = firstSlot();
+      for (int i = 0; i <= mask; i++) {
+        int slot = (first + i) & mask;
+        T engine = slots.get(slot);
+        if (engine != null && slots.compareAndSet(slot, engine, null)) {
+          return engine;
+        }
+      }
+      return factory.create();
+    }
+
+    @Override
+    public void release(T engine) {
+      int first = firstSlot();
+      for (int i = 0; i <= mask; i++) {
+        int slot = (first + i) & mask;
+        if (slots.get(slot) == null && slots.compareAndSet(slot, null, engine)) {
+          return;
+        }
+      }
+    }
+
+    @Override
+    public void discard(T engine) {}
+
+    /** Returns the number of engines which are currently in the pool. */
+    int size() {
+      int size = 0;
+      for (int i = 0; i <= mask; i++) {
+        if (slots.get(i) != null) {
+          size++;
+        }
+      }
+      return size;
+    }
+  }
+}
@@ -56,6 +56,24 @@ public abstract class InternalConfiguration extends Configuration {
   public abstract Class<?> getInputPrimitiveClass(Class<?> wrapperClassObject)
       throws GeneralSecurityException;
 
+  /**
+   * Returns true if the wrapper for {@code wrapperClassObject} may use the full primitives of the
+   * entries in the {@link PrimitiveSet} passed to {@link #wrap}. If false, only legacy primitives
+   * are needed.
+   */
+  public boolean usesFullPrimitives(Class<?> wrapperClassObject) {
+    return true;
+  }
+
+  /**
+   * Returns true if the wrapper for {@code wrapperClassObject} may use the legacy primitives of the
+   * entries in the {@link PrimitiveSet} passed to {@link #wrap}. If false, only full primitives are
+   * needed.
+   */
+  public boolean usesLegacyPrimitives(Class<?> wrapperClassObject) {
+    return true;
+  }
+
   public static InternalConfiguration createFromPrimitiveRegistry(PrimitiveRegistry registry) {
     return new InternalConfigurationImpl(registry);
   }
@@ -95,5 +113,15 @@ public abstract class InternalConfiguration extends Configuration {
         throws GeneralSecurityException {
       return registry.wrap(primitiveSet, clazz);
     }
+
+    @Override
+    public boolean usesFullPrimitives(Class<?> wrapperClassObject) {
+      return registry.usesFullPrimitives(wrapperClassObject);
+    }
+
+    @Override
+    public boolean usesLegacyPrimitives(Class<?> wrapperClassObject) {
+      return registry.usesLegacyPrimitives(wrapperClassObject);
+    }
   }
 }
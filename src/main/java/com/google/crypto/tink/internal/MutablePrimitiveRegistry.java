@@ -92,6 +92,14 @@ public final class MutablePrimitiveRegistry {
     return registry.get().getInputPrimitiveClass(wrapperClassObject);
   }
 
+  public boolean usesFullPrimitives(Class<?> wrapperClassObject) {
+    return registry.get().usesFullPrimitives(wrapperClassObject);
+  }
+
+  public boolean usesLegacyPrimitives(Class<?> wrapperClassObject) {
+    return registry.get().usesLegacyPrimitives(wrapperClassObject);
+  }
+
   public <InputPrimitiveT, WrapperPrimitiveT> WrapperPrimitiveT wrap(
       PrimitiveSet<InputPrimitiveT> primitives, Class<WrapperPrimitiveT> wrapperClassObject)
       throws GeneralSecurityException {
@@ -0,0 +1,68 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.internal;
+
+import javax.annotation.Nullable;
+
+/**
+ * Chooses the {@link EnginePool} from which a primitive takes its engines, so that a primitive
+ * which is used repeatedly gets engines which are only ever initialized with its own key.
+ *
+ * <p>Providers such as SunJCE skip the key expansion in {@code Cipher.init} if the key is the same
+ * as in the previous call. If all primitives share one pool, a thread which alternates between
+ * keys re-expands the key on every operation. A primitive which uses a {@code PerKeyEnginePool}
+ * takes its first engine from the shared pool, which avoids creating engines for keys that are
+ * used only once, and all later engines from a pool of its own:
+ *
+ * <pre>{@code
+ * EnginePool<Cipher> pool = cipherPools.get();
+ * Cipher cipher = pool.acquire();
+ * try {
+ *   cipher.init(..., keySpec, ...);
+ *   ...
+ * } finally {
+ *   pool.release(cipher);
+ * }
+ * }</pre>
+ *
+ * <p>The own pool always uses {@link EnginePool.Strategy#SHARED}, whatever the default strategy
+ * is, so it keeps at most a small fixed number of engines, and the key material in them, and is
+ * collected together with the primitive. A {@code THREAD_LOCAL} pool per primitive would instead
+ * leave an engine initialized with the key in every thread which used the primitive, long after
+ * the primitive itself is gone.
+ */
+public final class PerKeyEnginePool<T> {
+  private final EnginePool<T> sharedPool;
+  private final EnginePool.EngineFactory<T> factory;
+  @Nullable private volatile EnginePool<T> keyPool;
+
+  public PerKeyEnginePool(EnginePool<T> sharedPool, EnginePool.EngineFactory<T> factory) {
+    this.sharedPool = sharedPool;
+    this.factory = factory;
+  }
+
+  /** Returns the pool to take an engine from, and to give it back to, for the next operation. */
+  public EnginePool<T> get() {
+    EnginePool<T> pool = keyPool;
+    if (pool != null) {
+      return pool;
+    }
+    // Concurrent first calls may each create a pool; all but one of them are then dropped.
+    keyPool = EnginePool.create(EnginePool.Strategy.SHARED, factory);
+    return sharedPool;
+  }
+}
@@ -152,6 +152,26 @@ public class PrimitiveRegistry {
     return primitiveWrapperMap.get(wrapperClassObject).getInputPrimitiveClass();
   }
 
+  /**
+   * Returns false if the wrapper for {@code wrapperClassObject} is a {@link SinglePrimitiveWrapper}
+   * which only uses the legacy primitives of the entries, and true otherwise.
+   */
+  public boolean usesFullPrimitives(Class<?> wrapperClassObject) {
+    PrimitiveWrapper<?, ?> wrapper = primitiveWrapperMap.get(wrapperClassObject);
+    return !(wrapper instanceof SinglePrimitiveWrapper)
+        || ((SinglePrimitiveWrapper) wrapper).usesFullPrimitive();
+  }
+
+  /**
+   * Returns false if the wrapper for {@code wrapperClassObject} is a {@link SinglePrimitiveWrapper}
+   * which only uses the full primitives of the entries, and true otherwise.
+   */
+  public boolean usesLegacyPrimitives(Class<?> wrapperClassObject) {
+    PrimitiveWrapper<?, ?> wrapper = primitiveWrapperMap.get(wrapperClassObject);
+    return !(wrapper instanceof SinglePrimitiveWrapper)
+        || !((SinglePrimitiveWrapper) wrapper).usesFullPrimitive();
+  }
+
   public <InputPrimitiveT, WrapperPrimitiveT> WrapperPrimitiveT wrap(
       PrimitiveSet<InputPrimitiveT> primitives, Class<WrapperPrimitiveT> wrapperClassObject)
       throws GeneralSecurityException {
@@ -62,6 +62,16 @@ public final class RegistryConfiguration extends InternalConfiguration {
     return Registry.wrap(primitiveSet, clazz);
   }
 
+  @Override
+  public boolean usesFullPrimitives(Class<?> wrapperClassObject) {
+    return MutablePrimitiveRegistry.globalInstance().usesFullPrimitives(wrapperClassObject);
+  }
+
+  @Override
+  public boolean usesLegacyPrimitives(Class<?> wrapperClassObject) {
+    return MutablePrimitiveRegistry.globalInstance().usesLegacyPrimitives(wrapperClassObject);
+  }
+
   @Override
   @Nullable
   public Class<?> getInputPrimitiveClass(Class<?> wrapperClassObject) {
@@ -0,0 +1,33 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.internal;
+
+/**
+ * Implemented by a {@link com.google.crypto.tink.PrimitiveWrapper} which only uses one of the two
+ * primitives of each entry in the {@link com.google.crypto.tink.PrimitiveSet} it wraps.
+ *
+ * <p>{@link com.google.crypto.tink.KeysetHandle#getPrimitive} then only creates that primitive for
+ * each key (unless a key does not have it). Otherwise, it creates both.
+ */
+public interface SinglePrimitiveWrapper {
+  /**
+   * Returns true if the wrapper only uses {@link
+   * com.google.crypto.tink.PrimitiveSet.Entry#getFullPrimitive}, and false if it only uses {@link
+   * com.google.crypto.tink.PrimitiveSet.Entry#getPrimitive}.
+   */
+  boolean usesFullPrimitive();
+}
@@ -0,0 +1,36 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.internal;
+
+import javax.crypto.AEADBadTagException;
+
+/**
+ * An {@link AEADBadTagException} which does not record a stack trace.
+ *
+ * <p>See {@link StacklessGeneralSecurityException}.
+ */
+public final class StacklessAeadBadTagException extends AEADBadTagException {
+  /** Constructs a new StacklessAeadBadTagException with the specified detail message. */
+  public StacklessAeadBadTagException(String message) {
+    super(message);
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
@@ -0,0 +1,39 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.internal;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * A {@link GeneralSecurityException} which does not record a stack trace.
+ *
+ * <p>Thrown by Tink for failures which are expected to happen frequently, such as an output prefix
+ * mismatch or an invalid tag while a keyset wrapper tries all keys which may have produced a
+ * ciphertext. Recording the stack trace is by far the most expensive part of creating an
+ * exception, and for such failures it carries no useful information.
+ */
+public final class StacklessGeneralSecurityException extends GeneralSecurityException {
+  /** Constructs a new StacklessGeneralSecurityException with the specified detail message. */
+  public StacklessGeneralSecurityException(String message) {
+    super(message);
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
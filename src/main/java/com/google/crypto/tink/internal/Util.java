@@ -21,6 +21,7 @@ import com.google.crypto.tink.util.Bytes;
 import com.google.crypto.tink.util.SecretBytes;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
@@ -121,17 +122,55 @@ public final class Util {
 
   /** Returns true if the first argument is a prefix of the second argument. Not constant time. */
   public static boolean isPrefix(byte[] prefix, byte[] complete) {
-    if (complete.length < prefix.length) {
+    return isPrefix(prefix, complete, 0);
+  }
+
+  /**
+   * Returns true if the first argument is a prefix of the bytes of {@code complete} starting at
+   * {@code offset}. Not constant time.
+   */
+  public static boolean isPrefix(byte[] prefix, byte[] complete, int offset) {
+    if (offset < 0 || complete.length - offset < prefix.length) {
       return false;
     }
     for (int i = 0; i < prefix.length; ++i) {
-      if (complete[i] != prefix[i]) {
+      if (complete[offset + i] != prefix[i]) {
         return false;
       }
     }
     return true;
   }
 
+  /**
+   * Returns true if {@code prefix} is a prefix of the remaining bytes of {@code complete}. Does not
+   * modify the position of {@code complete}. Not constant time.
+   */
+  public static boolean isPrefix(byte[] prefix, ByteBuffer complete) {
+    if (complete.remaining() < prefix.length) {
+      return false;
+    }
+    int position = complete.position();
+    for (int i = 0; i < prefix.length; ++i) {
+      if (complete.get(position + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a copy of the remaining bytes of {@code buffer}, or an empty array if {@code buffer} is
+   * null. Does not modify the position of {@code buffer}.
+   */
+  public static byte[] toByteArray(@Nullable ByteBuffer buffer) {
+    if (buffer == null) {
+      return new byte[0];
+    }
+    byte[] result = new byte[buffer.remaining()];
+    buffer.duplicate().get(result);
+    return result;
+  }
+
   /**
    * Reads {@code length} number of bytes from the {@code input} stream and returns it in a {@code
    * SecretBytes} object.
@@ -26,7 +26,7 @@ import java.util.List;
 /**
  * Fake MonitoringClient.
  *
- * <p>It logs all log and logFailure calls of its logger objects into two lists that can be
+ * <p>It logs all log, logFailure and logAttempts calls of its logger objects into lists that can be
  * retrieved later.
  */
 public final class FakeMonitoringClient implements MonitoringClient {
@@ -108,8 +108,34 @@ public final class FakeMonitoringClient implements MonitoringClient {
     }
   }
 
+  /** LogAttemptsEntry */
+  public static final class LogAttemptsEntry {
+    private final String primitive;
+    private final String api;
+    private final int numAttempts;
+
+    private LogAttemptsEntry(String primitive, String api, int numAttempts) {
+      this.primitive = primitive;
+      this.api = api;
+      this.numAttempts = numAttempts;
+    }
+
+    public String getPrimitive() {
+      return primitive;
+    }
+
+    public String getApi() {
+      return api;
+    }
+
+    public int getNumAttempts() {
+      return numAttempts;
+    }
+  }
+
   private final List<LogEntry> logEntries = new ArrayList<>();
   private final List<LogFailureEntry> logFailureEntries = new ArrayList<>();
+  private final List<LogAttemptsEntry> logAttemptsEntries = new ArrayList<>();
 
   private synchronized void addLogEntry(LogEntry entry) {
     logEntries.add(entry);
@@ -119,6 +145,10 @@ public final class FakeMonitoringClient implements MonitoringClient {
     logFailureEntries.add(entry);
   }
 
+  private synchronized void addLogAttemptsEntry(LogAttemptsEntry entry) {
+    logAttemptsEntries.add(entry);
+  }
+
   private final class Logger implements MonitoringClient.Logger {
     private final MonitoringKeysetInfo keysetInfo;
     private final HashMap<Integer, MonitoringKeysetInfo.Entry> entries;
@@ -139,6 +169,11 @@ public final class FakeMonitoringClient implements MonitoringClient {
       addLogFailureEntry(new LogFailureEntry(keysetInfo, primitive, api));
     }
 
+    @Override
+    public void logAttempts(int numAttempts) {
+      addLogAttemptsEntry(new LogAttemptsEntry(primitive, api, numAttempts));
+    }
+
     private Logger(MonitoringKeysetInfo keysetInfo, String primitive, String api) {
       this.keysetInfo = keysetInfo;
       this.primitive = primitive;
@@ -162,6 +197,7 @@ public final class FakeMonitoringClient implements MonitoringClient {
   public synchronized void clear() {
     logEntries.clear();
     logFailureEntries.clear();
+    logAttemptsEntries.clear();
   }
 
   /** Returns all log entries. */
@@ -173,4 +209,9 @@ public final class FakeMonitoringClient implements MonitoringClient {
   public synchronized List<LogFailureEntry> getLogFailureEntries() {
     return Collections.unmodifiableList(logFailureEntries);
   }
+
+  /** Returns all log attempts entries. */
+  public synchronized List<LogAttemptsEntry> getLogAttemptsEntries() {
+    return Collections.unmodifiableList(logAttemptsEntries);
+  }
 }
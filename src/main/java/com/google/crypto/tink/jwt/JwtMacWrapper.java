@@ -19,6 +19,7 @@ package com.google.crypto.tink.jwt;
 import com.google.crypto.tink.PrimitiveSet;
 import com.google.crypto.tink.PrimitiveWrapper;
 import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.proto.OutputPrefixType;
 import com.google.errorprone.annotations.Immutable;
 import java.security.GeneralSecurityException;
@@ -28,7 +29,7 @@ import java.util.Optional;
 /**
  * JwtMacWrapper is the implementation of {@link PrimitiveWrapper} for the {@link JwtMac} primitive.
  */
-class JwtMacWrapper implements PrimitiveWrapper<JwtMacInternal, JwtMac> {
+class JwtMacWrapper implements PrimitiveWrapper<JwtMacInternal, JwtMac>, SinglePrimitiveWrapper {
 
   private static final JwtMacWrapper WRAPPER = new JwtMacWrapper();
 
@@ -60,7 +61,7 @@ class JwtMacWrapper implements PrimitiveWrapper<JwtMacInternal, JwtMac> {
     public String computeMacAndEncode(RawJwt token) throws GeneralSecurityException {
       PrimitiveSet.Entry<JwtMacInternal> entry = primitives.getPrimary();
       Optional<String> kid = JwtFormat.getKid(entry.getKeyId(), entry.getOutputPrefixType());
-      return entry.getPrimitive().computeMacAndEncodeWithKid(token, kid);
+      return entry.getPrimitiveOrThrow().computeMacAndEncodeWithKid(token, kid);
     }
 
     @Override
@@ -71,7 +72,7 @@ class JwtMacWrapper implements PrimitiveWrapper<JwtMacInternal, JwtMac> {
         for (PrimitiveSet.Entry<JwtMacInternal> entry : entries) {
           try {
             Optional<String> kid = JwtFormat.getKid(entry.getKeyId(), entry.getOutputPrefixType());
-            return entry.getPrimitive().verifyMacAndDecodeWithKid(compact, validator, kid);
+            return entry.getPrimitiveOrThrow().verifyMacAndDecodeWithKid(compact, validator, kid);
           } catch (GeneralSecurityException e) {
             if (e instanceof JwtInvalidException) {
               // Keep this exception so that we are able to throw a meaningful message in the end
@@ -107,6 +108,11 @@ class JwtMacWrapper implements PrimitiveWrapper<JwtMacInternal, JwtMac> {
     return JwtMacInternal.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return false;
+  }
+
  public static void register() throws GeneralSecurityException {
     Registry.registerPrimitiveWrapper(WRAPPER);
   }
@@ -19,6 +19,7 @@ package com.google.crypto.tink.jwt;
 import com.google.crypto.tink.PrimitiveSet;
 import com.google.crypto.tink.PrimitiveWrapper;
 import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.proto.OutputPrefixType;
 import com.google.errorprone.annotations.Immutable;
 import java.security.GeneralSecurityException;
@@ -33,7 +34,8 @@ import java.util.Optional;
  * with the primary key.
  */
 class JwtPublicKeySignWrapper
-    implements PrimitiveWrapper<JwtPublicKeySignInternal, JwtPublicKeySign> {
+    implements PrimitiveWrapper<JwtPublicKeySignInternal, JwtPublicKeySign>,
+        SinglePrimitiveWrapper {
 
   private static final JwtPublicKeySignWrapper WRAPPER = new JwtPublicKeySignWrapper();
 
@@ -66,7 +68,7 @@ class JwtPublicKeySignWrapper
     public String signAndEncode(RawJwt token) throws GeneralSecurityException {
       PrimitiveSet.Entry<JwtPublicKeySignInternal> entry = primitives.getPrimary();
       Optional<String> kid = JwtFormat.getKid(entry.getKeyId(), entry.getOutputPrefixType());
-      return primitives.getPrimary().getPrimitive().signAndEncodeWithKid(token, kid);
+      return primitives.getPrimary().getPrimitiveOrThrow().signAndEncodeWithKid(token, kid);
     }
   }
 
@@ -89,6 +91,11 @@ class JwtPublicKeySignWrapper
     return JwtPublicKeySignInternal.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return false;
+  }
+
   /**
    * Register the wrapper within the registry.
    *
@@ -19,6 +19,7 @@ package com.google.crypto.tink.jwt;
 import com.google.crypto.tink.PrimitiveSet;
 import com.google.crypto.tink.PrimitiveWrapper;
 import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.proto.OutputPrefixType;
 import com.google.errorprone.annotations.Immutable;
 import java.security.GeneralSecurityException;
@@ -27,7 +28,8 @@ import java.util.Optional;
 
 /** The implementation of {@code PrimitiveWrapper<JwtPublicKeyVerify>}. */
 class JwtPublicKeyVerifyWrapper
-    implements PrimitiveWrapper<JwtPublicKeyVerifyInternal, JwtPublicKeyVerify> {
+    implements PrimitiveWrapper<JwtPublicKeyVerifyInternal, JwtPublicKeyVerify>,
+        SinglePrimitiveWrapper {
 
   private static final JwtPublicKeyVerifyWrapper WRAPPER = new JwtPublicKeyVerifyWrapper();
 
@@ -61,7 +63,7 @@ class JwtPublicKeyVerifyWrapper
         for (PrimitiveSet.Entry<JwtPublicKeyVerifyInternal> entry : entries) {
           try {
             Optional<String> kid = JwtFormat.getKid(entry.getKeyId(), entry.getOutputPrefixType());
-            return entry.getPrimitive().verifyAndDecodeWithKid(compact, validator, kid);
+            return entry.getPrimitiveOrThrow().verifyAndDecodeWithKid(compact, validator, kid);
           } catch (GeneralSecurityException e) {
             if (e instanceof JwtInvalidException) {
               // Keep this exception so that we are able to throw a meaningful message in the end
@@ -95,6 +97,11 @@ class JwtPublicKeyVerifyWrapper
     return JwtPublicKeyVerifyInternal.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return false;
+  }
+
   /**
    * Register the wrapper within the registry.
    *
@@ -21,12 +21,14 @@ import com.google.crypto.tink.KeysetHandle;
 import com.google.crypto.tink.PrimitiveSet;
 import com.google.crypto.tink.PrimitiveWrapper;
 import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.keyderivation.KeysetDeriver;
 import com.google.errorprone.annotations.Immutable;
 import java.security.GeneralSecurityException;
 
 /** */
-public final class KeysetDeriverWrapper implements PrimitiveWrapper<KeyDeriver, KeysetDeriver> {
+public final class KeysetDeriverWrapper
+    implements PrimitiveWrapper<KeyDeriver, KeysetDeriver>, SinglePrimitiveWrapper {
 
   private static final KeysetDeriverWrapper WRAPPER = new KeysetDeriverWrapper();
 
@@ -49,7 +51,7 @@ public final class KeysetDeriverWrapper implements PrimitiveWrapper<KeyDeriver,
     private static KeysetHandle.Builder.Entry deriveAndGetEntry(
         byte[] salt, PrimitiveSet.Entry<KeyDeriver> entry, int primaryKeyId)
         throws GeneralSecurityException {
-      KeyDeriver deriver = entry.getFullPrimitive();
+      KeyDeriver deriver = entry.getFullPrimitiveOrThrow();
       if (deriver == null) {
         throw new GeneralSecurityException(
             "Primitive set has non-full primitives -- this is probably a bug");
@@ -92,6 +94,11 @@ public final class KeysetDeriverWrapper implements PrimitiveWrapper<KeyDeriver,
     return KeyDeriver.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return true;
+  }
+
   /** Registers this wrapper with Tink, allowing to use the primitive. */
   public static void register() throws GeneralSecurityException {
     Registry.registerPrimitiveWrapper(WRAPPER);
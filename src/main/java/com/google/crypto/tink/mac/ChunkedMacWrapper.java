@@ -16,16 +16,15 @@
 
 package com.google.crypto.tink.mac;
 
-import com.google.crypto.tink.CryptoFormat;
 import com.google.crypto.tink.PrimitiveSet;
 import com.google.crypto.tink.PrimitiveSet.Entry;
 import com.google.crypto.tink.PrimitiveWrapper;
 import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.errorprone.annotations.Immutable;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -37,7 +36,8 @@ import java.util.List;
  * the right key in the set. If the keys associated with the prefix do not validate the tag, the
  * primitive tries all keys with {@link com.google.crypto.tink.proto.OutputPrefixType#RAW}.
  */
-public class ChunkedMacWrapper implements PrimitiveWrapper<ChunkedMac, ChunkedMac> {
+public class ChunkedMacWrapper
+    implements PrimitiveWrapper<ChunkedMac, ChunkedMac>, SinglePrimitiveWrapper {
 
   private static final ChunkedMacWrapper WRAPPER = new ChunkedMacWrapper();
 
@@ -98,18 +98,16 @@ public class ChunkedMacWrapper implements PrimitiveWrapper<ChunkedMac, ChunkedMa
       return getChunkedMac(primitives.getPrimary()).createComputation();
     }
 
-    private ChunkedMac getChunkedMac(Entry<ChunkedMac> entry) {
-      return entry.getFullPrimitive();
+    private ChunkedMac getChunkedMac(Entry<ChunkedMac> entry) throws GeneralSecurityException {
+      return entry.getFullPrimitiveOrThrow();
     }
 
     @Override
     public ChunkedMacVerification createVerification(final byte[] tag)
         throws GeneralSecurityException {
-      byte[] prefix = Arrays.copyOf(tag, CryptoFormat.NON_RAW_PREFIX_SIZE);
-
       // First add verifications with prefixed keys.
       List<ChunkedMacVerification> verifications = new ArrayList<>();
-      for (PrimitiveSet.Entry<ChunkedMac> primitive : primitives.getPrimitive(prefix)) {
+      for (PrimitiveSet.Entry<ChunkedMac> primitive : primitives.getPrimitiveForPrefixOf(tag)) {
         verifications.add(getChunkedMac(primitive).createVerification(tag));
       }
       // Also add verifications with non-prefixed keys.
@@ -135,8 +133,8 @@ public class ChunkedMacWrapper implements PrimitiveWrapper<ChunkedMac, ChunkedMa
     for (List<PrimitiveSet.Entry<ChunkedMac>> list : primitives.getAll()) {
       for (PrimitiveSet.Entry<ChunkedMac> entry : list) {
         // Ensure that all entries in the primitive set are present and valid (i.e. have
-        // `fullPrimitive` field set). Throws unchecked exceptions if it's not the case.
-        ChunkedMac unused = entry.getFullPrimitive();
+        // `fullPrimitive` field set). Throws if it's not the case.
+        ChunkedMac unused = entry.getFullPrimitiveOrThrow();
       }
     }
     return new WrappedChunkedMac(primitives);
@@ -152,6 +150,11 @@ public class ChunkedMacWrapper implements PrimitiveWrapper<ChunkedMac, ChunkedMa
     return ChunkedMac.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return true;
+  }
+
   static void register() throws GeneralSecurityException {
     Registry.registerPrimitiveWrapper(WRAPPER);
   }
@@ -26,12 +26,12 @@ import com.google.crypto.tink.internal.MonitoringUtil;
 import com.google.crypto.tink.internal.MutableMonitoringRegistry;
 import com.google.crypto.tink.internal.MutablePrimitiveRegistry;
 import com.google.crypto.tink.internal.PrimitiveConstructor;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.mac.internal.LegacyFullMac;
 import com.google.crypto.tink.monitoring.MonitoringClient;
 import com.google.crypto.tink.monitoring.MonitoringKeysetInfo;
 import com.google.crypto.tink.util.Bytes;
 import java.security.GeneralSecurityException;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -43,7 +43,7 @@ import java.util.List;
  * the right key in the set. If the keys associated with the prefix do not validate the tag, the
  * primitive tries all keys with {@link com.google.crypto.tink.proto.OutputPrefixType#RAW}.
  */
-class MacWrapper implements PrimitiveWrapper<Mac, Mac> {
+class MacWrapper implements PrimitiveWrapper<Mac, Mac>, SinglePrimitiveWrapper {
 
   private static final MacWrapper WRAPPER = new MacWrapper();
   private static final PrimitiveConstructor<LegacyProtoKey, Mac>
@@ -71,7 +71,7 @@ class MacWrapper implements PrimitiveWrapper<Mac, Mac> {
     @Override
     public byte[] computeMac(final byte[] data) throws GeneralSecurityException {
       try {
-        byte[] output = primitives.getPrimary().getFullPrimitive().computeMac(data);
+        byte[] output = primitives.getPrimary().getFullPrimitiveOrThrow().computeMac(data);
         computeLogger.log(primitives.getPrimary().getKeyId(), data.length);
         return output;
       } catch (GeneralSecurityException e) {
@@ -88,11 +88,10 @@ class MacWrapper implements PrimitiveWrapper<Mac, Mac> {
         verifyLogger.logFailure();
         throw new GeneralSecurityException("tag too short");
       }
-      byte[] prefix = Arrays.copyOf(mac, CryptoFormat.NON_RAW_PREFIX_SIZE);
-      List<PrimitiveSet.Entry<Mac>> entries = primitives.getPrimitive(prefix);
+      List<PrimitiveSet.Entry<Mac>> entries = primitives.getPrimitiveForPrefixOf(mac);
       for (PrimitiveSet.Entry<Mac> entry : entries) {
         try {
-          entry.getFullPrimitive().verifyMac(mac, data);
+          entry.getFullPrimitiveOrThrow().verifyMac(mac, data);
           verifyLogger.log(entry.getKeyId(), data.length);
           // If there is no exception, the MAC is valid and we can return.
           return;
@@ -105,7 +104,7 @@ class MacWrapper implements PrimitiveWrapper<Mac, Mac> {
       entries = primitives.getRawPrimitives();
       for (PrimitiveSet.Entry<Mac> entry : entries) {
         try {
-          entry.getFullPrimitive().verifyMac(mac, data);
+          entry.getFullPrimitiveOrThrow().verifyMac(mac, data);
           verifyLogger.log(entry.getKeyId(), data.length);
           // If there is no exception, the MAC is valid and we can return.
           return;
@@ -159,6 +158,11 @@ class MacWrapper implements PrimitiveWrapper<Mac, Mac> {
     return Mac.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return true;
+  }
+
   public static void register() throws GeneralSecurityException {
     Registry.registerPrimitiveWrapper(WRAPPER);
     MutablePrimitiveRegistry.globalInstance()
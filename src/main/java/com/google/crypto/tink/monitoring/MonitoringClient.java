@@ -37,6 +37,14 @@ public interface MonitoringClient {
     public void log(int keyId, long numBytesAsInput);
 
     public void logFailure();
+
+    /**
+     * Logs how many keys a successful call tried, including the one which succeeded.
+     *
+     * <p>Only called by primitives which may try several keys, such as decryption with a keyset
+     * of RAW keys, right before {@link #log}.
+     */
+    public default void logAttempts(int numAttempts) {}
   }
 
   /** Function that creates Logger objects. It is called when a primitive is created. */
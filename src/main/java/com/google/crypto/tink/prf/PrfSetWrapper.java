@@ -23,6 +23,7 @@ import com.google.crypto.tink.internal.MonitoringUtil;
 import com.google.crypto.tink.internal.MutableMonitoringRegistry;
 import com.google.crypto.tink.internal.MutablePrimitiveRegistry;
 import com.google.crypto.tink.internal.PrimitiveConstructor;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.monitoring.MonitoringClient;
 import com.google.crypto.tink.monitoring.MonitoringKeysetInfo;
 import com.google.crypto.tink.prf.internal.LegacyFullPrf;
@@ -41,7 +42,7 @@ import java.util.Map;
  * Prf instances can then be used to compute psuedo-random sequences from the underlying key.
  */
 @Immutable
-public class PrfSetWrapper implements PrimitiveWrapper<Prf, PrfSet> {
+public class PrfSetWrapper implements PrimitiveWrapper<Prf, PrfSet>, SinglePrimitiveWrapper {
 
   private static final PrfSetWrapper WRAPPER = new PrfSetWrapper();
   private static final PrimitiveConstructor<LegacyProtoKey, Prf>
@@ -109,7 +110,7 @@ public class PrfSetWrapper implements PrimitiveWrapper<Prf, PrfSet> {
         // Likewise, the key IDs of the PrfSet passed
         mutablePrfMap.put(
             entry.getKeyId(),
-            new PrfWithMonitoring(entry.getFullPrimitive(), entry.getKeyId(), logger));
+            new PrfWithMonitoring(entry.getFullPrimitiveOrThrow(), entry.getKeyId(), logger));
       }
       keyIdToPrfMap = Collections.unmodifiableMap(mutablePrfMap);
     }
@@ -140,6 +141,11 @@ public class PrfSetWrapper implements PrimitiveWrapper<Prf, PrfSet> {
     return Prf.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return true;
+  }
+
   public static void register() throws GeneralSecurityException {
     Registry.registerPrimitiveWrapper(WRAPPER);
     MutablePrimitiveRegistry.globalInstance()
@@ -22,6 +22,7 @@ import com.google.crypto.tink.PublicKeySign;
 import com.google.crypto.tink.Registry;
 import com.google.crypto.tink.internal.MonitoringUtil;
 import com.google.crypto.tink.internal.MutableMonitoringRegistry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.monitoring.MonitoringClient;
 import com.google.crypto.tink.monitoring.MonitoringKeysetInfo;
 import com.google.crypto.tink.proto.OutputPrefixType;
@@ -35,7 +36,8 @@ import java.security.GeneralSecurityException;
  * uses the primary key in the keyset, and prepends to the signature a certain prefix associated
  * with the primary key.
  */
-public class PublicKeySignWrapper implements PrimitiveWrapper<PublicKeySign, PublicKeySign> {
+public class PublicKeySignWrapper
+    implements PrimitiveWrapper<PublicKeySign, PublicKeySign>, SinglePrimitiveWrapper {
 
   private static final byte[] FORMAT_VERSION = new byte[] {0};
   private static final PublicKeySignWrapper WRAPPER = new PublicKeySignWrapper();
@@ -66,7 +68,7 @@ public class PublicKeySignWrapper implements PrimitiveWrapper<PublicKeySign, Pub
         byte[] output =
             Bytes.concat(
                 primitives.getPrimary().getIdentifier(),
-                primitives.getPrimary().getPrimitive().sign(data2));
+                primitives.getPrimary().getPrimitiveOrThrow().sign(data2));
         logger.log(primitives.getPrimary().getKeyId(), data2.length);
         return output;
       } catch (GeneralSecurityException e) {
@@ -93,6 +95,11 @@ public class PublicKeySignWrapper implements PrimitiveWrapper<PublicKeySign, Pub
     return PublicKeySign.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return false;
+  }
+
   /**
    * Register the wrapper within the registry.
    *
@@ -23,6 +23,7 @@ import com.google.crypto.tink.PublicKeyVerify;
 import com.google.crypto.tink.Registry;
 import com.google.crypto.tink.internal.MonitoringUtil;
 import com.google.crypto.tink.internal.MutableMonitoringRegistry;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.monitoring.MonitoringClient;
 import com.google.crypto.tink.monitoring.MonitoringKeysetInfo;
 import com.google.crypto.tink.proto.OutputPrefixType;
@@ -41,7 +42,8 @@ import java.util.List;
  *
  * @since 1.0.0
  */
-class PublicKeyVerifyWrapper implements PrimitiveWrapper<PublicKeyVerify, PublicKeyVerify> {
+class PublicKeyVerifyWrapper
+    implements PrimitiveWrapper<PublicKeyVerify, PublicKeyVerify>, SinglePrimitiveWrapper {
 
   private static final byte[] FORMAT_VERSION = new byte[] {0};
   private static final PublicKeyVerifyWrapper WRAPPER = new PublicKeyVerifyWrapper();
@@ -70,17 +72,21 @@ class PublicKeyVerifyWrapper implements PrimitiveWrapper<PublicKeyVerify, Public
         monitoringLogger.logFailure();
         throw new GeneralSecurityException("signature too short");
       }
-      byte[] prefix = Arrays.copyOf(signature, CryptoFormat.NON_RAW_PREFIX_SIZE);
-      byte[] sigNoPrefix =
-          Arrays.copyOfRange(signature, CryptoFormat.NON_RAW_PREFIX_SIZE, signature.length);
-      List<PrimitiveSet.Entry<PublicKeyVerify>> entries = primitives.getPrimitive(prefix);
+      List<PrimitiveSet.Entry<PublicKeyVerify>> entries =
+          primitives.getPrimitiveForPrefixOf(signature);
+      // Only copied if a key matches the prefix.
+      byte[] sigNoPrefix = null;
       for (PrimitiveSet.Entry<PublicKeyVerify> entry : entries) {
+        if (sigNoPrefix == null) {
+          sigNoPrefix =
+              Arrays.copyOfRange(signature, CryptoFormat.NON_RAW_PREFIX_SIZE, signature.length);
+        }
         byte[] data2 = data;
         if (entry.getOutputPrefixType().equals(OutputPrefixType.LEGACY)) {
           data2 = Bytes.concat(data2, FORMAT_VERSION);
         }
         try {
-          entry.getPrimitive().verify(sigNoPrefix, data2);
+          entry.getPrimitiveOrThrow().verify(sigNoPrefix, data2);
           monitoringLogger.log(entry.getKeyId(), data2.length);
           // If there is no exception, the signature is valid and we can return.
           return;
@@ -93,7 +99,7 @@ class PublicKeyVerifyWrapper implements PrimitiveWrapper<PublicKeyVerify, Public
       entries = primitives.getRawPrimitives();
       for (PrimitiveSet.Entry<PublicKeyVerify> entry : entries) {
         try {
-          entry.getPrimitive().verify(signature, data);
+          entry.getPrimitiveOrThrow().verify(signature, data);
           monitoringLogger.log(entry.getKeyId(), data.length);
           // If there is no exception, the signature is valid and we can return.
           return;
@@ -122,6 +128,11 @@ class PublicKeyVerifyWrapper implements PrimitiveWrapper<PublicKeyVerify, Public
     return PublicKeyVerify.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return false;
+  }
+
   /**
    * Register the wrapper within the registry.
    *
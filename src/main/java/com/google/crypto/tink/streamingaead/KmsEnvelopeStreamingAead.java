@@ -0,0 +1,354 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.streamingaead;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.StreamingAead;
+import com.google.crypto.tink.subtle.AesCtrHmacStreaming;
+import com.google.crypto.tink.subtle.AesGcmHkdfStreaming;
+import com.google.crypto.tink.subtle.Random;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Envelope encryption of streams: every stream is encrypted with a new data encryption key (DEK),
+ * which is encrypted with a remote {@link Aead}, typically one in a KMS.
+ *
+ * <p>The ciphertext structure is as follows:
+ *
+ * <ul>
+ *   <li>Length of the encrypted DEK: 4 bytes.
+ *   <li>Encrypted DEK: variable length that is equal to the value specified in the first 4 bytes.
+ *   <li>The ciphertext of the plaintext with the DEK, as produced by {@link AesGcmHkdfStreaming} or
+ *       {@link AesCtrHmacStreaming} with the encrypted DEK and its length as first segment offset.
+ * </ul>
+ *
+ * <p>The plaintext is processed with the segmented channels and streams of these primitives, so
+ * memory usage does not depend on the size of the plaintext, and every stream calls the KMS once.
+ * The seekable decrypting channel expects the ciphertext to start at position 0 of the channel,
+ * as those of the other Tink streaming AEADs.
+ */
+public final class KmsEnvelopeStreamingAead implements StreamingAead {
+  private static final byte[] EMPTY_AAD = new byte[0];
+  private static final int LENGTH_ENCRYPTED_DEK = 4;
+  // Encrypted DEKs of KMS are much smaller. This limits the memory used for invalid ciphertexts.
+  private static final int MAX_ENCRYPTED_DEK_SIZE = 1 << 16;
+
+  /** Creates the streaming AEAD of a DEK. */
+  private interface DekStreamingAeadFactory {
+    StreamingAead create(byte[] dek, int firstSegmentOffset) throws GeneralSecurityException;
+  }
+
+  private final Aead remote;
+  private final int dekSize;
+  private final DekStreamingAeadFactory dekStreamingAeadFactory;
+
+  private KmsEnvelopeStreamingAead(
+      Aead remote, int dekSize, DekStreamingAeadFactory dekStreamingAeadFactory) {
+    this.remote = remote;
+    this.dekSize = dekSize;
+    this.dekStreamingAeadFactory = dekStreamingAeadFactory;
+  }
+
+  /**
+   * Creates a new instance which encrypts streams with DEKs of {@code dekParameters}, which must be
+   * {@link AesGcmHkdfStreamingParameters} or {@link AesCtrHmacStreamingParameters}.
+   */
+  public static StreamingAead create(StreamingAeadParameters dekParameters, Aead remote)
+      throws GeneralSecurityException {
+    if (dekParameters instanceof AesGcmHkdfStreamingParameters) {
+      AesGcmHkdfStreamingParameters params = (AesGcmHkdfStreamingParameters) dekParameters;
+      String hkdfAlgorithm = toHmacAlgorithm(params.getHkdfHashType().toString());
+      return new KmsEnvelopeStreamingAead(
+          remote,
+          params.getKeySizeBytes(),
+          (dek, firstSegmentOffset) ->
+              new AesGcmHkdfStreaming(
+                  dek,
+                  hkdfAlgorithm,
+                  params.getDerivedAesGcmKeySizeBytes(),
+                  params.getCiphertextSegmentSizeBytes(),
+                  firstSegmentOffset));
+    }
+    if (dekParameters instanceof AesCtrHmacStreamingParameters) {
+      AesCtrHmacStreamingParameters params = (AesCtrHmacStreamingParameters) dekParameters;
+      String hkdfAlgorithm = toHmacAlgorithm(params.getHkdfHashType().toString());
+      String hmacAlgorithm = toHmacAlgorithm(params.getHmacHashType().toString());
+      return new KmsEnvelopeStreamingAead(
+          remote,
+          params.getKeySizeBytes(),
+          (dek, firstSegmentOffset) ->
+              new AesCtrHmacStreaming(
+                  dek,
+                  hkdfAlgorithm,
+                  params.getDerivedKeySizeBytes(),
+                  hmacAlgorithm,
+                  params.getHmacTagSizeBytes(),
+                  params.getCiphertextSegmentSizeBytes(),
+                  firstSegmentOffset));
+    }
+    throw new GeneralSecurityException(
+        "Unsupported DEK parameters: "
+            + dekParameters
+            + ". Only AesGcmHkdfStreamingParameters and AesCtrHmacStreamingParameters are"
+            + " supported.");
+  }
+
+  private static String toHmacAlgorithm(String hashType) throws GeneralSecurityException {
+    switch (hashType) {
+      case "SHA1":
+        return "HmacSha1";
+      case "SHA256":
+        return "HmacSha256";
+      case "SHA512":
+        return "HmacSha512";
+      default:
+        throw new GeneralSecurityException("Unknown hash type " + hashType);
+    }
+  }
+
+  /** A new DEK, with the header which contains it encrypted. */
+  private static final class NewDek {
+    final StreamingAead streamingAead;
+    final byte[] header;
+
+    NewDek(StreamingAead streamingAead, byte[] header) {
+      this.streamingAead = streamingAead;
+      this.header = header;
+    }
+  }
+
+  private NewDek newDek() throws GeneralSecurityException {
+    byte[] dek = Random.randBytes(dekSize);
+    try {
+      byte[] encryptedDek = remote.encrypt(dek, EMPTY_AAD);
+      byte[] header =
+          ByteBuffer.allocate(LENGTH_ENCRYPTED_DEK + encryptedDek.length)
+              .putInt(encryptedDek.length)
+              .put(encryptedDek)
+              .array();
+      return new NewDek(dekStreamingAeadFactory.create(dek, header.length), header);
+    } finally {
+      // The streaming AEAD keeps its own copy of the key.
+      Arrays.fill(dek, (byte) 0);
+    }
+  }
+
+  /** Returns the streaming AEAD of the DEK in {@code encryptedDek}. */
+  private StreamingAead decryptDek(byte[] encryptedDek) throws GeneralSecurityException {
+    byte[] dek = remote.decrypt(encryptedDek, EMPTY_AAD);
+    try {
+      return dekStreamingAeadFactory.create(dek, LENGTH_ENCRYPTED_DEK + encryptedDek.length);
+    } finally {
+      Arrays.fill(dek, (byte) 0);
+    }
+  }
+
+  private static int checkEncryptedDekSize(int encryptedDekSize) throws IOException {
+    if (encryptedDekSize <= 0 || encryptedDekSize > MAX_ENCRYPTED_DEK_SIZE) {
+      throw new IOException("invalid ciphertext: invalid encrypted DEK size");
+    }
+    return encryptedDekSize;
+  }
+
+  @Override
+  public WritableByteChannel newEncryptingChannel(
+      WritableByteChannel ciphertextDestination, byte[] associatedData)
+      throws GeneralSecurityException, IOException {
+    NewDek dek = newDek();
+    return dek.streamingAead.newEncryptingChannel(
+        new HeaderWritingChannel(ciphertextDestination, dek.header), associatedData);
+  }
+
+  @Override
+  public OutputStream newEncryptingStream(
+      OutputStream ciphertextDestination, byte[] associatedData)
+      throws GeneralSecurityException, IOException {
+    NewDek dek = newDek();
+    ciphertextDestination.write(dek.header);
+    return dek.streamingAead.newEncryptingStream(ciphertextDestination, associatedData);
+  }
+
+  @Override
+  public ReadableByteChannel newDecryptingChannel(
+      ReadableByteChannel ciphertextSource, byte[] associatedData)
+      throws GeneralSecurityException, IOException {
+    return new HeaderReadingChannel(ciphertextSource, associatedData);
+  }
+
+  @Override
+  public SeekableByteChannel newSeekableDecryptingChannel(
+      SeekableByteChannel ciphertextSource, byte[] associatedData)
+      throws GeneralSecurityException, IOException {
+    ciphertextSource.position(0);
+    ByteBuffer length = ByteBuffer.allocate(LENGTH_ENCRYPTED_DEK);
+    readFully(ciphertextSource, length);
+    ByteBuffer encryptedDek = ByteBuffer.allocate(checkEncryptedDekSize(length.getInt(0)));
+    readFully(ciphertextSource, encryptedDek);
+    return decryptDek(encryptedDek.array())
+        .newSeekableDecryptingChannel(ciphertextSource, associatedData);
+  }
+
+  private static void readFully(ReadableByteChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("invalid ciphertext: too short");
+      }
+    }
+  }
+
+  @Override
+  public InputStream newDecryptingStream(InputStream ciphertextSource, byte[] associatedData)
+      throws GeneralSecurityException, IOException {
+    byte[] length = readFully(ciphertextSource, LENGTH_ENCRYPTED_DEK);
+    byte[] encryptedDek =
+        readFully(ciphertextSource, checkEncryptedDekSize(ByteBuffer.wrap(length).getInt()));
+    return decryptDek(encryptedDek).newDecryptingStream(ciphertextSource, associatedData);
+  }
+
+  private static byte[] readFully(InputStream stream, int size) throws IOException {
+    byte[] bytes = new byte[size];
+    int offset = 0;
+    while (offset < size) {
+      int read = stream.read(bytes, offset, size - offset);
+      if (read < 0) {
+        throw new EOFException("invalid ciphertext: too short");
+      }
+      offset += read;
+    }
+    return bytes;
+  }
+
+  /**
+   * Writes the header before everything else written to the channel. Like the channel, it may
+   * write fewer bytes than requested, in which case it returns 0 until the header is written.
+   */
+  private static final class HeaderWritingChannel implements WritableByteChannel {
+    private final WritableByteChannel channel;
+    private final ByteBuffer header;
+
+    HeaderWritingChannel(WritableByteChannel channel, byte[] header) {
+      this.channel = channel;
+      this.header = ByteBuffer.wrap(header);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      if (header.hasRemaining()) {
+        channel.write(header);
+        if (header.hasRemaining()) {
+          return 0;
+        }
+      }
+      return channel.write(src);
+    }
+
+    @Override
+    public boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  /**
+   * Reads the header on the first calls to {@link #read}, and then decrypts the rest of the
+   * ciphertext with the DEK in the header. Like the ciphertext channel, it may return 0 while the
+   * header is not available.
+   */
+  private final class HeaderReadingChannel implements ReadableByteChannel {
+    private final ReadableByteChannel ciphertextSource;
+    private final byte[] associatedData;
+
+    @GuardedBy("this")
+    private final ByteBuffer length = ByteBuffer.allocate(LENGTH_ENCRYPTED_DEK);
+
+    @GuardedBy("this")
+    @Nullable
+    private ByteBuffer encryptedDek = null;
+
+    @GuardedBy("this")
+    @Nullable
+    private ReadableByteChannel plaintextChannel = null;
+
+    HeaderReadingChannel(ReadableByteChannel ciphertextSource, byte[] associatedData) {
+      this.ciphertextSource = ciphertextSource;
+      this.associatedData = associatedData.clone();
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+      if (plaintextChannel == null) {
+        if (!readHeader()) {
+          return 0;
+        }
+        try {
+          plaintextChannel =
+              decryptDek(encryptedDek.array())
+                  .newDecryptingChannel(ciphertextSource, associatedData);
+        } catch (GeneralSecurityException e) {
+          throw new IOException(e);
+        }
+      }
+      return plaintextChannel.read(dst);
+    }
+
+    /** Reads as much of the header as is available, and returns true once it is complete. */
+    @GuardedBy("this")
+    private boolean readHeader() throws IOException {
+      if (encryptedDek == null) {
+        readHeaderPart(length);
+        if (length.hasRemaining()) {
+          return false;
+        }
+        encryptedDek = ByteBuffer.allocate(checkEncryptedDekSize(length.getInt(0)));
+      }
+      readHeaderPart(encryptedDek);
+      return !encryptedDek.hasRemaining();
+    }
+
+    private void readHeaderPart(ByteBuffer buffer) throws IOException {
+      if (buffer.hasRemaining() && ciphertextSource.read(buffer) < 0) {
+        throw new EOFException("invalid ciphertext: too short");
+      }
+    }
+
+    @Override
+    public boolean isOpen() {
+      return ciphertextSource.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      ciphertextSource.close();
+    }
+  }
+}
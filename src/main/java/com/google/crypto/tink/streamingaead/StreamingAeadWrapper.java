@@ -23,6 +23,7 @@ import com.google.crypto.tink.StreamingAead;
 import com.google.crypto.tink.internal.LegacyProtoKey;
 import com.google.crypto.tink.internal.MutablePrimitiveRegistry;
 import com.google.crypto.tink.internal.PrimitiveConstructor;
+import com.google.crypto.tink.internal.SinglePrimitiveWrapper;
 import com.google.crypto.tink.streamingaead.internal.LegacyFullStreamingAead;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
@@ -36,7 +37,8 @@ import java.util.List;
  * keyset to select the right key for decryption. All keys in a keyset of StreamingAead have type
  * {@link com.google.crypto.tink.proto.OutputPrefixType#RAW}.
  */
-public class StreamingAeadWrapper implements PrimitiveWrapper<StreamingAead, StreamingAead> {
+public class StreamingAeadWrapper
+    implements PrimitiveWrapper<StreamingAead, StreamingAead>, SinglePrimitiveWrapper {
 
   private static final StreamingAeadWrapper WRAPPER = new StreamingAeadWrapper();
   private static final PrimitiveConstructor<LegacyProtoKey, StreamingAead>
@@ -58,18 +60,18 @@ public class StreamingAeadWrapper implements PrimitiveWrapper<StreamingAead, Str
       // For legacy reasons (Tink always encrypted with non-RAW keys) we use all
       // primitives, even those which have output_prefix_type != RAW.
       for (PrimitiveSet.Entry<StreamingAead> entry : entryList) {
-        if (entry.getFullPrimitive() == null) {
+        if (entry.getFullPrimitiveOrThrow() == null) {
           throw new GeneralSecurityException(
               "No full primitive set for key id " + entry.getKeyId());
         }
-        allStreamingAeads.add(entry.getFullPrimitive());
+        allStreamingAeads.add(entry.getFullPrimitiveOrThrow());
       }
     }
     PrimitiveSet.Entry<StreamingAead> primary = primitives.getPrimary();
-    if (primary == null || primary.getFullPrimitive() == null) {
+    if (primary == null || primary.getFullPrimitiveOrThrow() == null) {
       throw new GeneralSecurityException("No primary set");
     }
-    return new StreamingAeadHelper(allStreamingAeads, primary.getFullPrimitive());
+    return new StreamingAeadHelper(allStreamingAeads, primary.getFullPrimitiveOrThrow());
   }
 
   @Override
@@ -82,6 +84,11 @@ public class StreamingAeadWrapper implements PrimitiveWrapper<StreamingAead, Str
     return StreamingAead.class;
   }
 
+  @Override
+  public boolean usesFullPrimitive() {
+    return true;
+  }
+
   public static void register() throws GeneralSecurityException {
     Registry.registerPrimitiveWrapper(WRAPPER);
     MutablePrimitiveRegistry.globalInstance()
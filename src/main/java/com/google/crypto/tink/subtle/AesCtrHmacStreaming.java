@@ -20,6 +20,7 @@ import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.StreamingAead;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.streamingaead.AesCtrHmacStreamingKey;
 import com.google.crypto.tink.streamingaead.AesCtrHmacStreamingParameters.HashType;
 import java.nio.ByteBuffer;
@@ -264,6 +265,10 @@ public final class AesCtrHmacStreaming extends NonceBasedStreamingAead {
     return EngineFactory.MAC.getInstance(tagAlgo);
   }
 
+  // Ciphers for segments which are encrypted or decrypted concurrently.
+  private static final EnginePool<Cipher> cipherPool =
+      EnginePool.create(AesCtrHmacStreaming::cipherInstance);
+
   private byte[] randomSalt() {
     return Random.randBytes(keySizeInBytes);
   }
@@ -302,7 +307,7 @@ public final class AesCtrHmacStreaming extends NonceBasedStreamingAead {
    * IV for each segment. By enforcing that only the method encryptSegment can increment this state,
    * we can guarantee that the IV does not repeat.
    */
-  class AesCtrHmacStreamEncrypter implements StreamSegmentEncrypter {
+  class AesCtrHmacStreamEncrypter implements IndexedStreamSegmentEncrypter {
     private final SecretKeySpec keySpec;
     private final SecretKeySpec hmacKeySpec;
     private final Cipher cipher;
@@ -310,6 +315,10 @@ public final class AesCtrHmacStreaming extends NonceBasedStreamingAead {
     private final byte[] noncePrefix;
     private ByteBuffer header;
     private long encryptedSegments = 0;
+    // Macs for segments which are encrypted concurrently. Unlike the Ciphers, they depend on
+    // tagAlgo, so they are kept with the encrypter, in a pool which is freed together with it.
+    private final EnginePool<Mac> macPool =
+        EnginePool.create(EnginePool.Strategy.SHARED, AesCtrHmacStreaming.this::macInstance);
 
     public AesCtrHmacStreamEncrypter(byte[] aad) throws GeneralSecurityException {
       cipher = cipherInstance();
@@ -378,15 +387,47 @@ public final class AesCtrHmacStreaming extends NonceBasedStreamingAead {
       byte[] tag = mac.doFinal();
       ciphertext.put(tag, 0, tagSizeInBytes);
     }
+
+    @Override
+    public void encryptSegment(
+        ByteBuffer plaintext, long segmentNr, boolean isLastSegment, ByteBuffer ciphertext)
+        throws GeneralSecurityException {
+      int position = ciphertext.position();
+      byte[] nonce = nonceForSegment(noncePrefix, segmentNr, isLastSegment);
+      Cipher segmentCipher = cipherPool.acquire();
+      try {
+        segmentCipher.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(nonce));
+        segmentCipher.doFinal(plaintext, ciphertext);
+      } finally {
+        cipherPool.release(segmentCipher);
+      }
+      ByteBuffer ctCopy = ciphertext.duplicate();
+      ctCopy.flip();
+      ctCopy.position(position);
+      byte[] tag;
+      Mac segmentMac = macPool.acquire();
+      try {
+        segmentMac.init(hmacKeySpec);
+        segmentMac.update(nonce);
+        segmentMac.update(ctCopy);
+        tag = segmentMac.doFinal();
+      } finally {
+        macPool.release(segmentMac);
+      }
+      ciphertext.put(tag, 0, tagSizeInBytes);
+    }
   }
 
   /** An instance of a crypter used to decrypt a ciphertext stream. */
-  class AesCtrHmacStreamDecrypter implements StreamSegmentDecrypter {
+  class AesCtrHmacStreamDecrypter implements IndexedStreamSegmentDecrypter {
     private SecretKeySpec keySpec;
     private SecretKeySpec hmacKeySpec;
     private Cipher cipher;
     private Mac mac;
     private byte[] noncePrefix;
+    // Macs for segments which are decrypted concurrently, see AesCtrHmacStreamEncrypter.
+    private final EnginePool<Mac> macPool =
+        EnginePool.create(EnginePool.Strategy.SHARED, AesCtrHmacStreaming.this::macInstance);
 
     AesCtrHmacStreamDecrypter() {};
 
@@ -417,6 +458,35 @@ public final class AesCtrHmacStreaming extends NonceBasedStreamingAead {
     public synchronized void decryptSegment(
         ByteBuffer ciphertext, int segmentNr, boolean isLastSegment, ByteBuffer plaintext)
         throws GeneralSecurityException {
+      decryptSegment(cipher, mac, ciphertext, segmentNr, isLastSegment, plaintext);
+    }
+
+    @Override
+    public void decryptSegment(
+        ByteBuffer ciphertext, long segmentNr, boolean isLastSegment, ByteBuffer plaintext)
+        throws GeneralSecurityException {
+      Cipher segmentCipher = cipherPool.acquire();
+      try {
+        Mac segmentMac = macPool.acquire();
+        try {
+          decryptSegment(
+              segmentCipher, segmentMac, ciphertext, segmentNr, isLastSegment, plaintext);
+        } finally {
+          macPool.release(segmentMac);
+        }
+      } finally {
+        cipherPool.release(segmentCipher);
+      }
+    }
+
+    private void decryptSegment(
+        Cipher cipher,
+        Mac mac,
+        ByteBuffer ciphertext,
+        long segmentNr,
+        boolean isLastSegment,
+        ByteBuffer plaintext)
+        throws GeneralSecurityException {
       int position = ciphertext.position();
       byte[] nonce = nonceForSegment(noncePrefix, segmentNr, isLastSegment);
       int ctLength = ciphertext.remaining();
@@ -430,7 +500,6 @@ public final class AesCtrHmacStreaming extends NonceBasedStreamingAead {
       ByteBuffer tagBuffer = ciphertext.duplicate();
       tagBuffer.position(startOfTag);
 
-      assert mac != null;
       assert hmacKeySpec != null;
       mac.init(hmacKeySpec);
       mac.update(nonce);
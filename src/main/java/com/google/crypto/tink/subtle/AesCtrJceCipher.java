@@ -17,6 +17,7 @@
 package com.google.crypto.tink.subtle;
 
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.EnginePool;
 import java.security.GeneralSecurityException;
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
@@ -36,21 +37,12 @@ public final class AesCtrJceCipher implements IndCpaCipher {
   public static final TinkFipsUtil.AlgorithmFipsCompatibility FIPS =
       TinkFipsUtil.AlgorithmFipsCompatibility.ALGORITHM_REQUIRES_BORINGCRYPTO;
 
-  private static final ThreadLocal<Cipher> localCipher =
-      new ThreadLocal<Cipher>() {
-        @Override
-        protected Cipher initialValue() {
-          try {
-            return EngineFactory.CIPHER.getInstance(CIPHER_ALGORITHM);
-          } catch (GeneralSecurityException ex) {
-            throw new IllegalStateException(ex);
-          }
-        }
-      };
-
   private static final String KEY_ALGORITHM = "AES";
   private static final String CIPHER_ALGORITHM = "AES/CTR/NoPadding";
 
+  private static final EnginePool<Cipher> cipherPool =
+      EnginePool.create(() -> EngineFactory.CIPHER.getInstance(CIPHER_ALGORITHM));
+
   // In counter mode each message is encrypted with an initialization vector (IV) that must be
   // unique. If one single IV is ever used to encrypt two or more messages, the confidentiality of
   // these messages might be lost. This cipher uses a randomly generated IV for each message. The
@@ -72,7 +64,12 @@ public final class AesCtrJceCipher implements IndCpaCipher {
 
     Validators.validateAesKeySize(key.length);
     this.keySpec = new SecretKeySpec(key, KEY_ALGORITHM);
-    this.blockSize = localCipher.get().getBlockSize();
+    Cipher cipher = cipherPool.acquire();
+    try {
+      this.blockSize = cipher.getBlockSize();
+    } finally {
+      cipherPool.release(cipher);
+    }
     if (ivSize < MIN_IV_SIZE_IN_BYTES || ivSize > blockSize) {
       throw new GeneralSecurityException("invalid IV size");
     }
@@ -127,18 +124,23 @@ public final class AesCtrJceCipher implements IndCpaCipher {
       final byte[] iv,
       boolean encrypt)
       throws GeneralSecurityException {
-    Cipher cipher = localCipher.get();
     // The counter is big-endian. The counter is composed of iv and (blockSize - ivSize) of zeros.
     byte[] counter = new byte[blockSize];
     System.arraycopy(iv, 0, counter, 0, ivSize);
 
     IvParameterSpec paramSpec = new IvParameterSpec(counter);
-    if (encrypt) {
-      cipher.init(Cipher.ENCRYPT_MODE, keySpec, paramSpec);
-    } else {
-      cipher.init(Cipher.DECRYPT_MODE, keySpec, paramSpec);
+    int numBytes;
+    Cipher cipher = cipherPool.acquire();
+    try {
+      if (encrypt) {
+        cipher.init(Cipher.ENCRYPT_MODE, keySpec, paramSpec);
+      } else {
+        cipher.init(Cipher.DECRYPT_MODE, keySpec, paramSpec);
+      }
+      numBytes = cipher.doFinal(input, inputOffset, inputLen, output, outputOffset);
+    } finally {
+      cipherPool.release(cipher);
     }
-    int numBytes = cipher.doFinal(input, inputOffset, inputLen, output, outputOffset);
     if (numBytes != inputLen) {
       throw new GeneralSecurityException("stored output's length does not match input's length");
     }
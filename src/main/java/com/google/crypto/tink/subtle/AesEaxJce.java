@@ -23,9 +23,12 @@ import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.aead.AesEaxKey;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.EnginePool;
+import com.google.crypto.tink.internal.PerKeyEnginePool;
+import com.google.crypto.tink.internal.StacklessAeadBadTagException;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
-import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
@@ -57,29 +60,13 @@ public final class AesEaxJce implements Aead {
   public static final TinkFipsUtil.AlgorithmFipsCompatibility FIPS =
       TinkFipsUtil.AlgorithmFipsCompatibility.ALGORITHM_NOT_FIPS;
 
-  private static final ThreadLocal<Cipher> localEcbCipher =
-      new ThreadLocal<Cipher>() {
-        @Override
-        protected Cipher initialValue() {
-          try {
-            return EngineFactory.CIPHER.getInstance("AES/ECB/NOPADDING");
-          } catch (GeneralSecurityException ex) {
-            throw new IllegalStateException(ex);
-          }
-        }
-      };
+  private static final EnginePool.EngineFactory<Cipher> ecbCipherFactory =
+      () -> EngineFactory.CIPHER.getInstance("AES/ECB/NOPADDING");
+  private static final EnginePool<Cipher> ecbCipherPool = EnginePool.create(ecbCipherFactory);
 
-  private static final ThreadLocal<Cipher> localCtrCipher =
-      new ThreadLocal<Cipher>() {
-        @Override
-        protected Cipher initialValue() {
-          try {
-            return EngineFactory.CIPHER.getInstance("AES/CTR/NOPADDING");
-          } catch (GeneralSecurityException ex) {
-            throw new IllegalStateException(ex);
-          }
-        }
-      };
+  private static final EnginePool.EngineFactory<Cipher> ctrCipherFactory =
+      () -> EngineFactory.CIPHER.getInstance("AES/CTR/NOPADDING");
+  private static final EnginePool<Cipher> ctrCipherPool = EnginePool.create(ctrCipherFactory);
 
   static final int BLOCK_SIZE_IN_BYTES = 16;
   static final int TAG_SIZE_IN_BYTES = 16;
@@ -91,6 +78,10 @@ public final class AesEaxJce implements Aead {
   private final byte[] outputPrefix;
 
   private final SecretKeySpec keySpec;
+  private final PerKeyEnginePool<Cipher> ecbCipherPools =
+      new PerKeyEnginePool<>(ecbCipherPool, ecbCipherFactory);
+  private final PerKeyEnginePool<Cipher> ctrCipherPools =
+      new PerKeyEnginePool<>(ctrCipherPool, ctrCipherFactory);
   private final int ivSizeInBytes;
 
   @AccessesPartialKey
@@ -121,9 +112,14 @@ public final class AesEaxJce implements Aead {
     this.ivSizeInBytes = ivSizeInBytes;
     Validators.validateAesKeySize(key.length);
     keySpec = new SecretKeySpec(key, "AES");
-    Cipher ecb = localEcbCipher.get();
-    ecb.init(Cipher.ENCRYPT_MODE, keySpec);
-    byte[] block = ecb.doFinal(new byte[BLOCK_SIZE_IN_BYTES]);
+    byte[] block;
+    Cipher ecb = ecbCipherPool.acquire();
+    try {
+      ecb.init(Cipher.ENCRYPT_MODE, keySpec);
+      block = ecb.doFinal(new byte[BLOCK_SIZE_IN_BYTES]);
+    } finally {
+      ecbCipherPool.release(ecb);
+    }
     b = multiplyByX(block);
     p = multiplyByX(b);
     this.outputPrefix = outputPrefix;
@@ -228,18 +224,28 @@ public final class AesEaxJce implements Aead {
     byte[] iv = Random.randBytes(ivSizeInBytes);
     System.arraycopy(iv, 0, ciphertext, 0, ivSizeInBytes);
 
-    Cipher ecb = localEcbCipher.get();
-    ecb.init(Cipher.ENCRYPT_MODE, keySpec);
-    byte[] n = omac(ecb, 0, iv, 0, iv.length);
     byte[] aad = associatedData;
     if (aad == null) {
       aad = new byte[0];
     }
-    byte[] h = omac(ecb, 1, aad, 0, aad.length);
-    Cipher ctr = localCtrCipher.get();
-    ctr.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(n));
-    ctr.doFinal(plaintext, 0, plaintext.length, ciphertext, ivSizeInBytes);
-    byte[] t = omac(ecb, 2, ciphertext, ivSizeInBytes, plaintext.length);
+    byte[] n;
+    byte[] h;
+    byte[] t;
+    EnginePool<Cipher> ecbPool = ecbCipherPools.get();
+    Cipher ecb = ecbPool.acquire();
+    EnginePool<Cipher> ctrPool = ctrCipherPools.get();
+    Cipher ctr = ctrPool.acquire();
+    try {
+      ecb.init(Cipher.ENCRYPT_MODE, keySpec);
+      n = omac(ecb, 0, iv, 0, iv.length);
+      h = omac(ecb, 1, aad, 0, aad.length);
+      ctr.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(n));
+      ctr.doFinal(plaintext, 0, plaintext.length, ciphertext, ivSizeInBytes);
+      t = omac(ecb, 2, ciphertext, ivSizeInBytes, plaintext.length);
+    } finally {
+      ctrPool.release(ctr);
+      ecbPool.release(ecb);
+    }
     int offset = plaintext.length + ivSizeInBytes;
     for (int i = 0; i < TAG_SIZE_IN_BYTES; i++) {
       ciphertext[offset + i] = (byte) (h[i] ^ n[i] ^ t[i]);
@@ -263,28 +269,41 @@ public final class AesEaxJce implements Aead {
       throws GeneralSecurityException {
     int plaintextLength = ciphertext.length - ivSizeInBytes - TAG_SIZE_IN_BYTES;
     if (plaintextLength < 0) {
-      throw new GeneralSecurityException("ciphertext too short");
+      throw new StacklessGeneralSecurityException("ciphertext too short");
     }
-    Cipher ecb = localEcbCipher.get();
-    ecb.init(Cipher.ENCRYPT_MODE, keySpec);
-    byte[] n = omac(ecb, 0, ciphertext, 0, ivSizeInBytes);
     byte[] aad = associatedData;
     if (aad == null) {
       aad = new byte[0];
     }
-    byte[] h = omac(ecb, 1, aad, 0, aad.length);
-    byte[] t = omac(ecb, 2, ciphertext, ivSizeInBytes, plaintextLength);
+    byte[] n;
+    byte[] h;
+    byte[] t;
+    EnginePool<Cipher> ecbPool = ecbCipherPools.get();
+    Cipher ecb = ecbPool.acquire();
+    try {
+      ecb.init(Cipher.ENCRYPT_MODE, keySpec);
+      n = omac(ecb, 0, ciphertext, 0, ivSizeInBytes);
+      h = omac(ecb, 1, aad, 0, aad.length);
+      t = omac(ecb, 2, ciphertext, ivSizeInBytes, plaintextLength);
+    } finally {
+      ecbPool.release(ecb);
+    }
     byte res = 0;
     int offset = ciphertext.length - TAG_SIZE_IN_BYTES;
     for (int i = 0; i < TAG_SIZE_IN_BYTES; i++) {
       res = (byte) (res | (ciphertext[offset + i] ^ h[i] ^ n[i] ^ t[i]));
     }
     if (res != 0) {
-      throw new AEADBadTagException("tag mismatch");
+      throw new StacklessAeadBadTagException("tag mismatch");
+    }
+    EnginePool<Cipher> ctrPool = ctrCipherPools.get();
+    Cipher ctr = ctrPool.acquire();
+    try {
+      ctr.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(n));
+      return ctr.doFinal(ciphertext, ivSizeInBytes, plaintextLength);
+    } finally {
+      ctrPool.release(ctr);
     }
-    Cipher ctr = localCtrCipher.get();
-    ctr.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(n));
-    return ctr.doFinal(ciphertext, ivSizeInBytes, plaintextLength);
   }
 
   @Override
@@ -294,7 +313,7 @@ public final class AesEaxJce implements Aead {
       return rawDecrypt(ciphertext, associatedData);
     }
     if (!isPrefix(outputPrefix, ciphertext)) {
-      throw new GeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
+      throw new StacklessGeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
     }
     byte[] copiedCiphertext =
         Arrays.copyOfRange(ciphertext, outputPrefix.length, ciphertext.length);
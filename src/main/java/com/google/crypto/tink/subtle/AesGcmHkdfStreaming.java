@@ -19,6 +19,7 @@ package com.google.crypto.tink.subtle;
 import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.StreamingAead;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.streamingaead.AesGcmHkdfStreamingKey;
 import com.google.crypto.tink.streamingaead.AesGcmHkdfStreamingParameters.HashType;
 import java.nio.ByteBuffer;
@@ -202,6 +203,10 @@ public final class AesGcmHkdfStreaming extends NonceBasedStreamingAead {
     return EngineFactory.CIPHER.getInstance("AES/GCM/NoPadding");
   }
 
+  // Ciphers for segments which are encrypted or decrypted concurrently.
+  private static final EnginePool<Cipher> cipherPool =
+      EnginePool.create(AesGcmHkdfStreaming::cipherInstance);
+
   private byte[] randomSalt() {
     return Random.randBytes(keySizeInBytes);
   }
@@ -231,7 +236,7 @@ public final class AesGcmHkdfStreaming extends NonceBasedStreamingAead {
    * IV for each segment. By enforcing that only the method encryptSegment can increment this state,
    * we can guarantee that the IV does not repeat.
    */
-  class AesGcmHkdfStreamEncrypter implements StreamSegmentEncrypter {
+  class AesGcmHkdfStreamEncrypter implements IndexedStreamSegmentEncrypter {
     private final SecretKeySpec keySpec;
     private final Cipher cipher;
     private final byte[] noncePrefix;
@@ -294,10 +299,24 @@ public final class AesGcmHkdfStreaming extends NonceBasedStreamingAead {
         cipher.doFinal(part1, ciphertext);
       }
     }
+
+    @Override
+    public void encryptSegment(
+        ByteBuffer plaintext, long segmentNr, boolean isLastSegment, ByteBuffer ciphertext)
+        throws GeneralSecurityException {
+      GCMParameterSpec params = paramsForSegment(noncePrefix, segmentNr, isLastSegment);
+      Cipher segmentCipher = cipherPool.acquire();
+      try {
+        segmentCipher.init(Cipher.ENCRYPT_MODE, keySpec, params);
+        segmentCipher.doFinal(plaintext, ciphertext);
+      } finally {
+        cipherPool.release(segmentCipher);
+      }
+    }
   }
 
   /** An instance of a crypter used to decrypt a ciphertext stream. */
-  class AesGcmHkdfStreamDecrypter implements StreamSegmentDecrypter {
+  class AesGcmHkdfStreamDecrypter implements IndexedStreamSegmentDecrypter {
     private SecretKeySpec keySpec;
     private Cipher cipher;
     private byte[] noncePrefix;
@@ -332,5 +351,19 @@ public final class AesGcmHkdfStreaming extends NonceBasedStreamingAead {
       cipher.init(Cipher.DECRYPT_MODE, keySpec, params);
       cipher.doFinal(ciphertext, plaintext);
     }
+
+    @Override
+    public void decryptSegment(
+        ByteBuffer ciphertext, long segmentNr, boolean isLastSegment, ByteBuffer plaintext)
+        throws GeneralSecurityException {
+      GCMParameterSpec params = paramsForSegment(noncePrefix, segmentNr, isLastSegment);
+      Cipher segmentCipher = cipherPool.acquire();
+      try {
+        segmentCipher.init(Cipher.DECRYPT_MODE, keySpec, params);
+        segmentCipher.doFinal(ciphertext, plaintext);
+      } finally {
+        cipherPool.release(segmentCipher);
+      }
+    }
   }
 }
@@ -22,20 +22,30 @@ import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.aead.AesGcmKey;
+import com.google.crypto.tink.aead.ByteBufferAead;
+import com.google.crypto.tink.aead.internal.AeadWithOffsets;
 import com.google.crypto.tink.aead.internal.InsecureNonceAesGcmJce;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.util.Bytes;
 import com.google.errorprone.annotations.Immutable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.crypto.AEADBadTagException;
 
 /**
  * This primitive implements AesGcm using JCE.
  *
+ * <p>The {@link ByteBufferAead} methods support in-place operation: the input may be a view of the
+ * output buffer starting at the same position.
+ *
  * @since 1.0.0
  */
 @Immutable
-public final class AesGcmJce implements Aead {
+public final class AesGcmJce implements AeadWithOffsets, ByteBufferAead {
   public static final TinkFipsUtil.AlgorithmFipsCompatibility FIPS =
       TinkFipsUtil.AlgorithmFipsCompatibility.ALGORITHM_REQUIRES_BORINGCRYPTO;
 
@@ -80,13 +90,26 @@ public final class AesGcmJce implements Aead {
   @Override
   public byte[] encrypt(final byte[] plaintext, final byte[] associatedData)
       throws GeneralSecurityException {
-    byte[] iv = Random.randBytes(InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES);
-    if (outputPrefix.length == 0) {
-      return insecureNonceAesGcmJce.encrypt(iv, plaintext, associatedData);
-    } else {
-      return com.google.crypto.tink.subtle.Bytes.concat(
-          outputPrefix, insecureNonceAesGcmJce.encrypt(iv, plaintext, associatedData));
+    return encrypt(plaintext, associatedData, 0);
+  }
+
+  /**
+   * On Android KitKat (API level 19) this method does not support non null or non empty {@code
+   * associatedData}. It might not work at all in older versions.
+   */
+  @Override
+  public byte[] encrypt(
+      final byte[] plaintext, final byte[] associatedData, int ciphertextOffset)
+      throws GeneralSecurityException {
+    if (ciphertextOffset < 0 || ciphertextOffset > Integer.MAX_VALUE - outputPrefix.length) {
+      throw new GeneralSecurityException("invalid ciphertext offset");
     }
+    byte[] iv = Random.randBytes(InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES);
+    byte[] ciphertext =
+        insecureNonceAesGcmJce.encrypt(
+            iv, plaintext, associatedData, ciphertextOffset + outputPrefix.length);
+    System.arraycopy(outputPrefix, 0, ciphertext, ciphertextOffset, outputPrefix.length);
+    return ciphertext;
   }
 
   /**
@@ -96,17 +119,114 @@ public final class AesGcmJce implements Aead {
   @Override
   public byte[] decrypt(final byte[] ciphertext, final byte[] associatedData)
       throws GeneralSecurityException {
-    if (outputPrefix.length == 0) {
-      byte[] iv = Arrays.copyOf(ciphertext, InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES);
-      return insecureNonceAesGcmJce.decrypt(iv, ciphertext, associatedData);
-    } else {
-      if (!isPrefix(outputPrefix, ciphertext)) {
-        throw new GeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
-      }
-      byte[] ciphertextNoPrefix =
-          Arrays.copyOfRange(ciphertext, outputPrefix.length, ciphertext.length);
-      byte[] iv = Arrays.copyOf(ciphertextNoPrefix, InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES);
-      return insecureNonceAesGcmJce.decrypt(iv, ciphertextNoPrefix, associatedData);
+    return decrypt(ciphertext, 0, ciphertext.length, associatedData);
+  }
+
+  /**
+   * On Android KitKat (API level 19) this method does not support non null or non empty {@code
+   * associatedData}. It might not work at all in older versions.
+   */
+  @Override
+  public byte[] decrypt(
+      final byte[] ciphertext, int offset, int length, final byte[] associatedData)
+      throws GeneralSecurityException {
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("invalid ciphertext offset or length");
+    }
+    if (length < outputPrefix.length + InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES) {
+      throw new StacklessGeneralSecurityException("ciphertext too short");
+    }
+    if (!isPrefix(outputPrefix, ciphertext, offset)) {
+      throw new StacklessGeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
+    }
+    return decryptNoPrefix(
+        ciphertext, offset + outputPrefix.length, length - outputPrefix.length, associatedData);
+  }
+
+  /**
+   * Same as {@link #decrypt(byte[], int, int, byte[])}, but returns {@code null} instead of
+   * throwing if the ciphertext is invalid.
+   *
+   * <p>Note that the JCE still creates an {@link AEADBadTagException} internally if the tag is
+   * invalid.
+   */
+  @Override
+  @Nullable
+  public byte[] tryDecrypt(
+      final byte[] ciphertext, int offset, int length, final byte[] associatedData)
+      throws GeneralSecurityException {
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("invalid ciphertext offset or length");
+    }
+    if (length
+            < outputPrefix.length
+                + InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES
+                + InsecureNonceAesGcmJce.TAG_SIZE_IN_BYTES
+        || !isPrefix(outputPrefix, ciphertext, offset)) {
+      return null;
+    }
+    try {
+      return decryptNoPrefix(
+          ciphertext, offset + outputPrefix.length, length - outputPrefix.length, associatedData);
+    } catch (AEADBadTagException e) {
+      return null;
+    }
+  }
+
+  private byte[] decryptNoPrefix(
+      final byte[] ciphertext, int rawOffset, int rawLength, final byte[] associatedData)
+      throws GeneralSecurityException {
+    byte[] iv =
+        Arrays.copyOfRange(
+            ciphertext, rawOffset, rawOffset + InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES);
+    return insecureNonceAesGcmJce.decrypt(iv, ciphertext, rawOffset, rawLength, associatedData);
+  }
+
+  @Override
+  public int ciphertextSize(int plaintextSize) throws GeneralSecurityException {
+    long size =
+        (long) outputPrefix.length
+            + InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES
+            + plaintextSize
+            + InsecureNonceAesGcmJce.TAG_SIZE_IN_BYTES;
+    if (plaintextSize < 0 || size > Integer.MAX_VALUE) {
+      throw new GeneralSecurityException("plaintext too long");
+    }
+    return (int) size;
+  }
+
+  @Override
+  public void encrypt(
+      ByteBuffer plaintext, @Nullable ByteBuffer associatedData, ByteBuffer ciphertext)
+      throws GeneralSecurityException {
+    if (ciphertext.remaining() < ciphertextSize(plaintext.remaining())) {
+      throw new BufferOverflowException();
+    }
+    byte[] iv = Random.randBytes(InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES);
+    ByteBuffer ciphertextNoPrefix = ciphertext.duplicate();
+    ciphertextNoPrefix.position(ciphertext.position() + outputPrefix.length);
+    insecureNonceAesGcmJce.encrypt(iv, plaintext, associatedData, ciphertextNoPrefix);
+    // Written last, so that in-place encryption does not overwrite the plaintext.
+    ciphertext.duplicate().put(outputPrefix);
+    ciphertext.position(ciphertextNoPrefix.position());
+  }
+
+  @Override
+  public void decrypt(
+      ByteBuffer ciphertext, @Nullable ByteBuffer associatedData, ByteBuffer plaintext)
+      throws GeneralSecurityException {
+    if (ciphertext.remaining()
+        < outputPrefix.length + InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES) {
+      throw new StacklessGeneralSecurityException("ciphertext too short");
+    }
+    if (!isPrefix(outputPrefix, ciphertext)) {
+      throw new StacklessGeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
     }
+    ByteBuffer ciphertextNoPrefix = ciphertext.duplicate();
+    ciphertextNoPrefix.position(ciphertext.position() + outputPrefix.length);
+    byte[] iv = new byte[InsecureNonceAesGcmJce.IV_SIZE_IN_BYTES];
+    ciphertextNoPrefix.duplicate().get(iv);
+    insecureNonceAesGcmJce.decrypt(iv, ciphertextNoPrefix, associatedData, plaintext);
+    ciphertext.position(ciphertext.limit());
   }
 }
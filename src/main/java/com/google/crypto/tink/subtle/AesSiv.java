@@ -23,13 +23,16 @@ import com.google.crypto.tink.DeterministicAead;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
 import com.google.crypto.tink.daead.AesSivKey;
+import com.google.crypto.tink.daead.internal.DeterministicAeadWithOffsets;
+import com.google.crypto.tink.internal.StacklessAeadBadTagException;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.mac.internal.AesUtil;
 import com.google.crypto.tink.util.Bytes;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.util.Arrays;
 import java.util.Collection;
-import javax.crypto.AEADBadTagException;
+import javax.annotation.Nullable;
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -43,7 +46,7 @@ import javax.crypto.spec.SecretKeySpec;
  *
  * @since 1.1.0
  */
-public final class AesSiv implements DeterministicAead {
+public final class AesSiv implements DeterministicAeadWithOffsets {
   public static final TinkFipsUtil.AlgorithmFipsCompatibility FIPS =
       TinkFipsUtil.AlgorithmFipsCompatibility.ALGORITHM_NOT_FIPS;
 
@@ -128,7 +131,18 @@ public final class AesSiv implements DeterministicAead {
   @Override
   public byte[] encryptDeterministically(final byte[] plaintext, final byte[] associatedData)
       throws GeneralSecurityException {
-    if (plaintext.length > Integer.MAX_VALUE - AesUtil.BLOCK_SIZE) {
+    return encryptDeterministically(plaintext, associatedData, 0);
+  }
+
+  @Override
+  public byte[] encryptDeterministically(
+      final byte[] plaintext, final byte[] associatedData, int ciphertextOffset)
+      throws GeneralSecurityException {
+    if (ciphertextOffset < 0) {
+      throw new GeneralSecurityException("invalid ciphertext offset");
+    }
+    if (plaintext.length
+        > Integer.MAX_VALUE - AesUtil.BLOCK_SIZE - outputPrefix.length - ciphertextOffset) {
       throw new GeneralSecurityException("plaintext too long");
     }
 
@@ -143,26 +157,72 @@ public final class AesSiv implements DeterministicAead {
         new SecretKeySpec(this.aesCtrKey, "AES"),
         new IvParameterSpec(ivForJavaCrypto));
 
-    byte[] ctrCiphertext = aesCtr.doFinal(plaintext);
-
-    return com.google.crypto.tink.subtle.Bytes.concat(outputPrefix, computedIv, ctrCiphertext);
+    int ivOffset = ciphertextOffset + outputPrefix.length;
+    byte[] ciphertext = new byte[ivOffset + AesUtil.BLOCK_SIZE + plaintext.length];
+    System.arraycopy(outputPrefix, 0, ciphertext, ciphertextOffset, outputPrefix.length);
+    System.arraycopy(computedIv, 0, ciphertext, ivOffset, AesUtil.BLOCK_SIZE);
+    int written =
+        aesCtr.doFinal(plaintext, 0, plaintext.length, ciphertext, ivOffset + AesUtil.BLOCK_SIZE);
+    if (written != plaintext.length) {
+      throw new GeneralSecurityException("stored output's length does not match input's length");
+    }
+    return ciphertext;
   }
 
   @Override
   public byte[] decryptDeterministically(final byte[] ciphertext, final byte[] associatedData)
       throws GeneralSecurityException {
-    if (ciphertext.length < AesUtil.BLOCK_SIZE + outputPrefix.length) {
-      throw new GeneralSecurityException("Ciphertext too short.");
+    return decryptDeterministically(ciphertext, 0, ciphertext.length, associatedData);
+  }
+
+  @Override
+  public byte[] decryptDeterministically(
+      final byte[] ciphertext, int offset, int length, final byte[] associatedData)
+      throws GeneralSecurityException {
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("invalid ciphertext offset or length");
+    }
+    if (length < AesUtil.BLOCK_SIZE + outputPrefix.length) {
+      throw new StacklessGeneralSecurityException("Ciphertext too short.");
     }
-    if (!isPrefix(outputPrefix, ciphertext)) {
-      throw new GeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
+    if (!isPrefix(outputPrefix, ciphertext, offset)) {
+      throw new StacklessGeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
     }
+    byte[] plaintext =
+        decryptNoPrefix(ciphertext, offset + outputPrefix.length, offset + length, associatedData);
+    if (plaintext == null) {
+      throw new StacklessAeadBadTagException("Integrity check failed.");
+    }
+    return plaintext;
+  }
 
+  @Override
+  @Nullable
+  public byte[] tryDecryptDeterministically(
+      final byte[] ciphertext, int offset, int length, final byte[] associatedData)
+      throws GeneralSecurityException {
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("invalid ciphertext offset or length");
+    }
+    if (length < AesUtil.BLOCK_SIZE + outputPrefix.length
+        || !isPrefix(outputPrefix, ciphertext, offset)) {
+      return null;
+    }
+    return decryptNoPrefix(
+        ciphertext, offset + outputPrefix.length, offset + length, associatedData);
+  }
+
+  /**
+   * Decrypts {@code ciphertext[ivOffset, end)}, which starts with the synthetic IV. Returns {@code
+   * null} if the integrity check fails.
+   */
+  @Nullable
+  private byte[] decryptNoPrefix(
+      final byte[] ciphertext, int ivOffset, int end, final byte[] associatedData)
+      throws GeneralSecurityException {
     Cipher aesCtr = EngineFactory.CIPHER.getInstance("AES/CTR/NoPadding");
 
-    byte[] expectedIv =
-        Arrays.copyOfRange(
-            ciphertext, outputPrefix.length, AesUtil.BLOCK_SIZE + outputPrefix.length);
+    byte[] expectedIv = Arrays.copyOfRange(ciphertext, ivOffset, ivOffset + AesUtil.BLOCK_SIZE);
 
     byte[] ivForJavaCrypto = expectedIv.clone();
     ivForJavaCrypto[8] &= (byte) 0x7F; // 63th bit from the right
@@ -173,10 +233,10 @@ public final class AesSiv implements DeterministicAead {
         new SecretKeySpec(this.aesCtrKey, "AES"),
         new IvParameterSpec(ivForJavaCrypto));
 
-    byte[] ctrCiphertext =
-        Arrays.copyOfRange(ciphertext, AesUtil.BLOCK_SIZE + outputPrefix.length, ciphertext.length);
-    byte[] decryptedPt = aesCtr.doFinal(ctrCiphertext);
-    if (ctrCiphertext.length == 0 && decryptedPt == null && SubtleUtil.isAndroid()) {
+    int ctrCiphertextLength = end - ivOffset - AesUtil.BLOCK_SIZE;
+    byte[] decryptedPt =
+        aesCtr.doFinal(ciphertext, ivOffset + AesUtil.BLOCK_SIZE, ctrCiphertextLength);
+    if (ctrCiphertextLength == 0 && decryptedPt == null && SubtleUtil.isAndroid()) {
       // On Android KitKat (19) and Lollipop (21), Cipher.doFinal returns a null pointer when the
       // ciphertext is empty, instead of an empty plaintext. Here we attempt to fix this bug. This
       // is safe because if the plaintext is not empty, the next integrity check would reject it.
@@ -187,7 +247,7 @@ public final class AesSiv implements DeterministicAead {
     if (com.google.crypto.tink.subtle.Bytes.equal(expectedIv, computedIv)) {
       return decryptedPt;
     } else {
-      throw new AEADBadTagException("Integrity check failed.");
+      return null;
     }
   }
 }
@@ -0,0 +1,211 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A bounded cache of decrypted segments for {@link StreamingAeadPositionalDecryptingChannel}.
+ *
+ * <p>Reading a few bytes of an encrypted file decrypts and authenticates the whole segment which
+ * contains them. Files which are read many times in the same places, such as the footer and index
+ * blocks of columnar files, can instead keep the plaintext of these segments in a cache:
+ *
+ * <pre>{@code
+ * DecryptedSegmentCache cache = DecryptedSegmentCache.create(64 << 20);
+ * ...
+ * StreamingAeadPositionalDecryptingChannel channel =
+ *     streamingAead.newPositionalDecryptingChannel(ciphertextSource, associatedData, cache);
+ * }</pre>
+ *
+ * <p>Only segments which have been authenticated are cached. They are cached by the identity of
+ * the {@link NonceBasedStreamingAead}, the header and the size of the ciphertext, the associated
+ * data and the segment number. The header contains a random salt, so channels opened on the same
+ * ciphertext share their cached segments, while channels on different ciphertexts, on truncated or
+ * extended copies of a ciphertext, or with a different key or associated data, never see each
+ * other's segments. When the cache is full, the least recently
+ * used segments are evicted.
+ *
+ * <p>The cache keeps plaintext in memory until the segment is evicted. A cache created with {@link
+ * #createOffHeap} keeps it in direct buffers, outside of the Java heap.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class DecryptedSegmentCache {
+  /** Identifies a segment of a ciphertext. */
+  private static final class SegmentKey {
+    private final NonceBasedStreamingAead streamingAead;
+    private final byte[] ciphertextId;
+    private final long segmentNr;
+    private final int hashCode;
+
+    SegmentKey(NonceBasedStreamingAead streamingAead, byte[] ciphertextId, long segmentNr) {
+      this.streamingAead = streamingAead;
+      this.ciphertextId = ciphertextId;
+      this.segmentNr = segmentNr;
+      int result = System.identityHashCode(streamingAead);
+      result = 31 * result + Arrays.hashCode(ciphertextId);
+      this.hashCode = 31 * result + (int) (segmentNr ^ (segmentNr >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SegmentKey)) {
+        return false;
+      }
+      SegmentKey that = (SegmentKey) o;
+      return streamingAead == that.streamingAead
+          && segmentNr == that.segmentNr
+          && Arrays.equals(ciphertextId, that.ciphertextId);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private final long maxSizeInBytes;
+  private final boolean offHeap;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<SegmentKey, ByteBuffer> segments =
+      new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+
+  @GuardedBy("this")
+  private long sizeInBytes = 0;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  private DecryptedSegmentCache(long maxSizeInBytes, boolean offHeap) {
+    if (maxSizeInBytes <= 0) {
+      throw new IllegalArgumentException("maxSizeInBytes must be positive");
+    }
+    this.maxSizeInBytes = maxSizeInBytes;
+    this.offHeap = offHeap;
+  }
+
+  /** Creates a cache which holds at most {@code maxSizeInBytes} bytes of plaintext on the heap. */
+  public static DecryptedSegmentCache create(long maxSizeInBytes) {
+    return new DecryptedSegmentCache(maxSizeInBytes, /* offHeap= */ false);
+  }
+
+  /**
+   * Creates a cache which holds at most {@code maxSizeInBytes} bytes of plaintext in direct
+   * buffers.
+   */
+  public static DecryptedSegmentCache createOffHeap(long maxSizeInBytes) {
+    return new DecryptedSegmentCache(maxSizeInBytes, /* offHeap= */ true);
+  }
+
+  /**
+   * Returns the plaintext of a segment as a read-only buffer, or null if the segment is not in the
+   * cache.
+   */
+  @Nullable
+  ByteBuffer get(NonceBasedStreamingAead streamingAead, byte[] ciphertextId, long segmentNr) {
+    SegmentKey key = new SegmentKey(streamingAead, ciphertextId, segmentNr);
+    ByteBuffer plaintext;
+    synchronized (this) {
+      plaintext = segments.get(key);
+    }
+    if (plaintext == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    return plaintext.duplicate();
+  }
+
+  /** Adds a copy of the remaining bytes of {@code plaintext}, which must be authenticated. */
+  void put(
+      NonceBasedStreamingAead streamingAead,
+      byte[] ciphertextId,
+      long segmentNr,
+      ByteBuffer plaintext) {
+    int size = plaintext.remaining();
+    if (size > maxSizeInBytes) {
+      return;
+    }
+    ByteBuffer copy = offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    copy.put(plaintext.duplicate());
+    copy.flip();
+    // Entries are never modified, so readers can share them without copying.
+    ByteBuffer entry = copy.asReadOnlyBuffer();
+    SegmentKey key = new SegmentKey(streamingAead, ciphertextId, segmentNr);
+    synchronized (this) {
+      ByteBuffer previous = segments.put(key, entry);
+      if (previous != null) {
+        sizeInBytes -= previous.capacity();
+      }
+      sizeInBytes += size;
+      Iterator<ByteBuffer> eldest = segments.values().iterator();
+      while (sizeInBytes > maxSizeInBytes) {
+        sizeInBytes -= eldest.next().capacity();
+        eldest.remove();
+        evictionCount.incrementAndGet();
+      }
+    }
+  }
+
+  /** Removes all segments from the cache. Does not reset the counts. */
+  public synchronized void clear() {
+    segments.clear();
+    sizeInBytes = 0;
+  }
+
+  /** Returns the number of segments currently in the cache. */
+  public synchronized int size() {
+    return segments.size();
+  }
+
+  /** Returns the number of bytes of plaintext currently in the cache. */
+  public synchronized long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /** Returns how often a segment was found in the cache. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns how often a segment was not found in the cache, and had to be decrypted. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** Returns how many segments were evicted because the cache was full. */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /** Returns the fraction of lookups which found the segment, or 0 if there were no lookups. */
+  public double getHitRate() {
+    long hits = hitCount.get();
+    long lookups = hits + missCount.get();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+}
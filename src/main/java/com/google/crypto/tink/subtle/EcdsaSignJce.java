@@ -21,6 +21,7 @@ import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.PublicKeySign;
 import com.google.crypto.tink.PublicKeyVerify;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.signature.EcdsaParameters;
 import com.google.crypto.tink.signature.EcdsaPrivateKey;
 import com.google.crypto.tink.subtle.EllipticCurves.CurveType;
@@ -56,6 +57,11 @@ public final class EcdsaSignJce implements PublicKeySign {
   @SuppressWarnings("Immutable")
   private final byte[] messageSuffix;
 
+  // Signers which are initialized with privateKey. They are reset after each signature. The pool
+  // is shared between threads and bounded, so that no thread keeps the private key alive.
+  @SuppressWarnings("Immutable")
+  private final EnginePool<Signature> signerPool;
+
   private EcdsaSignJce(
       final ECPrivateKey priv,
       HashType hash,
@@ -73,6 +79,19 @@ public final class EcdsaSignJce implements PublicKeySign {
     this.encoding = encoding;
     this.outputPrefix = outputPrefix;
     this.messageSuffix = messageSuffix;
+    // Prefer Conscrypt over other providers if available.
+    List<Provider> preferredProviders =
+        EngineFactory.toProviderList("GmsCore_OpenSSL", "AndroidOpenSSL", "Conscrypt");
+    String signatureAlgorithm = this.signatureAlgorithm;
+    this.signerPool =
+        EnginePool.create(
+            EnginePool.Strategy.SHARED,
+            () -> {
+              Signature signer =
+                  EngineFactory.SIGNATURE.getInstance(signatureAlgorithm, preferredProviders);
+              signer.initSign(priv);
+              return signer;
+            });
   }
 
   public EcdsaSignJce(final ECPrivateKey priv, HashType hash, EcdsaEncoding encoding)
@@ -116,13 +135,12 @@ public final class EcdsaSignJce implements PublicKeySign {
   }
 
   private byte[] noPrefixSign(final byte[] data) throws GeneralSecurityException {
-    // Prefer Conscrypt over other providers if available.
-    List<Provider> preferredProviders =
-        EngineFactory.toProviderList("GmsCore_OpenSSL", "AndroidOpenSSL", "Conscrypt");
-    Signature signer = EngineFactory.SIGNATURE.getInstance(signatureAlgorithm, preferredProviders);
-    signer.initSign(privateKey);
-    signer.update(data);
-    byte[] signature = signer.sign();
+    byte[] signature =
+        signerPool.apply(
+            signer -> {
+              signer.update(data);
+              return signer.sign();
+            });
     if (encoding == EcdsaEncoding.IEEE_P1363) {
       EllipticCurve curve = privateKey.getParams().getCurve();
       signature =
@@ -21,7 +21,9 @@ import static com.google.crypto.tink.internal.Util.isPrefix;
 import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.PublicKeyVerify;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.internal.EnumTypeProtoConverter;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.signature.EcdsaParameters;
 import com.google.crypto.tink.signature.EcdsaPublicKey;
 import com.google.crypto.tink.subtle.EllipticCurves.CurveType;
@@ -96,6 +98,11 @@ public final class EcdsaVerifyJce implements PublicKeyVerify {
             : new byte[0]);
   }
 
+  // Verifiers which are initialized with publicKey. They are reset after each verification, and
+  // at most a few of them are kept.
+  @SuppressWarnings("Immutable")
+  private final EnginePool<Signature> verifierPool;
+
   private EcdsaVerifyJce(
       final ECPublicKey pubKey,
       HashType hash,
@@ -114,6 +121,19 @@ public final class EcdsaVerifyJce implements PublicKeyVerify {
     this.encoding = encoding;
     this.outputPrefix = outputPrefix;
     this.messageSuffix = messageSuffix;
+    // Prefer Conscrypt over other providers if available.
+    List<Provider> preferredProviders =
+        EngineFactory.toProviderList("GmsCore_OpenSSL", "AndroidOpenSSL", "Conscrypt");
+    String signatureAlgorithm = this.signatureAlgorithm;
+    this.verifierPool =
+        EnginePool.create(
+            EnginePool.Strategy.SHARED,
+            () -> {
+              Signature verifier =
+                  EngineFactory.SIGNATURE.getInstance(signatureAlgorithm, preferredProviders);
+              verifier.initVerify(pubKey);
+              return verifier;
+            });
   }
 
   public EcdsaVerifyJce(final ECPublicKey pubKey, HashType hash, EcdsaEncoding encoding)
@@ -127,27 +147,27 @@ public final class EcdsaVerifyJce implements PublicKeyVerify {
     if (encoding == EcdsaEncoding.IEEE_P1363) {
       EllipticCurve curve = publicKey.getParams().getCurve();
       if (signature.length != 2 * EllipticCurves.fieldSizeInBytes(curve)) {
-        throw new GeneralSecurityException("Invalid signature");
+        throw new StacklessGeneralSecurityException("Invalid signature");
       }
       derSignature = EllipticCurves.ecdsaIeee2Der(signature);
     }
     if (!EllipticCurves.isValidDerEncoding(derSignature)) {
-      throw new GeneralSecurityException("Invalid signature");
+      throw new StacklessGeneralSecurityException("Invalid signature");
     }
-    List<Provider> preferredProviders =
-        EngineFactory.toProviderList("GmsCore_OpenSSL", "AndroidOpenSSL", "Conscrypt");
-    Signature verifier =
-        EngineFactory.SIGNATURE.getInstance(signatureAlgorithm, preferredProviders);
-    verifier.initVerify(publicKey);
-    verifier.update(data);
-    boolean verified = false;
+    byte[] encodedSignature = derSignature;
+    boolean verified;
     try {
-      verified = verifier.verify(derSignature);
+      verified =
+          verifierPool.apply(
+              verifier -> {
+                verifier.update(data);
+                return verifier.verify(encodedSignature);
+              });
     } catch (java.lang.RuntimeException ex) {
       verified = false;
     }
     if (!verified) {
-      throw new GeneralSecurityException("Invalid signature");
+      throw new StacklessGeneralSecurityException("Invalid signature");
     }
   }
 
@@ -158,7 +178,7 @@ public final class EcdsaVerifyJce implements PublicKeyVerify {
       return;
     }
     if (!isPrefix(outputPrefix, signature)) {
-      throw new GeneralSecurityException("Invalid signature (output prefix mismatch)");
+      throw new StacklessGeneralSecurityException("Invalid signature (output prefix mismatch)");
     }
     byte[] dataCopy = data;
     if (messageSuffix.length != 0) {
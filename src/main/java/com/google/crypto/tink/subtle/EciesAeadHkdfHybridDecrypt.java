@@ -22,8 +22,10 @@ import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.HybridDecrypt;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.hybrid.EciesPrivateKey;
+import com.google.crypto.tink.hybrid.internal.HybridDecryptWithOffsets;
 import com.google.crypto.tink.hybrid.subtle.AeadOrDaead;
 import com.google.crypto.tink.internal.BigIntegerEncoding;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import java.security.GeneralSecurityException;
 import java.security.interfaces.ECPrivateKey;
 import java.security.spec.EllipticCurve;
@@ -35,7 +37,7 @@ import java.util.Arrays;
  *
  * @since 1.0.0
  */
-public final class EciesAeadHkdfHybridDecrypt implements HybridDecrypt {
+public final class EciesAeadHkdfHybridDecrypt implements HybridDecryptWithOffsets {
   private static final byte[] EMPTY_AAD = new byte[0];
   private final ECPrivateKey recipientPrivateKey;
   private final EciesHkdfRecipientKem recipientKem;
@@ -96,14 +98,25 @@ public final class EciesAeadHkdfHybridDecrypt implements HybridDecrypt {
         key.getOutputPrefix().toByteArray());
   }
 
-  private byte[] decryptNoPrefix(final byte[] ciphertext, final byte[] contextInfo)
+  @Override
+  public byte[] decrypt(final byte[] ciphertext, int offset, int length, final byte[] contextInfo)
       throws GeneralSecurityException {
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("invalid offset or length");
+    }
+    if (length < outputPrefix.length) {
+      throw new StacklessGeneralSecurityException("ciphertext too short");
+    }
+    if (!isPrefix(outputPrefix, ciphertext, offset)) {
+      throw new StacklessGeneralSecurityException("Invalid ciphertext (output prefix mismatch)");
+    }
+    int kemOffset = offset + outputPrefix.length;
     EllipticCurve curve = recipientPrivateKey.getParams().getCurve();
     int headerSize = EllipticCurves.encodingSizeInBytes(curve, ecPointFormat);
-    if (ciphertext.length < headerSize) {
-      throw new GeneralSecurityException("ciphertext too short");
+    if (length - outputPrefix.length < headerSize) {
+      throw new StacklessGeneralSecurityException("ciphertext too short");
     }
-    byte[] kemBytes = Arrays.copyOfRange(ciphertext, 0, headerSize);
+    byte[] kemBytes = Arrays.copyOfRange(ciphertext, kemOffset, kemOffset + headerSize);
     byte[] symmetricKey =
         recipientKem.generateKey(
             kemBytes,
@@ -113,20 +126,13 @@ public final class EciesAeadHkdfHybridDecrypt implements HybridDecrypt {
             demHelper.getSymmetricKeySizeInBytes(),
             ecPointFormat);
     AeadOrDaead aead = demHelper.getAeadOrDaead(symmetricKey);
-    return aead.decrypt(Arrays.copyOfRange(ciphertext, headerSize, ciphertext.length), EMPTY_AAD);
+    int demOffset = kemOffset + headerSize;
+    return aead.decrypt(ciphertext, demOffset, offset + length - demOffset, EMPTY_AAD);
   }
 
   @Override
   public byte[] decrypt(final byte[] ciphertext, final byte[] contextInfo)
       throws GeneralSecurityException {
-    if (outputPrefix.length == 0) {
-      return decryptNoPrefix(ciphertext, contextInfo);
-    }
-    if (!isPrefix(outputPrefix, ciphertext)) {
-      throw new GeneralSecurityException("Invalid ciphertext (output prefix mismatch)");
-    }
-    byte[] ciphertextNoPrefix =
-        Arrays.copyOfRange(ciphertext, outputPrefix.length, ciphertext.length);
-    return decryptNoPrefix(ciphertextNoPrefix, contextInfo);
+    return decrypt(ciphertext, 0, ciphertext.length, contextInfo);
   }
 }
@@ -23,6 +23,7 @@ import com.google.crypto.tink.PublicKeyVerify;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
 import com.google.crypto.tink.internal.Ed25519;
 import com.google.crypto.tink.internal.Field25519;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.signature.Ed25519Parameters;
 import com.google.crypto.tink.signature.Ed25519PublicKey;
 import com.google.crypto.tink.util.Bytes;
@@ -109,7 +110,7 @@ public final class Ed25519Verify implements PublicKeyVerify {
           String.format("The length of the signature is not %s.", SIGNATURE_LEN));
     }
     if (!Ed25519.verify(data, signature, publicKey.toByteArray())) {
-      throw new GeneralSecurityException("Signature check failed.");
+      throw new StacklessGeneralSecurityException("Signature check failed.");
     }
   }
 
@@ -120,7 +121,7 @@ public final class Ed25519Verify implements PublicKeyVerify {
       return;
     }
     if (!isPrefix(outputPrefix, signature)) {
-      throw new GeneralSecurityException("Invalid signature (output prefix mismatch)");
+      throw new StacklessGeneralSecurityException("Invalid signature (output prefix mismatch)");
     }
     byte[] dataCopy = data;
     if (messageSuffix.length != 0) {
@@ -21,6 +21,7 @@ import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.Mac;
 import com.google.crypto.tink.aead.AesCtrHmacAeadKey;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.internal.Util;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
@@ -131,10 +132,10 @@ public final class EncryptThenAuthenticate implements Aead {
   public byte[] decrypt(final byte[] ciphertext, final byte[] associatedData)
       throws GeneralSecurityException {
     if (ciphertext.length < macLength + outputPrefix.length) {
-      throw new GeneralSecurityException("Decryption failed (ciphertext too short).");
+      throw new StacklessGeneralSecurityException("Decryption failed (ciphertext too short).");
     }
     if (!Util.isPrefix(outputPrefix, ciphertext)) {
-      throw new GeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
+      throw new StacklessGeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
     }
     byte[] rawCiphertext =
         Arrays.copyOfRange(ciphertext, outputPrefix.length, ciphertext.length - macLength);
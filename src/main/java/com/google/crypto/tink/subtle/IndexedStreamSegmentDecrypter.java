@@ -0,0 +1,38 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * A {@link StreamSegmentDecrypter} whose segments can be decrypted concurrently once it has been
+ * initialized with the header of the ciphertext.
+ */
+interface IndexedStreamSegmentDecrypter extends StreamSegmentDecrypter {
+
+  /**
+   * Decrypts the remaining bytes of {@code ciphertext} as segment number {@code segmentNr}, and
+   * writes the plaintext to {@code plaintext}.
+   *
+   * <p>This method may be called concurrently from several threads, but only after {@link #init}
+   * has returned.
+   */
+  void decryptSegment(
+      ByteBuffer ciphertext, long segmentNr, boolean isLastSegment, ByteBuffer plaintext)
+      throws GeneralSecurityException;
+}
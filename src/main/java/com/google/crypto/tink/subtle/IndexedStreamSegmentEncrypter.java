@@ -0,0 +1,41 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * A {@link StreamSegmentEncrypter} which can also encrypt a segment given by its number, so that
+ * the segments of a stream can be encrypted concurrently.
+ *
+ * <p>The nonce of a segment is derived from its number, so the caller must encrypt each segment
+ * number at most once, and must not mix this method with the sequential {@code encryptSegment}
+ * methods on the same instance.
+ */
+interface IndexedStreamSegmentEncrypter extends StreamSegmentEncrypter {
+
+  /**
+   * Encrypts the remaining bytes of {@code plaintext} as segment number {@code segmentNr}, and
+   * writes the ciphertext to {@code ciphertext}.
+   *
+   * <p>This method may be called concurrently from several threads.
+   */
+  void encryptSegment(
+      ByteBuffer plaintext, long segmentNr, boolean isLastSegment, ByteBuffer ciphertext)
+      throws GeneralSecurityException;
+}
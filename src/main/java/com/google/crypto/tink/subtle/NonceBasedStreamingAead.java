@@ -20,10 +20,13 @@ import com.google.crypto.tink.StreamingAead;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.security.GeneralSecurityException;
+import java.util.concurrent.Executor;
 
 /**
  * An abstract class for StreamingAead using the nonce based online encryption scheme proposed in <a
@@ -56,6 +59,33 @@ abstract class NonceBasedStreamingAead implements StreamingAead {
     return new StreamingAeadEncryptingChannel(this, ciphertextChannel, associatedData);
   }
 
+  /**
+   * Returns a {@link WritableByteChannel} which encrypts up to {@code maxSegmentsInFlight} segments
+   * concurrently on {@code executor}.
+   *
+   * <p>The ciphertext is identical to the one written by {@link #newEncryptingChannel} with the
+   * same header, and can be decrypted in the same way. {@code ciphertextChannel} must be blocking.
+   * The channel buffers up to {@code maxSegmentsInFlight + 1} plaintext and ciphertext segments.
+   */
+  public WritableByteChannel newParallelEncryptingChannel(
+      WritableByteChannel ciphertextChannel,
+      byte[] associatedData,
+      Executor executor,
+      int maxSegmentsInFlight)
+      throws GeneralSecurityException, IOException {
+    return new StreamingAeadParallelEncryptingChannel(
+        this, ciphertextChannel, associatedData, executor, maxSegmentsInFlight);
+  }
+
+  /** Same as {@link #newParallelEncryptingChannel}, but for an {@link OutputStream}. */
+  public OutputStream newParallelEncryptingStream(
+      OutputStream ciphertext, byte[] associatedData, Executor executor, int maxSegmentsInFlight)
+      throws GeneralSecurityException, IOException {
+    return Channels.newOutputStream(
+        newParallelEncryptingChannel(
+            Channels.newChannel(ciphertext), associatedData, executor, maxSegmentsInFlight));
+  }
+
   @Override
   public ReadableByteChannel newDecryptingChannel(
       ReadableByteChannel ciphertextChannel, byte[] associatedData)
@@ -63,6 +93,36 @@ abstract class NonceBasedStreamingAead implements StreamingAead {
     return new StreamingAeadDecryptingChannel(this, ciphertextChannel, associatedData);
   }
 
+  /**
+   * Returns a {@link ReadableByteChannel} which reads ahead and decrypts up to {@code
+   * maxSegmentsInFlight} segments concurrently on {@code executor}.
+   *
+   * <p>It returns the same plaintext as {@link #newDecryptingChannel}, and rejects the same
+   * ciphertexts. The channel buffers up to {@code maxSegmentsInFlight + 3} ciphertext and plaintext
+   * segments.
+   */
+  public ReadableByteChannel newParallelDecryptingChannel(
+      ReadableByteChannel ciphertextChannel,
+      byte[] associatedData,
+      Executor executor,
+      int maxSegmentsInFlight)
+      throws GeneralSecurityException, IOException {
+    return new StreamingAeadParallelDecryptingChannel(
+        this, ciphertextChannel, associatedData, executor, maxSegmentsInFlight);
+  }
+
+  /** Same as {@link #newParallelDecryptingChannel}, but for an {@link InputStream}. */
+  public InputStream newParallelDecryptingStream(
+      InputStream ciphertextStream,
+      byte[] associatedData,
+      Executor executor,
+      int maxSegmentsInFlight)
+      throws GeneralSecurityException, IOException {
+    return Channels.newInputStream(
+        newParallelDecryptingChannel(
+            Channels.newChannel(ciphertextStream), associatedData, executor, maxSegmentsInFlight));
+  }
+
   @Override
   public SeekableByteChannel newSeekableDecryptingChannel(
       SeekableByteChannel ciphertextSource, byte[] associatedData)
@@ -70,6 +130,85 @@ abstract class NonceBasedStreamingAead implements StreamingAead {
     return new StreamingAeadSeekableDecryptingChannel(this, ciphertextSource, associatedData);
   }
 
+  /**
+   * Returns a channel which reads the plaintext at given positions, and which can be used by
+   * several threads at the same time.
+   *
+   * <p>Reads from different threads decrypt concurrently. They only wait for each other to read the
+   * ciphertext, unless {@code ciphertextSource} is a {@link java.nio.channels.FileChannel}.
+   */
+  public StreamingAeadPositionalDecryptingChannel newPositionalDecryptingChannel(
+      SeekableByteChannel ciphertextSource, byte[] associatedData)
+      throws GeneralSecurityException, IOException {
+    return new StreamingAeadPositionalDecryptingChannel(
+        this, ciphertextSource, associatedData, /* cache= */ null);
+  }
+
+  /**
+   * Same as {@link #newPositionalDecryptingChannel(SeekableByteChannel, byte[])}, but keeps
+   * decrypted segments in {@code cache}, which may be shared with other channels.
+   */
+  public StreamingAeadPositionalDecryptingChannel newPositionalDecryptingChannel(
+      SeekableByteChannel ciphertextSource, byte[] associatedData, DecryptedSegmentCache cache)
+      throws GeneralSecurityException, IOException {
+    if (cache == null) {
+      throw new NullPointerException("cache must not be null");
+    }
+    return new StreamingAeadPositionalDecryptingChannel(
+        this, ciphertextSource, associatedData, cache);
+  }
+
+  /**
+   * Encrypts the file {@code plaintextSource} from its position to its end, and writes the
+   * ciphertext to {@code ciphertextDestination}.
+   *
+   * <p>The ciphertext is identical to the one written by {@link #newEncryptingChannel}. The
+   * plaintext is memory-mapped and encrypted without being copied to the heap. If {@code
+   * ciphertextDestination} is a {@link FileChannel} which is open for reading and writing, the
+   * ciphertext is written to a memory-mapped region of it, too. Large files are mapped in windows.
+   *
+   * <p>Mapping the destination extends it to the end of the mapped window before the ciphertext is
+   * written. If encryption fails, the destination is truncated after the ciphertext written so far.
+   *
+   * @return the number of bytes of ciphertext which were written
+   */
+  public long encryptFile(
+      FileChannel plaintextSource, WritableByteChannel ciphertextDestination, byte[] associatedData)
+      throws GeneralSecurityException, IOException {
+    return StreamingAeadMappedFiles.encrypt(
+        this,
+        plaintextSource,
+        ciphertextDestination,
+        associatedData,
+        StreamingAeadMappedFiles.DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Decrypts the file {@code ciphertextSource} from its position to its end, and writes the
+   * plaintext to {@code plaintextDestination}.
+   *
+   * <p>This is the counterpart of {@link #encryptFile}, and accepts the same ciphertexts as {@link
+   * #newDecryptingChannel}. As there, the plaintext of each segment is written once the segment is
+   * authenticated, so if decryption fails with an {@link IOException}, {@code plaintextDestination}
+   * may contain the plaintext of the segments before the one which failed.
+   *
+   * <p>As in {@link #encryptFile}, a memory-mapped destination is extended to the end of the mapped
+   * window before the plaintext is written. If decryption fails, it is truncated after the
+   * plaintext of the segments before the one which failed, so it contains nothing else.
+   *
+   * @return the number of bytes of plaintext which were written
+   */
+  public long decryptFile(
+      FileChannel ciphertextSource, WritableByteChannel plaintextDestination, byte[] associatedData)
+      throws GeneralSecurityException, IOException {
+    return StreamingAeadMappedFiles.decrypt(
+        this,
+        ciphertextSource,
+        plaintextDestination,
+        associatedData,
+        StreamingAeadMappedFiles.DEFAULT_WINDOW_SIZE);
+  }
+
   @Override
   public OutputStream newEncryptingStream(OutputStream ciphertext, byte[] associatedData)
       throws GeneralSecurityException, IOException {
@@ -19,6 +19,7 @@ package com.google.crypto.tink.subtle;
 import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.prf.HmacPrfKey;
 import com.google.crypto.tink.prf.Prf;
 import com.google.errorprone.annotations.Immutable;
@@ -38,26 +39,14 @@ public final class PrfHmacJce implements Prf {
 
   static final int MIN_KEY_SIZE_IN_BYTES = 16;
 
-  // We do not mutate the underlying mac and it is bound to the containing PrfHmacJce instance.
-  @SuppressWarnings({"Immutable", "ThreadLocalUsage"})
-  private final ThreadLocal<Mac> localMac =
-      new ThreadLocal<Mac>() {
-        @Override
-        protected Mac initialValue() {
-          try {
-            Mac mac = EngineFactory.MAC.getInstance(algorithm);
-            mac.init(key);
-            return mac;
-          } catch (GeneralSecurityException ex) {
-            throw new IllegalStateException(ex);
-          }
-        }
-      };
-
   private final String algorithm;
   @SuppressWarnings("Immutable")  // We do not mutate the key.
   private final java.security.Key key;
 
+  // We do not mutate the underlying mac and it is bound to the containing PrfHmacJce instance.
+  @SuppressWarnings("Immutable")
+  private final EnginePool<Mac> macPool;
+
   private final int maxOutputLength;
 
   public PrfHmacJce(String algorithm, java.security.Key key) throws GeneralSecurityException {
@@ -93,8 +82,15 @@ public final class PrfHmacJce implements Prf {
         throw new NoSuchAlgorithmException("unknown Hmac algorithm: " + algorithm);
     }
 
-    // Initialize the current threads mac, mostly to fail fast if anything is wrong.
-    localMac.get();
+    macPool =
+        EnginePool.create(
+            () -> {
+              Mac mac = EngineFactory.MAC.getInstance(algorithm);
+              mac.init(key);
+              return mac;
+            });
+    // Create a first mac, mostly to fail fast if anything is wrong.
+    macPool.release(macPool.acquire());
   }
 
   /** Given an HmacPrfKey, returns an instance of the Prf interface. */
@@ -110,8 +106,13 @@ public final class PrfHmacJce implements Prf {
       throw new InvalidAlgorithmParameterException("tag size too big");
     }
 
-    localMac.get().update(data);
-    return Arrays.copyOf(localMac.get().doFinal(), outputLength);
+    Mac mac = macPool.acquire();
+    try {
+      mac.update(data);
+      return Arrays.copyOf(mac.doFinal(), outputLength);
+    } finally {
+      macPool.release(mac);
+    }
   }
 
   /** Returns the maximum supported tag length. */
@@ -19,6 +19,7 @@ package com.google.crypto.tink.subtle;
 import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.Mac;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.mac.AesCmacKey;
 import com.google.crypto.tink.mac.AesCmacParameters.Variant;
 import com.google.crypto.tink.mac.HmacKey;
@@ -122,7 +123,7 @@ public class PrfMac implements Mac {
   @Override
   public void verifyMac(byte[] mac, byte[] data) throws GeneralSecurityException {
     if (!Bytes.equal(computeMac(data), mac)) {
-      throw new GeneralSecurityException("invalid MAC");
+      throw new StacklessGeneralSecurityException("invalid MAC");
     }
   }
 }
@@ -21,6 +21,7 @@ import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.PublicKeySign;
 import com.google.crypto.tink.PublicKeyVerify;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.signature.RsaSsaPkcs1Parameters;
 import com.google.crypto.tink.signature.RsaSsaPkcs1PrivateKey;
 import com.google.crypto.tink.subtle.Enums.HashType;
@@ -43,18 +44,19 @@ public final class RsaSsaPkcs1SignJce implements PublicKeySign {
       TinkFipsUtil.AlgorithmFipsCompatibility.ALGORITHM_REQUIRES_BORINGCRYPTO;
 
   @SuppressWarnings("Immutable")
-  private final RSAPrivateCrtKey privateKey;
+  private final byte[] outputPrefix;
 
   @SuppressWarnings("Immutable")
-  private final RSAPublicKey publicKey;
-
-  private final String signatureAlgorithm;
+  private final byte[] messageSuffix;
 
+  // Signers which are initialized with the private key, and verifiers which are initialized with
+  // the public key. They are reset after each signature or verification. Both pools are shared
+  // between threads and keep at most a few engines.
   @SuppressWarnings("Immutable")
-  private final byte[] outputPrefix;
+  private final EnginePool<Signature> signerPool;
 
   @SuppressWarnings("Immutable")
-  private final byte[] messageSuffix;
+  private final EnginePool<Signature> verifierPool;
 
   private RsaSsaPkcs1SignJce(
       final RSAPrivateCrtKey priv, HashType hash, byte[] outputPrefix, byte[] messageSuffix)
@@ -67,14 +69,29 @@ public final class RsaSsaPkcs1SignJce implements PublicKeySign {
     Validators.validateSignatureHash(hash);
     Validators.validateRsaModulusSize(priv.getModulus().bitLength());
     Validators.validateRsaPublicExponent(priv.getPublicExponent());
-    this.privateKey = priv;
-    this.signatureAlgorithm = SubtleUtil.toRsaSsaPkcs1Algo(hash);
+    String signatureAlgorithm = SubtleUtil.toRsaSsaPkcs1Algo(hash);
     KeyFactory kf = EngineFactory.KEY_FACTORY.getInstance("RSA");
-    this.publicKey =
+    RSAPublicKey publicKey =
         (RSAPublicKey)
             kf.generatePublic(new RSAPublicKeySpec(priv.getModulus(), priv.getPublicExponent()));
     this.outputPrefix = outputPrefix;
     this.messageSuffix = messageSuffix;
+    this.signerPool =
+        EnginePool.create(
+            EnginePool.Strategy.SHARED,
+            () -> {
+              Signature signer = EngineFactory.SIGNATURE.getInstance(signatureAlgorithm);
+              signer.initSign(priv);
+              return signer;
+            });
+    this.verifierPool =
+        EnginePool.create(
+            EnginePool.Strategy.SHARED,
+            () -> {
+              Signature verifier = EngineFactory.SIGNATURE.getInstance(signatureAlgorithm);
+              verifier.initVerify(publicKey);
+              return verifier;
+            });
   }
 
   public RsaSsaPkcs1SignJce(final RSAPrivateCrtKey priv, HashType hash)
@@ -118,15 +135,20 @@ public final class RsaSsaPkcs1SignJce implements PublicKeySign {
   }
 
   private byte[] noPrefixSign(final byte[] data) throws GeneralSecurityException {
-    Signature signer = EngineFactory.SIGNATURE.getInstance(signatureAlgorithm);
-    signer.initSign(privateKey);
-    signer.update(data);
-    byte[] signature = signer.sign();
+    byte[] signature =
+        signerPool.apply(
+            signer -> {
+              signer.update(data);
+              return signer.sign();
+            });
     // Verify the signature to prevent against faulty signature computation.
-    Signature verifier = EngineFactory.SIGNATURE.getInstance(signatureAlgorithm);
-    verifier.initVerify(publicKey);
-    verifier.update(data);
-    if (!verifier.verify(signature)) {
+    boolean verified =
+        verifierPool.apply(
+            verifier -> {
+              verifier.update(data);
+              return verifier.verify(signature);
+            });
+    if (!verified) {
       throw new java.lang.RuntimeException("Security bug: RSA signature computation error");
     }
     return signature;
@@ -22,6 +22,7 @@ import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.PublicKeyVerify;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
 import com.google.crypto.tink.internal.EnumTypeProtoConverter;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.signature.RsaSsaPkcs1Parameters;
 import com.google.crypto.tink.signature.RsaSsaPkcs1PublicKey;
 import com.google.crypto.tink.subtle.Enums.HashType;
@@ -118,13 +119,13 @@ public final class RsaSsaPkcs1VerifyJce implements PublicKeyVerify {
 
     // Step 1. Length checking.
     if (nLengthInBytes != signature.length) {
-      throw new GeneralSecurityException("invalid signature's length");
+      throw new StacklessGeneralSecurityException("invalid signature's length");
     }
 
     // Step 2. RSA verification.
     BigInteger s = SubtleUtil.bytes2Integer(signature);
     if (s.compareTo(n) >= 0) {
-      throw new GeneralSecurityException("signature out of range");
+      throw new StacklessGeneralSecurityException("signature out of range");
     }
     BigInteger m = s.modPow(e, n);
     byte[] em = SubtleUtil.integer2Bytes(m, nLengthInBytes);
@@ -134,7 +135,7 @@ public final class RsaSsaPkcs1VerifyJce implements PublicKeyVerify {
 
     // Step 4. Compare the results.
     if (!Bytes.equal(em, expectedEm)) {
-      throw new GeneralSecurityException("invalid signature");
+      throw new StacklessGeneralSecurityException("invalid signature");
     }
   }
 
@@ -184,7 +185,7 @@ public final class RsaSsaPkcs1VerifyJce implements PublicKeyVerify {
       return;
     }
     if (!isPrefix(outputPrefix, signature)) {
-      throw new GeneralSecurityException("Invalid signature (output prefix mismatch)");
+      throw new StacklessGeneralSecurityException("Invalid signature (output prefix mismatch)");
     }
     byte[] dataCopy = data;
     if (messageSuffix.length != 0) {
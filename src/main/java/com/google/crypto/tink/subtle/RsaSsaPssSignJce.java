@@ -20,6 +20,7 @@ import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.PublicKeySign;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
+import com.google.crypto.tink.internal.EnginePool;
 import com.google.crypto.tink.signature.RsaSsaPssParameters;
 import com.google.crypto.tink.signature.RsaSsaPssPrivateKey;
 import com.google.crypto.tink.subtle.Enums.HashType;
@@ -42,9 +43,6 @@ public final class RsaSsaPssSignJce implements PublicKeySign {
   public static final TinkFipsUtil.AlgorithmFipsCompatibility FIPS =
       TinkFipsUtil.AlgorithmFipsCompatibility.ALGORITHM_REQUIRES_BORINGCRYPTO;
 
-  @SuppressWarnings("Immutable")
-  private final RSAPrivateCrtKey privateKey;
-
   @SuppressWarnings("Immutable")
   private final RSAPublicKey publicKey;
 
@@ -60,6 +58,15 @@ public final class RsaSsaPssSignJce implements PublicKeySign {
 
   private static final String RAW_RSA_ALGORITHM = "RSA/ECB/NOPADDING";
 
+  // Ciphers which are initialized to decrypt with the private key and to encrypt with publicKey.
+  // They are reset after each operation. Both pools keep at most a few ciphers, which are shared
+  // between threads.
+  @SuppressWarnings("Immutable")
+  private final EnginePool<Cipher> decryptCipherPool;
+
+  @SuppressWarnings("Immutable")
+  private final EnginePool<Cipher> encryptCipherPool;
+
   public RsaSsaPssSignJce(
       final RSAPrivateCrtKey priv, HashType sigHash, HashType mgf1Hash, int saltLength)
       throws GeneralSecurityException {
@@ -82,7 +89,6 @@ public final class RsaSsaPssSignJce implements PublicKeySign {
     Validators.validateSignatureHash(sigHash);
     Validators.validateRsaModulusSize(priv.getModulus().bitLength());
     Validators.validateRsaPublicExponent(priv.getPublicExponent());
-    this.privateKey = priv;
     KeyFactory kf = EngineFactory.KEY_FACTORY.getInstance("RSA");
     this.publicKey =
         (RSAPublicKey)
@@ -92,6 +98,23 @@ public final class RsaSsaPssSignJce implements PublicKeySign {
     this.saltLength = saltLength;
     this.outputPrefix = outputPrefix;
     this.messageSuffix = messageSuffix;
+    RSAPublicKey publicKey = this.publicKey;
+    this.decryptCipherPool =
+        EnginePool.create(
+            EnginePool.Strategy.SHARED,
+            () -> {
+              Cipher cipher = EngineFactory.CIPHER.getInstance(RAW_RSA_ALGORITHM);
+              cipher.init(Cipher.DECRYPT_MODE, priv);
+              return cipher;
+            });
+    this.encryptCipherPool =
+        EnginePool.create(
+            EnginePool.Strategy.SHARED,
+            () -> {
+              Cipher cipher = EngineFactory.CIPHER.getInstance(RAW_RSA_ALGORITHM);
+              cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+              return cipher;
+            });
   }
 
   @AccessesPartialKey
@@ -145,14 +168,10 @@ public final class RsaSsaPssSignJce implements PublicKeySign {
   }
 
   private byte[] rsasp1(byte[] m) throws GeneralSecurityException {
-    Cipher decryptCipher = EngineFactory.CIPHER.getInstance(RAW_RSA_ALGORITHM);
-    decryptCipher.init(Cipher.DECRYPT_MODE, this.privateKey);
-    byte[] c = decryptCipher.doFinal(m);
+    byte[] c = decryptCipherPool.apply(cipher -> cipher.doFinal(m));
     // To make sure the private key operation is correct, we check the result with public key
     // operation.
-    Cipher encryptCipher = EngineFactory.CIPHER.getInstance(RAW_RSA_ALGORITHM);
-    encryptCipher.init(Cipher.ENCRYPT_MODE, this.publicKey);
-    byte[] m0 = encryptCipher.doFinal(c);
+    byte[] m0 = encryptCipherPool.apply(cipher -> cipher.doFinal(c));
     if (!new BigInteger(1, m).equals(new BigInteger(1, m0))) {
       throw new java.lang.RuntimeException("Security bug: RSA signature computation error");
     }
@@ -22,6 +22,7 @@ import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.PublicKeyVerify;
 import com.google.crypto.tink.config.internal.TinkFipsUtil;
 import com.google.crypto.tink.internal.EnumTypeProtoConverter;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
 import com.google.crypto.tink.signature.RsaSsaPssParameters;
 import com.google.crypto.tink.signature.RsaSsaPssPublicKey;
 import com.google.crypto.tink.subtle.Enums.HashType;
@@ -125,13 +126,13 @@ public final class RsaSsaPssVerifyJce implements PublicKeyVerify {
 
     // Step 1. Length checking.
     if (nLengthInBytes != signature.length) {
-      throw new GeneralSecurityException("invalid signature's length");
+      throw new StacklessGeneralSecurityException("invalid signature's length");
     }
 
     // Step 2. RSA verification.
     BigInteger s = SubtleUtil.bytes2Integer(signature);
     if (s.compareTo(n) >= 0) {
-      throw new GeneralSecurityException("signature out of range");
+      throw new StacklessGeneralSecurityException("signature out of range");
     }
     BigInteger m = s.modPow(e, n);
     byte[] em = SubtleUtil.integer2Bytes(m, mLen);
@@ -157,12 +158,12 @@ public final class RsaSsaPssVerifyJce implements PublicKeyVerify {
 
     // Step 3. Check emLen.
     if (emLen < hLen + this.saltLength + 2) {
-      throw new GeneralSecurityException("inconsistent");
+      throw new StacklessGeneralSecurityException("inconsistent");
     }
 
     // Step 4. Check right most byte of EM.
     if (em[em.length - 1] != (byte) 0xbc) {
-      throw new GeneralSecurityException("inconsistent");
+      throw new StacklessGeneralSecurityException("inconsistent");
     }
 
     // Step 5. Extract maskedDb and H from EM.
@@ -175,7 +176,7 @@ public final class RsaSsaPssVerifyJce implements PublicKeyVerify {
       int bytePos = i / 8;
       int bitPos = 7 - i % 8;
       if (((maskedDb[bytePos] >> bitPos) & 1) != 0) {
-        throw new GeneralSecurityException("inconsistent");
+        throw new StacklessGeneralSecurityException("inconsistent");
       }
     }
 
@@ -198,11 +199,11 @@ public final class RsaSsaPssVerifyJce implements PublicKeyVerify {
     // Step 10. Check db.
     for (int i = 0; i < emLen - hLen - this.saltLength - 2; i++) {
       if (db[i] != 0) {
-        throw new GeneralSecurityException("inconsistent");
+        throw new StacklessGeneralSecurityException("inconsistent");
       }
     }
     if (db[emLen - hLen - this.saltLength - 2] != (byte) 0x01) {
-      throw new GeneralSecurityException("inconsistent");
+      throw new StacklessGeneralSecurityException("inconsistent");
     }
 
     // Step 11. Extract salt from db.
@@ -216,7 +217,7 @@ public final class RsaSsaPssVerifyJce implements PublicKeyVerify {
     // Step 13. Compute H'
     byte[] hPrime = digest.digest(mPrime);
     if (!Bytes.equal(hPrime, h)) {
-      throw new GeneralSecurityException("inconsistent");
+      throw new StacklessGeneralSecurityException("inconsistent");
     }
   }
 
@@ -227,7 +228,7 @@ public final class RsaSsaPssVerifyJce implements PublicKeyVerify {
       return;
     }
     if (!isPrefix(outputPrefix, signature)) {
-      throw new GeneralSecurityException("Invalid signature (output prefix mismatch)");
+      throw new StacklessGeneralSecurityException("Invalid signature (output prefix mismatch)");
     }
     byte[] dataCopy = data;
     if (messageSuffix.length != 0) {
@@ -0,0 +1,356 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+
+/**
+ * Encrypts and decrypts files with a {@link NonceBasedStreamingAead} by running the segment
+ * encrypter and decrypter directly on memory-mapped regions of the files.
+ *
+ * <p>The ciphertext is the same as the one written by {@link StreamingAeadEncryptingChannel}.
+ * Files are mapped in windows of a bounded size, so files of any size can be processed. Windows
+ * are not unmapped explicitly, but when they are garbage collected.
+ */
+final class StreamingAeadMappedFiles {
+  static final long DEFAULT_WINDOW_SIZE = 64 << 20;
+
+  // See StreamingAeadDecryptingChannel.
+  private static final int PLAINTEXT_SEGMENT_EXTRA_SIZE = 16;
+
+  /** A region of a file, which is mapped in windows. */
+  private static final class MappedRegion {
+    private final FileChannel file;
+    private final FileChannel.MapMode mode;
+    private final long start;
+    private final long size;
+    private final long windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedRegion(
+        FileChannel file, FileChannel.MapMode mode, long start, long size, long windowSize) {
+      this.file = file;
+      this.mode = mode;
+      this.start = start;
+      this.size = size;
+      this.windowSize = windowSize;
+    }
+
+    /**
+     * Maps a window which contains the {@code length} bytes at {@code offset} of the region, and
+     * returns the number of bytes of the window from {@code offset} on.
+     */
+    private int map(long offset, int length) throws IOException {
+      if (window == null
+          || offset < windowStart
+          || offset + length > windowStart + window.capacity()) {
+        windowStart = offset;
+        long windowLength = Math.max(length, Math.min(windowSize, size - offset));
+        window = file.map(mode, start + offset, windowLength);
+      }
+      return (int) (windowStart + window.capacity() - offset);
+    }
+
+    /**
+     * Returns the {@code length} bytes at {@code offset} of the region, followed by up to {@code
+     * extra} more bytes if they are in the same window.
+     */
+    ByteBuffer slice(long offset, int length, int extra) throws IOException {
+      int available = map(offset, length);
+      ByteBuffer slice = window.duplicate();
+      slice.position((int) (offset - windowStart));
+      slice.limit(slice.position() + Math.min(available, length + extra));
+      return slice.slice();
+    }
+
+    ByteBuffer slice(long offset, int length) throws IOException {
+      return slice(offset, length, 0);
+    }
+  }
+
+  /**
+   * Where the output is written: a mapped region if the destination is a {@link FileChannel} which
+   * can be mapped, or otherwise a direct buffer which is written to the destination.
+   *
+   * <p>Mapping a window extends a destination file to the end of the window, so the file is already
+   * larger than the output written so far. After a failure, {@link #discardFrom} cuts it back.
+   */
+  private static final class Output {
+    private final WritableByteChannel destination;
+    private final MappedRegion region;
+    private final ByteBuffer scratch;
+
+    Output(WritableByteChannel destination, long size, long windowSize, int maxSegmentSize)
+        throws IOException {
+      this.destination = destination;
+      this.scratch = ByteBuffer.allocateDirect(maxSegmentSize);
+      MappedRegion mappedRegion = null;
+      if (destination instanceof FileChannel) {
+        FileChannel file = (FileChannel) destination;
+        try {
+          // Fails if the file is not open for reading, which READ_WRITE mappings require.
+          file.map(FileChannel.MapMode.READ_WRITE, file.position(), 0);
+          mappedRegion =
+              new MappedRegion(
+                  file, FileChannel.MapMode.READ_WRITE, file.position(), size, windowSize);
+        } catch (NonReadableChannelException ex) {
+          // Written with FileChannel.write instead.
+        }
+      }
+      this.region = mappedRegion;
+    }
+
+    /**
+     * Returns a buffer into which the {@code length} bytes at {@code offset} of the output are
+     * written, and which has at least {@code extra} more bytes, unless it is a slice of the mapped
+     * region.
+     */
+    ByteBuffer buffer(long offset, int length, int extra) throws IOException {
+      if (region != null) {
+        ByteBuffer slice = region.slice(offset, length, extra);
+        if (slice.remaining() >= length + extra) {
+          return slice;
+        }
+      }
+      scratch.clear();
+      scratch.limit(length + extra);
+      return scratch;
+    }
+
+    /** Writes {@code buffer}, which was returned by {@link #buffer}, to the output. */
+    void commit(ByteBuffer buffer, long offset) throws IOException {
+      if (buffer != scratch) {
+        return;
+      }
+      scratch.flip();
+      if (region != null) {
+        region.slice(offset, scratch.remaining()).put(scratch);
+        return;
+      }
+      while (scratch.hasRemaining()) {
+        destination.write(scratch);
+      }
+    }
+
+    /** Moves the position of a destination {@link FileChannel} past the mapped output. */
+    void finish(long size) throws IOException {
+      if (region != null) {
+        ((FileChannel) destination).position(region.start + size);
+      }
+    }
+
+    /**
+     * Truncates a mapped destination after the first {@code size} bytes of the output, which were
+     * completely written before {@code failure}. Otherwise, the zeros up to the end of the mapped
+     * window could not be told apart from the output.
+     */
+    void discardFrom(long size, Exception failure) {
+      if (region == null) {
+        return;
+      }
+      try {
+        ((FileChannel) destination).truncate(region.start + size);
+        finish(size);
+      } catch (IOException ex) {
+        failure.addSuppressed(ex);
+      }
+    }
+  }
+
+  /**
+   * Encrypts the plaintext from the position of {@code plaintextSource} to its end, and writes the
+   * ciphertext to {@code ciphertextDestination}.
+   *
+   * @return the size of the ciphertext
+   */
+  static long encrypt(
+      NonceBasedStreamingAead streamAead,
+      FileChannel plaintextSource,
+      WritableByteChannel ciphertextDestination,
+      byte[] associatedData,
+      long windowSize)
+      throws GeneralSecurityException, IOException {
+    StreamSegmentEncrypter encrypter = streamAead.newStreamSegmentEncrypter(associatedData);
+    int plaintextSegmentSize = streamAead.getPlaintextSegmentSize();
+    int ciphertextSegmentSize = streamAead.getCiphertextSegmentSize();
+    int segmentOverhead = ciphertextSegmentSize - plaintextSegmentSize;
+    int firstPlaintextSegmentSize = plaintextSegmentSize - streamAead.getCiphertextOffset();
+    int headerLength = streamAead.getHeaderLength();
+
+    long plaintextStart = plaintextSource.position();
+    long plaintextSize = Math.max(0, plaintextSource.size() - plaintextStart);
+    // As in StreamingAeadEncryptingChannel, the last segment is never empty, unless it is the
+    // only one.
+    long numberOfSegments = 1;
+    if (plaintextSize > firstPlaintextSegmentSize) {
+      numberOfSegments +=
+          (plaintextSize - firstPlaintextSegmentSize + plaintextSegmentSize - 1)
+              / plaintextSegmentSize;
+    }
+    long ciphertextSize = headerLength + plaintextSize + numberOfSegments * segmentOverhead;
+
+    MappedRegion input =
+        new MappedRegion(
+            plaintextSource,
+            FileChannel.MapMode.READ_ONLY,
+            plaintextStart,
+            plaintextSize,
+            windowSize);
+    Output output =
+        new Output(
+            ciphertextDestination,
+            ciphertextSize,
+            windowSize,
+            Math.max(ciphertextSegmentSize, headerLength));
+
+    long plaintextPosition = 0;
+    long ciphertextPosition = 0;
+    try {
+      ByteBuffer header = output.buffer(0, headerLength, 0);
+      header.put(encrypter.getHeader());
+      output.commit(header, 0);
+      ciphertextPosition = headerLength;
+      for (long segmentNr = 0; segmentNr < numberOfSegments; segmentNr++) {
+        int segmentSize = segmentNr == 0 ? firstPlaintextSegmentSize : plaintextSegmentSize;
+        int plaintextLength = (int) Math.min(segmentSize, plaintextSize - plaintextPosition);
+        ByteBuffer plaintext = input.slice(plaintextPosition, plaintextLength);
+        ByteBuffer ciphertext =
+            output.buffer(ciphertextPosition, plaintextLength + segmentOverhead, 0);
+        encrypter.encryptSegment(plaintext, segmentNr == numberOfSegments - 1, ciphertext);
+        output.commit(ciphertext, ciphertextPosition);
+        plaintextPosition += plaintextLength;
+        ciphertextPosition += plaintextLength + segmentOverhead;
+      }
+    } catch (GeneralSecurityException | IOException | RuntimeException ex) {
+      output.discardFrom(ciphertextPosition, ex);
+      throw ex;
+    }
+    output.finish(ciphertextSize);
+    plaintextSource.position(plaintextStart + plaintextSize);
+    return ciphertextSize;
+  }
+
+  /**
+   * Decrypts the ciphertext from the position of {@code ciphertextSource} to its end, and writes
+   * the plaintext to {@code plaintextDestination}.
+   *
+   * <p>As with {@link StreamingAeadDecryptingChannel}, the plaintext of each segment is written as
+   * soon as the segment is authenticated. If a segment fails to decrypt, the plaintext of the
+   * segments before it may already have been written. A mapped destination is truncated after that
+   * plaintext.
+   *
+   * @return the size of the plaintext
+   */
+  static long decrypt(
+      NonceBasedStreamingAead streamAead,
+      FileChannel ciphertextSource,
+      WritableByteChannel plaintextDestination,
+      byte[] associatedData,
+      long windowSize)
+      throws GeneralSecurityException, IOException {
+    StreamSegmentDecrypter decrypter = streamAead.newStreamSegmentDecrypter();
+    int plaintextSegmentSize = streamAead.getPlaintextSegmentSize();
+    int ciphertextSegmentSize = streamAead.getCiphertextSegmentSize();
+    int segmentOverhead = ciphertextSegmentSize - plaintextSegmentSize;
+    int ciphertextOffset = streamAead.getCiphertextOffset();
+    int headerLength = streamAead.getHeaderLength();
+
+    long ciphertextStart = ciphertextSource.position();
+    long ciphertextSize = Math.max(0, ciphertextSource.size() - ciphertextStart);
+    if (ciphertextSize < headerLength) {
+      throw new IOException("Ciphertext is too short");
+    }
+    // The sizes of the segments are computed as in StreamingAeadSeekableDecryptingChannel, whose
+    // ciphertext starts with the first segment offset.
+    long sizeWithOffset = ciphertextSize + ciphertextOffset - headerLength;
+    long numberOfSegments = sizeWithOffset / ciphertextSegmentSize;
+    int lastCiphertextSegmentSize = (int) (sizeWithOffset % ciphertextSegmentSize);
+    if (lastCiphertextSegmentSize > 0) {
+      numberOfSegments++;
+      if (lastCiphertextSegmentSize < segmentOverhead) {
+        throw new IOException("Invalid ciphertext size");
+      }
+    } else {
+      lastCiphertextSegmentSize = ciphertextSegmentSize;
+    }
+    if (numberOfSegments > Integer.MAX_VALUE) {
+      throw new IOException("Ciphertext has too many segments");
+    }
+    long plaintextSize = sizeWithOffset - numberOfSegments * segmentOverhead - ciphertextOffset;
+    if (plaintextSize < 0) {
+      throw new IOException("Ciphertext is too short");
+    }
+
+    MappedRegion input =
+        new MappedRegion(
+            ciphertextSource,
+            FileChannel.MapMode.READ_ONLY,
+            ciphertextStart,
+            ciphertextSize,
+            windowSize);
+    Output output =
+        new Output(
+            plaintextDestination,
+            plaintextSize,
+            windowSize,
+            plaintextSegmentSize + PLAINTEXT_SEGMENT_EXTRA_SIZE);
+
+    long ciphertextPosition = headerLength;
+    long plaintextPosition = 0;
+    try {
+      try {
+        decrypter.init(input.slice(0, headerLength), associatedData);
+      } catch (GeneralSecurityException ex) {
+        throw new IOException(ex);
+      }
+      for (int segmentNr = 0; segmentNr < numberOfSegments; segmentNr++) {
+        boolean isLastSegment = segmentNr == numberOfSegments - 1;
+        int ciphertextLength = isLastSegment ? lastCiphertextSegmentSize : ciphertextSegmentSize;
+        if (segmentNr == 0) {
+          ciphertextLength -= ciphertextOffset;
+        }
+        int plaintextLength = ciphertextLength - segmentOverhead;
+        ByteBuffer ciphertext = input.slice(ciphertextPosition, ciphertextLength);
+        ByteBuffer plaintext =
+            output.buffer(plaintextPosition, plaintextLength, PLAINTEXT_SEGMENT_EXTRA_SIZE);
+        try {
+          decrypter.decryptSegment(ciphertext, segmentNr, isLastSegment, plaintext);
+        } catch (GeneralSecurityException ex) {
+          throw new IOException("Failed to decrypt segment " + segmentNr, ex);
+        }
+        output.commit(plaintext, plaintextPosition);
+        ciphertextPosition += ciphertextLength;
+        plaintextPosition += plaintextLength;
+      }
+    } catch (IOException | RuntimeException ex) {
+      output.discardFrom(plaintextPosition, ex);
+      throw ex;
+    }
+    output.finish(plaintextSize);
+    ciphertextSource.position(ciphertextStart + ciphertextSize);
+    return plaintextSize;
+  }
+
+  private StreamingAeadMappedFiles() {}
+}
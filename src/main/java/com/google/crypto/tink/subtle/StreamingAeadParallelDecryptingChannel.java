@@ -0,0 +1,293 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link ReadableByteChannel} which reads ahead and decrypts segments concurrently on an {@link
+ * Executor}.
+ *
+ * <p>Ciphertext is read on the calling thread, while up to {@code maxSegmentsInFlight} segments
+ * which have been read are decrypted on the executor. Plaintext is returned in order. As in {@link
+ * StreamingAeadDecryptingChannel}, a segment is only known to be the last one once the ciphertext
+ * after it has been read, and each segment is decrypted with its number and this flag, so truncated
+ * or reordered ciphertexts are rejected in the same way.
+ *
+ * <p>An authentication failure puts the channel into an undefined state, in which all subsequent
+ * reads fail.
+ */
+final class StreamingAeadParallelDecryptingChannel implements ReadableByteChannel {
+  // See StreamingAeadDecryptingChannel.
+  private static final int PLAINTEXT_SEGMENT_EXTRA_SIZE = 16;
+
+  /** A segment which is read, decrypted or returned. */
+  private static final class Segment {
+    final ByteBuffer ciphertext;
+    final ByteBuffer plaintext;
+    boolean isLastSegment;
+    FutureTask<Void> task;
+
+    Segment(ByteBuffer ciphertext, ByteBuffer plaintext) {
+      this.ciphertext = ciphertext;
+      this.plaintext = plaintext;
+    }
+  }
+
+  private final ReadableByteChannel ciphertextChannel;
+  private final IndexedStreamSegmentDecrypter decrypter;
+  private final byte[] associatedData;
+  private final Executor executor;
+  private final int maxSegmentsInFlight;
+  private final int plaintextSegmentSize;
+  private final int ciphertextSegmentSize;
+  private final int firstCiphertextSegmentSize;
+  private final ByteBuffer header;
+  // Segments which are submitted to the executor, in order.
+  private final ArrayDeque<Segment> inFlight = new ArrayDeque<>();
+  // Segments whose plaintext has been returned, and whose buffers can be reused.
+  private final ArrayDeque<Segment> free = new ArrayDeque<>();
+  // A full segment which is not submitted yet, because it is not known whether it is the last one.
+  private Segment pending;
+  // The segment into which ciphertext is read.
+  private Segment filling;
+  // The segment whose plaintext is returned.
+  private Segment current;
+  private long nextSegmentNr = 0;
+  private boolean headerRead = false;
+  private boolean endOfCiphertext = false;
+  private boolean lastSegmentSubmitted = false;
+  private boolean endOfPlaintext = false;
+  private boolean definedState = true;
+  private boolean open = true;
+
+  StreamingAeadParallelDecryptingChannel(
+      NonceBasedStreamingAead streamAead,
+      ReadableByteChannel ciphertextChannel,
+      byte[] associatedData,
+      Executor executor,
+      int maxSegmentsInFlight)
+      throws GeneralSecurityException {
+    if (maxSegmentsInFlight < 1) {
+      throw new IllegalArgumentException("maxSegmentsInFlight must be positive");
+    }
+    StreamSegmentDecrypter segmentDecrypter = streamAead.newStreamSegmentDecrypter();
+    if (!(segmentDecrypter instanceof IndexedStreamSegmentDecrypter)) {
+      throw new GeneralSecurityException("parallel decryption is not supported");
+    }
+    this.decrypter = (IndexedStreamSegmentDecrypter) segmentDecrypter;
+    this.ciphertextChannel = ciphertextChannel;
+    this.associatedData = Arrays.copyOf(associatedData, associatedData.length);
+    this.executor = executor;
+    this.maxSegmentsInFlight = maxSegmentsInFlight;
+    this.plaintextSegmentSize = streamAead.getPlaintextSegmentSize();
+    this.ciphertextSegmentSize = streamAead.getCiphertextSegmentSize();
+    this.firstCiphertextSegmentSize = ciphertextSegmentSize - streamAead.getCiphertextOffset();
+    this.header = ByteBuffer.allocate(streamAead.getHeaderLength());
+  }
+
+  private Segment newSegment(int ciphertextSize) {
+    Segment segment = free.poll();
+    if (segment == null) {
+      segment =
+          new Segment(
+              ByteBuffer.allocate(ciphertextSegmentSize),
+              ByteBuffer.allocate(plaintextSegmentSize + PLAINTEXT_SEGMENT_EXTRA_SIZE));
+    }
+    segment.ciphertext.clear();
+    segment.ciphertext.limit(ciphertextSize);
+    segment.plaintext.clear();
+    segment.isLastSegment = false;
+    return segment;
+  }
+
+  /** Reads ciphertext into {@code buffer} until it is full, or no more ciphertext is available. */
+  private void readSomeCiphertext(ByteBuffer buffer) throws IOException {
+    int read;
+    do {
+      read = ciphertextChannel.read(buffer);
+    } while (read > 0 && buffer.hasRemaining());
+    if (read == -1) {
+      endOfCiphertext = true;
+    }
+  }
+
+  private boolean tryReadHeader() throws IOException {
+    if (endOfCiphertext) {
+      throw new IOException("Ciphertext is too short");
+    }
+    readSomeCiphertext(header);
+    if (header.hasRemaining()) {
+      return false;
+    }
+    header.flip();
+    try {
+      decrypter.init(header, associatedData);
+    } catch (GeneralSecurityException ex) {
+      definedState = false;
+      throw new IOException(ex);
+    }
+    headerRead = true;
+    filling = newSegment(firstCiphertextSegmentSize);
+    return true;
+  }
+
+  private void submit(Segment segment, boolean isLastSegment) {
+    long segmentNr = nextSegmentNr++;
+    segment.isLastSegment = isLastSegment;
+    segment.ciphertext.flip();
+    segment.task =
+        new FutureTask<>(
+            () -> {
+              decrypter.decryptSegment(
+                  segment.ciphertext, segmentNr, isLastSegment, segment.plaintext);
+              segment.plaintext.flip();
+              return null;
+            });
+    inFlight.add(segment);
+    if (isLastSegment) {
+      lastSegmentSubmitted = true;
+    }
+    executor.execute(segment.task);
+  }
+
+  /**
+   * Reads ciphertext and submits segments until {@code maxSegmentsInFlight} segments are in flight,
+   * the last segment is submitted, or no more ciphertext is available right now.
+   */
+  private void readAhead() throws IOException {
+    while (!lastSegmentSubmitted && inFlight.size() < maxSegmentsInFlight) {
+      if (!endOfCiphertext && filling.ciphertext.hasRemaining()) {
+        readSomeCiphertext(filling.ciphertext);
+      }
+      if (pending != null) {
+        if (filling.ciphertext.position() > 0) {
+          submit(pending, /* isLastSegment= */ false);
+        } else if (endOfCiphertext) {
+          submit(pending, /* isLastSegment= */ true);
+        } else {
+          return;
+        }
+        pending = null;
+        continue;
+      }
+      if (endOfCiphertext) {
+        submit(filling, /* isLastSegment= */ true);
+        filling = null;
+        return;
+      }
+      if (filling.ciphertext.hasRemaining()) {
+        return;
+      }
+      pending = filling;
+      filling = newSegment(ciphertextSegmentSize);
+    }
+  }
+
+  /** Waits until the oldest segment in flight is decrypted, and makes it the current segment. */
+  private void takeOldest() throws IOException {
+    Segment segment = inFlight.remove();
+    try {
+      segment.task.get();
+    } catch (InterruptedException e) {
+      definedState = false;
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while decrypting");
+    } catch (ExecutionException e) {
+      definedState = false;
+      throw new IOException(e.getCause());
+    }
+    segment.task = null;
+    current = segment;
+  }
+
+  @Override
+  public synchronized int read(ByteBuffer dst) throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    if (!definedState) {
+      throw new IOException("This StreamingAeadParallelDecryptingChannel is in an undefined state");
+    }
+    if (!headerRead && !tryReadHeader()) {
+      return 0;
+    }
+    if (endOfPlaintext) {
+      return -1;
+    }
+    int startPosition = dst.position();
+    while (dst.hasRemaining()) {
+      readAhead();
+      if (current == null || !current.plaintext.hasRemaining()) {
+        if (current != null) {
+          if (current.isLastSegment) {
+            endOfPlaintext = true;
+            break;
+          }
+          free.add(current);
+          current = null;
+        }
+        if (inFlight.isEmpty()) {
+          // Not enough ciphertext is available to decrypt the next segment.
+          break;
+        }
+        takeOldest();
+      }
+      if (current.plaintext.remaining() <= dst.remaining()) {
+        dst.put(current.plaintext);
+      } else {
+        ByteBuffer slice = current.plaintext.duplicate();
+        slice.limit(slice.position() + dst.remaining());
+        dst.put(slice);
+        current.plaintext.position(slice.position());
+      }
+    }
+    int bytesRead = dst.position() - startPosition;
+    if (bytesRead == 0 && endOfPlaintext) {
+      return -1;
+    }
+    return bytesRead;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!open) {
+      return;
+    }
+    open = false;
+    for (Segment segment : inFlight) {
+      segment.task.cancel(false);
+    }
+    inFlight.clear();
+    ciphertextChannel.close();
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return open;
+  }
+}
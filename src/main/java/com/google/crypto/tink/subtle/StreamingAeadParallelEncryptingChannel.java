@@ -0,0 +1,199 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link WritableByteChannel} which encrypts segments concurrently on an {@link Executor}.
+ *
+ * <p>The ciphertext is the same as the one written by {@link StreamingAeadEncryptingChannel}: the
+ * plaintext is split into segments in the same way, and each segment is encrypted with the nonce
+ * derived from its number. Segments are written to the ciphertext channel in order, as soon as
+ * they and all segments before them are encrypted.
+ *
+ * <p>At most {@code maxSegmentsInFlight} segments are buffered at any time. {@link #write} blocks
+ * while that many segments are being encrypted. The ciphertext channel must be blocking.
+ */
+final class StreamingAeadParallelEncryptingChannel implements WritableByteChannel {
+  /** A segment which is being encrypted. */
+  private static final class Segment {
+    final ByteBuffer plaintext;
+    final ByteBuffer ciphertext;
+    FutureTask<Void> task;
+
+    Segment(ByteBuffer plaintext, ByteBuffer ciphertext) {
+      this.plaintext = plaintext;
+      this.ciphertext = ciphertext;
+    }
+  }
+
+  private final WritableByteChannel ciphertextChannel;
+  private final IndexedStreamSegmentEncrypter encrypter;
+  private final Executor executor;
+  private final int maxSegmentsInFlight;
+  private final int plaintextSegmentSize;
+  private final int ciphertextSegmentSize;
+  // Segments which are submitted to the executor, in order.
+  private final ArrayDeque<Segment> inFlight = new ArrayDeque<>();
+  // Segments whose ciphertext has been written, and whose buffers can be reused.
+  private final ArrayDeque<Segment> free = new ArrayDeque<>();
+  // The segment which is being filled with plaintext.
+  private Segment current;
+  private long nextSegmentNr = 0;
+  private boolean open = true;
+
+  StreamingAeadParallelEncryptingChannel(
+      NonceBasedStreamingAead streamAead,
+      WritableByteChannel ciphertextChannel,
+      byte[] associatedData,
+      Executor executor,
+      int maxSegmentsInFlight)
+      throws GeneralSecurityException, IOException {
+    if (maxSegmentsInFlight < 1) {
+      throw new IllegalArgumentException("maxSegmentsInFlight must be positive");
+    }
+    StreamSegmentEncrypter segmentEncrypter =
+        streamAead.newStreamSegmentEncrypter(associatedData);
+    if (!(segmentEncrypter instanceof IndexedStreamSegmentEncrypter)) {
+      throw new GeneralSecurityException("parallel encryption is not supported");
+    }
+    this.encrypter = (IndexedStreamSegmentEncrypter) segmentEncrypter;
+    this.ciphertextChannel = ciphertextChannel;
+    this.executor = executor;
+    this.maxSegmentsInFlight = maxSegmentsInFlight;
+    this.plaintextSegmentSize = streamAead.getPlaintextSegmentSize();
+    this.ciphertextSegmentSize = streamAead.getCiphertextSegmentSize();
+    current = newSegment();
+    current.plaintext.limit(plaintextSegmentSize - streamAead.getCiphertextOffset());
+    writeFully(encrypter.getHeader());
+  }
+
+  private Segment newSegment() {
+    Segment segment = free.poll();
+    if (segment == null) {
+      return new Segment(
+          ByteBuffer.allocate(plaintextSegmentSize), ByteBuffer.allocate(ciphertextSegmentSize));
+    }
+    segment.plaintext.clear();
+    segment.ciphertext.clear();
+    return segment;
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (ciphertextChannel.write(buffer) <= 0) {
+        throw new IOException("Failed to write ciphertext");
+      }
+    }
+  }
+
+  private void submit(Segment segment, boolean isLastSegment) throws IOException {
+    if (inFlight.size() == maxSegmentsInFlight) {
+      writeOldest();
+    }
+    long segmentNr = nextSegmentNr++;
+    segment.plaintext.flip();
+    segment.task =
+        new FutureTask<>(
+            () -> {
+              encrypter.encryptSegment(
+                  segment.plaintext, segmentNr, isLastSegment, segment.ciphertext);
+              segment.ciphertext.flip();
+              return null;
+            });
+    inFlight.add(segment);
+    executor.execute(segment.task);
+  }
+
+  /** Waits until the oldest segment in flight is encrypted, and writes its ciphertext. */
+  private void writeOldest() throws IOException {
+    Segment segment = inFlight.remove();
+    try {
+      segment.task.get();
+    } catch (InterruptedException e) {
+      open = false;
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while encrypting");
+    } catch (ExecutionException e) {
+      open = false;
+      throw new IOException(e.getCause());
+    }
+    writeFully(segment.ciphertext);
+    segment.task = null;
+    free.add(segment);
+  }
+
+  /** Writes the ciphertext of all segments at the head of the queue which are encrypted. */
+  private void writeDone() throws IOException {
+    while (!inFlight.isEmpty() && inFlight.peek().task.isDone()) {
+      writeOldest();
+    }
+  }
+
+  @Override
+  public synchronized int write(ByteBuffer pt) throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    int startPosition = pt.position();
+    // As in StreamingAeadEncryptingChannel, a full segment is only encrypted once more plaintext
+    // follows it, because otherwise it might be the last segment.
+    while (pt.remaining() > current.plaintext.remaining()) {
+      int sliceSize = current.plaintext.remaining();
+      ByteBuffer slice = pt.slice();
+      slice.limit(sliceSize);
+      pt.position(pt.position() + sliceSize);
+      current.plaintext.put(slice);
+      submit(current, /* isLastSegment= */ false);
+      current = newSegment();
+      writeDone();
+    }
+    current.plaintext.put(pt);
+    return pt.position() - startPosition;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!open) {
+      return;
+    }
+    // Closed before anything is written, so that a failure leaves the channel closed instead of
+    // without a current segment.
+    open = false;
+    submit(current, /* isLastSegment= */ true);
+    current = null;
+    while (!inFlight.isEmpty()) {
+      writeOldest();
+    }
+    ciphertextChannel.close();
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return open;
+  }
+}
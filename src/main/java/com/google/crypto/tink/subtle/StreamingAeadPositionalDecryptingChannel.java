@@ -0,0 +1,286 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import com.google.crypto.tink.internal.EnginePool;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Channel} which reads the plaintext of a ciphertext at given positions, and which may be
+ * used by several threads at the same time.
+ *
+ * <p>Unlike {@link StreamingAeadSeekableDecryptingChannel}, this channel has no position, and
+ * concurrent reads do not wait for each other while they decrypt. The header is read and checked
+ * when the channel is created. Each read then decrypts the segments it needs into buffers taken
+ * from a pool.
+ *
+ * <p>If the ciphertext is a {@link FileChannel}, it is read with positional reads. Otherwise, reads
+ * of ciphertext from different threads are serialized, since they move the position of the
+ * ciphertext channel.
+ *
+ * <p>Every segment is authenticated before any of its plaintext is returned. A segment which fails
+ * to decrypt only makes the reads which need it fail.
+ *
+ * <p>If a {@link DecryptedSegmentCache} is given, decrypted segments are added to it, and segments
+ * which are in the cache are not read and decrypted again.
+ */
+public final class StreamingAeadPositionalDecryptingChannel implements Channel {
+  // See StreamingAeadDecryptingChannel.
+  private static final int PLAINTEXT_SEGMENT_EXTRA_SIZE = 16;
+
+  /** The buffers which a read uses to decrypt a segment. */
+  private static final class SegmentBuffers {
+    final ByteBuffer ciphertext;
+    final ByteBuffer plaintext;
+
+    SegmentBuffers(int ciphertextSegmentSize, int plaintextSegmentSize) {
+      ciphertext = ByteBuffer.allocate(ciphertextSegmentSize);
+      plaintext = ByteBuffer.allocate(plaintextSegmentSize + PLAINTEXT_SEGMENT_EXTRA_SIZE);
+    }
+  }
+
+  private final NonceBasedStreamingAead streamAead;
+  private final SeekableByteChannel ciphertextChannel;
+  private final IndexedStreamSegmentDecrypter decrypter;
+  @Nullable private final DecryptedSegmentCache cache;
+  // Identifies the ciphertext in the cache: the header, the size of the ciphertext and the
+  // associated data. Whether a segment is the last one is authenticated when it is decrypted, so
+  // the size must be part of the key: otherwise a truncated copy of a ciphertext could be read
+  // from segments that were authenticated as segments in the middle of the original.
+  private final byte[] ciphertextId;
+  private final EnginePool<SegmentBuffers> bufferPool;
+  private final long plaintextSize; // unverified size of the plaintext
+  private final long numberOfSegments; // unverified number of segments
+  private final int lastCiphertextSegmentSize; // unverified size of the last segment
+  private final int plaintextSegmentSize;
+  private final int ciphertextSegmentSize;
+  private final int ciphertextOffset;
+  private volatile boolean isOpen = true;
+
+  StreamingAeadPositionalDecryptingChannel(
+      NonceBasedStreamingAead streamAead,
+      SeekableByteChannel ciphertextChannel,
+      byte[] associatedData,
+      @Nullable DecryptedSegmentCache cache)
+      throws GeneralSecurityException, IOException {
+    StreamSegmentDecrypter segmentDecrypter = streamAead.newStreamSegmentDecrypter();
+    if (!(segmentDecrypter instanceof IndexedStreamSegmentDecrypter)) {
+      throw new GeneralSecurityException("concurrent decryption is not supported");
+    }
+    this.decrypter = (IndexedStreamSegmentDecrypter) segmentDecrypter;
+    this.streamAead = streamAead;
+    this.ciphertextChannel = ciphertextChannel;
+    this.cache = cache;
+    this.plaintextSegmentSize = streamAead.getPlaintextSegmentSize();
+    this.ciphertextSegmentSize = streamAead.getCiphertextSegmentSize();
+    this.ciphertextOffset = streamAead.getCiphertextOffset();
+    this.bufferPool =
+        EnginePool.create(
+            EnginePool.Strategy.SHARED,
+            () -> new SegmentBuffers(ciphertextSegmentSize, plaintextSegmentSize));
+
+    long ciphertextChannelSize = ciphertextChannel.size();
+    long fullSegments = ciphertextChannelSize / ciphertextSegmentSize;
+    int remainder = (int) (ciphertextChannelSize % ciphertextSegmentSize);
+    int ciphertextOverhead = streamAead.getCiphertextOverhead();
+    if (remainder > 0) {
+      numberOfSegments = fullSegments + 1;
+      if (remainder < ciphertextOverhead) {
+        throw new IOException("Invalid ciphertext size");
+      }
+      lastCiphertextSegmentSize = remainder;
+    } else {
+      numberOfSegments = fullSegments;
+      lastCiphertextSegmentSize = ciphertextSegmentSize;
+    }
+    int firstSegmentOffset = ciphertextOffset - streamAead.getHeaderLength();
+    if (firstSegmentOffset < 0) {
+      throw new IOException("Invalid ciphertext offset or header length");
+    }
+    long overhead = numberOfSegments * ciphertextOverhead + ciphertextOffset;
+    if (overhead > ciphertextChannelSize) {
+      throw new IOException("Ciphertext is too short");
+    }
+    plaintextSize = ciphertextChannelSize - overhead;
+
+    ByteBuffer header = ByteBuffer.allocate(streamAead.getHeaderLength());
+    readCiphertext(header, firstSegmentOffset);
+    header.flip();
+    decrypter.init(header.duplicate(), Arrays.copyOf(associatedData, associatedData.length));
+    ciphertextId =
+        Bytes.concat(
+            header.array(),
+            ByteBuffer.allocate(8).putLong(ciphertextChannelSize).array(),
+            associatedData);
+  }
+
+  /** Reads ciphertext starting at {@code position} until {@code dst} is full. */
+  private void readCiphertext(ByteBuffer dst, long position) throws IOException {
+    if (ciphertextChannel instanceof FileChannel) {
+      FileChannel fileChannel = (FileChannel) ciphertextChannel;
+      while (dst.hasRemaining()) {
+        if (fileChannel.read(dst, position + dst.position()) < 0) {
+          throw new EOFException("Ciphertext is too short");
+        }
+      }
+      return;
+    }
+    synchronized (ciphertextChannel) {
+      ciphertextChannel.position(position);
+      while (dst.hasRemaining()) {
+        if (ciphertextChannel.read(dst) < 0) {
+          throw new EOFException("Ciphertext is too short");
+        }
+      }
+    }
+  }
+
+  private SegmentBuffers acquireBuffers() throws IOException {
+    try {
+      return bufferPool.acquire();
+    } catch (GeneralSecurityException ex) {
+      throw new IOException(ex);
+    }
+  }
+
+  /** Reads and decrypts segment {@code segmentNr} into {@code buffers.plaintext}. */
+  private void loadSegment(long segmentNr, SegmentBuffers buffers) throws IOException {
+    boolean isLast = segmentNr == numberOfSegments - 1;
+    long ciphertextPosition = segmentNr * ciphertextSegmentSize;
+    int segmentSize = isLast ? lastCiphertextSegmentSize : ciphertextSegmentSize;
+    if (segmentNr == 0) {
+      segmentSize -= ciphertextOffset;
+      ciphertextPosition = ciphertextOffset;
+    }
+    buffers.ciphertext.clear();
+    buffers.ciphertext.limit(segmentSize);
+    readCiphertext(buffers.ciphertext, ciphertextPosition);
+    buffers.ciphertext.flip();
+    buffers.plaintext.clear();
+    try {
+      decrypter.decryptSegment(buffers.ciphertext, segmentNr, isLast, buffers.plaintext);
+    } catch (GeneralSecurityException ex) {
+      throw new IOException("Failed to decrypt", ex);
+    }
+    buffers.plaintext.flip();
+  }
+
+  /**
+   * Returns the plaintext of segment {@code segmentNr}, either from the cache or decrypted into
+   * {@code buffers.plaintext}.
+   */
+  private ByteBuffer segmentPlaintext(long segmentNr, SegmentBuffers buffers) throws IOException {
+    if (cache == null) {
+      loadSegment(segmentNr, buffers);
+      return buffers.plaintext;
+    }
+    ByteBuffer plaintext = cache.get(streamAead, ciphertextId, segmentNr);
+    if (plaintext != null) {
+      return plaintext;
+    }
+    loadSegment(segmentNr, buffers);
+    cache.put(streamAead, ciphertextId, segmentNr, buffers.plaintext);
+    return buffers.plaintext;
+  }
+
+  /**
+   * Reads plaintext starting at {@code position} into {@code dst}, until {@code dst} is full or the
+   * end of the plaintext is reached.
+   *
+   * @return the number of bytes read, or -1 if {@code position} is at or after the end of the
+   *     plaintext. The end of the plaintext is verified by decrypting the last segment.
+   * @throws IOException if the ciphertext could not be read or a segment failed to decrypt.
+   */
+  public int read(ByteBuffer dst, long position) throws IOException {
+    if (!isOpen) {
+      throw new ClosedChannelException();
+    }
+    if (position < 0) {
+      throw new IllegalArgumentException("Negative position");
+    }
+    SegmentBuffers buffers = acquireBuffers();
+    try {
+      if (position >= plaintextSize) {
+        segmentPlaintext(numberOfSegments - 1, buffers);
+        return -1;
+      }
+      int startPosition = dst.position();
+      while (dst.hasRemaining() && position < plaintextSize) {
+        long segmentNr = (position + ciphertextOffset) / plaintextSegmentSize;
+        int segmentOffset;
+        if (segmentNr == 0) {
+          segmentOffset = (int) position;
+        } else {
+          segmentOffset = (int) ((position + ciphertextOffset) % plaintextSegmentSize);
+        }
+        ByteBuffer plaintext = segmentPlaintext(segmentNr, buffers);
+        plaintext.position(segmentOffset);
+        int size = Math.min(plaintext.remaining(), dst.remaining());
+        plaintext.limit(segmentOffset + size);
+        dst.put(plaintext);
+        position += size;
+      }
+      return dst.position() - startPosition;
+    } finally {
+      bufferPool.release(buffers);
+    }
+  }
+
+  /**
+   * Returns the expected size of the plaintext.
+   *
+   * <p>As for {@link StreamingAeadSeekableDecryptingChannel#size}, the size is not verified, which
+   * is done by {@link #verifiedSize}.
+   */
+  public long size() {
+    return plaintextSize;
+  }
+
+  /** Returns the size of the plaintext, after decrypting the last segment to verify it. */
+  public long verifiedSize() throws IOException {
+    if (!isOpen) {
+      throw new ClosedChannelException();
+    }
+    SegmentBuffers buffers = acquireBuffers();
+    try {
+      segmentPlaintext(numberOfSegments - 1, buffers);
+    } finally {
+      bufferPool.release(buffers);
+    }
+    return plaintextSize;
+  }
+
+  @Override
+  public void close() throws IOException {
+    isOpen = false;
+    ciphertextChannel.close();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return isOpen;
+  }
+}
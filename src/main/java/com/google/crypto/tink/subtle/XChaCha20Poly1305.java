@@ -17,22 +17,28 @@
 package com.google.crypto.tink.subtle;
 
 import static com.google.crypto.tink.internal.Util.isPrefix;
+import static com.google.crypto.tink.internal.Util.toByteArray;
 
 import com.google.crypto.tink.AccessesPartialKey;
 import com.google.crypto.tink.Aead;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
+import com.google.crypto.tink.aead.ByteBufferAead;
 import com.google.crypto.tink.aead.XChaCha20Poly1305Key;
+import com.google.crypto.tink.aead.internal.AeadWithOffsets;
 import com.google.crypto.tink.aead.internal.InsecureNonceXChaCha20Poly1305;
 import com.google.crypto.tink.aead.internal.Poly1305;
+import com.google.crypto.tink.internal.StacklessGeneralSecurityException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
+import javax.annotation.Nullable;
 
 /**
  * XChaCha20Poly1305 AEAD construction, as described in
  * https://tools.ietf.org/html/draft-arciszewski-xchacha-01.
  */
-public final class XChaCha20Poly1305 implements Aead {
+public final class XChaCha20Poly1305 implements AeadWithOffsets, ByteBufferAead {
   private final InsecureNonceXChaCha20Poly1305 cipher;
   private final byte[] outputPrefix;
 
@@ -53,52 +59,137 @@ public final class XChaCha20Poly1305 implements Aead {
         key.getOutputPrefix().toByteArray());
   }
 
-  private byte[] rawEncrypt(final byte[] plaintext, final byte[] associatedData)
+  @Override
+  public byte[] encrypt(final byte[] plaintext, final byte[] associatedData)
       throws GeneralSecurityException {
-    ByteBuffer output =
-        ByteBuffer.allocate(
-            XChaCha20.NONCE_LENGTH_IN_BYTES + plaintext.length + Poly1305.MAC_TAG_SIZE_IN_BYTES);
+    return encrypt(plaintext, associatedData, 0);
+  }
+
+  @Override
+  public byte[] encrypt(
+      final byte[] plaintext, final byte[] associatedData, int ciphertextOffset)
+      throws GeneralSecurityException {
+    if (ciphertextOffset < 0) {
+      throw new GeneralSecurityException("invalid ciphertext offset");
+    }
+    long outputSize = (long) ciphertextOffset + ciphertextSize(plaintext.length);
+    if (outputSize > Integer.MAX_VALUE) {
+      throw new GeneralSecurityException("plaintext too long");
+    }
+    ByteBuffer output = ByteBuffer.allocate((int) outputSize);
+    output.position(ciphertextOffset);
     byte[] nonce = Random.randBytes(XChaCha20.NONCE_LENGTH_IN_BYTES);
+    output.put(outputPrefix);
     output.put(nonce); // Prepend nonce to ciphertext output.
     cipher.encrypt(output, nonce, plaintext, associatedData);
     return output.array();
   }
 
   @Override
-  public byte[] encrypt(final byte[] plaintext, final byte[] associatedData)
+  public byte[] decrypt(final byte[] ciphertext, final byte[] associatedData)
+      throws GeneralSecurityException {
+    return decrypt(ciphertext, 0, ciphertext.length, associatedData);
+  }
+
+  @Override
+  public byte[] decrypt(
+      final byte[] ciphertext, int offset, int length, final byte[] associatedData)
       throws GeneralSecurityException {
-    byte[] ciphertext = rawEncrypt(plaintext, associatedData);
-    if (outputPrefix.length == 0) {
-      return ciphertext;
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("invalid ciphertext offset or length");
     }
-    return Bytes.concat(outputPrefix, ciphertext);
+    if (length
+        < outputPrefix.length + XChaCha20.NONCE_LENGTH_IN_BYTES + Poly1305.MAC_TAG_SIZE_IN_BYTES) {
+      throw new StacklessGeneralSecurityException("ciphertext too short");
+    }
+    if (!isPrefix(outputPrefix, ciphertext, offset)) {
+      throw new StacklessGeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
+    }
+    int nonceOffset = offset + outputPrefix.length;
+    return cipher.decrypt(
+        rawCiphertext(ciphertext, nonceOffset, offset + length),
+        nonce(ciphertext, nonceOffset),
+        associatedData);
   }
 
-  private byte[] rawDecrypt(final byte[] ciphertext, final byte[] associatedData)
+  @Override
+  @Nullable
+  public byte[] tryDecrypt(
+      final byte[] ciphertext, int offset, int length, final byte[] associatedData)
       throws GeneralSecurityException {
-    if (ciphertext.length < XChaCha20.NONCE_LENGTH_IN_BYTES + Poly1305.MAC_TAG_SIZE_IN_BYTES) {
-      throw new GeneralSecurityException("ciphertext too short");
+    if (offset < 0 || length < 0 || offset > ciphertext.length - length) {
+      throw new GeneralSecurityException("invalid ciphertext offset or length");
+    }
+    if (length
+            < outputPrefix.length + XChaCha20.NONCE_LENGTH_IN_BYTES + Poly1305.MAC_TAG_SIZE_IN_BYTES
+        || !isPrefix(outputPrefix, ciphertext, offset)) {
+      return null;
     }
-    byte[] nonce = Arrays.copyOf(ciphertext, XChaCha20.NONCE_LENGTH_IN_BYTES);
-    ByteBuffer rawCiphertext =
-        ByteBuffer.wrap(
-            ciphertext,
-            XChaCha20.NONCE_LENGTH_IN_BYTES,
-            ciphertext.length - XChaCha20.NONCE_LENGTH_IN_BYTES);
-    return cipher.decrypt(rawCiphertext, nonce, associatedData);
+    int nonceOffset = offset + outputPrefix.length;
+    return cipher.tryDecrypt(
+        rawCiphertext(ciphertext, nonceOffset, offset + length),
+        nonce(ciphertext, nonceOffset),
+        associatedData);
+  }
+
+  private static byte[] nonce(final byte[] ciphertext, int nonceOffset) {
+    return Arrays.copyOfRange(
+        ciphertext, nonceOffset, nonceOffset + XChaCha20.NONCE_LENGTH_IN_BYTES);
+  }
+
+  private static ByteBuffer rawCiphertext(final byte[] ciphertext, int nonceOffset, int end) {
+    int rawOffset = nonceOffset + XChaCha20.NONCE_LENGTH_IN_BYTES;
+    return ByteBuffer.wrap(ciphertext, rawOffset, end - rawOffset);
   }
 
   @Override
-  public byte[] decrypt(final byte[] ciphertext, final byte[] associatedData)
+  public int ciphertextSize(int plaintextSize) throws GeneralSecurityException {
+    long size =
+        (long) outputPrefix.length
+            + XChaCha20.NONCE_LENGTH_IN_BYTES
+            + plaintextSize
+            + Poly1305.MAC_TAG_SIZE_IN_BYTES;
+    if (plaintextSize < 0 || size > Integer.MAX_VALUE) {
+      throw new GeneralSecurityException("plaintext too long");
+    }
+    return (int) size;
+  }
+
+  @Override
+  public void encrypt(
+      ByteBuffer plaintext, @Nullable ByteBuffer associatedData, ByteBuffer ciphertext)
       throws GeneralSecurityException {
-    if (outputPrefix.length == 0) {
-      return rawDecrypt(ciphertext, associatedData);
+    if (ciphertext.remaining() < ciphertextSize(plaintext.remaining())) {
+      throw new BufferOverflowException();
+    }
+    byte[] nonce = Random.randBytes(XChaCha20.NONCE_LENGTH_IN_BYTES);
+    ByteBuffer output = ciphertext.duplicate();
+    output.put(outputPrefix);
+    output.put(nonce); // Prepend nonce to ciphertext output.
+    cipher.encrypt(output, nonce, plaintext.duplicate(), toByteArray(associatedData));
+    plaintext.position(plaintext.limit());
+    ciphertext.position(output.position());
+  }
+
+  @Override
+  public void decrypt(
+      ByteBuffer ciphertext, @Nullable ByteBuffer associatedData, ByteBuffer plaintext)
+      throws GeneralSecurityException {
+    if (ciphertext.remaining()
+        < outputPrefix.length + XChaCha20.NONCE_LENGTH_IN_BYTES + Poly1305.MAC_TAG_SIZE_IN_BYTES) {
+      throw new StacklessGeneralSecurityException("ciphertext too short");
     }
     if (!isPrefix(outputPrefix, ciphertext)) {
-      throw new GeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
+      throw new StacklessGeneralSecurityException("Decryption failed (OutputPrefix mismatch).");
+    }
+    ByteBuffer rawCiphertext = ciphertext.duplicate();
+    rawCiphertext.position(ciphertext.position() + outputPrefix.length);
+    byte[] nonce = new byte[XChaCha20.NONCE_LENGTH_IN_BYTES];
+    rawCiphertext.get(nonce);
+    if (plaintext.remaining() < rawCiphertext.remaining() - Poly1305.MAC_TAG_SIZE_IN_BYTES) {
+      throw new BufferOverflowException();
     }
-    byte[] copiedCiphertext =
-        Arrays.copyOfRange(ciphertext, outputPrefix.length, ciphertext.length);
-    return rawDecrypt(copiedCiphertext, associatedData);
+    cipher.decrypt(rawCiphertext, nonce, toByteArray(associatedData), plaintext);
+    ciphertext.position(ciphertext.limit());
   }
 }
@@ -17,6 +17,7 @@
 package com.google.crypto.tink.testing;
 
 import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.AsyncAead;
 import com.google.crypto.tink.InsecureSecretKeyAccess;
 import com.google.crypto.tink.KeyTemplate;
 import com.google.crypto.tink.KeysetHandle;
@@ -25,14 +26,27 @@ import com.google.crypto.tink.TinkProtoKeysetFormat;
 import com.google.crypto.tink.aead.AesCtrHmacAeadKeyManager;
 import com.google.crypto.tink.subtle.Base64;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
-/** An implementation of a fake {@link KmsClient}. */
+/**
+ * An implementation of a fake {@link KmsClient}.
+ *
+ * <p>A latency can be added to every KMS call with {@link #withLatency}, to measure code which
+ * calls a KMS without a network.
+ */
 public final class FakeKmsClient implements KmsClient {
   /** The prefix of all fake KMS keys. */
   public static final String PREFIX = "fake-kms://";
 
   private String keyUri;
+  private Duration latency = Duration.ZERO;
 
   /** Constructs a generic FakeKmsClient that is not bound to any specific key. */
   public FakeKmsClient() {}
@@ -68,6 +82,22 @@ public final class FakeKmsClient implements KmsClient {
     return this;
   }
 
+  /**
+   * Returns a copy of this client whose KMS calls each take an additional {@code latency}.
+   *
+   * <p>The AEADs returned by {@link #getAead} sleep before every operation. The AEADs returned by
+   * {@link #getAsyncAead} sleep on their executor, once per operation or batch of operations.
+   */
+  public FakeKmsClient withLatency(Duration latency) {
+    if (latency.isNegative()) {
+      throw new IllegalArgumentException("latency must not be negative");
+    }
+    FakeKmsClient client = new FakeKmsClient();
+    client.keyUri = this.keyUri;
+    client.latency = latency;
+    return client;
+  }
+
   private static String removePrefix(String expectedPrefix, String kmsKeyUri) {
     if (!kmsKeyUri.toLowerCase(Locale.US).startsWith(expectedPrefix)) {
       throw new IllegalArgumentException(
@@ -78,6 +108,37 @@ public final class FakeKmsClient implements KmsClient {
 
   @Override
   public Aead getAead(String uri) throws GeneralSecurityException {
+    Aead aead = getAeadWithoutLatency(uri);
+    if (latency.isZero()) {
+      return aead;
+    }
+    return new Aead() {
+      @Override
+      public byte[] encrypt(byte[] plaintext, byte[] associatedData)
+          throws GeneralSecurityException {
+        sleep(latency);
+        return aead.encrypt(plaintext, associatedData);
+      }
+
+      @Override
+      public byte[] decrypt(byte[] ciphertext, byte[] associatedData)
+          throws GeneralSecurityException {
+        sleep(latency);
+        return aead.decrypt(ciphertext, associatedData);
+      }
+    };
+  }
+
+  /**
+   * Gets an {@code AsyncAead} backed by {@code uri}, which simulates a KMS with a batch API: a
+   * batch of operations takes the latency of this client only once.
+   */
+  @Override
+  public AsyncAead getAsyncAead(String uri, Executor executor) throws GeneralSecurityException {
+    return new FakeAsyncAead(getAeadWithoutLatency(uri), latency, executor);
+  }
+
+  private Aead getAeadWithoutLatency(String uri) throws GeneralSecurityException {
     if (this.keyUri != null && !this.keyUri.equals(uri)) {
       throw new GeneralSecurityException(
           String.format(
@@ -100,5 +161,70 @@ public final class FakeKmsClient implements KmsClient {
     return PREFIX + Base64.urlSafeEncode(serializedKeyset);
   }
 
+  private static void sleep(Duration duration) throws GeneralSecurityException {
+    try {
+      Thread.sleep(duration.toMillis(), duration.getNano() % 1_000_000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GeneralSecurityException("interrupted while waiting for the fake KMS", e);
+    }
+  }
 
+  private interface Operation {
+    byte[] apply(Aead aead, byte[] input, byte[] associatedData) throws GeneralSecurityException;
+  }
+
+  private static final class FakeAsyncAead implements AsyncAead {
+    private final Aead aead;
+    private final Duration latency;
+    private final Executor executor;
+
+    FakeAsyncAead(Aead aead, Duration latency, Executor executor) {
+      this.aead = aead;
+      this.latency = latency;
+      this.executor = executor;
+    }
+
+    private CompletableFuture<List<byte[]>> run(
+        Operation operation, List<byte[]> inputs, byte[] associatedData) {
+      return CompletableFuture.supplyAsync(
+          () -> {
+            try {
+              sleep(latency);
+              List<byte[]> outputs = new ArrayList<>(inputs.size());
+              for (byte[] input : inputs) {
+                outputs.add(operation.apply(aead, input, associatedData));
+              }
+              return outputs;
+            } catch (GeneralSecurityException e) {
+              throw new CompletionException(e);
+            }
+          },
+          executor);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> encrypt(byte[] plaintext, byte[] associatedData) {
+      return encryptBatch(Collections.singletonList(plaintext), associatedData)
+          .thenApply(outputs -> outputs.get(0));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> decrypt(byte[] ciphertext, byte[] associatedData) {
+      return decryptBatch(Collections.singletonList(ciphertext), associatedData)
+          .thenApply(outputs -> outputs.get(0));
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> encryptBatch(
+        List<byte[]> plaintexts, byte[] associatedData) {
+      return run(Aead::encrypt, plaintexts, associatedData);
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> decryptBatch(
+        List<byte[]> ciphertexts, byte[] associatedData) {
+      return run(Aead::decrypt, ciphertexts, associatedData);
+    }
+  }
 }
@@ -0,0 +1,362 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.testing;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KmsClient;
+import com.google.crypto.tink.subtle.AesGcmJce;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * An in-process simulation of a KMS, to benchmark and load-test code which calls a KMS without a
+ * network. It must not be used in production: its keys only exist in memory.
+ *
+ * <p>Keys are identified by URIs which start with {@link #PREFIX}, and are created the first time
+ * they are used. Every call to a key:
+ *
+ * <ol>
+ *   <li>takes a latency drawn from a {@link LatencyDistribution},
+ *   <li>fails if it exceeds the rate limit of the client,
+ *   <li>fails if an error is injected, either with a fixed probability or with {@link
+ *       #failNextCalls},
+ *   <li>and otherwise encrypts or decrypts with an AES-GCM key of the URI.
+ * </ol>
+ *
+ * <p>The calls are counted per key, see {@link #getCallCounts}. The client can be registered with
+ * {@link com.google.crypto.tink.KmsClients#add}.
+ */
+public final class SimulatedKmsClient implements KmsClient {
+  /** The prefix of all simulated KMS keys. */
+  public static final String PREFIX = "simulated-kms://";
+
+  private static final int KEY_SIZE_IN_BYTES = 32;
+
+  private final LatencyDistribution latency;
+  @Nullable private final RateLimiter rateLimiter;
+  private final double failureProbability;
+  private final Random random;
+  private final AtomicInteger callsToFail = new AtomicInteger();
+  private final ConcurrentMap<String, SimulatedAead> keys = new ConcurrentHashMap<>();
+
+  private SimulatedKmsClient(Builder builder) {
+    this.latency = builder.latency;
+    this.rateLimiter =
+        builder.callsPerSecond == 0 ? null : new RateLimiter(builder.callsPerSecond);
+    this.failureProbability = builder.failureProbability;
+    this.random = new Random(builder.seed);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder for SimulatedKmsClient. */
+  public static final class Builder {
+    private LatencyDistribution latency = LatencyDistribution.fixed(Duration.ZERO);
+    private double callsPerSecond = 0;
+    private double failureProbability = 0;
+    private long seed = System.nanoTime();
+
+    private Builder() {}
+
+    /** Sets the distribution of the latency of every call. By default, calls take no time. */
+    @CanIgnoreReturnValue
+    public Builder setLatency(LatencyDistribution latency) {
+      this.latency = latency;
+      return this;
+    }
+
+    /**
+     * Limits the calls of all keys to {@code callsPerSecond}, with bursts of up to one second of
+     * calls. Calls above the limit fail, as they would with the quota of a KMS. By default, there
+     * is no limit.
+     */
+    @CanIgnoreReturnValue
+    public Builder setRateLimit(double callsPerSecond) {
+      if (!(callsPerSecond > 0)) {
+        throw new IllegalArgumentException("callsPerSecond must be positive");
+      }
+      this.callsPerSecond = callsPerSecond;
+      return this;
+    }
+
+    /** Lets every call fail with probability {@code failureProbability}. The default is 0. */
+    @CanIgnoreReturnValue
+    public Builder setFailureProbability(double failureProbability) {
+      if (!(failureProbability >= 0 && failureProbability <= 1)) {
+        throw new IllegalArgumentException("failureProbability must be in [0, 1]");
+      }
+      this.failureProbability = failureProbability;
+      return this;
+    }
+
+    /** Sets the seed of the random latencies and failures, to make them reproducible. */
+    @CanIgnoreReturnValue
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public SimulatedKmsClient build() {
+      return new SimulatedKmsClient(this);
+    }
+  }
+
+  /** A distribution of the latencies of KMS calls. */
+  public abstract static class LatencyDistribution {
+    abstract long nextNanos(Random random);
+
+    private LatencyDistribution() {}
+
+    /** Every call takes {@code latency}. */
+    public static LatencyDistribution fixed(Duration latency) {
+      long nanos = toNanos(latency);
+      return new LatencyDistribution() {
+        @Override
+        long nextNanos(Random random) {
+          return nanos;
+        }
+      };
+    }
+
+    /** Latencies are uniformly distributed between {@code min} and {@code max}. */
+    public static LatencyDistribution uniform(Duration min, Duration max) {
+      long minNanos = toNanos(min);
+      long maxNanos = toNanos(max);
+      if (maxNanos < minNanos) {
+        throw new IllegalArgumentException("max must not be smaller than min");
+      }
+      return new LatencyDistribution() {
+        @Override
+        long nextNanos(Random random) {
+          return minNanos + (long) (random.nextDouble() * (maxNanos - minNanos));
+        }
+      };
+    }
+
+    /**
+     * Latencies follow a log-normal distribution with the given median and 99th percentile, which
+     * models the long tail of network calls.
+     */
+    public static LatencyDistribution logNormal(Duration median, Duration p99) {
+      long medianNanos = toNanos(median);
+      long p99Nanos = toNanos(p99);
+      if (medianNanos <= 0 || p99Nanos < medianNanos) {
+        throw new IllegalArgumentException("median must be positive and at most p99");
+      }
+      double mu = Math.log(medianNanos);
+      // 2.326 is the 99th percentile of the standard normal distribution.
+      double sigma = Math.log((double) p99Nanos / medianNanos) / 2.326;
+      return new LatencyDistribution() {
+        @Override
+        long nextNanos(Random random) {
+          return (long) Math.exp(mu + sigma * random.nextGaussian());
+        }
+      };
+    }
+
+    private static long toNanos(Duration duration) {
+      if (duration.isNegative()) {
+        throw new IllegalArgumentException("latencies must not be negative");
+      }
+      return duration.toNanos();
+    }
+  }
+
+  /** The number of calls to a key. */
+  public static final class CallCounts {
+    private final long encryptCalls;
+    private final long decryptCalls;
+    private final long rateLimitedCalls;
+    private final long failedCalls;
+
+    private CallCounts(
+        long encryptCalls, long decryptCalls, long rateLimitedCalls, long failedCalls) {
+      this.encryptCalls = encryptCalls;
+      this.decryptCalls = decryptCalls;
+      this.rateLimitedCalls = rateLimitedCalls;
+      this.failedCalls = failedCalls;
+    }
+
+    /** Returns the number of calls to encrypt, including those which failed. */
+    public long getEncryptCalls() {
+      return encryptCalls;
+    }
+
+    /** Returns the number of calls to decrypt, including those which failed. */
+    public long getDecryptCalls() {
+      return decryptCalls;
+    }
+
+    /** Returns the number of calls which failed because of the rate limit. */
+    public long getRateLimitedCalls() {
+      return rateLimitedCalls;
+    }
+
+    /** Returns the number of calls which failed because of an injected error. */
+    public long getFailedCalls() {
+      return failedCalls;
+    }
+  }
+
+  /** Lets the next {@code count} calls to any key fail, in addition to the failure probability. */
+  public void failNextCalls(int count) {
+    callsToFail.addAndGet(count);
+  }
+
+  /** Returns the number of calls to the key {@code keyUri} so far. */
+  public CallCounts getCallCounts(String keyUri) {
+    SimulatedAead aead = keys.get(keyUri);
+    if (aead == null) {
+      return new CallCounts(0, 0, 0, 0);
+    }
+    return new CallCounts(
+        aead.encryptCalls.get(),
+        aead.decryptCalls.get(),
+        aead.rateLimitedCalls.get(),
+        aead.failedCalls.get());
+  }
+
+  @Override
+  public boolean doesSupport(String keyUri) {
+    return keyUri.toLowerCase(Locale.US).startsWith(PREFIX);
+  }
+
+  @Override
+  public KmsClient withCredentials(String credentialPath) {
+    return this;
+  }
+
+  @Override
+  public KmsClient withDefaultCredentials() {
+    return this;
+  }
+
+  @Override
+  public Aead getAead(String keyUri) throws GeneralSecurityException {
+    if (!doesSupport(keyUri)) {
+      throw new GeneralSecurityException("key URI must start with " + PREFIX);
+    }
+    SimulatedAead aead = keys.get(keyUri);
+    if (aead == null) {
+      aead = new SimulatedAead(new AesGcmJce(randomKey()));
+      SimulatedAead previous = keys.putIfAbsent(keyUri, aead);
+      if (previous != null) {
+        aead = previous;
+      }
+    }
+    return aead;
+  }
+
+  private byte[] randomKey() {
+    byte[] key = new byte[KEY_SIZE_IN_BYTES];
+    synchronized (random) {
+      random.nextBytes(key);
+    }
+    return key;
+  }
+
+  /** Simulates a call: waits for its latency, and throws if the call fails. */
+  private void call(SimulatedAead aead) throws GeneralSecurityException {
+    long latencyNanos;
+    boolean injectFailure;
+    synchronized (random) {
+      latencyNanos = latency.nextNanos(random);
+      injectFailure = failureProbability > 0 && random.nextDouble() < failureProbability;
+    }
+    if (latencyNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(latencyNanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new GeneralSecurityException("interrupted during simulated KMS call", e);
+      }
+    }
+    if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+      aead.rateLimitedCalls.incrementAndGet();
+      throw new GeneralSecurityException("simulated KMS: rate limit exceeded");
+    }
+    if (injectFailure || callsToFail.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+      aead.failedCalls.incrementAndGet();
+      throw new GeneralSecurityException("simulated KMS: injected failure");
+    }
+  }
+
+  private final class SimulatedAead implements Aead {
+    private final Aead aead;
+    final AtomicLong encryptCalls = new AtomicLong();
+    final AtomicLong decryptCalls = new AtomicLong();
+    final AtomicLong rateLimitedCalls = new AtomicLong();
+    final AtomicLong failedCalls = new AtomicLong();
+
+    SimulatedAead(Aead aead) {
+      this.aead = aead;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] associatedData)
+        throws GeneralSecurityException {
+      encryptCalls.incrementAndGet();
+      call(this);
+      return aead.encrypt(plaintext, associatedData);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] associatedData)
+        throws GeneralSecurityException {
+      decryptCalls.incrementAndGet();
+      call(this);
+      return aead.decrypt(ciphertext, associatedData);
+    }
+  }
+
+  /** A token bucket which holds up to one second of calls. */
+  private static final class RateLimiter {
+    private final double callsPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    RateLimiter(double callsPerSecond) {
+      this.callsPerNano = callsPerSecond / TimeUnit.SECONDS.toNanos(1);
+      this.capacity = Math.max(1, callsPerSecond);
+      this.tokens = capacity;
+      this.lastRefillNanos = System.nanoTime();
+    }
+
+    synchronized boolean tryAcquire() {
+      long now = System.nanoTime();
+      tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * callsPerNano);
+      lastRefillNanos = now;
+      if (tokens < 1) {
+        return false;
+      }
+      tokens -= 1;
+      return true;
+    }
+  }
+}
@@ -23,6 +23,8 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.google.crypto.tink.StreamingAead;
+import com.google.crypto.tink.subtle.AesCtrHmacStreaming;
+import com.google.crypto.tink.subtle.AesGcmHkdfStreaming;
 import com.google.crypto.tink.subtle.Hex;
 import com.google.crypto.tink.subtle.Random;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
@@ -48,6 +50,7 @@ import java.nio.channels.WritableByteChannel;
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.List;
 
 /** Helpers for streaming tests. */
 public final class StreamingTestUtil {
@@ -306,6 +309,26 @@ public final class StreamingTestUtil {
     }
   }
 
+  /**
+   * Returns AES-GCM-HKDF and AES-CTR-HMAC streaming AEADs with segments of {@code segmentSize}
+   * bytes, with different key sizes and hash functions, and with and without first segment offset.
+   *
+   * <p>All of them are instances of {@code type}, so that tests in {@code
+   * com.google.crypto.tink.subtle} can get them as the package-private {@code
+   * NonceBasedStreamingAead}.
+   */
+  public static <T extends StreamingAead> List<T> createNonceBasedStreamingAeads(
+      Class<T> type, int segmentSize) throws GeneralSecurityException {
+    byte[] ikm = Hex.decode("000102030405060708090a0b0c0d0e0f00112233445566778899aabbccddeeff");
+    return Arrays.asList(
+        type.cast(new AesGcmHkdfStreaming(ikm, "HmacSha256", 16, segmentSize, 0)),
+        type.cast(new AesGcmHkdfStreaming(ikm, "HmacSha256", 32, segmentSize, 7)),
+        type.cast(
+            new AesCtrHmacStreaming(ikm, "HmacSha256", 16, "HmacSha256", 16, segmentSize, 0)),
+        type.cast(
+            new AesCtrHmacStreaming(ikm, "HmacSha256", 32, "HmacSha512", 32, segmentSize, 3)));
+  }
+
   /** Returns a plaintext of a given size. */
   public static byte[] generatePlaintext(int size) {
     byte[] plaintext = new byte[size];
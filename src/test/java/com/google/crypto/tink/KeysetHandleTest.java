@@ -39,6 +39,7 @@ import com.google.crypto.tink.internal.MutableSerializationRegistry;
 import com.google.crypto.tink.internal.PrimitiveConstructor;
 import com.google.crypto.tink.internal.PrimitiveRegistry;
 import com.google.crypto.tink.internal.ProtoKeySerialization;
+import com.google.crypto.tink.internal.RegistryConfiguration;
 import com.google.crypto.tink.internal.testing.FakeMonitoringClient;
 import com.google.crypto.tink.mac.AesCmacKey;
 import com.google.crypto.tink.mac.AesCmacParameters;
@@ -494,6 +495,32 @@ public class KeysetHandleTest {
     assertThat(aead.decrypt(aeadToEncrypt.encrypt(message, aad), aad)).isEqualTo(message);
   }
 
+  @Test
+  public void getPrimitiveLazily_decryptsWithAllKeys() throws Exception {
+    KeysetHandle oldHandle = KeysetHandle.generateNew(KeyTemplates.get("AES128_GCM"));
+    KeysetHandle rawHandle = KeysetHandle.generateNew(KeyTemplates.get("AES128_EAX_RAW"));
+    KeysetHandle handle =
+        KeysetHandle.newBuilder()
+            .addEntry(KeysetHandle.importKey(oldHandle.getPrimary().getKey()))
+            .addEntry(KeysetHandle.importKey(rawHandle.getPrimary().getKey()).withRandomId())
+            .addEntry(
+                KeysetHandle.generateEntryFromParametersName("AES256_GCM")
+                    .withRandomId()
+                    .makePrimary())
+            .build();
+    byte[] message = Random.randBytes(20);
+    byte[] aad = Random.randBytes(20);
+    byte[] oldCiphertext = oldHandle.getPrimitive(Aead.class).encrypt(message, aad);
+    byte[] rawCiphertext = rawHandle.getPrimitive(Aead.class).encrypt(message, aad);
+
+    Aead aead = handle.getPrimitiveLazily(Aead.class);
+
+    assertThat(aead.decrypt(aead.encrypt(message, aad), aad)).isEqualTo(message);
+    assertThat(aead.decrypt(oldCiphertext, aad)).isEqualTo(message);
+    assertThat(aead.decrypt(rawCiphertext, aad)).isEqualTo(message);
+    assertThrows(GeneralSecurityException.class, () -> aead.decrypt(message, aad));
+  }
+
   @Test
   public void getPrimitive_differentPrimitive_shouldWork() throws Exception {
     // We use RAW because the EncryptOnly wrapper wraps everything RAW.
@@ -1668,6 +1695,82 @@ public class KeysetHandleTest {
     assertThat(keysetHandle.getPrimitive(configuration, TestPrimitiveB.class)).isNotNull();
   }
 
+  /** Forwards to the {@link RegistryConfiguration}, and counts the primitives created. */
+  private static final class CountingConfiguration extends InternalConfiguration {
+    private int legacyPrimitives = 0;
+    private int fullPrimitives = 0;
+
+    @Override
+    public <P> P getLegacyPrimitive(KeyData keyData, Class<P> primitiveClass)
+        throws GeneralSecurityException {
+      legacyPrimitives++;
+      return RegistryConfiguration.get().getLegacyPrimitive(keyData, primitiveClass);
+    }
+
+    @Override
+    public <P> P getPrimitive(Key key, Class<P> primitiveClass) throws GeneralSecurityException {
+      fullPrimitives++;
+      return RegistryConfiguration.get().getPrimitive(key, primitiveClass);
+    }
+
+    @Override
+    public <B, P> P wrap(PrimitiveSet<B> primitiveSet, Class<P> clazz)
+        throws GeneralSecurityException {
+      return RegistryConfiguration.get().wrap(primitiveSet, clazz);
+    }
+
+    @Override
+    public Class<?> getInputPrimitiveClass(Class<?> wrapperClassObject) {
+      return RegistryConfiguration.get().getInputPrimitiveClass(wrapperClassObject);
+    }
+
+    @Override
+    public boolean usesFullPrimitives(Class<?> wrapperClassObject) {
+      return RegistryConfiguration.get().usesFullPrimitives(wrapperClassObject);
+    }
+
+    @Override
+    public boolean usesLegacyPrimitives(Class<?> wrapperClassObject) {
+      return RegistryConfiguration.get().usesLegacyPrimitives(wrapperClassObject);
+    }
+  }
+
+  @Test
+  public void getPrimitive_createsOnlyThePrimitivesTheWrapperUses() throws Exception {
+    KeysetHandle aeadHandle =
+        KeysetHandle.newBuilder()
+            .addEntry(KeysetHandle.generateEntryFromParametersName("AES128_GCM").withRandomId())
+            .addEntry(
+                KeysetHandle.generateEntryFromParametersName("AES128_GCM")
+                    .withRandomId()
+                    .makePrimary())
+            .build();
+    CountingConfiguration aeadConfiguration = new CountingConfiguration();
+    Aead aead = aeadHandle.getPrimitive(aeadConfiguration, Aead.class);
+    byte[] ciphertext = aead.encrypt(new byte[] {1, 2, 3}, new byte[0]);
+    assertThat(aead.decrypt(ciphertext, new byte[0])).isEqualTo(new byte[] {1, 2, 3});
+    // AeadWrapper only uses the legacy primitives.
+    assertThat(aeadConfiguration.legacyPrimitives).isEqualTo(2);
+    assertThat(aeadConfiguration.fullPrimitives).isEqualTo(0);
+
+    KeysetHandle macHandle =
+        KeysetHandle.newBuilder()
+            .addEntry(
+                KeysetHandle.generateEntryFromParametersName("HMAC_SHA256_128BITTAG")
+                    .withRandomId())
+            .addEntry(
+                KeysetHandle.generateEntryFromParametersName("HMAC_SHA256_128BITTAG")
+                    .withRandomId()
+                    .makePrimary())
+            .build();
+    CountingConfiguration macConfiguration = new CountingConfiguration();
+    Mac mac = macHandle.getPrimitive(macConfiguration, Mac.class);
+    mac.verifyMac(mac.computeMac(new byte[] {1, 2, 3}), new byte[] {1, 2, 3});
+    // MacWrapper only uses the full primitives.
+    assertThat(macConfiguration.legacyPrimitives).isEqualTo(0);
+    assertThat(macConfiguration.fullPrimitives).isEqualTo(2);
+  }
+
   @Test
   public void getPrimitive_usesRegistryWhenNoConfigurationProvided() throws Exception {
     KeysetHandle keysetHandle =
@@ -0,0 +1,118 @@
+// Copyright 2023 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.aead.AeadConfig;
+import com.google.crypto.tink.aead.PredefinedAeadParameters;
+import com.google.crypto.tink.mac.MacConfig;
+import com.google.crypto.tink.mac.PredefinedMacParameters;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class PrimitiveCacheTest {
+  @BeforeClass
+  public static void setUp() throws Exception {
+    AeadConfig.register();
+    MacConfig.register();
+  }
+
+  @Test
+  public void getPrimitive_sameHandle_returnsSamePrimitive() throws Exception {
+    PrimitiveCache cache = PrimitiveCache.create(10);
+    KeysetHandle handle = KeysetHandle.generateNew(PredefinedAeadParameters.AES128_GCM);
+
+    Aead aead1 = cache.getPrimitive(handle, Aead.class);
+    Aead aead2 = cache.getPrimitive(handle, Aead.class);
+
+    assertThat(aead2).isSameInstanceAs(aead1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    byte[] ciphertext = aead1.encrypt(new byte[] {1, 2, 3}, new byte[0]);
+    assertThat(handle.getPrimitive(Aead.class).decrypt(ciphertext, new byte[0]))
+        .isEqualTo(new byte[] {1, 2, 3});
+  }
+
+  @Test
+  public void getPrimitive_differentHandlesOrClasses_returnsDifferentPrimitives()
+      throws Exception {
+    PrimitiveCache cache = PrimitiveCache.create(10);
+    KeysetHandle handle1 = KeysetHandle.generateNew(PredefinedAeadParameters.AES128_GCM);
+    KeysetHandle handle2 = KeysetHandle.newBuilder(handle1).build();
+    KeysetHandle macHandle =
+        KeysetHandle.generateNew(PredefinedMacParameters.HMAC_SHA256_128BITTAG);
+
+    Aead aead1 = cache.getPrimitive(handle1, Aead.class);
+    Aead aead2 = cache.getPrimitive(handle2, Aead.class);
+    Mac mac = cache.getPrimitive(macHandle, Mac.class);
+
+    assertThat(aead2).isNotSameInstanceAs(aead1);
+    assertThat(mac).isNotNull();
+    assertThat(cache.getMissCount()).isEqualTo(3);
+    assertThat(cache.getHitCount()).isEqualTo(0);
+    assertThat(cache.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void getPrimitive_full_evictsLeastRecentlyUsed() throws Exception {
+    PrimitiveCache cache = PrimitiveCache.create(2);
+    KeysetHandle handle1 = KeysetHandle.generateNew(PredefinedAeadParameters.AES128_GCM);
+    KeysetHandle handle2 = KeysetHandle.generateNew(PredefinedAeadParameters.AES128_GCM);
+    KeysetHandle handle3 = KeysetHandle.generateNew(PredefinedAeadParameters.AES128_GCM);
+
+    Aead aead1 = cache.getPrimitive(handle1, Aead.class);
+    Aead aead2 = cache.getPrimitive(handle2, Aead.class);
+    assertThat(cache.getPrimitive(handle1, Aead.class)).isSameInstanceAs(aead1);
+    cache.getPrimitive(handle3, Aead.class);
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.getPrimitive(handle1, Aead.class)).isSameInstanceAs(aead1);
+    assertThat(cache.getPrimitive(handle2, Aead.class)).isNotSameInstanceAs(aead2);
+  }
+
+  @Test
+  public void clear_removesPrimitives() throws Exception {
+    PrimitiveCache cache = PrimitiveCache.create(10);
+    KeysetHandle handle = KeysetHandle.generateNew(PredefinedAeadParameters.AES128_GCM);
+    Aead aead = cache.getPrimitive(handle, Aead.class);
+
+    cache.clear();
+
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.getPrimitive(handle, Aead.class)).isNotSameInstanceAs(aead);
+    assertThat(cache.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void getPrimitive_unsupportedPrimitive_throwsAndDoesNotCache() throws Exception {
+    PrimitiveCache cache = PrimitiveCache.create(10);
+    KeysetHandle handle = KeysetHandle.generateNew(PredefinedAeadParameters.AES128_GCM);
+
+    assertThrows(Exception.class, () -> cache.getPrimitive(handle, Mac.class));
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void create_nonPositiveSize_throws() throws Exception {
+    assertThrows(IllegalArgumentException.class, () -> PrimitiveCache.create(0));
+  }
+}
@@ -33,9 +33,11 @@ import com.google.crypto.tink.proto.KeyData;
 import com.google.crypto.tink.proto.KeyStatusType;
 import com.google.crypto.tink.proto.Keyset.Key;
 import com.google.crypto.tink.proto.OutputPrefixType;
+import com.google.crypto.tink.subtle.Bytes;
 import com.google.crypto.tink.subtle.Hex;
 import com.google.crypto.tink.testing.TestUtil;
 import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -229,6 +231,88 @@ public class PrimitiveSetTest {
     assertEquals(2, entry.getKeyId());
   }
 
+  @Test
+  public void testGetPrimitiveForPrefixOf_works() throws Exception {
+    Key key1 =
+        Key.newBuilder()
+            .setKeyId(1)
+            .setStatus(KeyStatusType.ENABLED)
+            .setOutputPrefixType(OutputPrefixType.TINK)
+            .build();
+    Key key2 =
+        Key.newBuilder()
+            .setKeyId(1)
+            .setStatus(KeyStatusType.ENABLED)
+            .setOutputPrefixType(OutputPrefixType.LEGACY)
+            .build();
+    Key key3 =
+        Key.newBuilder()
+            .setKeyId(3)
+            .setStatus(KeyStatusType.ENABLED)
+            .setOutputPrefixType(OutputPrefixType.RAW)
+            .build();
+    PrimitiveSet<Mac> pset =
+        PrimitiveSet.newBuilder(Mac.class)
+            .addPrimaryPrimitive(new DummyMac1(), key1)
+            .addPrimitive(new DummyMac2(), key2)
+            .addPrimitive(new DummyMac1(), key3)
+            .build();
+    byte[] data = Bytes.concat(CryptoFormat.getOutputPrefix(key1), new byte[] {1, 2, 3});
+
+    List<PrimitiveSet.Entry<Mac>> entries = pset.getPrimitiveForPrefixOf(data);
+    assertThat(entries).hasSize(1);
+    assertThat(entries.get(0).getOutputPrefixType()).isEqualTo(OutputPrefixType.TINK);
+    entries = pset.getPrimitiveForPrefixOf(CryptoFormat.getOutputPrefix(key2));
+    assertThat(entries).hasSize(1);
+    assertThat(entries.get(0).getOutputPrefixType()).isEqualTo(OutputPrefixType.LEGACY);
+    assertThat(pset.getPrimitiveForPrefixOf(new byte[] {1, 0, 0, 0})).isEmpty();
+    assertThat(pset.getPrimitiveForPrefixOf(new byte[] {1, 0, 0, 0, 2})).isEmpty();
+    assertThat(pset.getRawPrimitives()).hasSize(1);
+    assertThat(pset.getRawPrimitives().get(0).getKeyId()).isEqualTo(3);
+
+    ByteBuffer buffer = ByteBuffer.allocate(data.length + 2);
+    buffer.put(new byte[] {5, 5}).put(data).position(2);
+    entries = pset.getPrimitiveForPrefixOf(buffer);
+    assertThat(entries).hasSize(1);
+    assertThat(entries.get(0).getKeyId()).isEqualTo(1);
+    assertThat(buffer.position()).isEqualTo(2);
+    buffer.limit(6);
+    assertThat(pset.getPrimitiveForPrefixOf(buffer)).isEmpty();
+  }
+
+  @Test
+  public void testGetPrimitive_manyKeys_findsAll() throws Exception {
+    PrimitiveSet.Builder<Mac> builder = PrimitiveSet.newBuilder(Mac.class);
+    for (int i = 0; i < 1000; i++) {
+      Key key =
+          Key.newBuilder()
+              .setKeyId(i * 256)
+              .setStatus(KeyStatusType.ENABLED)
+              .setOutputPrefixType(i % 2 == 0 ? OutputPrefixType.TINK : OutputPrefixType.LEGACY)
+              .build();
+      builder.addPrimitive(new DummyMac1(), key);
+    }
+    PrimitiveSet<Mac> pset = builder.build();
+
+    for (int i = 0; i < 1000; i++) {
+      Key key =
+          Key.newBuilder()
+              .setKeyId(i * 256)
+              .setOutputPrefixType(i % 2 == 0 ? OutputPrefixType.TINK : OutputPrefixType.LEGACY)
+              .build();
+      List<PrimitiveSet.Entry<Mac>> entries = pset.getPrimitive(CryptoFormat.getOutputPrefix(key));
+      assertThat(entries).hasSize(1);
+      assertThat(entries.get(0).getKeyId()).isEqualTo(i * 256);
+      Key otherKey =
+          Key.newBuilder()
+              .setKeyId(i * 256)
+              .setOutputPrefixType(i % 2 == 0 ? OutputPrefixType.LEGACY : OutputPrefixType.TINK)
+              .build();
+      assertThat(pset.getPrimitive(CryptoFormat.getOutputPrefix(otherKey))).isEmpty();
+    }
+    assertThat(pset.getRawPrimitives()).isEmpty();
+  }
+
   @Test
   public void testAddTwoPrimaryPrimitivesWithBuilder_throws() throws Exception {
     Key key1 =
@@ -294,6 +378,125 @@ public class PrimitiveSetTest {
     assertThat(entry).isNotNull();
   }
 
+  private static final class CountingFactory implements PrimitiveSet.PrimitiveFactory<Mac> {
+    private int fullPrimitiveCalls = 0;
+    private int primitiveCalls = 0;
+    private boolean fail = false;
+
+    @Override
+    public Mac createFullPrimitive() throws GeneralSecurityException {
+      fullPrimitiveCalls++;
+      if (fail) {
+        throw new GeneralSecurityException("cannot create full primitive");
+      }
+      return new DummyMac1();
+    }
+
+    @Override
+    public Mac createPrimitive() throws GeneralSecurityException {
+      primitiveCalls++;
+      return null;
+    }
+  }
+
+  @Test
+  public void testAddLazyFullPrimitiveAndOptionalPrimitive_createsPrimitivesOnFirstUse()
+      throws Exception {
+    Key key1 =
+        Key.newBuilder()
+            .setKeyId(1)
+            .setStatus(KeyStatusType.ENABLED)
+            .setOutputPrefixType(OutputPrefixType.TINK)
+            .build();
+    Key key2 =
+        Key.newBuilder()
+            .setKeyId(2)
+            .setStatus(KeyStatusType.ENABLED)
+            .setOutputPrefixType(OutputPrefixType.TINK)
+            .build();
+    CountingFactory factory = new CountingFactory();
+    PrimitiveSet<Mac> pset =
+        PrimitiveSet.newBuilder(Mac.class)
+            .addPrimaryFullPrimitiveAndOptionalPrimitive(new DummyMac2(), null, key1)
+            .addLazyFullPrimitiveAndOptionalPrimitive(factory, key2)
+            .build();
+    assertThat(factory.fullPrimitiveCalls).isEqualTo(0);
+    assertThat(factory.primitiveCalls).isEqualTo(0);
+
+    PrimitiveSet.Entry<Mac> entry = pset.getPrimitive(CryptoFormat.getOutputPrefix(key2)).get(0);
+    assertThat(entry.getKeyId()).isEqualTo(2);
+    assertThat(factory.fullPrimitiveCalls).isEqualTo(0);
+
+    assertEquals(
+        DummyMac1.class.getSimpleName(),
+        new String(entry.getFullPrimitive().computeMac(null), UTF_8));
+    assertThat(entry.getFullPrimitive()).isSameInstanceAs(entry.getFullPrimitive());
+    assertThat(entry.getPrimitive()).isNull();
+    assertThat(entry.getPrimitive()).isNull();
+    assertThat(factory.fullPrimitiveCalls).isEqualTo(1);
+    assertThat(factory.primitiveCalls).isEqualTo(1);
+  }
+
+  @Test
+  public void testAddLazyFullPrimitiveAndOptionalPrimitive_failure_throwsAndRetries()
+      throws Exception {
+    Key key1 =
+        Key.newBuilder()
+            .setKeyId(1)
+            .setStatus(KeyStatusType.ENABLED)
+            .setOutputPrefixType(OutputPrefixType.TINK)
+            .build();
+    CountingFactory factory = new CountingFactory();
+    factory.fail = true;
+    PrimitiveSet<Mac> pset =
+        PrimitiveSet.newBuilder(Mac.class)
+            .addLazyFullPrimitiveAndOptionalPrimitive(factory, key1)
+            .build();
+    PrimitiveSet.Entry<Mac> entry = pset.getPrimitive(CryptoFormat.getOutputPrefix(key1)).get(0);
+
+    assertThrows(IllegalStateException.class, entry::getFullPrimitive);
+    factory.fail = false;
+    assertThat(entry.getFullPrimitive()).isNotNull();
+    assertThat(factory.fullPrimitiveCalls).isEqualTo(2);
+  }
+
+  @Test
+  public void testAddLazyFullPrimitiveAndOptionalPrimitive_failure_orThrowThrowsChecked()
+      throws Exception {
+    Key key1 =
+        Key.newBuilder()
+            .setKeyId(1)
+            .setStatus(KeyStatusType.ENABLED)
+            .setOutputPrefixType(OutputPrefixType.TINK)
+            .build();
+    CountingFactory factory = new CountingFactory();
+    factory.fail = true;
+    PrimitiveSet<Mac> pset =
+        PrimitiveSet.newBuilder(Mac.class)
+            .addLazyFullPrimitiveAndOptionalPrimitive(factory, key1)
+            .build();
+    PrimitiveSet.Entry<Mac> entry = pset.getPrimitive(CryptoFormat.getOutputPrefix(key1)).get(0);
+
+    assertThrows(GeneralSecurityException.class, entry::getFullPrimitiveOrThrow);
+    factory.fail = false;
+    assertThat(entry.getFullPrimitiveOrThrow()).isNotNull();
+    assertThat(entry.getFullPrimitive()).isNotNull();
+  }
+
+  @Test
+  public void testAddLazyFullPrimitiveAndOptionalPrimitive_disabledKey_throws() throws Exception {
+    Key key1 =
+        Key.newBuilder()
+            .setKeyId(1)
+            .setStatus(KeyStatusType.DISABLED)
+            .setOutputPrefixType(OutputPrefixType.TINK)
+            .build();
+    PrimitiveSet.Builder<Mac> builder = PrimitiveSet.newBuilder(Mac.class);
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> builder.addLazyFullPrimitiveAndOptionalPrimitive(new CountingFactory(), key1));
+  }
+
   @Test
   public void testAddFullPrimitiveAndOptionalPrimitive_fullPrimitiveHandledCorrectly()
       throws Exception {
@@ -40,6 +40,8 @@ import com.google.crypto.tink.subtle.Bytes;
 import com.google.crypto.tink.subtle.Hex;
 import com.google.crypto.tink.subtle.Random;
 import com.google.crypto.tink.testing.TestUtil;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.List;
@@ -190,6 +192,71 @@ public class AeadWrapperTest {
         () -> wrappedAead.decrypt("".getBytes(UTF_8), associatedData));
   }
 
+  @Theory
+  public void byteBufferEncrypt_withTinkPrefix_canBeDecryptedWithByteArrays() throws Exception {
+    KeysetHandle handle =
+        KeysetHandle.newBuilder()
+            .addEntry(
+                KeysetHandle.generateEntryFromParameters(PredefinedAeadParameters.AES128_GCM)
+                    .withFixedId(0x66AABBCC)
+                    .makePrimary())
+            .build();
+    Aead aead = handle.getPrimitive(Aead.class);
+    ByteBufferAead byteBufferAead = (ByteBufferAead) aead;
+
+    byte[] plaintext = "plaintext".getBytes(UTF_8);
+    byte[] associatedData = "associatedData".getBytes(UTF_8);
+    ByteBuffer ciphertext =
+        ByteBuffer.allocateDirect(byteBufferAead.ciphertextSize(plaintext.length));
+    byteBufferAead.encrypt(
+        ByteBuffer.wrap(plaintext), ByteBuffer.wrap(associatedData), ciphertext);
+    assertThat(ciphertext.hasRemaining()).isFalse();
+    ciphertext.flip();
+    byte[] ciphertextBytes = new byte[ciphertext.remaining()];
+    ciphertext.duplicate().get(ciphertextBytes);
+
+    assertThat(Arrays.copyOf(ciphertextBytes, 5)).isEqualTo(Hex.decode("0166AABBCC"));
+    assertThat(aead.decrypt(ciphertextBytes, associatedData)).isEqualTo(plaintext);
+
+    ByteBuffer decrypted = ByteBuffer.allocate(ciphertext.remaining());
+    byteBufferAead.decrypt(ciphertext, ByteBuffer.wrap(associatedData), decrypted);
+    decrypted.flip();
+    assertThat(decrypted).isEqualTo(ByteBuffer.wrap(plaintext));
+  }
+
+  @Theory
+  public void byteBufferEncryptDecrypt_primitiveWithoutByteBufferSupport_works()
+      throws Exception {
+    Key key = getKey(aesCtrHmacAeadKey, /*keyId=*/ 0x66AABBCC, OutputPrefixType.TINK);
+    Aead rawAead = Registry.getPrimitive(key.getKeyData(), Aead.class);
+    PrimitiveSet<Aead> primitives =
+        PrimitiveSet.newBuilder(Aead.class).addPrimaryPrimitive(rawAead, key).build();
+    ByteBufferAead wrappedAead = (ByteBufferAead) new AeadWrapper().wrap(primitives);
+
+    byte[] plaintext = "plaintext".getBytes(UTF_8);
+    byte[] associatedData = "associatedData".getBytes(UTF_8);
+    ByteBuffer ciphertext = ByteBuffer.allocate(100);
+    wrappedAead.encrypt(ByteBuffer.wrap(plaintext), ByteBuffer.wrap(associatedData), ciphertext);
+    ciphertext.flip();
+    byte[] rawCiphertext = new byte[ciphertext.remaining() - 5];
+    System.arraycopy(ciphertext.array(), 5, rawCiphertext, 0, rawCiphertext.length);
+    assertThat(rawAead.decrypt(rawCiphertext, associatedData)).isEqualTo(plaintext);
+
+    ByteBuffer decrypted = ByteBuffer.allocate(ciphertext.remaining());
+    wrappedAead.decrypt(ciphertext, ByteBuffer.wrap(associatedData), decrypted);
+    decrypted.flip();
+    assertThat(decrypted).isEqualTo(ByteBuffer.wrap(plaintext));
+
+    ByteBuffer tooSmall = ByteBuffer.allocate(1);
+    ByteBuffer input = ByteBuffer.wrap(plaintext);
+    assertThrows(
+        GeneralSecurityException.class, () -> wrappedAead.ciphertextSize(plaintext.length));
+    assertThrows(
+        BufferOverflowException.class,
+        () -> wrappedAead.encrypt(input, null, tooSmall));
+    assertThat(input.position()).isEqualTo(0);
+  }
+
   @DataPoints("outputPrefixType")
   public static final OutputPrefixType[] OUTPUT_PREFIX_TYPES =
       new OutputPrefixType[] {
@@ -497,6 +564,130 @@ public class AeadWrapperTest {
     assertThat(decFailure.getKeysetInfo().getAnnotations()).isEqualTo(annotations);
   }
 
+  @Test
+  public void testDecryptRaw_triesLastSuccessfulKeyFirst() throws Exception {
+    FakeMonitoringClient fakeMonitoringClient = new FakeMonitoringClient();
+    MutableMonitoringRegistry.globalInstance().clear();
+    MutableMonitoringRegistry.globalInstance().registerMonitoringClient(fakeMonitoringClient);
+
+    Key key1 = getKey(aesCtrHmacAeadKey, /*keyId=*/ 42, OutputPrefixType.RAW);
+    Key key2 = getKey(aesCtrHmacAeadKey2, /*keyId=*/ 43, OutputPrefixType.RAW);
+    byte[] associatedData = Random.randBytes(20);
+    byte[] ciphertext1 =
+        new AeadWrapper()
+            .wrap(TestUtil.createPrimitiveSet(TestUtil.createKeyset(key1), Aead.class))
+            .encrypt(Random.randBytes(20), associatedData);
+    byte[] ciphertext2 =
+        new AeadWrapper()
+            .wrap(TestUtil.createPrimitiveSet(TestUtil.createKeyset(key2), Aead.class))
+            .encrypt(Random.randBytes(20), associatedData);
+
+    PrimitiveSet<Aead> primitives =
+        TestUtil.createPrimitiveSetWithAnnotations(
+            TestUtil.createKeyset(key1, key2),
+            MonitoringAnnotations.newBuilder().add("annotation_name", "annotation_value").build(),
+            Aead.class);
+    Aead aead = new AeadWrapper().wrap(primitives);
+
+    // The first decryption tries key1, then key2. Afterwards, key2 is tried first.
+    Object unused = aead.decrypt(ciphertext2, associatedData);
+    unused = aead.decrypt(ciphertext2, associatedData);
+    ((ByteBufferAead) aead)
+        .decrypt(
+            ByteBuffer.wrap(ciphertext2),
+            ByteBuffer.wrap(associatedData),
+            ByteBuffer.allocate(ciphertext2.length));
+    unused = aead.decrypt(ciphertext1, associatedData);
+    unused = aead.decrypt(ciphertext1, associatedData);
+
+    List<FakeMonitoringClient.LogAttemptsEntry> attempts =
+        fakeMonitoringClient.getLogAttemptsEntries();
+    assertThat(attempts).hasSize(5);
+    assertThat(attempts.get(0).getNumAttempts()).isEqualTo(2);
+    assertThat(attempts.get(1).getNumAttempts()).isEqualTo(1);
+    assertThat(attempts.get(2).getNumAttempts()).isEqualTo(1);
+    assertThat(attempts.get(3).getNumAttempts()).isEqualTo(2);
+    assertThat(attempts.get(4).getNumAttempts()).isEqualTo(1);
+    assertThat(attempts.get(4).getPrimitive()).isEqualTo("aead");
+    assertThat(attempts.get(4).getApi()).isEqualTo("decrypt");
+  }
+
+  @Test
+  public void decryptLazily_rawKeyWithoutPrimitive_triesOtherRawKeys() throws Exception {
+    Key primaryKey = getKey(aesCtrHmacAeadKey, /*keyId=*/ 42, OutputPrefixType.TINK);
+    Key unsupportedKey =
+        TestUtil.createKey(
+            TestUtil.createKeyData(
+                aesCtrHmacAeadKey,
+                "type.googleapis.com/google.crypto.tink.UnsupportedAeadKey",
+                KeyData.KeyMaterialType.SYMMETRIC),
+            /*keyId=*/ 43,
+            KeyStatusType.ENABLED,
+            OutputPrefixType.RAW);
+    Key rawKey = getKey(aesCtrHmacAeadKey2, /*keyId=*/ 44, OutputPrefixType.RAW);
+    byte[] plaintext = Random.randBytes(20);
+    byte[] associatedData = Random.randBytes(20);
+    byte[] rawCiphertext =
+        new AeadWrapper()
+            .wrap(TestUtil.createPrimitiveSet(TestUtil.createKeyset(rawKey), Aead.class))
+            .encrypt(plaintext, associatedData);
+    KeysetHandle handle =
+        TinkProtoKeysetFormat.parseKeyset(
+            TestUtil.createKeyset(primaryKey, unsupportedKey, rawKey).toByteArray(),
+            InsecureSecretKeyAccess.get());
+
+    // The unsupported key is only noticed when it is tried, and must not abort the decryption.
+    Aead aead = handle.getPrimitiveLazily(Aead.class);
+
+    assertThat(aead.decrypt(rawCiphertext, associatedData)).isEqualTo(plaintext);
+    ByteBuffer decrypted = ByteBuffer.allocate(plaintext.length);
+    ((ByteBufferAead) aead)
+        .decrypt(ByteBuffer.wrap(rawCiphertext), ByteBuffer.wrap(associatedData), decrypted);
+    assertThat(decrypted.array()).isEqualTo(plaintext);
+    assertThrows(GeneralSecurityException.class, () -> aead.decrypt(plaintext, associatedData));
+  }
+
+  @Test
+  public void decryptLazily_prefixedKeyWithoutPrimitive_rejectsItsCiphertexts() throws Exception {
+    Key primaryKey = getKey(aesCtrHmacAeadKey, /*keyId=*/ 42, OutputPrefixType.TINK);
+    Key unsupportedKey =
+        TestUtil.createKey(
+            TestUtil.createKeyData(
+                aesCtrHmacAeadKey2,
+                "type.googleapis.com/google.crypto.tink.UnsupportedAeadKey",
+                KeyData.KeyMaterialType.SYMMETRIC),
+            /*keyId=*/ 43,
+            KeyStatusType.ENABLED,
+            OutputPrefixType.TINK);
+    // A ciphertext with the output prefix of the unsupported key.
+    Key supportedKey = getKey(aesCtrHmacAeadKey2, /*keyId=*/ 43, OutputPrefixType.TINK);
+    byte[] plaintext = Random.randBytes(20);
+    byte[] associatedData = Random.randBytes(20);
+    byte[] ciphertext =
+        new AeadWrapper()
+            .wrap(TestUtil.createPrimitiveSet(TestUtil.createKeyset(supportedKey), Aead.class))
+            .encrypt(plaintext, associatedData);
+    KeysetHandle handle =
+        TinkProtoKeysetFormat.parseKeyset(
+            TestUtil.createKeyset(primaryKey, unsupportedKey).toByteArray(),
+            InsecureSecretKeyAccess.get());
+
+    Aead aead = handle.getPrimitiveLazily(Aead.class);
+
+    // The unsupported key is skipped, so its ciphertexts fail like ciphertexts of unknown keys.
+    assertThrows(GeneralSecurityException.class, () -> aead.decrypt(ciphertext, associatedData));
+    assertThrows(
+        GeneralSecurityException.class,
+        () ->
+            ((ByteBufferAead) aead)
+                .decrypt(
+                    ByteBuffer.wrap(ciphertext),
+                    ByteBuffer.wrap(associatedData),
+                    ByteBuffer.allocate(ciphertext.length)));
+    assertThat(aead.decrypt(aead.encrypt(plaintext, associatedData), associatedData))
+        .isEqualTo(plaintext);
+  }
+
   private static class AlwaysFailingAead implements Aead {
     public AlwaysFailingAead() {}
 
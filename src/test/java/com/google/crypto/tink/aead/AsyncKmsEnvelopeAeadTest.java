@@ -0,0 +1,312 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.AsyncAead;
+import com.google.crypto.tink.subtle.Random;
+import com.google.crypto.tink.testing.FakeKmsClient;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link AsyncKmsEnvelopeAead}. */
+@RunWith(JUnit4.class)
+public final class AsyncKmsEnvelopeAeadTest {
+  private static final Duration LONG_WINDOW = Duration.ofMinutes(5);
+
+  private ExecutorService executor;
+  private String keyUri;
+
+  @Before
+  public void setUp() throws GeneralSecurityException {
+    AeadConfig.register();
+    executor = Executors.newCachedThreadPool();
+    keyUri = FakeKmsClient.createFakeKeyUri();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  /** An AsyncAead which records the size of every batch. */
+  private static final class RecordingAsyncAead implements AsyncAead {
+    private final AsyncAead remote;
+    final List<Integer> encryptBatches = new ArrayList<>();
+    final List<Integer> decryptBatches = new ArrayList<>();
+
+    RecordingAsyncAead(AsyncAead remote) {
+      this.remote = remote;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> encrypt(byte[] plaintext, byte[] associatedData) {
+      return remote.encrypt(plaintext, associatedData);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> decrypt(byte[] ciphertext, byte[] associatedData) {
+      return remote.decrypt(ciphertext, associatedData);
+    }
+
+    @Override
+    public synchronized CompletableFuture<List<byte[]>> encryptBatch(
+        List<byte[]> plaintexts, byte[] associatedData) {
+      encryptBatches.add(plaintexts.size());
+      return remote.encryptBatch(plaintexts, associatedData);
+    }
+
+    @Override
+    public synchronized CompletableFuture<List<byte[]>> decryptBatch(
+        List<byte[]> ciphertexts, byte[] associatedData) {
+      decryptBatches.add(ciphertexts.size());
+      return remote.decryptBatch(ciphertexts, associatedData);
+    }
+  }
+
+  private AsyncAead getRemote() throws GeneralSecurityException {
+    return new FakeKmsClient().getAsyncAead(keyUri, executor);
+  }
+
+  @Test
+  public void encryptDecrypt_works() throws Exception {
+    AsyncKmsEnvelopeAead aead =
+        AsyncKmsEnvelopeAead.builder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(getRemote())
+            .build();
+    byte[] plaintext = Random.randBytes(20);
+    byte[] associatedData = Random.randBytes(20);
+
+    byte[] ciphertext = aead.encrypt(plaintext, associatedData).get();
+
+    assertThat(aead.decrypt(ciphertext, associatedData).get()).isEqualTo(plaintext);
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () -> aead.decrypt(ciphertext, "invalid".getBytes(UTF_8)).get());
+    assertThat(e).hasCauseThat().isInstanceOf(GeneralSecurityException.class);
+  }
+
+  @Test
+  public void ciphertexts_areCompatibleWithKmsEnvelopeAead() throws Exception {
+    AsyncKmsEnvelopeAead asyncAead =
+        AsyncKmsEnvelopeAead.builder()
+            .setDekParameters(PredefinedAeadParameters.AES256_GCM)
+            .setRemote(getRemote())
+            .build();
+    Aead aead =
+        KmsEnvelopeAead.create(
+            PredefinedAeadParameters.AES256_GCM, new FakeKmsClient().getAead(keyUri));
+    byte[] plaintext = Random.randBytes(20);
+    byte[] associatedData = Random.randBytes(20);
+
+    byte[] asyncCiphertext = asyncAead.encrypt(plaintext, associatedData).get();
+    byte[] ciphertext = aead.encrypt(plaintext, associatedData);
+
+    assertThat(aead.decrypt(asyncCiphertext, associatedData)).isEqualTo(plaintext);
+    assertThat(asyncAead.decrypt(ciphertext, associatedData).get()).isEqualTo(plaintext);
+  }
+
+  @Test
+  public void fullBatch_isSentRightAway() throws Exception {
+    RecordingAsyncAead remote = new RecordingAsyncAead(getRemote());
+    AsyncKmsEnvelopeAead aead =
+        AsyncKmsEnvelopeAead.builder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(remote)
+            .setBatchWindow(LONG_WINDOW)
+            .setMaxBatchSize(10)
+            .build();
+    byte[] associatedData = Random.randBytes(20);
+    List<byte[]> plaintexts = new ArrayList<>();
+    List<CompletableFuture<byte[]>> ciphertexts = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      plaintexts.add(Random.randBytes(i));
+      ciphertexts.add(aead.encrypt(plaintexts.get(i), associatedData));
+    }
+    List<CompletableFuture<byte[]>> decrypted = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      decrypted.add(aead.decrypt(ciphertexts.get(i).get(), associatedData));
+    }
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(decrypted.get(i).get()).isEqualTo(plaintexts.get(i));
+    }
+    assertThat(remote.encryptBatches).containsExactly(10);
+    assertThat(remote.decryptBatches).containsExactly(10);
+  }
+
+  @Test
+  public void concurrentEncrypt_neverExceedsMaxBatchSize() throws Exception {
+    RecordingAsyncAead remote = new RecordingAsyncAead(getRemote());
+    AsyncKmsEnvelopeAead aead =
+        AsyncKmsEnvelopeAead.builder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(remote)
+            .setBatchWindow(Duration.ofMillis(100))
+            .setMaxBatchSize(4)
+            .build();
+    byte[] associatedData = Random.randBytes(20);
+    int numThreads = 8;
+    int encryptionsPerThread = 50;
+
+    List<Future<List<CompletableFuture<byte[]>>>> submitted = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      submitted.add(
+          executor.submit(
+              () -> {
+                List<CompletableFuture<byte[]>> ciphertexts = new ArrayList<>();
+                for (int i = 0; i < encryptionsPerThread; i++) {
+                  ciphertexts.add(aead.encrypt(Random.randBytes(20), associatedData));
+                }
+                return ciphertexts;
+              }));
+    }
+    for (Future<List<CompletableFuture<byte[]>>> future : submitted) {
+      for (CompletableFuture<byte[]> ciphertext : future.get()) {
+        Object unused = ciphertext.get();
+      }
+    }
+
+    int total = 0;
+    synchronized (remote) {
+      for (int batchSize : remote.encryptBatches) {
+        assertThat(batchSize).isAtMost(4);
+        total += batchSize;
+      }
+    }
+    assertThat(total).isEqualTo(numThreads * encryptionsPerThread);
+  }
+
+  @Test
+  public void partialBatch_isSentAfterWindow() throws Exception {
+    RecordingAsyncAead remote = new RecordingAsyncAead(getRemote());
+    AsyncKmsEnvelopeAead aead =
+        AsyncKmsEnvelopeAead.builder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(remote)
+            .setBatchWindow(Duration.ofMillis(200))
+            .setMaxBatchSize(100)
+            .build();
+    byte[] associatedData = Random.randBytes(20);
+
+    List<CompletableFuture<byte[]>> ciphertexts = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      ciphertexts.add(aead.encrypt(Random.randBytes(20), associatedData));
+    }
+    for (CompletableFuture<byte[]> ciphertext : ciphertexts) {
+      Object unused = ciphertext.get();
+    }
+
+    assertThat(remote.encryptBatches).containsExactly(3);
+  }
+
+  @Test
+  public void invalidCiphertextInBatch_failsOnlyThatMessage() throws Exception {
+    AsyncKmsEnvelopeAead aead =
+        AsyncKmsEnvelopeAead.builder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(getRemote())
+            .setBatchWindow(LONG_WINDOW)
+            .setMaxBatchSize(3)
+            .build();
+    byte[] plaintext = Random.randBytes(20);
+    byte[] associatedData = Random.randBytes(20);
+    CompletableFuture<byte[]> encrypted1 = aead.encrypt(plaintext, associatedData);
+    CompletableFuture<byte[]> encrypted2 = aead.encrypt(plaintext, associatedData);
+    CompletableFuture<byte[]> encrypted3 = aead.encrypt(plaintext, associatedData);
+    byte[] ciphertext1 = encrypted1.get();
+    byte[] ciphertext2 = encrypted2.get();
+    byte[] ciphertext3 = encrypted3.get();
+    // Modify the encrypted DEK, which directly follows its 4 byte length.
+    byte[] invalidCiphertext = Arrays.copyOf(ciphertext2, ciphertext2.length);
+    invalidCiphertext[10] ^= 1;
+
+    CompletableFuture<byte[]> decrypted1 = aead.decrypt(ciphertext1, associatedData);
+    CompletableFuture<byte[]> invalidDecrypted = aead.decrypt(invalidCiphertext, associatedData);
+    CompletableFuture<byte[]> decrypted3 = aead.decrypt(ciphertext3, associatedData);
+
+    assertThat(decrypted1.get()).isEqualTo(plaintext);
+    assertThat(decrypted3.get()).isEqualTo(plaintext);
+    ExecutionException e = assertThrows(ExecutionException.class, invalidDecrypted::get);
+    assertThat(e).hasCauseThat().isInstanceOf(GeneralSecurityException.class);
+  }
+
+  @Test
+  public void decryptTooShortCiphertext_fails() throws Exception {
+    AsyncKmsEnvelopeAead aead =
+        AsyncKmsEnvelopeAead.builder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(getRemote())
+            .build();
+
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> aead.decrypt(new byte[3], new byte[0]).get());
+    assertThat(e).hasCauseThat().isInstanceOf(GeneralSecurityException.class);
+    e =
+        assertThrows(
+            ExecutionException.class,
+            () -> aead.decrypt(new byte[] {0, 0, 0, 9, 1, 2}, new byte[0]).get());
+    assertThat(e).hasCauseThat().isInstanceOf(GeneralSecurityException.class);
+  }
+
+  @Test
+  public void blockingRemote_works() throws Exception {
+    AsyncKmsEnvelopeAead aead =
+        AsyncKmsEnvelopeAead.builder()
+            .setDekParameters(PredefinedAeadParameters.CHACHA20_POLY1305)
+            .setRemote(AsyncAead.fromAead(new FakeKmsClient().getAead(keyUri), executor))
+            .build();
+    byte[] plaintext = Random.randBytes(20);
+    byte[] associatedData = Random.randBytes(20);
+
+    byte[] ciphertext = aead.encrypt(plaintext, associatedData).get();
+
+    assertThat(aead.decrypt(ciphertext, associatedData).get()).isEqualTo(plaintext);
+  }
+
+  @Test
+  public void builder_withoutParametersOrRemote_fails() throws Exception {
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> AsyncKmsEnvelopeAead.builder().setRemote(getRemote()).build());
+    assertThrows(
+        GeneralSecurityException.class,
+        () ->
+            AsyncKmsEnvelopeAead.builder()
+                .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+                .build());
+  }
+}
@@ -30,7 +30,21 @@ import com.google.crypto.tink.internal.KeyTemplateProtoConverter;
 import com.google.crypto.tink.mac.HmacKeyManager;
 import com.google.crypto.tink.subtle.Random;
 import com.google.crypto.tink.testing.FakeKmsClient;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.experimental.theories.DataPoints;
@@ -242,7 +256,451 @@ public final class KmsEnvelopeAeadTest {
     assertThat(aead2.decrypt(aead1.encrypt(plaintext, associatedData), associatedData))
         .isEqualTo(plaintext);
   }
-}
 
+  /** Counts the calls to the wrapped Aead. */
+  private static final class CountingAead implements Aead {
+    private final Aead aead;
+    final AtomicInteger encryptions = new AtomicInteger();
+    final AtomicInteger decryptions = new AtomicInteger();
+
+    CountingAead(Aead aead) {
+      this.aead = aead;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] associatedData)
+        throws GeneralSecurityException {
+      encryptions.incrementAndGet();
+      return aead.encrypt(plaintext, associatedData);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] associatedData)
+        throws GeneralSecurityException {
+      decryptions.incrementAndGet();
+      return aead.decrypt(ciphertext, associatedData);
+    }
+  }
+
+  /** A clock which only moves when told to. */
+  private static final class ManualClock extends Clock {
+    private Instant now = Instant.ofEpochSecond(1234567);
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  private static byte[] encryptedDekOf(byte[] ciphertext) {
+    ByteBuffer buffer = ByteBuffer.wrap(ciphertext);
+    byte[] encryptedDek = new byte[buffer.getInt()];
+    buffer.get(encryptedDek);
+    return encryptedDek;
+  }
+
+  @Test
+  public void withoutDekReuse_createsDekForEveryMessage() throws Exception {
+    CountingAead remoteAead = new CountingAead(this.generateNewRemoteAead());
+    KmsEnvelopeAead envAead =
+        (KmsEnvelopeAead) KmsEnvelopeAead.create(PredefinedAeadParameters.AES128_GCM, remoteAead);
+
+    for (int i = 0; i < 3; i++) {
+      Object unused = envAead.encrypt(new byte[10], EMPTY_ADD);
+    }
+
+    assertThat(remoteAead.encryptions.get()).isEqualTo(3);
+    assertThat(envAead.getStatistics().getDeksCreated()).isEqualTo(3);
+    assertThat(envAead.getStatistics().getMessagesEncrypted()).isEqualTo(3);
+    assertThat(envAead.getStatistics().getBytesEncrypted()).isEqualTo(30);
+  }
+
+  @Theory
+  public void dekReuse_isCompatibleWithCreate(
+      @FromDataPoints("dekParameters") AeadParameters dekParameters) throws Exception {
+    Aead remoteAead = this.generateNewRemoteAead();
+    Aead reusingAead =
+        KmsEnvelopeAead.createWithDekReuse(
+            dekParameters, remoteAead, KmsEnvelopeAead.DekReusePolicy.newBuilder().build());
+    Aead envAead = KmsEnvelopeAead.create(dekParameters, remoteAead);
+    byte[] plaintext = "plaintext".getBytes(UTF_8);
+    byte[] associatedData = "associatedData".getBytes(UTF_8);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(envAead.decrypt(reusingAead.encrypt(plaintext, associatedData), associatedData))
+          .isEqualTo(plaintext);
+    }
+    assertThat(reusingAead.decrypt(envAead.encrypt(plaintext, associatedData), associatedData))
+        .isEqualTo(plaintext);
+  }
+
+  @Test
+  public void dekReuse_rotatesAfterMaxMessages() throws Exception {
+    CountingAead remoteAead = new CountingAead(this.generateNewRemoteAead());
+    KmsEnvelopeAead envAead =
+        KmsEnvelopeAead.createWithDekReuse(
+            PredefinedAeadParameters.AES128_GCM,
+            remoteAead,
+            KmsEnvelopeAead.DekReusePolicy.newBuilder().setMaxMessages(3).build());
+
+    byte[][] ciphertexts = new byte[7][];
+    for (int i = 0; i < ciphertexts.length; i++) {
+      ciphertexts[i] = envAead.encrypt(new byte[] {(byte) i}, EMPTY_ADD);
+    }
+
+    assertThat(remoteAead.encryptions.get()).isEqualTo(3);
+    assertThat(envAead.getStatistics().getDeksCreated()).isEqualTo(3);
+    assertThat(envAead.getStatistics().getMessagesEncrypted()).isEqualTo(7);
+    assertThat(encryptedDekOf(ciphertexts[1])).isEqualTo(encryptedDekOf(ciphertexts[0]));
+    assertThat(encryptedDekOf(ciphertexts[2])).isEqualTo(encryptedDekOf(ciphertexts[0]));
+    assertThat(encryptedDekOf(ciphertexts[3])).isNotEqualTo(encryptedDekOf(ciphertexts[0]));
+    for (int i = 0; i < ciphertexts.length; i++) {
+      assertThat(envAead.decrypt(ciphertexts[i], EMPTY_ADD)).isEqualTo(new byte[] {(byte) i});
+    }
+  }
+
+  @Test
+  public void dekReuse_rotatesAfterMaxBytes() throws Exception {
+    CountingAead remoteAead = new CountingAead(this.generateNewRemoteAead());
+    KmsEnvelopeAead envAead =
+        KmsEnvelopeAead.createWithDekReuse(
+            PredefinedAeadParameters.AES128_GCM,
+            remoteAead,
+            KmsEnvelopeAead.DekReusePolicy.newBuilder().setMaxBytes(25).build());
+
+    byte[] ciphertext1 = envAead.encrypt(new byte[10], EMPTY_ADD);
+    byte[] ciphertext2 = envAead.encrypt(new byte[10], EMPTY_ADD);
+    byte[] ciphertext3 = envAead.encrypt(new byte[10], EMPTY_ADD);
+
+    assertThat(remoteAead.encryptions.get()).isEqualTo(2);
+    assertThat(encryptedDekOf(ciphertext2)).isEqualTo(encryptedDekOf(ciphertext1));
+    assertThat(encryptedDekOf(ciphertext3)).isNotEqualTo(encryptedDekOf(ciphertext1));
+  }
+
+  @Test
+  public void dekReuse_messageLongerThanMaxBytes_usesOwnDek() throws Exception {
+    CountingAead remoteAead = new CountingAead(this.generateNewRemoteAead());
+    KmsEnvelopeAead envAead =
+        KmsEnvelopeAead.createWithDekReuse(
+            PredefinedAeadParameters.AES128_GCM,
+            remoteAead,
+            KmsEnvelopeAead.DekReusePolicy.newBuilder().setMaxBytes(25).build());
+
+    byte[] ciphertext1 = envAead.encrypt(new byte[10], EMPTY_ADD);
+    byte[] longCiphertext = envAead.encrypt(new byte[30], EMPTY_ADD);
+    byte[] ciphertext2 = envAead.encrypt(new byte[10], EMPTY_ADD);
+
+    assertThat(remoteAead.encryptions.get()).isEqualTo(2);
+    assertThat(encryptedDekOf(longCiphertext)).isNotEqualTo(encryptedDekOf(ciphertext1));
+    assertThat(encryptedDekOf(ciphertext2)).isEqualTo(encryptedDekOf(ciphertext1));
+    assertThat(envAead.decrypt(longCiphertext, EMPTY_ADD)).isEqualTo(new byte[30]);
+  }
+
+  @Test
+  public void dekReuse_rotatesAfterMaxAge() throws Exception {
+    CountingAead remoteAead = new CountingAead(this.generateNewRemoteAead());
+    ManualClock clock = new ManualClock();
+    KmsEnvelopeAead envAead =
+        KmsEnvelopeAead.createWithDekReuse(
+            PredefinedAeadParameters.AES128_GCM,
+            remoteAead,
+            KmsEnvelopeAead.DekReusePolicy.newBuilder()
+                .setMaxAge(Duration.ofSeconds(10))
+                .setClock(clock)
+                .build());
+
+    byte[] ciphertext1 = envAead.encrypt(new byte[10], EMPTY_ADD);
+    clock.advance(Duration.ofSeconds(9));
+    byte[] ciphertext2 = envAead.encrypt(new byte[10], EMPTY_ADD);
+    clock.advance(Duration.ofSeconds(1));
+    byte[] ciphertext3 = envAead.encrypt(new byte[10], EMPTY_ADD);
+
+    assertThat(remoteAead.encryptions.get()).isEqualTo(2);
+    assertThat(encryptedDekOf(ciphertext2)).isEqualTo(encryptedDekOf(ciphertext1));
+    assertThat(encryptedDekOf(ciphertext3)).isNotEqualTo(encryptedDekOf(ciphertext1));
+  }
+
+  @Test
+  public void dekReusePolicy_invalidLimits_throw() throws Exception {
+    KmsEnvelopeAead.DekReusePolicy.Builder builder =
+        KmsEnvelopeAead.DekReusePolicy.newBuilder();
+    assertThrows(IllegalArgumentException.class, () -> builder.setMaxMessages(0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> builder.setMaxMessages(KmsEnvelopeAead.DekReusePolicy.MAX_MESSAGES_PER_DEK + 1));
+    assertThrows(IllegalArgumentException.class, () -> builder.setMaxBytes(0));
+    assertThrows(IllegalArgumentException.class, () -> builder.setMaxAge(Duration.ZERO));
+  }
+
+  @Test
+  public void dekCache_decryptsEachDekOnce() throws Exception {
+    CountingAead remoteAead = new CountingAead(this.generateNewRemoteAead());
+    Aead encrypter =
+        KmsEnvelopeAead.createWithDekReuse(
+            PredefinedAeadParameters.AES128_GCM,
+            remoteAead,
+            KmsEnvelopeAead.DekReusePolicy.newBuilder().setMaxMessages(5).build());
+    KmsEnvelopeAead decrypter =
+        KmsEnvelopeAead.newBuilder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(remoteAead)
+            .setDekCachePolicy(KmsEnvelopeAead.DekCachePolicy.newBuilder().build())
+            .build();
+
+    for (int i = 0; i < 10; i++) {
+      byte[] plaintext = new byte[] {(byte) i};
+      assertThat(decrypter.decrypt(encrypter.encrypt(plaintext, EMPTY_ADD), EMPTY_ADD))
+          .isEqualTo(plaintext);
+    }
+
+    assertThat(remoteAead.decryptions.get()).isEqualTo(2);
+    assertThat(decrypter.getStatistics().getDekCacheMisses()).isEqualTo(2);
+    assertThat(decrypter.getStatistics().getDekCacheHits()).isEqualTo(8);
+  }
+
+  @Test
+  public void dekCache_evictsLeastRecentlyUsedDek() throws Exception {
+    CountingAead remoteAead = new CountingAead(this.generateNewRemoteAead());
+    Aead encrypter = KmsEnvelopeAead.create(PredefinedAeadParameters.AES128_GCM, remoteAead);
+    KmsEnvelopeAead decrypter =
+        KmsEnvelopeAead.newBuilder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(remoteAead)
+            .setDekCachePolicy(KmsEnvelopeAead.DekCachePolicy.newBuilder().setMaxEntries(2).build())
+            .build();
+    byte[] ciphertext1 = encrypter.encrypt(new byte[1], EMPTY_ADD);
+    byte[] ciphertext2 = encrypter.encrypt(new byte[2], EMPTY_ADD);
+    byte[] ciphertext3 = encrypter.encrypt(new byte[3], EMPTY_ADD);
+
+    Object unused = decrypter.decrypt(ciphertext1, EMPTY_ADD);
+    unused = decrypter.decrypt(ciphertext2, EMPTY_ADD);
+    unused = decrypter.decrypt(ciphertext1, EMPTY_ADD);
+    // Evicts the DEK of ciphertext2, which is the least recently used one.
+    unused = decrypter.decrypt(ciphertext3, EMPTY_ADD);
+    assertThat(remoteAead.decryptions.get()).isEqualTo(3);
+    unused = decrypter.decrypt(ciphertext1, EMPTY_ADD);
+    assertThat(remoteAead.decryptions.get()).isEqualTo(3);
+    unused = decrypter.decrypt(ciphertext2, EMPTY_ADD);
+    assertThat(remoteAead.decryptions.get()).isEqualTo(4);
+    assertThat(decrypter.getStatistics().getDekCacheEvictions()).isEqualTo(2);
+  }
+
+  @Test
+  public void dekCache_expiresDeks() throws Exception {
+    CountingAead remoteAead = new CountingAead(this.generateNewRemoteAead());
+    ManualClock clock = new ManualClock();
+    Aead encrypter = KmsEnvelopeAead.create(PredefinedAeadParameters.AES128_GCM, remoteAead);
+    KmsEnvelopeAead decrypter =
+        KmsEnvelopeAead.newBuilder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(remoteAead)
+            .setDekCachePolicy(
+                KmsEnvelopeAead.DekCachePolicy.newBuilder()
+                    .setTimeToLive(Duration.ofSeconds(10))
+                    .setClock(clock)
+                    .build())
+            .build();
+    byte[] ciphertext = encrypter.encrypt(new byte[1], EMPTY_ADD);
+
+    Object unused = decrypter.decrypt(ciphertext, EMPTY_ADD);
+    clock.advance(Duration.ofSeconds(9));
+    unused = decrypter.decrypt(ciphertext, EMPTY_ADD);
+    assertThat(remoteAead.decryptions.get()).isEqualTo(1);
+    clock.advance(Duration.ofSeconds(1));
+    unused = decrypter.decrypt(ciphertext, EMPTY_ADD);
+    assertThat(remoteAead.decryptions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void dekCache_concurrentMisses_decryptDekOnce() throws Exception {
+    Aead kek = this.generateNewRemoteAead();
+    byte[] ciphertext =
+        KmsEnvelopeAead.create(PredefinedAeadParameters.AES128_GCM, kek)
+            .encrypt(new byte[10], EMPTY_ADD);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger remoteDecryptions = new AtomicInteger();
+    Aead slowRemote =
+        new Aead() {
+          @Override
+          public byte[] encrypt(byte[] plaintext, byte[] associatedData)
+              throws GeneralSecurityException {
+            return kek.encrypt(plaintext, associatedData);
+          }
+
+          @Override
+          public byte[] decrypt(byte[] ciphertext, byte[] associatedData)
+              throws GeneralSecurityException {
+            remoteDecryptions.incrementAndGet();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              throw new GeneralSecurityException(e);
+            }
+            return kek.decrypt(ciphertext, associatedData);
+          }
+        };
+    KmsEnvelopeAead decrypter =
+        KmsEnvelopeAead.newBuilder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(slowRemote)
+            .setDekCachePolicy(KmsEnvelopeAead.DekCachePolicy.newBuilder().build())
+            .build();
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<byte[]>> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      results.add(executor.submit(() -> decrypter.decrypt(ciphertext, EMPTY_ADD)));
+    }
+    // Wait until all threads look up the DEK before the KMS answers.
+    while (decrypter.getStatistics().getDekCacheHits()
+            + decrypter.getStatistics().getDekCacheMisses()
+        < 8) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+    for (Future<byte[]> result : results) {
+      assertThat(result.get()).isEqualTo(new byte[10]);
+    }
+    executor.shutdown();
+    assertThat(remoteDecryptions.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void dekCache_doesNotCacheFailures() throws Exception {
+    CountingAead remoteAead = new CountingAead(this.generateNewRemoteAead());
+    KmsEnvelopeAead decrypter =
+        KmsEnvelopeAead.newBuilder()
+            .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+            .setRemote(remoteAead)
+            .setDekCachePolicy(KmsEnvelopeAead.DekCachePolicy.newBuilder().build())
+            .build();
+    byte[] ciphertext = decrypter.encrypt(new byte[10], EMPTY_ADD);
+    ciphertext[4] = (byte) (ciphertext[4] ^ 0x1);
 
+    assertThrows(GeneralSecurityException.class, () -> decrypter.decrypt(ciphertext, EMPTY_ADD));
+    assertThrows(GeneralSecurityException.class, () -> decrypter.decrypt(ciphertext, EMPTY_ADD));
+    assertThat(remoteAead.decryptions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void builder_withoutParametersOrRemote_fails() throws Exception {
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> KmsEnvelopeAead.newBuilder().setRemote(this.generateNewRemoteAead()).build());
+    assertThrows(
+        GeneralSecurityException.class,
+        () ->
+            KmsEnvelopeAead.newBuilder()
+                .setDekParameters(PredefinedAeadParameters.AES128_GCM)
+                .build());
+  }
+
+  private static byte[] payloadOf(byte[] ciphertext) {
+    return Arrays.copyOfRange(ciphertext, 4 + encryptedDekOf(ciphertext).length, ciphertext.length);
+  }
+
+  @Theory
+  public void rewrapDek_canBeDecryptedWithNewRemote(
+      @FromDataPoints("dekParameters") AeadParameters dekParameters) throws Exception {
+    Aead oldRemote = generateNewRemoteAead();
+    Aead newRemote = generateNewRemoteAead();
+    Aead oldAead = KmsEnvelopeAead.create(dekParameters, oldRemote);
+    Aead newAead = KmsEnvelopeAead.create(dekParameters, newRemote);
+    byte[] plaintext = Random.randBytes(100);
+    byte[] associatedData = Random.randBytes(20);
+    byte[] ciphertext = oldAead.encrypt(plaintext, associatedData);
 
+    byte[] rewrapped = KmsEnvelopeAead.rewrapDek(ciphertext, oldRemote, newRemote);
+
+    assertThat(newAead.decrypt(rewrapped, associatedData)).isEqualTo(plaintext);
+    assertThrows(GeneralSecurityException.class, () -> oldAead.decrypt(rewrapped, associatedData));
+    assertThat(payloadOf(rewrapped)).isEqualTo(payloadOf(ciphertext));
+  }
+
+  @Test
+  public void rewrapDek_wrongOldRemote_fails() throws Exception {
+    Aead remote = generateNewRemoteAead();
+    byte[] ciphertext =
+        KmsEnvelopeAead.create(PredefinedAeadParameters.AES128_GCM, remote)
+            .encrypt(Random.randBytes(20), EMPTY_ADD);
+
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> KmsEnvelopeAead.rewrapDek(ciphertext, generateNewRemoteAead(), remote));
+  }
+
+  @Test
+  public void rewrapDek_invalidCiphertext_fails() throws Exception {
+    Aead remote = generateNewRemoteAead();
+
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> KmsEnvelopeAead.rewrapDek(new byte[3], remote, remote));
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> KmsEnvelopeAead.rewrapDek(new byte[] {0, 0, 0, 9, 1, 2}, remote, remote));
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> KmsEnvelopeAead.rewrapDek(new byte[] {-1, 0, 0, 0, 1, 2}, remote, remote));
+  }
+
+  @Test
+  public void rewrapDeks_rewrapsAllInOrder() throws Exception {
+    Aead oldRemote = generateNewRemoteAead();
+    Aead newRemote = generateNewRemoteAead();
+    Aead oldAead = KmsEnvelopeAead.create(PredefinedAeadParameters.AES128_GCM, oldRemote);
+    Aead newAead = KmsEnvelopeAead.create(PredefinedAeadParameters.AES128_GCM, newRemote);
+    List<byte[]> plaintexts = new ArrayList<>();
+    List<byte[]> ciphertexts = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      plaintexts.add(Random.randBytes(i));
+      ciphertexts.add(oldAead.encrypt(plaintexts.get(i), EMPTY_ADD));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<byte[]> rewrapped;
+    try {
+      rewrapped = KmsEnvelopeAead.rewrapDeks(ciphertexts, oldRemote, newRemote, executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(rewrapped).hasSize(50);
+    for (int i = 0; i < 50; i++) {
+      assertThat(newAead.decrypt(rewrapped.get(i), EMPTY_ADD)).isEqualTo(plaintexts.get(i));
+    }
+  }
+
+  @Test
+  public void rewrapDeks_invalidCiphertext_failsWithItsIndex() throws Exception {
+    Aead remote = generateNewRemoteAead();
+    Aead aead = KmsEnvelopeAead.create(PredefinedAeadParameters.AES128_GCM, remote);
+    List<byte[]> ciphertexts = new ArrayList<>();
+    ciphertexts.add(aead.encrypt(Random.randBytes(20), EMPTY_ADD));
+    ciphertexts.add(new byte[3]);
+    ciphertexts.add(aead.encrypt(Random.randBytes(20), EMPTY_ADD));
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      GeneralSecurityException e =
+          assertThrows(
+              GeneralSecurityException.class,
+              () -> KmsEnvelopeAead.rewrapDeks(ciphertexts, remote, remote, executor));
+      assertThat(e).hasMessageThat().contains("ciphertext 1");
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
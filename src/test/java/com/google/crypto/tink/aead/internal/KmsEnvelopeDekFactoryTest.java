@@ -0,0 +1,146 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.aead.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.TinkProtoParametersFormat;
+import com.google.crypto.tink.aead.AeadConfig;
+import com.google.crypto.tink.aead.AeadParameters;
+import com.google.crypto.tink.aead.AesGcmParameters;
+import com.google.crypto.tink.aead.PredefinedAeadParameters;
+import com.google.crypto.tink.proto.KeyTemplate;
+import com.google.protobuf.ExtensionRegistryLite;
+import java.security.GeneralSecurityException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.theories.DataPoints;
+import org.junit.experimental.theories.FromDataPoints;
+import org.junit.experimental.theories.Theories;
+import org.junit.experimental.theories.Theory;
+import org.junit.runner.RunWith;
+
+@RunWith(Theories.class)
+public final class KmsEnvelopeDekFactoryTest {
+  @BeforeClass
+  public static void setUp() throws Exception {
+    AeadConfig.register();
+  }
+
+  @DataPoints("dekParameters")
+  public static final AeadParameters[] DEK_PARAMETERS =
+      new AeadParameters[] {
+        PredefinedAeadParameters.AES128_GCM,
+        PredefinedAeadParameters.AES256_GCM,
+        PredefinedAeadParameters.AES128_EAX,
+        PredefinedAeadParameters.AES256_EAX,
+        PredefinedAeadParameters.AES128_CTR_HMAC_SHA256,
+        PredefinedAeadParameters.AES256_CTR_HMAC_SHA256,
+        PredefinedAeadParameters.CHACHA20_POLY1305,
+        PredefinedAeadParameters.XCHACHA20_POLY1305,
+      };
+
+  private static KeyTemplate toKeyTemplate(AeadParameters parameters) throws Exception {
+    return KeyTemplate.parseFrom(
+        TinkProtoParametersFormat.serialize(parameters), ExtensionRegistryLite.getEmptyRegistry());
+  }
+
+  @Theory
+  public void newDek_canBeUsedWithRegistry(@FromDataPoints("dekParameters") AeadParameters params)
+      throws Exception {
+    KeyTemplate template = toKeyTemplate(params);
+    KmsEnvelopeDekFactory factory = KmsEnvelopeDekFactory.create(template, params);
+
+    byte[] dek = factory.newDek();
+    Aead aead = factory.getAead(dek);
+    Aead registryAead = Registry.getPrimitive(template.getTypeUrl(), dek, Aead.class);
+
+    byte[] plaintext = "plaintext".getBytes(UTF_8);
+    byte[] associatedData = "associatedData".getBytes(UTF_8);
+    assertThat(registryAead.decrypt(aead.encrypt(plaintext, associatedData), associatedData))
+        .isEqualTo(plaintext);
+    assertThat(aead.decrypt(registryAead.encrypt(plaintext, associatedData), associatedData))
+        .isEqualTo(plaintext);
+  }
+
+  @Theory
+  public void registryDek_canBeUsedWithFactory(
+      @FromDataPoints("dekParameters") AeadParameters params) throws Exception {
+    KeyTemplate template = toKeyTemplate(params);
+    KmsEnvelopeDekFactory factory = KmsEnvelopeDekFactory.create(template, params);
+
+    byte[] dek = Registry.newKeyData(template).getValue().toByteArray();
+    Aead aead = factory.getAead(dek);
+    Aead registryAead = Registry.getPrimitive(template.getTypeUrl(), dek, Aead.class);
+
+    byte[] plaintext = "plaintext".getBytes(UTF_8);
+    byte[] associatedData = "associatedData".getBytes(UTF_8);
+    assertThat(aead.decrypt(registryAead.encrypt(plaintext, associatedData), associatedData))
+        .isEqualTo(plaintext);
+  }
+
+  @Theory
+  public void newDek_isDifferentEachTime(@FromDataPoints("dekParameters") AeadParameters params)
+      throws Exception {
+    KmsEnvelopeDekFactory factory = KmsEnvelopeDekFactory.create(toKeyTemplate(params), params);
+
+    assertThat(factory.newDek()).isNotEqualTo(factory.newDek());
+  }
+
+  @Theory
+  public void fromRegistry_isCompatible(@FromDataPoints("dekParameters") AeadParameters params)
+      throws Exception {
+    KeyTemplate template = toKeyTemplate(params);
+    KmsEnvelopeDekFactory factory = KmsEnvelopeDekFactory.create(template, params);
+    KmsEnvelopeDekFactory registryFactory = KmsEnvelopeDekFactory.fromRegistry(template);
+
+    byte[] plaintext = "plaintext".getBytes(UTF_8);
+    byte[] associatedData = "associatedData".getBytes(UTF_8);
+    byte[] dek = registryFactory.newDek();
+    byte[] ciphertext = factory.getAead(dek).encrypt(plaintext, associatedData);
+    assertThat(registryFactory.getAead(dek).decrypt(ciphertext, associatedData))
+        .isEqualTo(plaintext);
+  }
+
+  @Test
+  public void getAead_dekWithOtherKeySize_usesRegistry() throws Exception {
+    AesGcmParameters params = PredefinedAeadParameters.AES128_GCM;
+    KmsEnvelopeDekFactory factory = KmsEnvelopeDekFactory.create(toKeyTemplate(params), params);
+    // A DEK created with a different key size, for example before the parameters were changed.
+    KeyTemplate otherTemplate = toKeyTemplate(PredefinedAeadParameters.AES256_GCM);
+    byte[] otherDek = Registry.newKeyData(otherTemplate).getValue().toByteArray();
+
+    byte[] plaintext = "plaintext".getBytes(UTF_8);
+    byte[] associatedData = "associatedData".getBytes(UTF_8);
+    byte[] ciphertext =
+        Registry.getPrimitive(otherTemplate.getTypeUrl(), otherDek, Aead.class)
+            .encrypt(plaintext, associatedData);
+    assertThat(factory.getAead(otherDek).decrypt(ciphertext, associatedData)).isEqualTo(plaintext);
+  }
+
+  @Test
+  public void getAead_invalidDek_throws() throws Exception {
+    AesGcmParameters params = PredefinedAeadParameters.AES128_GCM;
+    KmsEnvelopeDekFactory factory = KmsEnvelopeDekFactory.create(toKeyTemplate(params), params);
+
+    assertThrows(GeneralSecurityException.class, () -> factory.getAead(new byte[] {1, 2, 3}));
+  }
+}
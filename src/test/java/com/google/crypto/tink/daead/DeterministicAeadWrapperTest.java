@@ -290,6 +290,51 @@ public class DeterministicAeadWrapperTest {
     assertThat(decFailure.getKeysetInfo().getAnnotations()).isEqualTo(annotations);
   }
 
+  @Test
+  public void testDecryptRaw_triesLastSuccessfulKeyFirst() throws Exception {
+    FakeMonitoringClient fakeMonitoringClient = new FakeMonitoringClient();
+    MutableMonitoringRegistry.globalInstance().clear();
+    MutableMonitoringRegistry.globalInstance().registerMonitoringClient(fakeMonitoringClient);
+
+    Key key1 =
+        TestUtil.createKey(
+            TestUtil.createAesSivKeyData(64), 42, KeyStatusType.ENABLED, OutputPrefixType.RAW);
+    Key key2 =
+        TestUtil.createKey(
+            TestUtil.createAesSivKeyData(64), 43, KeyStatusType.ENABLED, OutputPrefixType.RAW);
+    byte[] associatedData = Random.randBytes(20);
+    byte[] ciphertext1 =
+        new DeterministicAeadWrapper()
+            .wrap(TestUtil.createPrimitiveSet(TestUtil.createKeyset(key1), DeterministicAead.class))
+            .encryptDeterministically(Random.randBytes(20), associatedData);
+    byte[] ciphertext2 =
+        new DeterministicAeadWrapper()
+            .wrap(TestUtil.createPrimitiveSet(TestUtil.createKeyset(key2), DeterministicAead.class))
+            .encryptDeterministically(Random.randBytes(20), associatedData);
+    PrimitiveSet<DeterministicAead> primitives =
+        TestUtil.createPrimitiveSetWithAnnotations(
+            TestUtil.createKeyset(key1, key2),
+            MonitoringAnnotations.newBuilder().add("annotation_name", "annotation_value").build(),
+            DeterministicAead.class);
+    DeterministicAead daead = new DeterministicAeadWrapper().wrap(primitives);
+
+    // The first decryption tries key1, then key2. Afterwards, key2 is tried first.
+    Object unused = daead.decryptDeterministically(ciphertext2, associatedData);
+    unused = daead.decryptDeterministically(ciphertext2, associatedData);
+    unused = daead.decryptDeterministically(ciphertext1, associatedData);
+    unused = daead.decryptDeterministically(ciphertext1, associatedData);
+
+    List<FakeMonitoringClient.LogAttemptsEntry> attempts =
+        fakeMonitoringClient.getLogAttemptsEntries();
+    assertThat(attempts).hasSize(4);
+    assertThat(attempts.get(0).getNumAttempts()).isEqualTo(2);
+    assertThat(attempts.get(1).getNumAttempts()).isEqualTo(1);
+    assertThat(attempts.get(2).getNumAttempts()).isEqualTo(2);
+    assertThat(attempts.get(3).getNumAttempts()).isEqualTo(1);
+    assertThat(attempts.get(3).getPrimitive()).isEqualTo("daead");
+    assertThat(attempts.get(3).getApi()).isEqualTo("decrypt");
+  }
+
   private static class AlwaysFailingDeterministicAead implements DeterministicAead {
 
     @Override
@@ -363,4 +363,34 @@ public final class RsaKemHybridDecryptTest {
       assertThat(Hex.encode(plaintext)).isEqualTo(vector.plaintext);
     }
   }
+
+  @Test
+  public void decrypt_afterFailedRsaDecryption_works() throws GeneralSecurityException {
+    if (TestUtil.isTsan()) {
+      // RsaKem.generateRsaKeyPair is too slow in Tsan.
+      return;
+    }
+    KeyPair keyPair = RsaKem.generateRsaKeyPair(2048);
+    String hmacAlgo = "HMACSHA256";
+    byte[] salt = Random.randBytes(20);
+    HybridEncrypt hybridEncrypt =
+        new RsaKemHybridEncrypt(
+            (RSAPublicKey) keyPair.getPublic(), hmacAlgo, salt, new AesGcmFactory(16));
+    HybridDecrypt hybridDecrypt =
+        new RsaKemHybridDecrypt(
+            (RSAPrivateKey) keyPair.getPrivate(), hmacAlgo, salt, new AesGcmFactory(16));
+    byte[] plaintext = Random.randBytes(20);
+    byte[] context = Random.randBytes(20);
+    byte[] ciphertext = hybridEncrypt.encrypt(plaintext, context);
+    // A token which is larger than the modulus makes the RSA cipher fail. The cipher is then
+    // discarded, and the next decryption uses a fresh one.
+    byte[] invalidCiphertext = Arrays.copyOf(ciphertext, ciphertext.length);
+    Arrays.fill(invalidCiphertext, 0, 256, (byte) 0xff);
+
+    for (int i = 0; i < 3; i++) {
+      assertThrows(
+          GeneralSecurityException.class, () -> hybridDecrypt.decrypt(invalidCiphertext, context));
+      assertThat(hybridDecrypt.decrypt(ciphertext, context)).isEqualTo(plaintext);
+    }
+  }
 }
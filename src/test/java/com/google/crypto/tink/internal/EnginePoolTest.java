@@ -0,0 +1,236 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class EnginePoolTest {
+
+  private static final class CountingFactory implements EnginePool.EngineFactory<Object> {
+    final AtomicInteger created = new AtomicInteger();
+
+    @Override
+    public Object create() {
+      created.incrementAndGet();
+      return new Object();
+    }
+  }
+
+  @Test
+  public void defaultStrategy_isThreadLocal() throws Exception {
+    assertThat(EnginePool.getDefaultStrategy()).isEqualTo(EnginePool.Strategy.THREAD_LOCAL);
+  }
+
+  @Test
+  public void threadLocal_reusesEngineInSameThread() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> pool = EnginePool.create(EnginePool.Strategy.THREAD_LOCAL, factory);
+
+    Object engine = pool.acquire();
+    pool.release(engine);
+    assertThat(pool.acquire()).isSameInstanceAs(engine);
+    assertThat(factory.created.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void threadLocal_differentThreadsGetDifferentEngines() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> pool = EnginePool.create(EnginePool.Strategy.THREAD_LOCAL, factory);
+    Object engine = pool.acquire();
+
+    Object[] otherEngine = new Object[1];
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                otherEngine[0] = pool.acquire();
+              } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    thread.start();
+    thread.join();
+
+    assertThat(otherEngine[0]).isNotSameInstanceAs(engine);
+    assertThat(factory.created.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shared_reusesReleasedEngine() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> pool = EnginePool.create(EnginePool.Strategy.SHARED, factory);
+
+    Object engine = pool.acquire();
+    pool.release(engine);
+    assertThat(pool.acquire()).isSameInstanceAs(engine);
+    assertThat(factory.created.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void threadLocal_discardedEngineIsNotReused() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> pool = EnginePool.create(EnginePool.Strategy.THREAD_LOCAL, factory);
+
+    Object engine = pool.acquire();
+    pool.discard(engine);
+    assertThat(pool.acquire()).isNotSameInstanceAs(engine);
+    assertThat(factory.created.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shared_discardedEngineIsNotReused() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> pool = EnginePool.create(EnginePool.Strategy.SHARED, factory);
+
+    Object engine = pool.acquire();
+    pool.discard(engine);
+    assertThat(pool.acquire()).isNotSameInstanceAs(engine);
+    assertThat(factory.created.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shared_acquiredEngineIsNotHandedOutTwice() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> pool = EnginePool.create(EnginePool.Strategy.SHARED, factory);
+
+    Object engine1 = pool.acquire();
+    Object engine2 = pool.acquire();
+    assertThat(engine2).isNotSameInstanceAs(engine1);
+    assertThat(factory.created.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shared_isBounded() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool.SharedPool<Object> pool = new EnginePool.SharedPool<>(factory, 3);
+
+    List<Object> engines = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      engines.add(pool.acquire());
+    }
+    for (Object engine : engines) {
+      pool.release(engine);
+    }
+    // The size is rounded up to a power of two.
+    assertThat(pool.size()).isEqualTo(4);
+  }
+
+  @Test
+  public void shared_manyThreads_neverShareAnEngine() throws Exception {
+    EnginePool<Object> pool = EnginePool.create(EnginePool.Strategy.SHARED, new CountingFactory());
+    ConcurrentHashMap<Object, Boolean> inUse = new ConcurrentHashMap<>();
+    AtomicInteger errors = new AtomicInteger();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      threads.add(
+          new Thread(
+              () -> {
+                try {
+                  for (int j = 0; j < 1000; j++) {
+                    Object engine = pool.acquire();
+                    if (inUse.putIfAbsent(engine, true) != null) {
+                      errors.incrementAndGet();
+                    }
+                    inUse.remove(engine);
+                    pool.release(engine);
+                  }
+                } catch (GeneralSecurityException e) {
+                  errors.incrementAndGet();
+                }
+              }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(errors.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void factoryThrows_acquireThrows() throws Exception {
+    for (EnginePool.Strategy strategy : EnginePool.Strategy.values()) {
+      EnginePool<Object> pool =
+          EnginePool.create(
+              strategy,
+              () -> {
+                throw new GeneralSecurityException("no engine");
+              });
+      assertThrows(GeneralSecurityException.class, pool::acquire);
+    }
+  }
+
+  @Test
+  public void apply_releasesEngineOnSuccess() throws Exception {
+    for (EnginePool.Strategy strategy : EnginePool.Strategy.values()) {
+      CountingFactory factory = new CountingFactory();
+      EnginePool<Object> pool = EnginePool.create(strategy, factory);
+
+      Object engine = pool.apply(e -> e);
+      Object secondEngine = pool.apply(e -> e);
+
+      assertThat(secondEngine).isSameInstanceAs(engine);
+      assertThat(factory.created.get()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void apply_discardsEngineOnFailure() throws Exception {
+    for (EnginePool.Strategy strategy : EnginePool.Strategy.values()) {
+      CountingFactory factory = new CountingFactory();
+      EnginePool<Object> pool = EnginePool.create(strategy, factory);
+      List<Object> used = new ArrayList<>();
+
+      assertThrows(
+          GeneralSecurityException.class,
+          () ->
+              pool.apply(
+                  e -> {
+                    used.add(e);
+                    throw new GeneralSecurityException("failed");
+                  }));
+      assertThrows(
+          IllegalStateException.class,
+          () ->
+              pool.apply(
+                  e -> {
+                    used.add(e);
+                    throw new IllegalStateException("failed");
+                  }));
+      Object engine = pool.apply(e -> e);
+
+      assertThat(used).hasSize(2);
+      assertThat(used.get(1)).isNotSameInstanceAs(used.get(0));
+      assertThat(engine).isNotSameInstanceAs(used.get(0));
+      assertThat(engine).isNotSameInstanceAs(used.get(1));
+      assertThat(factory.created.get()).isEqualTo(3);
+    }
+  }
+}
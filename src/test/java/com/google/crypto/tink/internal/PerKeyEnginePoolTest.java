@@ -0,0 +1,102 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class PerKeyEnginePoolTest {
+
+  private static final class CountingFactory implements EnginePool.EngineFactory<Object> {
+    final AtomicInteger created = new AtomicInteger();
+
+    @Override
+    public Object create() {
+      created.incrementAndGet();
+      return new Object();
+    }
+  }
+
+  @Test
+  public void firstCall_returnsSharedPool() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> sharedPool = EnginePool.create(factory);
+    PerKeyEnginePool<Object> pools = new PerKeyEnginePool<>(sharedPool, factory);
+
+    assertThat(pools.get()).isSameInstanceAs(sharedPool);
+    assertThat(factory.created.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void laterCalls_returnTheSameOwnPool() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> sharedPool = EnginePool.create(factory);
+    PerKeyEnginePool<Object> pools = new PerKeyEnginePool<>(sharedPool, factory);
+    EnginePool<Object> unused = pools.get();
+
+    EnginePool<Object> ownPool = pools.get();
+
+    assertThat(ownPool).isNotSameInstanceAs(sharedPool);
+    assertThat(pools.get()).isSameInstanceAs(ownPool);
+  }
+
+  @Test
+  public void ownPools_doNotShareEngines() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> sharedPool = EnginePool.create(factory);
+    PerKeyEnginePool<Object> pools1 = new PerKeyEnginePool<>(sharedPool, factory);
+    PerKeyEnginePool<Object> pools2 = new PerKeyEnginePool<>(sharedPool, factory);
+    EnginePool<Object> unused = pools1.get();
+    unused = pools2.get();
+
+    EnginePool<Object> pool1 = pools1.get();
+    Object engine1 = pool1.acquire();
+    pool1.release(engine1);
+    EnginePool<Object> pool2 = pools2.get();
+    Object engine2 = pool2.acquire();
+    pool2.release(engine2);
+
+    assertThat(engine1).isNotSameInstanceAs(engine2);
+    assertThat(pools1.get().acquire()).isSameInstanceAs(engine1);
+  }
+
+  @Test
+  public void ownPool_isBoundedSharedPool() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    EnginePool<Object> sharedPool = EnginePool.create(EnginePool.Strategy.THREAD_LOCAL, factory);
+    PerKeyEnginePool<Object> pools = new PerKeyEnginePool<>(sharedPool, factory);
+    EnginePool<Object> unused = pools.get();
+    EnginePool<Object> ownPool = pools.get();
+    Object[] engines = new Object[100];
+
+    for (int i = 0; i < engines.length; i++) {
+      engines[i] = ownPool.acquire();
+    }
+    for (Object engine : engines) {
+      ownPool.release(engine);
+    }
+
+    assertThat(ownPool).isInstanceOf(EnginePool.SharedPool.class);
+    assertThat(((EnginePool.SharedPool<Object>) ownPool).size())
+        .isAtMost(4 * Runtime.getRuntime().availableProcessors());
+  }
+}
@@ -116,7 +116,7 @@ public final class PrimitiveRegistryTest {
 
   @Immutable
   private static final class TestWrapperB
-      implements PrimitiveWrapper<TestPrimitiveA, TestPrimitiveB> {
+      implements PrimitiveWrapper<TestPrimitiveA, TestPrimitiveB>, SinglePrimitiveWrapper {
 
     @Override
     public TestPrimitiveB wrap(final PrimitiveSet<TestPrimitiveA> primitives)
@@ -133,6 +133,11 @@ public final class PrimitiveRegistryTest {
     public Class<TestPrimitiveA> getInputPrimitiveClass() {
       return TestPrimitiveA.class;
     }
+
+    @Override
+    public boolean usesFullPrimitive() {
+      return true;
+    }
   }
 
   private static TestPrimitiveA getPrimitiveAKey1(TestKey1 key) {
@@ -324,6 +329,20 @@ public final class PrimitiveRegistryTest {
   }
 
   /** Test general functionality. */
+  @Test
+  public void test_usesFullAndLegacyPrimitives() throws Exception {
+    PrimitiveRegistry registry =
+        PrimitiveRegistry.builder()
+            .registerPrimitiveWrapper(new TestWrapperA())
+            .registerPrimitiveWrapper(new TestWrapperB())
+            .build();
+    // TestWrapperA does not say which primitives it uses.
+    assertThat(registry.usesFullPrimitives(TestPrimitiveA.class)).isTrue();
+    assertThat(registry.usesLegacyPrimitives(TestPrimitiveA.class)).isTrue();
+    assertThat(registry.usesFullPrimitives(TestPrimitiveB.class)).isTrue();
+    assertThat(registry.usesLegacyPrimitives(TestPrimitiveB.class)).isFalse();
+  }
+
   @Test
   public void test_copyWorks() throws Exception {
     PrimitiveRegistry registry =
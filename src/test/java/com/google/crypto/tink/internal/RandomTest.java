@@ -17,10 +17,14 @@
 package com.google.crypto.tink.internal;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 import com.google.crypto.tink.testing.TestUtil;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import org.conscrypt.Conscrypt;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -59,6 +63,69 @@ public final class RandomTest {
     assertThat(Random.randBytes(10)).hasLength(10);
   }
 
+  @Test
+  public void randBytes_largerThanBuffer_works() throws Exception {
+    byte[] rand = Random.randBytes(Random.BUFFER_SIZE * 3 + 1);
+    assertThat(rand).hasLength(Random.BUFFER_SIZE * 3 + 1);
+    assertThat(rand).isNotEqualTo(new byte[rand.length]);
+  }
+
+  @Test
+  public void randBytes_neverReturnsZeroedBufferBytes() throws Exception {
+    // Buffered bytes are zeroed once returned, so returning them twice would give zeros.
+    for (int size = 8; size <= Random.MAX_BUFFERED_SIZE + 8; size++) {
+      assertThat(Random.randBytes(size)).isNotEqualTo(new byte[size]);
+    }
+  }
+
+  @Test
+  public void randBytes_noncesAreUniqueAcrossBufferRefills() throws Exception {
+    Set<String> nonces = new HashSet<>();
+    int count = 10 * Random.BUFFER_SIZE;
+    for (int i = 0; i < count; i++) {
+      nonces.add(Arrays.toString(Random.randBytes(12)));
+    }
+    assertThat(nonces).hasSize(count);
+  }
+
+  @Test
+  public void randBytesIntoArray_onlyWritesTheGivenRange() throws Exception {
+    byte[] dst = new byte[40];
+    Random.randBytes(dst, 10, 20);
+
+    assertThat(Arrays.copyOfRange(dst, 0, 10)).isEqualTo(new byte[10]);
+    assertThat(Arrays.copyOfRange(dst, 10, 30)).isNotEqualTo(new byte[20]);
+    assertThat(Arrays.copyOfRange(dst, 30, 40)).isEqualTo(new byte[10]);
+  }
+
+  @Test
+  public void randBytesIntoArray_largeRanges_work() throws Exception {
+    byte[] dst = new byte[Random.BUFFER_SIZE * 3];
+    Random.randBytes(dst, 1, dst.length - 2);
+
+    assertThat(dst[0]).isEqualTo(0);
+    assertThat(dst[dst.length - 1]).isEqualTo(0);
+    assertThat(Arrays.copyOfRange(dst, 1, 1 + Random.BUFFER_SIZE))
+        .isNotEqualTo(Arrays.copyOfRange(dst, 1 + Random.BUFFER_SIZE, 1 + 2 * Random.BUFFER_SIZE));
+
+    byte[] full = new byte[Random.BUFFER_SIZE];
+    Random.randBytes(full, 0, full.length);
+    assertThat(full).isNotEqualTo(new byte[full.length]);
+  }
+
+  @Test
+  public void randBytesIntoArray_emptyRange_works() throws Exception {
+    Random.randBytes(new byte[0], 0, 0);
+  }
+
+  @Test
+  public void randBytesIntoArray_invalidRange_throws() throws Exception {
+    byte[] dst = new byte[10];
+    assertThrows(IndexOutOfBoundsException.class, () -> Random.randBytes(dst, -1, 5));
+    assertThrows(IndexOutOfBoundsException.class, () -> Random.randBytes(dst, 0, -1));
+    assertThrows(IndexOutOfBoundsException.class, () -> Random.randBytes(dst, 6, 5));
+  }
+
   @Test
   public void randIntWithMax_works() throws Exception {
     assertThat(Random.randInt(5)).isLessThan(5);
@@ -0,0 +1,233 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.streamingaead;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.StreamingAead;
+import com.google.crypto.tink.aead.AeadConfig;
+import com.google.crypto.tink.subtle.Random;
+import com.google.crypto.tink.testing.StreamingTestUtil;
+import com.google.crypto.tink.testing.StreamingTestUtil.ByteBufferChannel;
+import com.google.crypto.tink.testing.StreamingTestUtil.SeekableByteBufferChannel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.theories.DataPoints;
+import org.junit.experimental.theories.FromDataPoints;
+import org.junit.experimental.theories.Theories;
+import org.junit.experimental.theories.Theory;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link KmsEnvelopeStreamingAead}. */
+@RunWith(Theories.class)
+public final class KmsEnvelopeStreamingAeadTest {
+  @BeforeClass
+  public static void setUp() throws Exception {
+    AeadConfig.register();
+  }
+
+  @DataPoints("dekParameters")
+  public static final StreamingAeadParameters[] DEK_PARAMETERS =
+      new StreamingAeadParameters[] {
+        PredefinedStreamingAeadParameters.AES128_GCM_HKDF_4KB,
+        PredefinedStreamingAeadParameters.AES256_GCM_HKDF_1MB,
+        PredefinedStreamingAeadParameters.AES128_CTR_HMAC_SHA256_4KB,
+        PredefinedStreamingAeadParameters.AES256_CTR_HMAC_SHA256_1MB,
+      };
+
+  private static Aead generateNewRemoteAead() throws GeneralSecurityException {
+    return KeysetHandle.generateNew(KeyTemplates.get("AES128_GCM")).getPrimitive(Aead.class);
+  }
+
+  /** An Aead which counts its calls. */
+  private static final class CountingAead implements Aead {
+    private final Aead aead;
+    final AtomicInteger encryptions = new AtomicInteger();
+    final AtomicInteger decryptions = new AtomicInteger();
+
+    CountingAead(Aead aead) {
+      this.aead = aead;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] associatedData)
+        throws GeneralSecurityException {
+      encryptions.incrementAndGet();
+      return aead.encrypt(plaintext, associatedData);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] associatedData)
+        throws GeneralSecurityException {
+      decryptions.incrementAndGet();
+      return aead.decrypt(ciphertext, associatedData);
+    }
+  }
+
+  private static byte[] encrypt(StreamingAead streamingAead, byte[] plaintext, byte[] aad)
+      throws Exception {
+    ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+    try (WritableByteChannel channel =
+        streamingAead.newEncryptingChannel(Channels.newChannel(ciphertext), aad)) {
+      channel.write(ByteBuffer.wrap(plaintext));
+    }
+    return ciphertext.toByteArray();
+  }
+
+  private static byte[] decrypt(StreamingAead streamingAead, byte[] ciphertext, byte[] aad)
+      throws Exception {
+    try (InputStream stream =
+        streamingAead.newDecryptingStream(new ByteArrayInputStream(ciphertext), aad)) {
+      ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        plaintext.write(buffer, 0, read);
+      }
+      return plaintext.toByteArray();
+    }
+  }
+
+  @Theory
+  public void encryptDecrypt_works(
+      @FromDataPoints("dekParameters") StreamingAeadParameters dekParameters) throws Exception {
+    StreamingAead streamingAead =
+        KmsEnvelopeStreamingAead.create(dekParameters, generateNewRemoteAead());
+
+    StreamingTestUtil.testEncryptionAndDecryption(streamingAead);
+  }
+
+  @Theory
+  public void randomAccess_works(
+      @FromDataPoints("dekParameters") StreamingAeadParameters dekParameters) throws Exception {
+    StreamingAead streamingAead =
+        KmsEnvelopeStreamingAead.create(dekParameters, generateNewRemoteAead());
+
+    StreamingTestUtil.testEncryptDecryptRandomAccess(
+        streamingAead, /* firstSegmentOffset= */ 0, /* plaintextSize= */ 10000);
+  }
+
+  @Test
+  public void multiSegmentPlaintext_callsKmsOncePerStream() throws Exception {
+    CountingAead remote = new CountingAead(generateNewRemoteAead());
+    StreamingAead streamingAead =
+        KmsEnvelopeStreamingAead.create(
+            PredefinedStreamingAeadParameters.AES128_GCM_HKDF_4KB, remote);
+    byte[] plaintext = Random.randBytes(100000);
+    byte[] associatedData = Random.randBytes(20);
+
+    byte[] ciphertext = encrypt(streamingAead, plaintext, associatedData);
+    byte[] decrypted = decrypt(streamingAead, ciphertext, associatedData);
+
+    assertThat(decrypted).isEqualTo(plaintext);
+    assertThat(remote.encryptions.get()).isEqualTo(1);
+    assertThat(remote.decryptions.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void decryptingChannel_readsHeaderInSmallChunks() throws Exception {
+    StreamingAead streamingAead =
+        KmsEnvelopeStreamingAead.create(
+            PredefinedStreamingAeadParameters.AES128_GCM_HKDF_4KB, generateNewRemoteAead());
+    byte[] plaintext = Random.randBytes(10000);
+    byte[] associatedData = Random.randBytes(20);
+    byte[] ciphertext = encrypt(streamingAead, plaintext, associatedData);
+
+    ReadableByteChannel channel =
+        streamingAead.newDecryptingChannel(
+            new ByteBufferChannel(
+                ByteBuffer.wrap(ciphertext),
+                /* maxChunkSize= */ 3,
+                /* noDataEveryOtherRead= */ true),
+            associatedData);
+    ByteBuffer decrypted = ByteBuffer.allocate(plaintext.length + 1);
+    while (channel.read(decrypted) != -1) {}
+
+    assertThat(decrypted.position()).isEqualTo(plaintext.length);
+    byte[] result = new byte[plaintext.length];
+    decrypted.flip();
+    decrypted.get(result);
+    assertThat(result).isEqualTo(plaintext);
+  }
+
+  @Test
+  public void decryptWithOtherRemote_fails() throws Exception {
+    StreamingAead streamingAead =
+        KmsEnvelopeStreamingAead.create(
+            PredefinedStreamingAeadParameters.AES128_GCM_HKDF_4KB, generateNewRemoteAead());
+    StreamingAead otherStreamingAead =
+        KmsEnvelopeStreamingAead.create(
+            PredefinedStreamingAeadParameters.AES128_GCM_HKDF_4KB, generateNewRemoteAead());
+    byte[] associatedData = Random.randBytes(20);
+    byte[] ciphertext = encrypt(streamingAead, Random.randBytes(100), associatedData);
+
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> decrypt(otherStreamingAead, ciphertext, associatedData));
+    assertThrows(
+        GeneralSecurityException.class,
+        () ->
+            otherStreamingAead.newSeekableDecryptingChannel(
+                new SeekableByteBufferChannel(ciphertext), associatedData));
+    ReadableByteChannel channel =
+        otherStreamingAead.newDecryptingChannel(
+            Channels.newChannel(new ByteArrayInputStream(ciphertext)), associatedData);
+    assertThrows(IOException.class, () -> channel.read(ByteBuffer.allocate(100)));
+  }
+
+  @Test
+  public void decryptWithWrongAssociatedData_fails() throws Exception {
+    StreamingAead streamingAead =
+        KmsEnvelopeStreamingAead.create(
+            PredefinedStreamingAeadParameters.AES128_CTR_HMAC_SHA256_4KB, generateNewRemoteAead());
+    byte[] ciphertext = encrypt(streamingAead, Random.randBytes(100), Random.randBytes(20));
+
+    assertThrows(IOException.class, () -> decrypt(streamingAead, ciphertext, new byte[0]));
+  }
+
+  @Test
+  public void decryptInvalidHeader_fails() throws Exception {
+    StreamingAead streamingAead =
+        KmsEnvelopeStreamingAead.create(
+            PredefinedStreamingAeadParameters.AES128_GCM_HKDF_4KB, generateNewRemoteAead());
+
+    // Shorter than the length of the encrypted DEK.
+    assertThrows(IOException.class, () -> decrypt(streamingAead, new byte[] {0, 0}, new byte[0]));
+    // Ends within the encrypted DEK.
+    assertThrows(
+        IOException.class, () -> decrypt(streamingAead, new byte[] {0, 0, 0, 9, 1}, new byte[0]));
+    // Negative or huge sizes of the encrypted DEK.
+    assertThrows(
+        IOException.class, () -> decrypt(streamingAead, new byte[] {-1, 0, 0, 0, 1}, new byte[0]));
+    assertThrows(
+        IOException.class, () -> decrypt(streamingAead, new byte[] {1, 0, 0, 0, 1}, new byte[0]));
+  }
+}
@@ -36,6 +36,8 @@ import com.google.crypto.tink.testing.WycheproofTestUtil;
 import com.google.crypto.tink.util.SecretBytes;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.Security;
 import java.util.Arrays;
@@ -595,4 +597,126 @@ public class AesGcmJceTest {
                 .build());
     assertThrows(GeneralSecurityException.class, () -> AesGcmJce.create(key));
   }
+
+  @Test
+  public void byteBufferEncrypt_byteArrayDecrypt_works() throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
+    AesGcmJce aead = new AesGcmJce(Random.randBytes(16));
+    byte[] plaintext = Random.randBytes(100);
+    byte[] associatedData = Random.randBytes(20);
+    ByteBuffer ciphertext = ByteBuffer.allocateDirect(aead.ciphertextSize(plaintext.length));
+
+    aead.encrypt(ByteBuffer.wrap(plaintext), ByteBuffer.wrap(associatedData), ciphertext);
+
+    assertThat(ciphertext.remaining()).isEqualTo(0);
+    ciphertext.flip();
+    byte[] ciphertextBytes = new byte[ciphertext.remaining()];
+    ciphertext.get(ciphertextBytes);
+    assertThat(aead.decrypt(ciphertextBytes, associatedData)).isEqualTo(plaintext);
+  }
+
+  @Test
+  public void byteArrayEncrypt_byteBufferDecrypt_works() throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
+    AesGcmKey key =
+        createRandomKey(
+            AesGcmParameters.builder()
+                .setKeySizeBytes(16)
+                .setIvSizeBytes(12)
+                .setTagSizeBytes(16)
+                .setVariant(AesGcmParameters.Variant.TINK)
+                .build());
+    AesGcmJce aead = (AesGcmJce) AesGcmJce.create(key);
+    byte[] plaintext = Random.randBytes(100);
+    byte[] associatedData = Random.randBytes(20);
+    ByteBuffer ciphertext = ByteBuffer.wrap(aead.encrypt(plaintext, associatedData));
+    ByteBuffer decrypted = ByteBuffer.allocateDirect(ciphertext.remaining());
+
+    aead.decrypt(ciphertext, ByteBuffer.wrap(associatedData), decrypted);
+
+    assertThat(ciphertext.remaining()).isEqualTo(0);
+    decrypted.flip();
+    assertThat(decrypted).isEqualTo(ByteBuffer.wrap(plaintext));
+  }
+
+  @Test
+  public void byteBufferEncryptDecrypt_inPlace_works() throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
+    AesGcmJce aead = new AesGcmJce(Random.randBytes(16));
+    byte[] plaintext = Random.randBytes(100);
+    byte[] associatedData = Random.randBytes(20);
+    ByteBuffer buffer = ByteBuffer.allocate(aead.ciphertextSize(plaintext.length));
+    buffer.duplicate().put(plaintext);
+    ByteBuffer plaintextView = buffer.duplicate();
+    plaintextView.limit(plaintext.length);
+
+    aead.encrypt(plaintextView, ByteBuffer.wrap(associatedData), buffer);
+    assertThat(aead.decrypt(buffer.array(), associatedData)).isEqualTo(plaintext);
+
+    buffer.flip();
+    aead.decrypt(buffer.duplicate(), ByteBuffer.wrap(associatedData), buffer);
+    buffer.flip();
+    assertThat(buffer).isEqualTo(ByteBuffer.wrap(plaintext));
+  }
+
+  @Test
+  public void byteBufferDecrypt_modifiedCiphertext_throwsAndDoesNotMovePositions()
+      throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
+    AesGcmJce aead = new AesGcmJce(Random.randBytes(16));
+    byte[] ciphertext = aead.encrypt(Random.randBytes(100), new byte[0]);
+    ciphertext[20] ^= 1;
+    ByteBuffer ciphertextBuffer = ByteBuffer.wrap(ciphertext);
+    ByteBuffer plaintext = ByteBuffer.allocate(ciphertext.length);
+
+    assertThrows(
+        GeneralSecurityException.class, () -> aead.decrypt(ciphertextBuffer, null, plaintext));
+    assertThat(ciphertextBuffer.position()).isEqualTo(0);
+    assertThat(plaintext.position()).isEqualTo(0);
+  }
+
+  @Test
+  public void byteBufferEncrypt_outputTooSmall_throws() throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
+    AesGcmJce aead = new AesGcmJce(Random.randBytes(16));
+    ByteBuffer ciphertext = ByteBuffer.allocate(aead.ciphertextSize(100) - 1);
+
+    assertThrows(
+        BufferOverflowException.class,
+        () -> aead.encrypt(ByteBuffer.allocate(100), null, ciphertext));
+  }
+
+  @Test
+  public void tryDecrypt_works() throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
+    AesGcmKey key =
+        createRandomKey(
+            AesGcmParameters.builder()
+                .setKeySizeBytes(16)
+                .setIvSizeBytes(12)
+                .setTagSizeBytes(16)
+                .setVariant(AesGcmParameters.Variant.TINK)
+                .build());
+    AesGcmJce aead = (AesGcmJce) AesGcmJce.create(key);
+    byte[] plaintext = Random.randBytes(100);
+    byte[] associatedData = Random.randBytes(20);
+    byte[] ciphertext = aead.encrypt(plaintext, associatedData);
+    byte[] input = new byte[ciphertext.length + 3];
+    System.arraycopy(ciphertext, 0, input, 2, ciphertext.length);
+
+    assertThat(aead.tryDecrypt(input, 2, ciphertext.length, associatedData)).isEqualTo(plaintext);
+    assertThat(aead.tryDecrypt(input, 2, ciphertext.length, new byte[0])).isNull();
+    assertThat(aead.tryDecrypt(input, 1, ciphertext.length, associatedData)).isNull();
+    assertThat(aead.tryDecrypt(input, 2, 20, associatedData)).isNull();
+  }
+
+  @Test
+  public void decrypt_invalidCiphertext_throwsWithoutStackTrace() throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
+    AesGcmJce aead = new AesGcmJce(Random.randBytes(16));
+
+    GeneralSecurityException e =
+        assertThrows(GeneralSecurityException.class, () -> aead.decrypt(new byte[5], null));
+    assertThat(e.getStackTrace()).isEmpty();
+  }
 }
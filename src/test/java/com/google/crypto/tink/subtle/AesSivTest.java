@@ -535,4 +535,28 @@ public class AesSivTest {
     AesSivKey key = AesSivKey.builder().setParameters(parameters).setKeyBytes(keyBytes).build();
     assertThrows(GeneralSecurityException.class, () -> AesSiv.create(key));
   }
+
+  @Test
+  public void testTryDecryptDeterministically() throws GeneralSecurityException {
+    Assume.assumeFalse(TinkFips.useOnlyFips());
+
+    AesSiv dead = new AesSiv(Random.randBytes(64));
+    byte[] plaintext = Random.randBytes(50);
+    byte[] aad = Random.randBytes(20);
+    byte[] ciphertext = dead.encryptDeterministically(plaintext, aad);
+    byte[] input = new byte[ciphertext.length + 3];
+    System.arraycopy(ciphertext, 0, input, 2, ciphertext.length);
+
+    assertThat(dead.tryDecryptDeterministically(input, 2, ciphertext.length, aad))
+        .isEqualTo(plaintext);
+    assertThat(dead.tryDecryptDeterministically(input, 2, ciphertext.length, new byte[0]))
+        .isNull();
+    assertThat(dead.tryDecryptDeterministically(input, 1, ciphertext.length, aad)).isNull();
+    assertThat(dead.tryDecryptDeterministically(input, 2, 10, aad)).isNull();
+    AEADBadTagException e =
+        assertThrows(
+            AEADBadTagException.class,
+            () -> dead.decryptDeterministically(ciphertext, new byte[0]));
+    assertThat(e.getStackTrace()).isEmpty();
+  }
 }
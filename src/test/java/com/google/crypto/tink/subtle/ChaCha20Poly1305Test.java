@@ -33,6 +33,7 @@ import com.google.crypto.tink.testing.WycheproofTestUtil;
 import com.google.crypto.tink.util.SecretBytes;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.util.Arrays;
@@ -376,4 +377,64 @@ public class ChaCha20Poly1305Test {
         Hex.decode("009988776699e23ec48985bccdeeab60f13acac27dec0968801e9f6eded69d807522");
     assertThat(aead.decrypt(fixedCiphertext, associatedData)).isEqualTo(plaintext);
   }
+
+  private static void assertByteBufferEncryptDecryptWorks(
+      ChaCha20Poly1305 aead, ByteBuffer ciphertext, ByteBuffer decrypted) throws Exception {
+    byte[] plaintext = Random.randBytes(100);
+    byte[] associatedData = Random.randBytes(20);
+    int start = ciphertext.position();
+    int limit = ciphertext.limit();
+
+    aead.encrypt(ByteBuffer.wrap(plaintext), ByteBuffer.wrap(associatedData), ciphertext);
+
+    assertThat(ciphertext.position()).isEqualTo(start + aead.ciphertextSize(plaintext.length));
+    assertThat(ciphertext.limit()).isEqualTo(limit);
+    ciphertext.flip();
+    ciphertext.position(start);
+    byte[] ciphertextBytes = new byte[ciphertext.remaining()];
+    ciphertext.duplicate().get(ciphertextBytes);
+    assertThat(aead.decrypt(ciphertextBytes, associatedData)).isEqualTo(plaintext);
+
+    aead.decrypt(ciphertext, ByteBuffer.wrap(associatedData), decrypted);
+    decrypted.flip();
+    assertThat(decrypted).isEqualTo(ByteBuffer.wrap(plaintext));
+  }
+
+  private static ChaCha20Poly1305 createTinkPrefixInstance() throws Exception {
+    ChaCha20Poly1305Key key =
+        ChaCha20Poly1305Key.create(
+            ChaCha20Poly1305Parameters.Variant.TINK,
+            SecretBytes.randomBytes(KEY_SIZE),
+            0x99887766);
+    return (ChaCha20Poly1305) ChaCha20Poly1305.create(key);
+  }
+
+  @Test
+  public void byteBufferEncryptDecrypt_exactHeapBuffers_works() throws Exception {
+    Assume.assumeFalse(TinkFips.useOnlyFips());
+    ChaCha20Poly1305 aead = createTinkPrefixInstance();
+
+    assertByteBufferEncryptDecryptWorks(
+        aead, ByteBuffer.allocate(aead.ciphertextSize(100)), ByteBuffer.allocate(100));
+  }
+
+  @Test
+  public void byteBufferEncryptDecrypt_oversizedHeapBuffers_works() throws Exception {
+    Assume.assumeFalse(TinkFips.useOnlyFips());
+    ChaCha20Poly1305 aead = createTinkPrefixInstance();
+    ByteBuffer ciphertext = ByteBuffer.allocate(aead.ciphertextSize(100) + 50);
+    ciphertext.position(7);
+
+    assertByteBufferEncryptDecryptWorks(aead, ciphertext, ByteBuffer.allocate(200));
+  }
+
+  @Test
+  public void byteBufferEncryptDecrypt_oversizedDirectBuffers_works() throws Exception {
+    Assume.assumeFalse(TinkFips.useOnlyFips());
+    ChaCha20Poly1305 aead = createTinkPrefixInstance();
+    ByteBuffer ciphertext = ByteBuffer.allocateDirect(aead.ciphertextSize(100) + 50);
+    ciphertext.position(7);
+
+    assertByteBufferEncryptDecryptWorks(aead, ciphertext, ByteBuffer.allocateDirect(200));
+  }
 }
@@ -0,0 +1,319 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.testing.StreamingTestUtil;
+import com.google.crypto.tink.testing.StreamingTestUtil.SeekableByteBufferChannel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class DecryptedSegmentCacheTest {
+  private static final byte[] IKM =
+      Hex.decode("000102030405060708090a0b0c0d0e0f00112233445566778899aabbccddeeff");
+  private static final byte[] ASSOCIATED_DATA = Hex.decode("aabbccddeeff");
+  private static final int SEGMENT_SIZE = 256;
+
+  private static NonceBasedStreamingAead newStreamingAead() throws Exception {
+    return new AesGcmHkdfStreaming(IKM, "HmacSha256", 16, SEGMENT_SIZE, 0);
+  }
+
+  private static byte[] encrypt(NonceBasedStreamingAead streamingAead, byte[] plaintext)
+      throws Exception {
+    ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+    try (OutputStream encrypting = streamingAead.newEncryptingStream(ciphertext, ASSOCIATED_DATA)) {
+      encrypting.write(plaintext);
+    }
+    return ciphertext.toByteArray();
+  }
+
+  private static byte[] read(
+      StreamingAeadPositionalDecryptingChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    int read = channel.read(buffer, position);
+    return Arrays.copyOf(buffer.array(), read);
+  }
+
+  private static byte[] bytes(int length, int value) {
+    byte[] bytes = new byte[length];
+    Arrays.fill(bytes, (byte) value);
+    return bytes;
+  }
+
+  @Test
+  public void create_invalidSize_throws() throws Exception {
+    assertThrows(IllegalArgumentException.class, () -> DecryptedSegmentCache.create(0));
+    assertThrows(IllegalArgumentException.class, () -> DecryptedSegmentCache.createOffHeap(-1));
+  }
+
+  @Test
+  public void get_returnsWhatWasPut() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    DecryptedSegmentCache cache = DecryptedSegmentCache.create(1000);
+    byte[] id = Hex.decode("0102");
+
+    assertThat(cache.get(streamingAead, id, 0)).isNull();
+    cache.put(streamingAead, id, 0, ByteBuffer.wrap(bytes(100, 7)));
+    ByteBuffer plaintext = cache.get(streamingAead, id, 0);
+
+    assertThat(plaintext).isEqualTo(ByteBuffer.wrap(bytes(100, 7)));
+    assertThat(plaintext.isReadOnly()).isTrue();
+    assertThat(plaintext.isDirect()).isFalse();
+    assertThat(cache.get(streamingAead, id, 1)).isNull();
+    assertThat(cache.get(streamingAead, Hex.decode("0103"), 0)).isNull();
+    assertThat(cache.get(newStreamingAead(), id, 0)).isNull();
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(4);
+    assertThat(cache.getHitRate()).isEqualTo(0.2);
+  }
+
+  @Test
+  public void offHeap_usesDirectBuffers() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    DecryptedSegmentCache cache = DecryptedSegmentCache.createOffHeap(1000);
+    byte[] id = Hex.decode("0102");
+
+    cache.put(streamingAead, id, 0, ByteBuffer.wrap(bytes(100, 7)));
+    ByteBuffer plaintext = cache.get(streamingAead, id, 0);
+
+    assertThat(plaintext.isDirect()).isTrue();
+    assertThat(plaintext).isEqualTo(ByteBuffer.wrap(bytes(100, 7)));
+  }
+
+  @Test
+  public void put_evictsLeastRecentlyUsedSegments() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    DecryptedSegmentCache cache = DecryptedSegmentCache.create(300);
+    byte[] id = Hex.decode("0102");
+
+    cache.put(streamingAead, id, 0, ByteBuffer.wrap(bytes(100, 0)));
+    cache.put(streamingAead, id, 1, ByteBuffer.wrap(bytes(100, 1)));
+    cache.put(streamingAead, id, 2, ByteBuffer.wrap(bytes(100, 2)));
+    assertThat(cache.get(streamingAead, id, 0)).isNotNull();
+    cache.put(streamingAead, id, 3, ByteBuffer.wrap(bytes(150, 3)));
+
+    assertThat(cache.get(streamingAead, id, 1)).isNull();
+    assertThat(cache.get(streamingAead, id, 2)).isNull();
+    assertThat(cache.get(streamingAead, id, 0)).isNotNull();
+    assertThat(cache.get(streamingAead, id, 3)).isNotNull();
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.getSizeInBytes()).isEqualTo(250);
+    assertThat(cache.getEvictionCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void put_tooLargeSegment_isNotCached() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    DecryptedSegmentCache cache = DecryptedSegmentCache.create(100);
+    byte[] id = Hex.decode("0102");
+
+    cache.put(streamingAead, id, 0, ByteBuffer.wrap(bytes(101, 0)));
+
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.getSizeInBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void clear_removesSegments() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    DecryptedSegmentCache cache = DecryptedSegmentCache.create(1000);
+    byte[] id = Hex.decode("0102");
+    cache.put(streamingAead, id, 0, ByteBuffer.wrap(bytes(100, 0)));
+
+    cache.clear();
+
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.getSizeInBytes()).isEqualTo(0);
+    assertThat(cache.get(streamingAead, id, 0)).isNull();
+  }
+
+  @Test
+  public void channel_repeatedReadsOfSegment_hitCache() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(10 * SEGMENT_SIZE);
+    byte[] ciphertext = encrypt(streamingAead, plaintext);
+    DecryptedSegmentCache cache = DecryptedSegmentCache.create(1 << 20);
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA, cache);
+
+    for (int position = 1000; position < 1100; position += 10) {
+      assertThat(read(channel, position, 10))
+          .isEqualTo(Arrays.copyOfRange(plaintext, position, position + 10));
+    }
+
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(9);
+  }
+
+  @Test
+  public void channelsOnSameCiphertext_shareCache() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(10 * SEGMENT_SIZE);
+    byte[] ciphertext = encrypt(streamingAead, plaintext);
+    DecryptedSegmentCache cache = DecryptedSegmentCache.createOffHeap(1 << 20);
+    StreamingAeadPositionalDecryptingChannel channel1 =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA, cache);
+    StreamingAeadPositionalDecryptingChannel channel2 =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA, cache);
+
+    assertThat(read(channel1, 0, plaintext.length)).isEqualTo(plaintext);
+    assertThat(read(channel2, 0, plaintext.length)).isEqualTo(plaintext);
+    assertThat(channel2.verifiedSize()).isEqualTo(plaintext.length);
+
+    assertThat(cache.getHitCount()).isEqualTo(cache.size() + 1);
+    assertThat(cache.getMissCount()).isEqualTo(cache.size());
+  }
+
+  @Test
+  public void channelWithOtherCiphertext_doesNotUseCachedSegments() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    byte[] plaintext1 = StreamingTestUtil.generatePlaintext(3 * SEGMENT_SIZE);
+    byte[] plaintext2 = Arrays.copyOf(plaintext1, plaintext1.length);
+    plaintext2[0] ^= 1;
+    DecryptedSegmentCache cache = DecryptedSegmentCache.create(1 << 20);
+    StreamingAeadPositionalDecryptingChannel channel1 =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(encrypt(streamingAead, plaintext1)),
+            ASSOCIATED_DATA,
+            cache);
+    StreamingAeadPositionalDecryptingChannel channel2 =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(encrypt(streamingAead, plaintext2)),
+            ASSOCIATED_DATA,
+            cache);
+
+    assertThat(read(channel1, 0, 10)).isEqualTo(Arrays.copyOf(plaintext1, 10));
+    assertThat(read(channel2, 0, 10)).isEqualTo(Arrays.copyOf(plaintext2, 10));
+    assertThat(cache.getHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void channelWithWrongAssociatedData_doesNotUseCachedSegments() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(3 * SEGMENT_SIZE);
+    byte[] ciphertext = encrypt(streamingAead, plaintext);
+    DecryptedSegmentCache cache = DecryptedSegmentCache.create(1 << 20);
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA, cache);
+    assertThat(read(channel, 0, plaintext.length)).isEqualTo(plaintext);
+
+    StreamingAeadPositionalDecryptingChannel wrongChannel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), Hex.decode("aabbcc"), cache);
+
+    assertThrows(IOException.class, () -> read(wrongChannel, 0, 10));
+    assertThat(cache.getHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void channelOnTruncatedCiphertext_doesNotUseCachedSegments() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(10 * SEGMENT_SIZE);
+    byte[] ciphertext = encrypt(streamingAead, plaintext);
+    DecryptedSegmentCache cache = DecryptedSegmentCache.create(1 << 20);
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA, cache);
+    assertThat(read(channel, 0, plaintext.length)).isEqualTo(plaintext);
+    assertThat(channel.verifiedSize()).isEqualTo(plaintext.length);
+
+    // At a segment boundary, in the middle of a segment and in the last segment.
+    for (int length :
+        new int[] {3 * SEGMENT_SIZE, 3 * SEGMENT_SIZE + 100, ciphertext.length - 10}) {
+      StreamingAeadPositionalDecryptingChannel truncatedChannel =
+          streamingAead.newPositionalDecryptingChannel(
+              new SeekableByteBufferChannel(Arrays.copyOf(ciphertext, length)),
+              ASSOCIATED_DATA,
+              cache);
+
+      assertThrows(IOException.class, truncatedChannel::verifiedSize);
+      assertThrows(
+          IOException.class,
+          () -> truncatedChannel.read(ByteBuffer.allocate(10), truncatedChannel.size()));
+    }
+  }
+
+  @Test
+  public void concurrentReadsWithSmallCache_returnPlaintext() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(40 * SEGMENT_SIZE);
+    byte[] ciphertext = encrypt(streamingAead, plaintext);
+    DecryptedSegmentCache cache = DecryptedSegmentCache.create(5 * SEGMENT_SIZE);
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA, cache);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        int seed = thread;
+        futures.add(
+            executor.submit(
+                (Callable<Void>)
+                    () -> {
+                      java.util.Random random = new java.util.Random(seed);
+                      for (int i = 0; i < 200; i++) {
+                        int position = random.nextInt(plaintext.length - 100);
+                        assertThat(read(channel, position, 100))
+                            .isEqualTo(Arrays.copyOfRange(plaintext, position, position + 100));
+                      }
+                      return null;
+                    }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(cache.getSizeInBytes()).isAtMost(5L * SEGMENT_SIZE);
+    assertThat(cache.getHitCount() + cache.getMissCount()).isAtLeast(8L * 200);
+  }
+
+  @Test
+  public void newPositionalDecryptingChannel_nullCache_throws() throws Exception {
+    NonceBasedStreamingAead streamingAead = newStreamingAead();
+    byte[] ciphertext = encrypt(streamingAead, new byte[10]);
+
+    assertThrows(
+        NullPointerException.class,
+        () ->
+            streamingAead.newPositionalDecryptingChannel(
+                new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA, null));
+  }
+}
@@ -39,6 +39,11 @@ import java.security.Signature;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.spec.ECParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.conscrypt.Conscrypt;
 import org.junit.Assume;
 import org.junit.Before;
@@ -190,4 +195,41 @@ public class EcdsaSignJceTest {
   @DataPoints("allTests")
   public static final SignatureTestVector[] ALL_TEST_VECTORS =
       EcdsaTestUtil.createEcdsaTestVectors();
+
+  @Test
+  public void sign_fromManyThreads_producesValidSignatures() throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
+
+    KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+    keyGen.initialize(EllipticCurves.getNistP256Params());
+    KeyPair keyPair = keyGen.generateKeyPair();
+    EcdsaSignJce signer =
+        new EcdsaSignJce(
+            (ECPrivateKey) keyPair.getPrivate(), HashType.SHA256, EcdsaEncoding.IEEE_P1363);
+    EcdsaVerifyJce verifier =
+        new EcdsaVerifyJce(
+            (ECPublicKey) keyPair.getPublic(), HashType.SHA256, EcdsaEncoding.IEEE_P1363);
+
+    // The signers are initialized once and reused, by the same and by other threads.
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 20; i++) {
+                    byte[] message = Random.randBytes(i);
+                    verifier.verify(signer.sign(message), message);
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
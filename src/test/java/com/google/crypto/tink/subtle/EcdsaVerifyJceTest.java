@@ -16,6 +16,7 @@
 
 package com.google.crypto.tink.subtle;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
 
@@ -154,6 +155,33 @@ public class EcdsaVerifyJceTest {
     }
   }
 
+  @Test
+  public void verify_afterInvalidSignatures_stillAcceptsValidSignatures() throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
+
+    KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+    keyGen.initialize(EllipticCurves.getNistP256Params());
+    KeyPair keyPair = keyGen.generateKeyPair();
+    EcdsaSignJce signer =
+        new EcdsaSignJce(
+            (ECPrivateKey) keyPair.getPrivate(), HashType.SHA256, EcdsaEncoding.DER);
+    EcdsaVerifyJce verifier =
+        new EcdsaVerifyJce((ECPublicKey) keyPair.getPublic(), HashType.SHA256, EcdsaEncoding.DER);
+    byte[] message = "Hello".getBytes(UTF_8);
+    byte[] signature = signer.sign(message);
+
+    // The verifiers are reused between calls, so a failed verification must not affect the next.
+    for (BytesMutation mutation : TestUtil.generateMutations(signature)) {
+      try {
+        verifier.verify(mutation.value, message);
+      } catch (GeneralSecurityException e) {
+        // Expected for most mutations.
+      }
+      verifier.verify(signature, message);
+      verifier.verify(signer.sign(message), message);
+    }
+  }
+
   @Test
   public void testConstrutorExceptions() throws Exception {
     Assume.assumeTrue(!TinkFips.useOnlyFips() || TinkFipsUtil.fipsModuleAvailable());
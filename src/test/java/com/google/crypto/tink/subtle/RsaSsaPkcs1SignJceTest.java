@@ -39,7 +39,12 @@ import java.security.Security;
 import java.security.Signature;
 import java.security.interfaces.RSAPrivateCrtKey;
 import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.conscrypt.Conscrypt;
 import org.junit.Assume;
 import org.junit.Before;
@@ -216,4 +221,39 @@ public class RsaSsaPkcs1SignJceTest {
   @DataPoints("allTests")
   public static final SignatureTestVector[] ALL_TEST_VECTORS =
       RsaSsaPkcs1TestUtil.createRsaSsaPkcs1TestVectors();
+
+  @Test
+  public void sign_fromManyThreads_producesValidSignatures() throws Exception {
+    Assume.assumeTrue(!TinkFips.useOnlyFips()); // Only 3072-bit modulus is supported in FIPS.
+
+    KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+    keyGen.initialize(2048);
+    KeyPair keyPair = keyGen.generateKeyPair();
+    RsaSsaPkcs1SignJce signer =
+        new RsaSsaPkcs1SignJce((RSAPrivateCrtKey) keyPair.getPrivate(), HashType.SHA256);
+    RsaSsaPkcs1VerifyJce verifier =
+        new RsaSsaPkcs1VerifyJce((RSAPublicKey) keyPair.getPublic(), HashType.SHA256);
+
+    // The signers are initialized once and reused, by the same and by other threads.
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 10; i++) {
+                    byte[] message = Random.randBytes(i);
+                    verifier.verify(signer.sign(message), message);
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
@@ -33,7 +33,12 @@ import java.security.KeyPairGenerator;
 import java.security.Security;
 import java.security.interfaces.RSAPrivateCrtKey;
 import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.conscrypt.Conscrypt;
 import org.junit.Assume;
 import org.junit.Before;
@@ -233,4 +238,41 @@ public class RsaSsaPssSignJceTest {
   @DataPoints("testVectors")
   public static final SignatureTestVector[] SIGNATURE_TEST_VECTORS =
       RsaSsaPssTestUtil.createRsaPssTestVectors();
+
+  @Test
+  public void sign_fromManyThreads_producesValidSignatures() throws Exception {
+    Assume.assumeFalse(TinkFips.useOnlyFips()); // Only 3072-bit modulus is supported in FIPS.
+
+    KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+    keyGen.initialize(2048);
+    KeyPair keyPair = keyGen.generateKeyPair();
+    RsaSsaPssSignJce signer =
+        new RsaSsaPssSignJce(
+            (RSAPrivateCrtKey) keyPair.getPrivate(), HashType.SHA256, HashType.SHA256, 32);
+    RsaSsaPssVerifyJce verifier =
+        new RsaSsaPssVerifyJce(
+            (RSAPublicKey) keyPair.getPublic(), HashType.SHA256, HashType.SHA256, 32);
+
+    // The ciphers are initialized once and reused, by the same and by other threads.
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 10; i++) {
+                    byte[] message = Random.randBytes(i);
+                    verifier.verify(signer.sign(message), message);
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
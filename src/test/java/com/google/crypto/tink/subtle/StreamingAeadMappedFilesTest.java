@@ -0,0 +1,315 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.testing.StreamingTestUtil;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class StreamingAeadMappedFilesTest {
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static final byte[] ASSOCIATED_DATA = Hex.decode("aabbccddeeff");
+  private static final int SEGMENT_SIZE = 256;
+  // Small windows, so that the tests map several windows per file.
+  private static final long WINDOW_SIZE = 1000;
+
+  private static List<NonceBasedStreamingAead> streamingAeads;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    streamingAeads =
+        StreamingTestUtil.createNonceBasedStreamingAeads(
+            NonceBasedStreamingAead.class, SEGMENT_SIZE);
+  }
+
+  private static int[] plaintextSizes(NonceBasedStreamingAead streamingAead) {
+    int plaintextSegmentSize = streamingAead.getPlaintextSegmentSize();
+    int firstSegmentSize = plaintextSegmentSize - streamingAead.getCiphertextOffset();
+    return new int[] {
+      0,
+      1,
+      firstSegmentSize,
+      firstSegmentSize + 1,
+      firstSegmentSize + 3 * plaintextSegmentSize,
+      firstSegmentSize + 3 * plaintextSegmentSize + 1,
+      20 * SEGMENT_SIZE + 7,
+    };
+  }
+
+  private Path newFile(byte[] content) throws IOException {
+    Path path = tmpFolder.newFile().toPath();
+    Files.write(path, content);
+    return path;
+  }
+
+  private static byte[] encrypt(NonceBasedStreamingAead streamingAead, byte[] plaintext)
+      throws Exception {
+    return StreamingTestUtil.encryptWithChannel(streamingAead, plaintext, ASSOCIATED_DATA, 0);
+  }
+
+  private static byte[] decryptWithStream(NonceBasedStreamingAead streamingAead, byte[] ciphertext)
+      throws Exception {
+    ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+    try (InputStream decrypting =
+        streamingAead.newDecryptingStream(new ByteArrayInputStream(ciphertext), ASSOCIATED_DATA)) {
+      byte[] buffer = new byte[1000];
+      int read;
+      while ((read = decrypting.read(buffer)) != -1) {
+        plaintext.write(buffer, 0, read);
+      }
+    }
+    return plaintext.toByteArray();
+  }
+
+  @Test
+  public void encryptFileToFile_decryptsWithStream() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      for (int size : plaintextSizes(streamingAead)) {
+        byte[] plaintext = StreamingTestUtil.generatePlaintext(size);
+        Path ciphertextPath = newFile(new byte[0]);
+        long written;
+        try (FileChannel source = FileChannel.open(newFile(plaintext));
+            FileChannel destination =
+                FileChannel.open(
+                    ciphertextPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+          written =
+              StreamingAeadMappedFiles.encrypt(
+                  streamingAead, source, destination, ASSOCIATED_DATA, WINDOW_SIZE);
+
+          assertThat(source.position()).isEqualTo(size);
+          assertThat(destination.position()).isEqualTo(written);
+        }
+        byte[] ciphertext = Files.readAllBytes(ciphertextPath);
+
+        assertThat(ciphertext.length).isEqualTo(encrypt(streamingAead, plaintext).length);
+        assertThat(written).isEqualTo(ciphertext.length);
+        assertThat(decryptWithStream(streamingAead, ciphertext)).isEqualTo(plaintext);
+      }
+    }
+  }
+
+  @Test
+  public void encryptFileToChannel_decryptsWithStream() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      for (int size : plaintextSizes(streamingAead)) {
+        byte[] plaintext = StreamingTestUtil.generatePlaintext(size);
+        ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+        try (FileChannel source = FileChannel.open(newFile(plaintext))) {
+          streamingAead.encryptFile(source, Channels.newChannel(ciphertext), ASSOCIATED_DATA);
+        }
+
+        assertThat(decryptWithStream(streamingAead, ciphertext.toByteArray()))
+            .isEqualTo(plaintext);
+      }
+    }
+  }
+
+  @Test
+  public void encryptFileToWriteOnlyFile_decryptsWithStream() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(10 * SEGMENT_SIZE);
+    Path ciphertextPath = newFile(new byte[0]);
+    try (FileChannel source = FileChannel.open(newFile(plaintext));
+        FileChannel destination = FileChannel.open(ciphertextPath, StandardOpenOption.WRITE)) {
+      streamingAead.encryptFile(source, destination, ASSOCIATED_DATA);
+    }
+
+    assertThat(decryptWithStream(streamingAead, Files.readAllBytes(ciphertextPath)))
+        .isEqualTo(plaintext);
+  }
+
+  @Test
+  public void decryptFileToFile_returnsPlaintext() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      for (int size : plaintextSizes(streamingAead)) {
+        byte[] plaintext = StreamingTestUtil.generatePlaintext(size);
+        Path plaintextPath = newFile(new byte[0]);
+        byte[] ciphertext = encrypt(streamingAead, plaintext);
+        try (FileChannel source = FileChannel.open(newFile(ciphertext));
+            FileChannel destination =
+                FileChannel.open(
+                    plaintextPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+          long written =
+              StreamingAeadMappedFiles.decrypt(
+                  streamingAead, source, destination, ASSOCIATED_DATA, WINDOW_SIZE);
+
+          assertThat(written).isEqualTo(size);
+          assertThat(destination.position()).isEqualTo(size);
+        }
+
+        assertThat(Files.readAllBytes(plaintextPath)).isEqualTo(plaintext);
+      }
+    }
+  }
+
+  @Test
+  public void decryptFileToChannel_returnsPlaintext() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      for (int size : plaintextSizes(streamingAead)) {
+        byte[] plaintext = StreamingTestUtil.generatePlaintext(size);
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        try (FileChannel source = FileChannel.open(newFile(encrypt(streamingAead, plaintext)))) {
+          streamingAead.decryptFile(source, Channels.newChannel(decrypted), ASSOCIATED_DATA);
+        }
+
+        assertThat(decrypted.toByteArray()).isEqualTo(plaintext);
+      }
+    }
+  }
+
+  @Test
+  public void encryptAndDecryptFile_startAtPositions() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(5 * SEGMENT_SIZE);
+    byte[] prefix = StreamingTestUtil.generatePlaintext(33);
+    Path plaintextPath = newFile(StreamingTestUtil.concatBytes(prefix, plaintext));
+    Path ciphertextPath = newFile(prefix);
+    Path decryptedPath = newFile(prefix);
+
+    try (FileChannel source = FileChannel.open(plaintextPath);
+        FileChannel destination =
+            FileChannel.open(ciphertextPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      source.position(prefix.length);
+      destination.position(prefix.length);
+      streamingAead.encryptFile(source, destination, ASSOCIATED_DATA);
+    }
+    try (FileChannel source = FileChannel.open(ciphertextPath);
+        FileChannel destination =
+            FileChannel.open(decryptedPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      source.position(prefix.length);
+      destination.position(prefix.length);
+      streamingAead.decryptFile(source, destination, ASSOCIATED_DATA);
+    }
+
+    byte[] ciphertext = Files.readAllBytes(ciphertextPath);
+    assertThat(Arrays.copyOf(ciphertext, prefix.length)).isEqualTo(prefix);
+    assertThat(
+            decryptWithStream(
+                streamingAead, Arrays.copyOfRange(ciphertext, prefix.length, ciphertext.length)))
+        .isEqualTo(plaintext);
+    assertThat(Files.readAllBytes(decryptedPath))
+        .isEqualTo(StreamingTestUtil.concatBytes(prefix, plaintext));
+  }
+
+  private void assertDecryptFileFails(NonceBasedStreamingAead streamingAead, byte[] ciphertext)
+      throws Exception {
+    try (FileChannel source = FileChannel.open(newFile(ciphertext))) {
+      assertThrows(
+          IOException.class,
+          () ->
+              StreamingAeadMappedFiles.decrypt(
+                  streamingAead,
+                  source,
+                  Channels.newChannel(new ByteArrayOutputStream()),
+                  ASSOCIATED_DATA,
+                  WINDOW_SIZE));
+    }
+  }
+
+  @Test
+  public void decryptFile_modifiedCiphertext_fails() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      byte[] plaintext = StreamingTestUtil.generatePlaintext(5 * SEGMENT_SIZE);
+      byte[] ciphertext = encrypt(streamingAead, plaintext);
+      int headerLength = streamingAead.getHeaderLength();
+
+      // Truncated, in the header, at segment boundaries and inside of segments.
+      for (int length :
+          new int[] {0, headerLength - 1, headerLength, SEGMENT_SIZE, 3 * SEGMENT_SIZE - 10}) {
+        assertDecryptFileFails(streamingAead, Arrays.copyOf(ciphertext, length));
+      }
+      // Extended.
+      assertDecryptFileFails(
+          streamingAead, StreamingTestUtil.concatBytes(ciphertext, new byte[SEGMENT_SIZE]));
+      // Modified.
+      for (int position = 0; position < ciphertext.length; position += 37) {
+        byte[] modified = Arrays.copyOf(ciphertext, ciphertext.length);
+        modified[position] ^= 1;
+        assertDecryptFileFails(streamingAead, modified);
+      }
+    }
+  }
+
+  @Test
+  public void decryptFileToFile_modifiedMiddleSegment_keepsOnlyPlaintextBeforeIt()
+      throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      byte[] plaintext = StreamingTestUtil.generatePlaintext(20 * SEGMENT_SIZE);
+      byte[] ciphertext = encrypt(streamingAead, plaintext);
+      int ciphertextSegmentSize = streamingAead.getCiphertextSegmentSize();
+      int firstCiphertextSegmentEnd =
+          streamingAead.getHeaderLength()
+              + ciphertextSegmentSize
+              - streamingAead.getCiphertextOffset();
+      // Modifies segment 3, so that segments 0 to 2 are decrypted.
+      ciphertext[firstCiphertextSegmentEnd + 2 * ciphertextSegmentSize + 5] ^= 1;
+      int decryptedSize =
+          streamingAead.getPlaintextSegmentSize()
+              - streamingAead.getCiphertextOffset()
+              + 2 * streamingAead.getPlaintextSegmentSize();
+      Path plaintextPath = newFile(new byte[0]);
+
+      try (FileChannel source = FileChannel.open(newFile(ciphertext));
+          FileChannel destination =
+              FileChannel.open(plaintextPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        assertThrows(
+            IOException.class,
+            () ->
+                StreamingAeadMappedFiles.decrypt(
+                    streamingAead, source, destination, ASSOCIATED_DATA, WINDOW_SIZE));
+        assertThat(destination.position()).isEqualTo(decryptedSize);
+      }
+
+      // No zeros from the mapped window follow the authenticated plaintext.
+      assertThat(Files.readAllBytes(plaintextPath))
+          .isEqualTo(Arrays.copyOf(plaintext, decryptedSize));
+    }
+  }
+
+  @Test
+  public void decryptFile_wrongAssociatedData_fails() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] ciphertext = encrypt(streamingAead, new byte[100]);
+    try (FileChannel source = FileChannel.open(newFile(ciphertext))) {
+      assertThrows(
+          IOException.class,
+          () ->
+              streamingAead.decryptFile(
+                  source, Channels.newChannel(new ByteArrayOutputStream()), Hex.decode("aabbcc")));
+    }
+  }
+}
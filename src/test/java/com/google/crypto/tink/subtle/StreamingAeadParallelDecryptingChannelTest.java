@@ -0,0 +1,307 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.StreamingAead;
+import com.google.crypto.tink.testing.StreamingTestUtil;
+import com.google.crypto.tink.testing.StreamingTestUtil.ByteBufferChannel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class StreamingAeadParallelDecryptingChannelTest {
+  private static final byte[] ASSOCIATED_DATA = Hex.decode("aabbccddeeff");
+  private static final int SEGMENT_SIZE = 256;
+
+  private static ExecutorService executor;
+  private static List<NonceBasedStreamingAead> streamingAeads;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+    streamingAeads =
+        StreamingTestUtil.createNonceBasedStreamingAeads(
+            NonceBasedStreamingAead.class, SEGMENT_SIZE);
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    executor.shutdown();
+  }
+
+  /** A {@link StreamingAead} which decrypts non-seekable ciphertexts in parallel. */
+  private static final class ParallelDecryptingStreamingAead implements StreamingAead {
+    private final NonceBasedStreamingAead streamingAead;
+    private final int maxSegmentsInFlight;
+
+    ParallelDecryptingStreamingAead(
+        NonceBasedStreamingAead streamingAead, int maxSegmentsInFlight) {
+      this.streamingAead = streamingAead;
+      this.maxSegmentsInFlight = maxSegmentsInFlight;
+    }
+
+    @Override
+    public WritableByteChannel newEncryptingChannel(
+        WritableByteChannel ciphertextDestination, byte[] associatedData)
+        throws GeneralSecurityException, IOException {
+      return streamingAead.newEncryptingChannel(ciphertextDestination, associatedData);
+    }
+
+    @Override
+    public ReadableByteChannel newDecryptingChannel(
+        ReadableByteChannel ciphertextSource, byte[] associatedData)
+        throws GeneralSecurityException, IOException {
+      return streamingAead.newParallelDecryptingChannel(
+          ciphertextSource, associatedData, executor, maxSegmentsInFlight);
+    }
+
+    @Override
+    public SeekableByteChannel newSeekableDecryptingChannel(
+        SeekableByteChannel ciphertextSource, byte[] associatedData)
+        throws GeneralSecurityException, IOException {
+      return streamingAead.newSeekableDecryptingChannel(ciphertextSource, associatedData);
+    }
+
+    @Override
+    public OutputStream newEncryptingStream(
+        OutputStream ciphertextDestination, byte[] associatedData)
+        throws GeneralSecurityException, IOException {
+      return streamingAead.newEncryptingStream(ciphertextDestination, associatedData);
+    }
+
+    @Override
+    public InputStream newDecryptingStream(InputStream ciphertextSource, byte[] associatedData)
+        throws GeneralSecurityException, IOException {
+      return streamingAead.newParallelDecryptingStream(
+          ciphertextSource, associatedData, executor, maxSegmentsInFlight);
+    }
+  }
+
+  private static byte[] encrypt(NonceBasedStreamingAead streamingAead, byte[] plaintext)
+      throws Exception {
+    return StreamingTestUtil.encryptWithChannel(streamingAead, plaintext, ASSOCIATED_DATA, 0);
+  }
+
+  private static byte[] decrypt(
+      NonceBasedStreamingAead streamingAead,
+      ReadableByteChannel ciphertext,
+      int chunkSize,
+      int maxSegmentsInFlight)
+      throws Exception {
+    ReadableByteChannel channel =
+        streamingAead.newParallelDecryptingChannel(
+            ciphertext, ASSOCIATED_DATA, executor, maxSegmentsInFlight);
+    ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+    ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+    while (channel.read(chunk) != -1) {
+      chunk.flip();
+      plaintext.write(chunk.array(), 0, chunk.limit());
+      chunk.clear();
+    }
+    channel.close();
+    return plaintext.toByteArray();
+  }
+
+  @Test
+  public void decrypt_returnsPlaintext() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      for (int size : new int[] {0, 1, 100, SEGMENT_SIZE - 50, SEGMENT_SIZE, 9 * SEGMENT_SIZE}) {
+        byte[] plaintext = StreamingTestUtil.generatePlaintext(size);
+        byte[] ciphertext = encrypt(streamingAead, plaintext);
+        for (int chunkSize : new int[] {1, 77, SEGMENT_SIZE, 10 * SEGMENT_SIZE}) {
+          for (int maxSegmentsInFlight : new int[] {1, 3}) {
+            byte[] decrypted =
+                decrypt(
+                    streamingAead,
+                    new ByteBufferChannel(ciphertext),
+                    chunkSize,
+                    maxSegmentsInFlight);
+
+            assertThat(decrypted).isEqualTo(plaintext);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void decrypt_segmentBoundaries() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      int firstSegmentSize = SEGMENT_SIZE - streamingAead.getCiphertextOffset();
+      int plaintextSegmentSize = streamingAead.getPlaintextSegmentSize();
+      for (int size = firstSegmentSize + 2 * plaintextSegmentSize - 2;
+          size <= firstSegmentSize + 2 * plaintextSegmentSize + 2;
+          size++) {
+        byte[] plaintext = StreamingTestUtil.generatePlaintext(size);
+        byte[] ciphertext = encrypt(streamingAead, plaintext);
+
+        assertThat(decrypt(streamingAead, new ByteBufferChannel(ciphertext), 33, 2))
+            .isEqualTo(plaintext);
+      }
+    }
+  }
+
+  @Test
+  public void decrypt_channelWithoutDataOnEveryOtherRead() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      byte[] plaintext = StreamingTestUtil.generatePlaintext(5 * SEGMENT_SIZE + 7);
+      byte[] ciphertext = encrypt(streamingAead, plaintext);
+      ReadableByteChannel ciphertextChannel =
+          new ByteBufferChannel(ciphertext, 10, /* noDataEveryOtherRead= */ true);
+
+      assertThat(decrypt(streamingAead, ciphertextChannel, 100, 2)).isEqualTo(plaintext);
+    }
+  }
+
+  @Test
+  public void encryptionAndDecryption() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      if (streamingAead.getCiphertextOffset() != streamingAead.getHeaderLength()) {
+        // testEncryptionAndDecryption does not support a first segment offset.
+        continue;
+      }
+      StreamingTestUtil.testEncryptionAndDecryption(
+          new ParallelDecryptingStreamingAead(streamingAead, 2));
+    }
+  }
+
+  @Test
+  public void modifiedCiphertext_isRejected() throws Exception {
+    byte[] ikm = Hex.decode("000102030405060708090a0b0c0d0e0f00112233445566778899aabbccddeeff");
+    int segmentSize = 128;
+    int firstSegmentOffset = 8;
+    StreamingTestUtil.testModifiedCiphertext(
+        new ParallelDecryptingStreamingAead(
+            new AesGcmHkdfStreaming(ikm, "HmacSha256", 16, segmentSize, firstSegmentOffset), 3),
+        segmentSize,
+        firstSegmentOffset);
+    StreamingTestUtil.testModifiedCiphertext(
+        new ParallelDecryptingStreamingAead(
+            new AesCtrHmacStreaming(
+                ikm, "HmacSha256", 16, "HmacSha256", 12, segmentSize, firstSegmentOffset),
+            3),
+        segmentSize,
+        firstSegmentOffset);
+  }
+
+  @Test
+  public void truncatedCiphertext_fails() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(5 * SEGMENT_SIZE);
+    byte[] ciphertext = encrypt(streamingAead, plaintext);
+    byte[] truncated =
+        Arrays.copyOf(ciphertext, streamingAead.getCiphertextOffset() + 3 * SEGMENT_SIZE - 16);
+
+    assertThrows(
+        IOException.class,
+        () -> decrypt(streamingAead, new ByteBufferChannel(truncated), SEGMENT_SIZE, 2));
+  }
+
+  @Test
+  public void reorderedSegments_fail() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(5 * SEGMENT_SIZE);
+    byte[] ciphertext = encrypt(streamingAead, plaintext);
+    int firstSegmentEnd =
+        SEGMENT_SIZE - streamingAead.getCiphertextOffset() + streamingAead.getHeaderLength();
+    byte[] reordered = Arrays.copyOf(ciphertext, ciphertext.length);
+    System.arraycopy(
+        ciphertext, firstSegmentEnd, reordered, firstSegmentEnd + SEGMENT_SIZE, SEGMENT_SIZE);
+    System.arraycopy(
+        ciphertext, firstSegmentEnd + SEGMENT_SIZE, reordered, firstSegmentEnd, SEGMENT_SIZE);
+
+    ReadableByteChannel channel =
+        streamingAead.newParallelDecryptingChannel(
+            new ByteBufferChannel(reordered), ASSOCIATED_DATA, executor, 4);
+    ByteBuffer buffer = ByteBuffer.allocate(plaintext.length);
+    IOException thrown = null;
+    try {
+      channel.read(buffer);
+    } catch (IOException ex) {
+      thrown = ex;
+    }
+
+    assertThat(thrown).isNotNull();
+    // The first segment is returned, but no plaintext of the reordered segments.
+    assertThat(buffer.position()).isAtMost(streamingAead.getPlaintextSegmentSize());
+    // The channel is in an undefined state.
+    assertThrows(IOException.class, () -> channel.read(ByteBuffer.allocate(1)));
+  }
+
+  @Test
+  public void decryptingStream_works() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      byte[] plaintext = StreamingTestUtil.generatePlaintext(7 * SEGMENT_SIZE + 11);
+      byte[] ciphertext = encrypt(streamingAead, plaintext);
+      ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+      try (InputStream decrypting =
+          streamingAead.newParallelDecryptingStream(
+              new ByteArrayInputStream(ciphertext), ASSOCIATED_DATA, executor, 4)) {
+        byte[] buffer = new byte[1000];
+        int read;
+        while ((read = decrypting.read(buffer)) != -1) {
+          decrypted.write(buffer, 0, read);
+        }
+      }
+
+      assertThat(decrypted.toByteArray()).isEqualTo(plaintext);
+    }
+  }
+
+  @Test
+  public void readAfterClose_throws() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] ciphertext = encrypt(streamingAead, StreamingTestUtil.generatePlaintext(1000));
+    ReadableByteChannel channel =
+        streamingAead.newParallelDecryptingChannel(
+            new ByteBufferChannel(ciphertext), ASSOCIATED_DATA, executor, 2);
+    channel.close();
+
+    assertThat(channel.isOpen()).isFalse();
+    assertThrows(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(1)));
+  }
+
+  @Test
+  public void invalidMaxSegmentsInFlight_throws() throws Exception {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            streamingAeads.get(0).newParallelDecryptingChannel(
+                new ByteBufferChannel(new byte[0]), ASSOCIATED_DATA, executor, 0));
+  }
+}
@@ -0,0 +1,272 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.testing.StreamingTestUtil;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class StreamingAeadParallelEncryptingChannelTest {
+  private static final byte[] ASSOCIATED_DATA = Hex.decode("aabbccddeeff");
+  private static final int SEGMENT_SIZE = 256;
+
+  private static ExecutorService executor;
+  private static List<NonceBasedStreamingAead> streamingAeads;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+    streamingAeads =
+        StreamingTestUtil.createNonceBasedStreamingAeads(
+            NonceBasedStreamingAead.class, SEGMENT_SIZE);
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    executor.shutdown();
+  }
+
+  private static byte[] encrypt(
+      NonceBasedStreamingAead streamingAead,
+      byte[] plaintext,
+      int chunkSize,
+      int maxSegmentsInFlight)
+      throws Exception {
+    ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+    int firstSegmentOffset = streamingAead.getCiphertextOffset() - streamingAead.getHeaderLength();
+    ciphertext.write(new byte[firstSegmentOffset]);
+    WritableByteChannel channel =
+        streamingAead.newParallelEncryptingChannel(
+            Channels.newChannel(ciphertext), ASSOCIATED_DATA, executor, maxSegmentsInFlight);
+    for (int offset = 0; offset < plaintext.length; offset += chunkSize) {
+      ByteBuffer chunk =
+          ByteBuffer.wrap(plaintext, offset, Math.min(chunkSize, plaintext.length - offset));
+      while (chunk.hasRemaining()) {
+        channel.write(chunk);
+      }
+    }
+    channel.close();
+    return ciphertext.toByteArray();
+  }
+
+  private static int sequentialCiphertextLength(
+      NonceBasedStreamingAead streamingAead, byte[] plaintext) throws Exception {
+    int firstSegmentOffset = streamingAead.getCiphertextOffset() - streamingAead.getHeaderLength();
+    return StreamingTestUtil.encryptWithChannel(
+            streamingAead, plaintext, ASSOCIATED_DATA, firstSegmentOffset)
+        .length;
+  }
+
+  private static byte[] decrypt(NonceBasedStreamingAead streamingAead, byte[] ciphertext)
+      throws Exception {
+    ByteArrayInputStream ciphertextStream = new ByteArrayInputStream(ciphertext);
+    int firstSegmentOffset = streamingAead.getCiphertextOffset() - streamingAead.getHeaderLength();
+    ciphertextStream.skip(firstSegmentOffset);
+    ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+    try (InputStream decrypted =
+        streamingAead.newDecryptingStream(ciphertextStream, ASSOCIATED_DATA)) {
+      byte[] buffer = new byte[1000];
+      int read;
+      while ((read = decrypted.read(buffer)) != -1) {
+        plaintext.write(buffer, 0, read);
+      }
+    }
+    return plaintext.toByteArray();
+  }
+
+  @Test
+  public void encrypt_decryptsWithSequentialDecrypter() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      for (int size : new int[] {0, 1, 100, SEGMENT_SIZE - 50, SEGMENT_SIZE, 5 * SEGMENT_SIZE}) {
+        for (int chunkSize : new int[] {1, 77, SEGMENT_SIZE, 10 * SEGMENT_SIZE}) {
+          byte[] plaintext = StreamingTestUtil.generatePlaintext(size);
+          byte[] ciphertext = encrypt(streamingAead, plaintext, chunkSize, 3);
+
+          assertThat(ciphertext.length)
+              .isEqualTo(sequentialCiphertextLength(streamingAead, plaintext));
+          assertThat(decrypt(streamingAead, ciphertext)).isEqualTo(plaintext);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void encrypt_segmentBoundaries() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      int firstSegmentSize = SEGMENT_SIZE - streamingAead.getCiphertextOffset();
+      int plaintextSegmentSize = streamingAead.getPlaintextSegmentSize();
+      for (int size = firstSegmentSize + 2 * plaintextSegmentSize - 2;
+          size <= firstSegmentSize + 2 * plaintextSegmentSize + 2;
+          size++) {
+        byte[] plaintext = StreamingTestUtil.generatePlaintext(size);
+        byte[] ciphertext = encrypt(streamingAead, plaintext, 33, 2);
+
+        assertThat(ciphertext.length)
+            .isEqualTo(sequentialCiphertextLength(streamingAead, plaintext));
+        assertThat(decrypt(streamingAead, ciphertext)).isEqualTo(plaintext);
+      }
+    }
+  }
+
+  @Test
+  public void indexedEncryptSegment_isIdenticalToSequentialEncryptSegment() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      IndexedStreamSegmentEncrypter encrypter =
+          (IndexedStreamSegmentEncrypter)
+              streamingAead.newStreamSegmentEncrypter(ASSOCIATED_DATA);
+      for (int segmentNr = 0; segmentNr < 4; segmentNr++) {
+        boolean isLastSegment = segmentNr == 3;
+        byte[] plaintext = StreamingTestUtil.generatePlaintext(100 + segmentNr);
+        ByteBuffer sequential = ByteBuffer.allocate(SEGMENT_SIZE);
+        ByteBuffer indexed = ByteBuffer.allocate(SEGMENT_SIZE);
+
+        encrypter.encryptSegment(ByteBuffer.wrap(plaintext), isLastSegment, sequential);
+        encrypter.encryptSegment(ByteBuffer.wrap(plaintext), segmentNr, isLastSegment, indexed);
+
+        sequential.flip();
+        indexed.flip();
+        assertThat(indexed).isEqualTo(sequential);
+      }
+    }
+  }
+
+  @Test
+  public void encrypt_boundsSegmentsInFlight() throws Exception {
+    List<Future<?>> submitted = new ArrayList<>();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    WritableByteChannel channel =
+        streamingAead.newParallelEncryptingChannel(
+            Channels.newChannel(new ByteArrayOutputStream()),
+            ASSOCIATED_DATA,
+            task -> {
+              // The channel submits FutureTasks.
+              submitted.add((Future<?>) task);
+              int inFlight = 0;
+              for (Future<?> future : submitted) {
+                if (!future.isDone()) {
+                  inFlight++;
+                }
+              }
+              maxInFlight.accumulateAndGet(inFlight, Math::max);
+              executor.execute(task);
+            },
+            2);
+
+    channel.write(ByteBuffer.wrap(StreamingTestUtil.generatePlaintext(50 * SEGMENT_SIZE)));
+    channel.close();
+
+    assertThat(submitted.size()).isGreaterThan(50);
+    assertThat(maxInFlight.get()).isAtMost(2);
+  }
+
+  @Test
+  public void encryptingStream_works() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      byte[] plaintext = StreamingTestUtil.generatePlaintext(7 * SEGMENT_SIZE + 11);
+      ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+      int firstSegmentOffset =
+          streamingAead.getCiphertextOffset() - streamingAead.getHeaderLength();
+      ciphertext.write(new byte[firstSegmentOffset]);
+      try (OutputStream encrypting =
+          streamingAead.newParallelEncryptingStream(ciphertext, ASSOCIATED_DATA, executor, 4)) {
+        encrypting.write(plaintext);
+      }
+
+      assertThat(decrypt(streamingAead, ciphertext.toByteArray())).isEqualTo(plaintext);
+    }
+  }
+
+  @Test
+  public void writeAfterClose_throws() throws Exception {
+    WritableByteChannel channel =
+        streamingAeads.get(0).newParallelEncryptingChannel(
+            Channels.newChannel(new ByteArrayOutputStream()), ASSOCIATED_DATA, executor, 2);
+    channel.close();
+
+    assertThat(channel.isOpen()).isFalse();
+    assertThrows(ClosedChannelException.class, () -> channel.write(ByteBuffer.allocate(1)));
+  }
+
+  @Test
+  public void closeWithFailingCiphertextChannel_leavesChannelClosed() throws Exception {
+    AtomicBoolean failWrites = new AtomicBoolean(false);
+    WritableByteChannel ciphertextChannel =
+        new WritableByteChannel() {
+          @Override
+          public int write(ByteBuffer src) throws IOException {
+            if (failWrites.get()) {
+              throw new IOException("write failed");
+            }
+            int written = src.remaining();
+            src.position(src.limit());
+            return written;
+          }
+
+          @Override
+          public boolean isOpen() {
+            return true;
+          }
+
+          @Override
+          public void close() {}
+        };
+    WritableByteChannel channel =
+        streamingAeads.get(0).newParallelEncryptingChannel(
+            ciphertextChannel, ASSOCIATED_DATA, executor, 2);
+    channel.write(ByteBuffer.allocate(10));
+    failWrites.set(true);
+
+    assertThrows(IOException.class, channel::close);
+
+    assertThat(channel.isOpen()).isFalse();
+    channel.close();
+    assertThrows(ClosedChannelException.class, () -> channel.write(ByteBuffer.allocate(1)));
+  }
+
+  @Test
+  public void invalidMaxSegmentsInFlight_throws() throws Exception {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            streamingAeads.get(0).newParallelEncryptingChannel(
+                Channels.newChannel(new ByteArrayOutputStream()), ASSOCIATED_DATA, executor, 0));
+  }
+}
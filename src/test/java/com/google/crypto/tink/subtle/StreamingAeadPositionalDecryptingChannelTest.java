@@ -0,0 +1,264 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.subtle;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.testing.StreamingTestUtil;
+import com.google.crypto.tink.testing.StreamingTestUtil.SeekableByteBufferChannel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class StreamingAeadPositionalDecryptingChannelTest {
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static final byte[] ASSOCIATED_DATA = Hex.decode("aabbccddeeff");
+  private static final int SEGMENT_SIZE = 256;
+
+  private static List<NonceBasedStreamingAead> streamingAeads;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    streamingAeads =
+        StreamingTestUtil.createNonceBasedStreamingAeads(
+            NonceBasedStreamingAead.class, SEGMENT_SIZE);
+  }
+
+  /** Returns the ciphertext of {@code plaintext}, including the first segment offset. */
+  private static byte[] encrypt(NonceBasedStreamingAead streamingAead, byte[] plaintext)
+      throws Exception {
+    int firstSegmentOffset = streamingAead.getCiphertextOffset() - streamingAead.getHeaderLength();
+    return StreamingTestUtil.encryptWithChannel(
+        streamingAead, plaintext, ASSOCIATED_DATA, firstSegmentOffset);
+  }
+
+  private FileChannel fileChannel(byte[] ciphertext) throws IOException {
+    File file = tmpFolder.newFile();
+    Files.write(file.toPath(), ciphertext);
+    return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+  }
+
+  private static void assertReadsPlaintext(
+      StreamingAeadPositionalDecryptingChannel channel, byte[] plaintext, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    int read = channel.read(buffer, position);
+    if (position >= plaintext.length) {
+      assertThat(read).isEqualTo(-1);
+      return;
+    }
+    int expectedLength = (int) Math.min(length, plaintext.length - position);
+    assertThat(read).isEqualTo(expectedLength);
+    assertThat(Arrays.copyOf(buffer.array(), read))
+        .isEqualTo(Arrays.copyOfRange(plaintext, (int) position, (int) position + read));
+  }
+
+  private static void testReads(
+      SeekableByteChannel ciphertextChannel,
+      NonceBasedStreamingAead streamingAead,
+      byte[] plaintext)
+      throws Exception {
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(ciphertextChannel, ASSOCIATED_DATA);
+
+    assertThat(channel.size()).isEqualTo(plaintext.length);
+    for (int position = 0; position <= plaintext.length + 1; position += 1 + position / 3) {
+      for (int length : new int[] {1, 17, SEGMENT_SIZE, 3 * SEGMENT_SIZE}) {
+        assertReadsPlaintext(channel, plaintext, position, length);
+      }
+    }
+    assertThat(channel.verifiedSize()).isEqualTo(plaintext.length);
+  }
+
+  @Test
+  public void read_seekableByteChannel_returnsPlaintext() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      for (int size : new int[] {0, 1, SEGMENT_SIZE, 5 * SEGMENT_SIZE + 3}) {
+        byte[] plaintext = StreamingTestUtil.generatePlaintext(size);
+        byte[] ciphertext = encrypt(streamingAead, plaintext);
+
+        testReads(new SeekableByteBufferChannel(ciphertext), streamingAead, plaintext);
+      }
+    }
+  }
+
+  @Test
+  public void read_fileChannel_returnsPlaintext() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      byte[] plaintext = StreamingTestUtil.generatePlaintext(5 * SEGMENT_SIZE + 3);
+      byte[] ciphertext = encrypt(streamingAead, plaintext);
+
+      try (FileChannel ciphertextChannel = fileChannel(ciphertext)) {
+        testReads(ciphertextChannel, streamingAead, plaintext);
+      }
+    }
+  }
+
+  private static void testConcurrentReads(
+      StreamingAeadPositionalDecryptingChannel channel, byte[] plaintext) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        int seed = thread;
+        futures.add(
+            executor.submit(
+                (Callable<Void>)
+                    () -> {
+                      java.util.Random random = new java.util.Random(seed);
+                      for (int i = 0; i < 200; i++) {
+                        int position = random.nextInt(plaintext.length);
+                        int length = 1 + random.nextInt(2 * SEGMENT_SIZE);
+                        assertReadsPlaintext(channel, plaintext, position, length);
+                      }
+                      return null;
+                    }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void concurrentReads_returnPlaintext() throws Exception {
+    for (NonceBasedStreamingAead streamingAead : streamingAeads) {
+      byte[] plaintext = StreamingTestUtil.generatePlaintext(40 * SEGMENT_SIZE + 11);
+      byte[] ciphertext = encrypt(streamingAead, plaintext);
+
+      testConcurrentReads(
+          streamingAead.newPositionalDecryptingChannel(
+              new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA),
+          plaintext);
+      try (FileChannel ciphertextChannel = fileChannel(ciphertext)) {
+        testConcurrentReads(
+            streamingAead.newPositionalDecryptingChannel(ciphertextChannel, ASSOCIATED_DATA),
+            plaintext);
+      }
+    }
+  }
+
+  @Test
+  public void modifiedSegment_onlyReadsOfThatSegmentFail() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(5 * SEGMENT_SIZE);
+    byte[] ciphertext = encrypt(streamingAead, plaintext);
+    // Modifies the third segment.
+    ciphertext[2 * SEGMENT_SIZE + 5] ^= 1;
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA);
+    int plaintextSegmentSize = streamingAead.getPlaintextSegmentSize();
+    long thirdSegmentStart = 2L * plaintextSegmentSize - streamingAead.getCiphertextOffset();
+
+    assertThrows(
+        IOException.class, () -> channel.read(ByteBuffer.allocate(10), thirdSegmentStart + 3));
+    assertThrows(
+        IOException.class,
+        () -> channel.read(ByteBuffer.allocate(2 * SEGMENT_SIZE), thirdSegmentStart - 10));
+    assertReadsPlaintext(channel, plaintext, 0, (int) thirdSegmentStart);
+    assertReadsPlaintext(channel, plaintext, thirdSegmentStart + plaintextSegmentSize, 100);
+  }
+
+  @Test
+  public void truncatedCiphertext_fails() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] plaintext = StreamingTestUtil.generatePlaintext(5 * SEGMENT_SIZE);
+    byte[] ciphertext = encrypt(streamingAead, plaintext);
+    byte[] truncated = Arrays.copyOf(ciphertext, 3 * SEGMENT_SIZE);
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(truncated), ASSOCIATED_DATA);
+
+    assertThrows(IOException.class, channel::verifiedSize);
+    assertThrows(IOException.class, () -> channel.read(ByteBuffer.allocate(1), channel.size()));
+    assertThrows(
+        IOException.class, () -> channel.read(ByteBuffer.allocate(1), channel.size() - 1));
+  }
+
+  @Test
+  public void wrongAssociatedData_fails() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] ciphertext = encrypt(streamingAead, StreamingTestUtil.generatePlaintext(1000));
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), Hex.decode("aabbcc"));
+
+    assertThrows(IOException.class, () -> channel.read(ByteBuffer.allocate(1), 0));
+  }
+
+  @Test
+  public void invalidHeader_throws() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] ciphertext = encrypt(streamingAead, StreamingTestUtil.generatePlaintext(1000));
+    ciphertext[0] ^= 1;
+
+    assertThrows(
+        GeneralSecurityException.class,
+        () ->
+            streamingAead.newPositionalDecryptingChannel(
+                new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA));
+  }
+
+  @Test
+  public void negativePosition_throws() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] ciphertext = encrypt(streamingAead, StreamingTestUtil.generatePlaintext(1000));
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA);
+
+    assertThrows(IllegalArgumentException.class, () -> channel.read(ByteBuffer.allocate(1), -1));
+  }
+
+  @Test
+  public void readAfterClose_throws() throws Exception {
+    NonceBasedStreamingAead streamingAead = streamingAeads.get(0);
+    byte[] ciphertext = encrypt(streamingAead, StreamingTestUtil.generatePlaintext(1000));
+    StreamingAeadPositionalDecryptingChannel channel =
+        streamingAead.newPositionalDecryptingChannel(
+            new SeekableByteBufferChannel(ciphertext), ASSOCIATED_DATA);
+    channel.close();
+
+    assertThat(channel.isOpen()).isFalse();
+    assertThrows(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(1), 0));
+  }
+}
@@ -29,6 +29,7 @@ import com.google.crypto.tink.aead.XChaCha20Poly1305Parameters;
 import com.google.crypto.tink.config.TinkFips;
 import com.google.crypto.tink.testing.TestUtil;
 import com.google.crypto.tink.util.SecretBytes;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -314,4 +315,64 @@ public class XChaCha20Poly1305Test {
             "0099887766cd78f4533c94648feacd5aef0291b00b454ee3dcdb76dcc8b0e5e35f5332f91bdd2d28e59d68a0b141");
     assertThat(aead.decrypt(fixedCiphertext, associatedData)).isEqualTo(plaintext);
   }
+
+  private static void assertByteBufferEncryptDecryptWorks(
+      XChaCha20Poly1305 aead, ByteBuffer ciphertext, ByteBuffer decrypted) throws Exception {
+    byte[] plaintext = Random.randBytes(100);
+    byte[] associatedData = Random.randBytes(20);
+    int start = ciphertext.position();
+    int limit = ciphertext.limit();
+
+    aead.encrypt(ByteBuffer.wrap(plaintext), ByteBuffer.wrap(associatedData), ciphertext);
+
+    assertThat(ciphertext.position()).isEqualTo(start + aead.ciphertextSize(plaintext.length));
+    assertThat(ciphertext.limit()).isEqualTo(limit);
+    ciphertext.flip();
+    ciphertext.position(start);
+    byte[] ciphertextBytes = new byte[ciphertext.remaining()];
+    ciphertext.duplicate().get(ciphertextBytes);
+    assertThat(aead.decrypt(ciphertextBytes, associatedData)).isEqualTo(plaintext);
+
+    aead.decrypt(ciphertext, ByteBuffer.wrap(associatedData), decrypted);
+    decrypted.flip();
+    assertThat(decrypted).isEqualTo(ByteBuffer.wrap(plaintext));
+  }
+
+  private static XChaCha20Poly1305 createTinkPrefixInstance() throws Exception {
+    XChaCha20Poly1305Key key =
+        XChaCha20Poly1305Key.create(
+            XChaCha20Poly1305Parameters.Variant.TINK,
+            SecretBytes.randomBytes(KEY_SIZE),
+            0x99887766);
+    return (XChaCha20Poly1305) XChaCha20Poly1305.create(key);
+  }
+
+  @Test
+  public void byteBufferEncryptDecrypt_exactHeapBuffers_works() throws Exception {
+    Assume.assumeFalse(TinkFips.useOnlyFips());
+    XChaCha20Poly1305 aead = createTinkPrefixInstance();
+
+    assertByteBufferEncryptDecryptWorks(
+        aead, ByteBuffer.allocate(aead.ciphertextSize(100)), ByteBuffer.allocate(100));
+  }
+
+  @Test
+  public void byteBufferEncryptDecrypt_oversizedHeapBuffers_works() throws Exception {
+    Assume.assumeFalse(TinkFips.useOnlyFips());
+    XChaCha20Poly1305 aead = createTinkPrefixInstance();
+    ByteBuffer ciphertext = ByteBuffer.allocate(aead.ciphertextSize(100) + 50);
+    ciphertext.position(7);
+
+    assertByteBufferEncryptDecryptWorks(aead, ciphertext, ByteBuffer.allocate(200));
+  }
+
+  @Test
+  public void byteBufferEncryptDecrypt_oversizedDirectBuffers_works() throws Exception {
+    Assume.assumeFalse(TinkFips.useOnlyFips());
+    XChaCha20Poly1305 aead = createTinkPrefixInstance();
+    ByteBuffer ciphertext = ByteBuffer.allocateDirect(aead.ciphertextSize(100) + 50);
+    ciphertext.position(7);
+
+    assertByteBufferEncryptDecryptWorks(aead, ciphertext, ByteBuffer.allocateDirect(200));
+  }
 }
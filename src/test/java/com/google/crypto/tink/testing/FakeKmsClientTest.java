@@ -21,9 +21,15 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThrows;
 
 import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.AsyncAead;
 import com.google.crypto.tink.aead.AeadConfig;
 import com.google.crypto.tink.subtle.Random;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -87,4 +93,54 @@ public final class FakeKmsClientTest {
     assertThat(client.doesSupport(anotherUri)).isTrue();
     unused = client.getAead(anotherUri); // No exception
   }
+
+  @Test
+  public void withLatency_delaysOperations() throws Exception {
+    String uri = FakeKmsClient.createFakeKeyUri();
+    FakeKmsClient client = new FakeKmsClient(uri).withLatency(Duration.ofMillis(50));
+    assertThat(client.doesSupport(uri)).isTrue();
+    Aead aead = client.getAead(uri);
+    byte[] plaintext = Random.randBytes(20);
+    byte[] associatedData = Random.randBytes(20);
+
+    long start = System.nanoTime();
+    byte[] ciphertext = aead.encrypt(plaintext, associatedData);
+    byte[] decrypted = aead.decrypt(ciphertext, associatedData);
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    assertArrayEquals(plaintext, decrypted);
+    assertThat(elapsedMillis).isAtLeast(100L);
+    // Ciphertexts do not depend on the latency.
+    Aead aeadWithoutLatency = new FakeKmsClient().getAead(uri);
+    assertArrayEquals(plaintext, aeadWithoutLatency.decrypt(ciphertext, associatedData));
+  }
+
+  @Test
+  public void getAsyncAead_batchHasLatencyOnce() throws Exception {
+    String uri = FakeKmsClient.createFakeKeyUri();
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      AsyncAead aead =
+          new FakeKmsClient().withLatency(Duration.ofMillis(200)).getAsyncAead(uri, executor);
+      byte[] associatedData = Random.randBytes(20);
+      List<byte[]> plaintexts =
+          Arrays.asList(Random.randBytes(1), Random.randBytes(2), Random.randBytes(3));
+
+      long start = System.nanoTime();
+      List<byte[]> ciphertexts = aead.encryptBatch(plaintexts, associatedData).get();
+      long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+      List<byte[]> decrypted = aead.decryptBatch(ciphertexts, associatedData).get();
+
+      assertThat(elapsedMillis).isAtLeast(200L);
+      assertThat(elapsedMillis).isLessThan(600L);
+      assertThat(decrypted).hasSize(3);
+      for (int i = 0; i < 3; i++) {
+        assertArrayEquals(plaintexts.get(i), decrypted.get(i));
+      }
+      assertArrayEquals(
+          plaintexts.get(0), aead.decrypt(ciphertexts.get(0), associatedData).get());
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
@@ -0,0 +1,198 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+////////////////////////////////////////////////////////////////////////////////
+
+package com.google.crypto.tink.testing;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KmsClients;
+import com.google.crypto.tink.subtle.Random;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@code SimulatedKmsClient}. */
+@RunWith(JUnit4.class)
+public final class SimulatedKmsClientTest {
+  private static final String KEY_URI = SimulatedKmsClient.PREFIX + "key1";
+  private static final String OTHER_KEY_URI = SimulatedKmsClient.PREFIX + "key2";
+
+  @Test
+  public void encryptDecrypt_works() throws Exception {
+    SimulatedKmsClient client = SimulatedKmsClient.builder().build();
+    Aead aead = client.getAead(KEY_URI);
+    byte[] plaintext = Random.randBytes(20);
+    byte[] associatedData = Random.randBytes(20);
+
+    byte[] ciphertext = aead.encrypt(plaintext, associatedData);
+
+    assertThat(client.getAead(KEY_URI).decrypt(ciphertext, associatedData)).isEqualTo(plaintext);
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> client.getAead(OTHER_KEY_URI).decrypt(ciphertext, associatedData));
+  }
+
+  @Test
+  public void doesSupport_onlySimulatedKeys() throws Exception {
+    SimulatedKmsClient client = SimulatedKmsClient.builder().build();
+
+    assertThat(client.doesSupport(KEY_URI)).isTrue();
+    assertThat(client.doesSupport("fake-kms://key")).isFalse();
+    assertThrows(GeneralSecurityException.class, () -> client.getAead("fake-kms://key"));
+  }
+
+  @Test
+  public void canBeRegisteredInKmsClients() throws Exception {
+    SimulatedKmsClient client = SimulatedKmsClient.builder().build();
+    KmsClients.add(client);
+
+    assertThat(KmsClients.get(KEY_URI)).isSameInstanceAs(client);
+  }
+
+  @Test
+  public void getCallCounts_countsCallsPerKey() throws Exception {
+    SimulatedKmsClient client = SimulatedKmsClient.builder().build();
+    Aead aead = client.getAead(KEY_URI);
+    byte[] ciphertext = aead.encrypt(new byte[10], new byte[0]);
+    Object unused = aead.encrypt(new byte[10], new byte[0]);
+    unused = aead.decrypt(ciphertext, new byte[0]);
+    unused = client.getAead(OTHER_KEY_URI).encrypt(new byte[10], new byte[0]);
+
+    SimulatedKmsClient.CallCounts counts = client.getCallCounts(KEY_URI);
+    assertThat(counts.getEncryptCalls()).isEqualTo(2);
+    assertThat(counts.getDecryptCalls()).isEqualTo(1);
+    assertThat(counts.getFailedCalls()).isEqualTo(0);
+    assertThat(counts.getRateLimitedCalls()).isEqualTo(0);
+    assertThat(client.getCallCounts(OTHER_KEY_URI).getEncryptCalls()).isEqualTo(1);
+    assertThat(client.getCallCounts(SimulatedKmsClient.PREFIX + "unused").getEncryptCalls())
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void fixedLatency_delaysCalls() throws Exception {
+    SimulatedKmsClient client =
+        SimulatedKmsClient.builder()
+            .setLatency(SimulatedKmsClient.LatencyDistribution.fixed(Duration.ofMillis(50)))
+            .build();
+    Aead aead = client.getAead(KEY_URI);
+
+    long start = System.nanoTime();
+    Object unused = aead.encrypt(new byte[10], new byte[0]);
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    assertThat(elapsedMillis).isAtLeast(50L);
+  }
+
+  @Test
+  public void latencyDistributions_areWithinBounds() throws Exception {
+    java.util.Random random = new java.util.Random(42);
+    SimulatedKmsClient.LatencyDistribution uniform =
+        SimulatedKmsClient.LatencyDistribution.uniform(
+            Duration.ofMillis(10), Duration.ofMillis(20));
+    SimulatedKmsClient.LatencyDistribution logNormal =
+        SimulatedKmsClient.LatencyDistribution.logNormal(
+            Duration.ofMillis(10), Duration.ofMillis(100));
+    int aboveMedian = 0;
+    for (int i = 0; i < 1000; i++) {
+      assertThat(uniform.nextNanos(random)).isAtLeast(Duration.ofMillis(10).toNanos());
+      assertThat(uniform.nextNanos(random)).isAtMost(Duration.ofMillis(20).toNanos());
+      long latency = logNormal.nextNanos(random);
+      assertThat(latency).isGreaterThan(0L);
+      if (latency > Duration.ofMillis(10).toNanos()) {
+        aboveMedian++;
+      }
+    }
+    assertThat(aboveMedian).isAtLeast(400);
+    assertThat(aboveMedian).isAtMost(600);
+  }
+
+  @Test
+  public void failNextCalls_failsExactlyThoseCalls() throws Exception {
+    SimulatedKmsClient client = SimulatedKmsClient.builder().build();
+    Aead aead = client.getAead(KEY_URI);
+
+    client.failNextCalls(2);
+
+    assertThrows(GeneralSecurityException.class, () -> aead.encrypt(new byte[10], new byte[0]));
+    assertThrows(GeneralSecurityException.class, () -> aead.encrypt(new byte[10], new byte[0]));
+    Object unused = aead.encrypt(new byte[10], new byte[0]);
+    assertThat(client.getCallCounts(KEY_URI).getFailedCalls()).isEqualTo(2);
+  }
+
+  @Test
+  public void failureProbability_failsCalls() throws Exception {
+    SimulatedKmsClient alwaysFailing =
+        SimulatedKmsClient.builder().setFailureProbability(1).build();
+    SimulatedKmsClient sometimesFailing =
+        SimulatedKmsClient.builder().setFailureProbability(0.5).setSeed(1).build();
+
+    assertThrows(
+        GeneralSecurityException.class,
+        () -> alwaysFailing.getAead(KEY_URI).encrypt(new byte[10], new byte[0]));
+    Aead aead = sometimesFailing.getAead(KEY_URI);
+    for (int i = 0; i < 100; i++) {
+      try {
+        Object unused = aead.encrypt(new byte[10], new byte[0]);
+      } catch (GeneralSecurityException e) {
+        // Expected for some calls.
+      }
+    }
+    long failedCalls = sometimesFailing.getCallCounts(KEY_URI).getFailedCalls();
+    assertThat(failedCalls).isAtLeast(20L);
+    assertThat(failedCalls).isAtMost(80L);
+  }
+
+  @Test
+  public void rateLimit_rejectsCallsAboveTheLimit() throws Exception {
+    SimulatedKmsClient client = SimulatedKmsClient.builder().setRateLimit(10).build();
+    Aead aead = client.getAead(KEY_URI);
+
+    int succeeded = 0;
+    for (int i = 0; i < 20; i++) {
+      try {
+        Object unused = aead.encrypt(new byte[10], new byte[0]);
+        succeeded++;
+      } catch (GeneralSecurityException e) {
+        // Expected once the burst of 10 calls is used up.
+      }
+    }
+
+    assertThat(succeeded).isAtLeast(10);
+    assertThat(succeeded).isLessThan(20);
+    assertThat(client.getCallCounts(KEY_URI).getRateLimitedCalls()).isEqualTo(20 - succeeded);
+  }
+
+  @Test
+  public void builder_rejectsInvalidValues() throws Exception {
+    assertThrows(
+        IllegalArgumentException.class, () -> SimulatedKmsClient.builder().setRateLimit(0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> SimulatedKmsClient.builder().setFailureProbability(1.5));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> SimulatedKmsClient.LatencyDistribution.fixed(Duration.ofMillis(-1)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            SimulatedKmsClient.LatencyDistribution.uniform(
+                Duration.ofMillis(2), Duration.ofMillis(1)));
+  }
+}
@@ -0,0 +1,59 @@
+# Copyright 2023 Google LLC
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+################################################################################
+
+"""Rules for JMH microbenchmarks.
+
+Usage:
+
+  java_jmh_benchmark(
+      name = "AeadBenchmark",
+      srcs = ["AeadBenchmark.java"],
+      deps = [...],
+  )
+
+  bazel run //src/jmh/java/com/google/crypto/tink/aead:AeadBenchmark -- <jmh args>
+
+By default the benchmark runs with the GC profiler enabled ("-prof gc"), so that
+allocation rates are reported next to throughput and latency numbers.
+"""
+
+def java_jmh_benchmark(name, srcs, deps = [], args = [], **kwargs):
+    """Creates a runnable JMH benchmark binary.
+
+    Args:
+      name: The name of the java_binary target.
+      srcs: The Java sources containing @Benchmark methods.
+      deps: Dependencies of the benchmark sources.
+      args: Extra arguments passed to org.openjdk.jmh.Main.
+      **kwargs: Forwarded to the java_binary rule.
+    """
+    native.java_library(
+        name = name + "_lib",
+        testonly = 1,
+        srcs = srcs,
+        plugins = ["//tools:jmh_annotation_processor"],
+        deps = deps + [
+            "@maven//:org_openjdk_jmh_jmh_core",
+        ],
+    )
+    native.java_binary(
+        name = name,
+        testonly = 1,
+        main_class = "org.openjdk.jmh.Main",
+        args = ["-prof", "gc"] + args,
+        runtime_deps = [":" + name + "_lib"],
+        **kwargs
+    )